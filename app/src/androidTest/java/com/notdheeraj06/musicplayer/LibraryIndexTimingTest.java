@@ -0,0 +1,193 @@
+package com.notdheeraj06.musicplayer;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.notdheeraj06.musicplayer.core.LibrarySort;
+import com.notdheeraj06.musicplayer.core.LibrarySorter;
+import com.notdheeraj06.musicplayer.core.SongMetadata;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Launch to first render at the 40k tracks of a large SD card, with the index empty and with it
+ * populated: the time from {@link LibraryIndex#load} to the adapter committing the first sorted
+ * list. With a populated index that list is the whole cached library. With an empty one it is the
+ * scanner's first batch, handed over here as soon as load returns, since SAF itself can't be
+ * granted to a test; the real cold figure adds the listing of the first folder on top. Timings go
+ * to logcat under {@value #TAG}; the app records the real first-render times in the
+ * library.first_render_warm_ms and library.first_render_cold_ms histograms (dumpsys of the service).
+ */
+@RunWith(AndroidJUnit4.class)
+public class LibraryIndexTimingTest {
+
+    private static final String TAG = "LibraryIndexTiming";
+    private static final String DB_NAME = "library-timing-test.db";
+    private static final int SONGS = 40_000;
+    // FolderScanner's batch size
+    private static final int FIRST_BATCH = 200;
+    private static final Uri TREE = Uri.parse("content://com.android.externalstorage.documents/tree/primary%3AMusic");
+
+    private final Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+    private Context context;
+    private LibraryIndex index;
+    private final LibrarySorter sorter = new LibrarySorter(Locale.US);
+
+    @Before
+    public void setUp() {
+        context = instrumentation.getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        index = new LibraryIndex(context, DB_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        index.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void firstRenderWithAnEmptyAndAPopulatedIndex() throws InterruptedException {
+        List<Song> scanned = songs();
+
+        long started = SystemClock.elapsedRealtime();
+        List<Song> empty = await(callback -> index.load(TREE, callback));
+        assertTrue(empty.isEmpty());
+        render(scanned.subList(0, FIRST_BATCH));
+        long coldMs = SystemClock.elapsedRealtime() - started;
+
+        started = SystemClock.elapsedRealtime();
+        LibraryIndex.Delta written = await(callback -> index.applyScan(TREE, scanned, callback));
+        long writeMs = SystemClock.elapsedRealtime() - started;
+        assertEquals(SONGS, written.added.size());
+
+        started = SystemClock.elapsedRealtime();
+        List<Song> loaded = await(callback -> index.load(TREE, callback));
+        long loadMs = SystemClock.elapsedRealtime() - started;
+        render(loaded);
+        long warmMs = SystemClock.elapsedRealtime() - started;
+        assertEquals(SONGS, loaded.size());
+        assertEquals(scanned.get(1234).getDocumentId(), loaded.get(1234).getDocumentId());
+        assertEquals("Artist 20", loaded.get(1234).getMetadata().getArtist());
+
+        Log.i(TAG, String.format(Locale.US, "%d songs: first render %d ms with an empty index (first batch of %d, "
+                        + "SAF listing excluded), %d ms with a populated one (load %d ms); index write after the scan %d ms",
+                SONGS, coldMs, FIRST_BATCH, warmMs, loadMs, writeMs));
+    }
+
+    @Test
+    public void rescanOnlyWritesChanges() throws InterruptedException {
+        List<Song> scanned = songs();
+        LibraryIndex.Delta cold = await(callback -> index.applyScan(TREE, scanned, callback));
+        assertEquals(SONGS, cold.added.size());
+
+        // One file rewritten, one deleted: the diff finds exactly those
+        List<Song> rescanned = new ArrayList<>(scanned);
+        Song edited = scanned.get(7);
+        rescanned.set(7, Song.inTree(TREE, edited.getTitle(), edited.getDocumentId(), edited.getSize() + 1, edited.getLastModified()));
+        rescanned.remove(rescanned.size() - 1);
+        long started = SystemClock.elapsedRealtime();
+        LibraryIndex.Delta warm = await(callback -> index.applyScan(TREE, rescanned, callback));
+        long rescanMs = SystemClock.elapsedRealtime() - started;
+        assertEquals(1, warm.changed.size());
+        assertEquals(1, warm.removed.size());
+        assertTrue(warm.added.isEmpty());
+        Log.i(TAG, SONGS + " songs: warm rescan diff " + rescanMs + " ms");
+    }
+
+    @Test
+    public void aDirectoryThatFailedToListKeepsItsRows() throws InterruptedException {
+        List<Song> scanned = songs();
+        LibraryIndex.Delta written = await(callback -> index.applyScan(TREE, scanned, callback));
+        assertEquals(SONGS, written.added.size());
+
+        // Artist 3's folder couldn't be listed, and a file elsewhere was deleted
+        String unlisted = "primary:Music/Artist 3";
+        List<Song> rescanned = new ArrayList<>();
+        for (Song song : scanned) {
+            if (!song.getDocumentId().startsWith(unlisted + "/")) rescanned.add(song);
+        }
+        rescanned.remove(0);
+        LibraryIndex.Delta delta = await(callback ->
+                index.applyScan(TREE, rescanned, Collections.singleton(unlisted), callback));
+        assertEquals(Collections.singletonList(scanned.get(0).getDocumentId()), delta.removed);
+        List<Song> loaded = await(callback -> index.load(TREE, callback));
+        assertEquals(SONGS - 1, loaded.size());
+
+        assertTrue(LibraryIndex.isUnder("primary:Music", Collections.singleton("primary:")));
+        assertTrue(LibraryIndex.isUnder("primary:Music/A/b.mp3", Collections.singleton("primary:Music")));
+        assertFalse(LibraryIndex.isUnder("primary:Music 2/b.mp3", Collections.singleton("primary:Music")));
+    }
+
+    /**
+     * What MainActivity's submitSongs does with a fresh list: sort it off the main thread, submit it
+     * to a new adapter and wait for the adapter to be told of the rows.
+     */
+    private void render(List<Song> songs) throws InterruptedException {
+        LibrarySorter.Result sorted = sorter.sort(songs, LibrarySort.Order.TITLE);
+        List<Song> shown = new ArrayList<>(songs.size());
+        for (int i : sorted.order) shown.add(songs.get(i));
+        CountDownLatch committed = new CountDownLatch(1);
+        instrumentation.runOnMainSync(() -> {
+            SongsAdapter adapter = new SongsAdapter((song, position) -> { });
+            adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+                @Override
+                public void onItemRangeInserted(int positionStart, int itemCount) {
+                    if (itemCount == shown.size()) committed.countDown();
+                }
+            });
+            adapter.submitList(Collections.unmodifiableList(shown), sorted.sections);
+        });
+        assertTrue("list not committed", committed.await(30, TimeUnit.SECONDS));
+    }
+
+    /** Twelve tracks per album and five albums per artist, as a scan of an SD card lists them. */
+    private static List<Song> songs() {
+        List<Song> songs = new ArrayList<>(SONGS);
+        for (int i = 0; i < SONGS; i++) {
+            String artist = "Artist " + i / 60;
+            String album = "Album " + i / 12;
+            String title = String.format(Locale.US, "%02d Track %d.mp3", i % 12 + 1, i);
+            Song song = Song.inTree(TREE, title, "primary:Music/" + artist + "/" + album + "/" + title,
+                    4_000_000 + i, 1_600_000_000_000L + i);
+            song.setMetadata(new SongMetadata(artist, album, i % 12 + 1, 200_000, 320_000, i % 12 == 0));
+            songs.add(song);
+        }
+        return songs;
+    }
+
+    /** Runs an async index call and waits for its main-thread callback. */
+    private static <T> T await(Consumer<LibraryIndex.Callback<T>> call) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<T> result = new AtomicReference<>();
+        call.accept(value -> {
+            result.set(value);
+            done.countDown();
+        });
+        assertTrue("timed out", done.await(2, TimeUnit.MINUTES));
+        return result.get();
+    }
+}
@@ -0,0 +1,387 @@
+package com.notdheeraj06.musicplayer;
+
+import android.content.Context;
+import android.media.MediaDataSource;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.notdheeraj06.musicplayer.core.Metrics;
+import com.notdheeraj06.musicplayer.core.PlayQueue;
+import com.notdheeraj06.musicplayer.core.Track;
+import com.notdheeraj06.musicplayer.core.TrackTable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The playback state machine against scripted players: the test decides when each prepare
+ * finishes or fails, and checks what the controller asked the players to do meanwhile.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PlaybackControllerTest {
+
+    private static final Uri TREE = Uri.parse("content://com.android.externalstorage.documents/tree/primary%3ATest");
+    private static final int PREPARE_MS = 150;
+
+    private Context context;
+    private File stateDir;
+    private final List<FakePlayer> players = Collections.synchronizedList(new ArrayList<>());
+    private PlaybackController controller;
+    private TrackTable library;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        stateDir = new File(context.getCacheDir(), "playback-test");
+        deleteState();
+        stateDir.mkdirs();
+        controller = newController(stateDir);
+        controller.setGapless(false);
+        library = library(10);
+        controller.setLibrary(library, TREE);
+        sync();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        controller.release();
+        deleteState();
+    }
+
+    @Test
+    public void skipsWhilePreparingPrepareOnlyTheLastTarget() throws InterruptedException {
+        long coalesced = Metrics.counter("playback.commands_coalesced").get();
+        controller.play(0);
+        sync();
+        assertEquals(PlaybackController.State.PREPARING, controller.getState());
+
+        long lastCommandAt = SystemClock.elapsedRealtime();
+        controller.next();
+        controller.next();
+        controller.next();
+        sync();
+        assertEquals(3, Metrics.counter("playback.commands_coalesced").get() - coalesced);
+        // Track 0 is still preparing; nothing new is handed to the player until it returns
+        assertEquals(Arrays.asList("doc/0"), player().sources);
+
+        player().finishPrepare(PREPARE_MS);
+        awaitSources(2);
+        assertEquals(PlaybackController.State.PREPARING, controller.getState());
+        player().finishPrepare(PREPARE_MS);
+        awaitState(PlaybackController.State.STARTED, "doc/3");
+
+        assertEquals(1, players.size());
+        assertEquals(Arrays.asList("doc/0", "doc/3"), player().sources);
+        assertEquals(1, player().starts);
+        // Both prepares are on the command's path, and nothing else is
+        long latency = controller.getLastCommandLatencyMs();
+        assertTrue("latency " + latency + " ms", latency >= 2 * PREPARE_MS);
+        assertTrue("latency " + latency + " ms", latency < 2 * PREPARE_MS + 1000);
+        assertTrue(SystemClock.elapsedRealtime() - lastCommandAt >= latency);
+    }
+
+    @Test
+    public void seekAndPauseWhilePreparingApplyOncePrepared() throws InterruptedException {
+        controller.play(2);
+        controller.seekTo(1_000);
+        controller.seekTo(5_000);
+        controller.pause();
+        sync();
+        assertEquals(PlaybackController.State.PREPARING, controller.getState());
+        assertTrue(player().seeks.isEmpty());
+
+        player().finishPrepare(0);
+        awaitState(PlaybackController.State.PREPARED, "doc/2");
+        // Only the last seek reaches the player, and the pause kept it from starting
+        assertEquals(Arrays.asList(5_000), player().seeks);
+        assertEquals(0, player().starts);
+        assertEquals(5_000, controller.getCurrentPosition());
+
+        controller.resume();
+        awaitState(PlaybackController.State.STARTED, "doc/2");
+        assertEquals(1, player().starts);
+        assertEquals(Arrays.asList(5_000), player().seeks);
+    }
+
+    @Test
+    public void errorMovesToErrorAndTheNextCommandRecovers() throws InterruptedException {
+        controller.play(0);
+        controller.next();
+        sync();
+        player().fail();
+        awaitState(PlaybackController.State.ERROR, "doc/1");
+        // The skip coalesced behind the failed prepare is dropped with it
+        assertEquals(Arrays.asList("doc/0"), player().sources);
+
+        controller.next();
+        sync();
+        assertEquals(PlaybackController.State.PREPARING, controller.getState());
+        player().finishPrepare(0);
+        awaitState(PlaybackController.State.STARTED, "doc/2");
+        assertEquals(Arrays.asList("doc/0", "doc/2"), player().sources);
+        assertTrue(controller.getLastCommandLatencyMs() < 1000);
+    }
+
+    @Test
+    public void resumeAfterAnErrorRetriesTheCurrentTrack() throws InterruptedException {
+        controller.play(4);
+        sync();
+        player().fail();
+        awaitState(PlaybackController.State.ERROR, "doc/4");
+
+        controller.resume();
+        sync();
+        player().finishPrepare(0);
+        awaitState(PlaybackController.State.STARTED, "doc/4");
+        assertEquals(Arrays.asList("doc/4", "doc/4"), player().sources);
+        assertEquals(1, player().starts);
+    }
+
+    @Test
+    public void importedRowsBecomeTheQueue() throws InterruptedException {
+        controller.playRows(library, new int[]{7, 2, 5}, 0);
+        sync();
+        PlayQueue queue = controller.getQueue();
+        assertEquals(3, queue.size());
+        assertEquals(2, queue.rowAt(1));
+        player().finishPrepare(0);
+        awaitState(PlaybackController.State.STARTED, "doc/7");
+
+        // Skips stay inside the playlist
+        controller.next();
+        sync();
+        player().finishPrepare(0);
+        awaitState(PlaybackController.State.STARTED, "doc/2");
+        assertEquals(Arrays.asList("doc/7", "doc/2"), player().sources);
+    }
+
+    @Test
+    public void importResolvedAgainstAnOlderSnapshotIsCarriedByDocumentId() throws InterruptedException {
+        // A re-sort and a deletion land between resolving the playlist and handing it over
+        TrackTable changed = tracks(9, 8, 7, 6, 4, 3, 2, 1, 0);
+        controller.setLibrary(changed, TREE);
+        controller.playRows(library, new int[]{7, 5, 2}, 0);
+        sync();
+        PlayQueue queue = controller.getQueue();
+        assertSame(changed, queue.library());
+        assertEquals(2, queue.size());
+        assertEquals("doc/7", changed.documentId(queue.rowAt(0)));
+        assertEquals("doc/2", changed.documentId(queue.rowAt(1)));
+        player().finishPrepare(0);
+        awaitState(PlaybackController.State.STARTED, "doc/7");
+    }
+
+    @Test
+    public void importWithNothingLeftInTheLibraryIsIgnored() throws InterruptedException {
+        controller.setLibrary(tracks(1, 2), TREE);
+        controller.playRows(library, new int[]{5}, 0);
+        sync();
+        assertEquals(PlaybackController.State.IDLE, controller.getState());
+        assertTrue(players.isEmpty());
+    }
+
+    @Test
+    public void savedShuffleIsRestoredWhenAnEmptyLibraryArrivesFirst() throws Exception {
+        TrackTable large = library(200);
+        controller.setLibrary(large, TREE);
+        controller.toggleShuffle();
+        byte[] saved = awaitSavedShuffle(new File(stateDir, "shuffle_order.bin"), large.fingerprint());
+        List<String> expected = skip(controller, 5);
+
+        // A fresh start: the activity hands over an empty snapshot before the index has loaded
+        File restartDir = new File(context.getCacheDir(), "playback-test-restart");
+        deleteState(restartDir);
+        restartDir.mkdirs();
+        try (FileOutputStream out = new FileOutputStream(new File(restartDir, "shuffle_order.bin"))) {
+            out.write(saved);
+        }
+        PlaybackController restarted = newController(restartDir);
+        try {
+            restarted.setGapless(false);
+            restarted.setLibrary(TrackTable.empty(), TREE);
+            restarted.setLibrary(large, TREE);
+            assertEquals(expected, skip(restarted, 5));
+        } finally {
+            restarted.release();
+            deleteState(restartDir);
+        }
+    }
+
+    @Test
+    public void reSortKeepsTheShuffleOrderOnTheSameTracks() throws InterruptedException {
+        controller.toggleShuffle();
+        List<String> upcoming = skip(controller, 5);
+        // Back to the first of them, so the other four are upcoming again
+        for (int i = 0; i < 4; i++) controller.previous();
+        sync();
+        assertEquals(upcoming.get(0), controller.getCurrentSong().getDocumentId());
+
+        // Same tracks in another order: the fingerprint differs, so the order is remapped by document id
+        TrackTable resorted = tracks(9, 8, 7, 6, 5, 4, 3, 2, 1, 0);
+        assertTrue(resorted.fingerprint() != library.fingerprint());
+        controller.setLibrary(resorted, TREE);
+        sync();
+        assertSame(resorted, controller.getQueue().library());
+        assertEquals(upcoming.get(0), controller.getCurrentSong().getDocumentId());
+        assertEquals(upcoming.subList(1, 5), skip(controller, 4));
+    }
+
+    private PlaybackController newController(File dir) {
+        return new PlaybackController(context, (song, state, playWhenReady, positionMs, durationMs, positionUpdatedAt) -> { },
+                dir, () -> {
+                    FakePlayer player = new FakePlayer();
+                    players.add(player);
+                    return player;
+                });
+    }
+
+    /** Document ids of the tracks {@code count} skips land on; they coalesce behind the first prepare. */
+    private static List<String> skip(PlaybackController controller, int count) throws InterruptedException {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            controller.next();
+            CountDownLatch done = new CountDownLatch(1);
+            controller.post(done::countDown);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            ids.add(controller.getCurrentSong().getDocumentId());
+        }
+        return ids;
+    }
+
+    /** Waits for the shuffle file to hold an enabled order for the library with {@code fingerprint}. */
+    private static byte[] awaitSavedShuffle(File file, long fingerprint) throws Exception {
+        long deadline = SystemClock.elapsedRealtime() + 5_000;
+        while (SystemClock.elapsedRealtime() < deadline) {
+            if (file.exists()) {
+                byte[] bytes = new byte[(int) file.length()];
+                try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                    in.readFully(bytes);
+                }
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+                if (in.readLong() == fingerprint && in.readBoolean()) return bytes;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("shuffle order not saved");
+    }
+
+    private FakePlayer player() {
+        return players.get(players.size() - 1);
+    }
+
+    /** Waits for every command and player callback posted so far to run on the playback thread. */
+    private void sync() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        controller.post(done::countDown);
+        assertTrue("playback thread stuck", done.await(5, TimeUnit.SECONDS));
+    }
+
+    private void awaitState(PlaybackController.State state, String documentId) throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + 5_000;
+        while (controller.getState() != state && SystemClock.elapsedRealtime() < deadline) {
+            Thread.sleep(5);
+        }
+        sync();
+        assertEquals(state, controller.getState());
+        assertEquals(documentId, controller.getCurrentSong().getDocumentId());
+    }
+
+    private void awaitSources(int count) throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + 5_000;
+        while (player().sources.size() < count && SystemClock.elapsedRealtime() < deadline) {
+            Thread.sleep(5);
+        }
+        sync();
+        assertEquals(count, player().sources.size());
+    }
+
+    private void deleteState() {
+        deleteState(stateDir);
+    }
+
+    private static void deleteState(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) for (File file : files) file.delete();
+        dir.delete();
+    }
+
+    private static TrackTable library(int size) {
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i++) ids[i] = i;
+        return tracks(ids);
+    }
+
+    /** Rows in the given order, track {@code i} being doc/i as in {@link #library}. */
+    private static TrackTable tracks(int... ids) {
+        List<Track> tracks = new ArrayList<>(ids.length);
+        for (int i : ids) tracks.add(new Track("t" + i + ".mp3", "doc/" + i, 1000 + i, i));
+        return TrackTable.of(tracks);
+    }
+
+    /** Records what it is asked to do; prepares and errors happen when the test says so. */
+    private static final class FakePlayer implements TrackPlayer {
+        // Callbacks go to the thread that created the player, as with MediaPlayer
+        private final Handler handler = new Handler(Looper.myLooper());
+        private Callback callback;
+        private boolean playing;
+        private int position;
+        // Written on the playback thread, read by the test after sync()
+        final List<String> sources = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> seeks = Collections.synchronizedList(new ArrayList<>());
+        volatile int starts;
+
+        void finishPrepare(int delayMs) {
+            handler.postDelayed(() -> callback.onPrepared(this), delayMs);
+        }
+
+        void fail() {
+            handler.post(() -> callback.onError(this, 1, -1004));
+        }
+
+        @Override public void setCallback(Callback callback) { this.callback = callback; }
+        @Override public void setDataSource(MediaDataSource source) { sources.add("data source"); }
+        @Override public void setDataSource(Context context, Uri uri) { sources.add(DocumentsContract.getDocumentId(uri)); }
+        @Override public void prepareAsync() { }
+        @Override public void start() { playing = true; starts++; }
+        @Override public void pause() { playing = false; }
+
+        @Override
+        public void seekTo(int ms) {
+            seeks.add(ms);
+            position = ms;
+            handler.post(() -> callback.onSeekComplete(this));
+        }
+
+        @Override public boolean isPlaying() { return playing; }
+        @Override public int getCurrentPosition() { return position; }
+        @Override public int getDuration() { return 180_000; }
+        @Override public void setVolume(float volume) { }
+        @Override public void setNext(TrackPlayer next) { }
+        @Override public void reset() { playing = false; position = 0; seeks.clear(); }
+        @Override public void release() { playing = false; }
+    }
+}
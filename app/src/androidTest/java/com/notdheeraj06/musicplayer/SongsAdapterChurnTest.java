@@ -0,0 +1,221 @@
+package com.notdheeraj06.musicplayer;
+
+import android.app.Instrumentation;
+import android.net.Uri;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Main-thread cost of one library update in {@link SongsAdapter}: 50k songs, 1% of them churned
+ * per update (a third removed, a third added, a third rewritten). The diff runs on the differ's
+ * background thread, so what is timed here is every main-thread message from submitList to the
+ * commit, plus the layout pass that rebinds the visible rows. Numbers go to logcat under
+ * {@value #TAG}; the assertions only check that each update is dispatched as its minimal change set.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SongsAdapterChurnTest {
+
+    private static final String TAG = "SongsAdapterChurn";
+    private static final Uri TREE = Uri.parse("content://com.android.externalstorage.documents/tree/primary%3AMusic");
+    private static final int SONGS = 50_000;
+    private static final int CHURN = SONGS / 100;
+    private static final int UPDATES = 12;
+    private static final int WARMUP = 2;
+
+    private final Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+    private final Random random = new Random(8);
+    private int nextId;
+
+    // Main thread only
+    private SongsAdapter adapter;
+    private RecyclerView recycler;
+    private final Counts counts = new Counts();
+    private long messageStarted;
+    private long mainNanos;
+    private long maxMessageNanos;
+
+    @Test
+    public void onePercentChurnOfFiftyThousandSongs() throws InterruptedException {
+        List<Song> songs = new ArrayList<>(SONGS);
+        for (int i = 0; i < SONGS; i++) songs.add(newSong());
+        instrumentation.runOnMainSync(() -> {
+            adapter = new SongsAdapter((song, position) -> { });
+            adapter.registerAdapterDataObserver(counts);
+            recycler = new RecyclerView(instrumentation.getTargetContext());
+            recycler.setLayoutManager(new LinearLayoutManager(instrumentation.getTargetContext()));
+            recycler.setAdapter(adapter);
+        });
+        submitAndAwait(songs);
+        layout();
+
+        long[] mainMs = new long[UPDATES - WARMUP];
+        long[] maxMessageMs = new long[UPDATES - WARMUP];
+        long[] layoutMs = new long[UPDATES - WARMUP];
+        for (int update = 0; update < UPDATES; update++) {
+            List<Song> next = churn(songs);
+            instrumentation.runOnMainSync(() -> {
+                counts.clear();
+                mainNanos = 0;
+                maxMessageNanos = 0;
+                Looper.getMainLooper().setMessageLogging(this::onMainMessage);
+            });
+            long started = System.nanoTime();
+            submitAndAwait(next);
+            long committedMs = (System.nanoTime() - started) / 1_000_000;
+            long layout = layout();
+
+            // Removals and insertions as such, rewrites as changes, and never a full rebind
+            assertEquals(0, counts.fullRebinds);
+            assertEquals(CHURN / 3, counts.removed);
+            assertEquals(CHURN / 3, counts.inserted);
+            assertEquals(CHURN / 3, counts.changed);
+            songs = next;
+
+            if (update < WARMUP) continue;
+            mainMs[update - WARMUP] = mainNanos / 1_000_000;
+            maxMessageMs[update - WARMUP] = maxMessageNanos / 1_000_000;
+            layoutMs[update - WARMUP] = layout;
+            Log.i(TAG, String.format(Locale.US, "update %d: submit to commit %d ms, main thread %.2f ms (longest message %.2f ms), layout %d ms",
+                    update, committedMs, mainNanos / 1e6, maxMessageNanos / 1e6, layout));
+        }
+        Log.i(TAG, String.format(Locale.US, "%d songs, %d churned per update: main thread median %d ms / max %d ms, "
+                        + "longest message max %d ms, layout median %d ms", SONGS, CHURN,
+                median(mainMs), max(mainMs), max(maxMessageMs), median(layoutMs)));
+        assertTrue(mainMs.length > 0);
+    }
+
+    /** Removes, adds and rewrites a third of {@link #CHURN} songs each, at random positions. */
+    private List<Song> churn(List<Song> songs) {
+        List<Song> next = new ArrayList<>(songs);
+        for (int i = 0; i < CHURN / 3; i++) next.remove(random.nextInt(next.size()));
+        // Rewrite before adding so a new song is never picked for rewriting
+        for (int i : distinct(CHURN / 3, next.size())) {
+            Song old = next.get(i);
+            next.set(i, Song.inTree(TREE, old.getTitle(), old.getDocumentId(), old.getSize() + 1, old.getLastModified() + 1));
+        }
+        for (int i = 0; i < CHURN / 3; i++) next.add(random.nextInt(next.size() + 1), newSong());
+        return Collections.unmodifiableList(next);
+    }
+
+    private int[] distinct(int count, int bound) {
+        List<Integer> all = new ArrayList<>(bound);
+        for (int i = 0; i < bound; i++) all.add(i);
+        Collections.shuffle(all, random);
+        int[] picked = new int[count];
+        for (int i = 0; i < count; i++) picked[i] = all.get(i);
+        return picked;
+    }
+
+    private Song newSong() {
+        int id = nextId++;
+        String title = String.format(Locale.US, "%02d Track %d.mp3", id % 12 + 1, id);
+        return Song.inTree(TREE, title, "primary:Music/Artist " + id / 60 + "/Album " + id / 12 + "/" + title,
+                4_000_000 + id, 1_600_000_000_000L + id);
+    }
+
+    /**
+     * Submits {@code snapshot} and waits for its diff to be dispatched. Waiting on the observer
+     * rather than polling the list keeps the main thread free of anything but the update itself.
+     */
+    private void submitAndAwait(List<Song> snapshot) throws InterruptedException {
+        CountDownLatch dispatched = new CountDownLatch(1);
+        counts.dispatched = dispatched;
+        instrumentation.runOnMainSync(() -> adapter.submitList(snapshot));
+        assertTrue("diff not committed", dispatched.await(30, TimeUnit.SECONDS));
+        // Queued behind the rest of the commit message
+        AtomicBoolean committed = new AtomicBoolean();
+        instrumentation.runOnMainSync(() -> {
+            Looper.getMainLooper().setMessageLogging(null);
+            committed.set(sameList(adapter.getCurrentList(), snapshot));
+        });
+        assertTrue(committed.get());
+    }
+
+    /** Measures and lays out the list at a phone's size, binding the rows on screen; returns ms. */
+    private long layout() {
+        long[] ms = new long[1];
+        instrumentation.runOnMainSync(() -> {
+            long started = SystemClock.uptimeMillis();
+            recycler.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(2200, View.MeasureSpec.EXACTLY));
+            recycler.layout(0, 0, 1080, 2200);
+            ms[0] = SystemClock.uptimeMillis() - started;
+        });
+        return ms[0];
+    }
+
+    /** Looper logging: ">>>>> Dispatching" before each main-thread message, "<<<<< Finished" after. */
+    private void onMainMessage(String line) {
+        long now = System.nanoTime();
+        if (line.startsWith(">")) {
+            messageStarted = now;
+        } else if (messageStarted > 0) {
+            long nanos = now - messageStarted;
+            mainNanos += nanos;
+            maxMessageNanos = Math.max(maxMessageNanos, nanos);
+            messageStarted = 0;
+        }
+    }
+
+    private static boolean sameList(List<Song> shown, List<Song> expected) {
+        if (shown.size() != expected.size()) return false;
+        for (int i = 0; i < shown.size(); i++) if (shown.get(i) != expected.get(i)) return false;
+        return true;
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static long max(long[] values) {
+        long max = 0;
+        for (long value : values) max = Math.max(max, value);
+        return max;
+    }
+
+    /** Items the adapter was told about, per kind of change. */
+    private static final class Counts extends RecyclerView.AdapterDataObserver {
+        int fullRebinds;
+        int removed;
+        int inserted;
+        int changed;
+        // Counted down on the first change of a dispatch
+        volatile CountDownLatch dispatched;
+
+        void clear() {
+            fullRebinds = removed = inserted = changed = 0;
+        }
+
+        @Override public void onChanged() { fullRebinds++; dispatched.countDown(); }
+        // The payload variant forwards here
+        @Override public void onItemRangeChanged(int positionStart, int itemCount) { changed += itemCount; dispatched.countDown(); }
+        @Override public void onItemRangeInserted(int positionStart, int itemCount) { inserted += itemCount; dispatched.countDown(); }
+        @Override public void onItemRangeRemoved(int positionStart, int itemCount) { removed += itemCount; dispatched.countDown(); }
+        @Override public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) { dispatched.countDown(); }
+    }
+}
@@ -0,0 +1,341 @@
+package com.notdheeraj06.musicplayer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.notdheeraj06.musicplayer.core.TagReader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Album art in two tiers: a byte-bounded LRU of bitmaps already scaled to the requested size,
+ * backed by JPEG thumbnails on disk named after a hash of the embedded image, so a cover shared
+ * by a whole album is decoded and stored once. Concurrent requests for the same song and size
+ * share one load, and a load is cancelled once every request waiting on it has been cancelled.
+ */
+public class ArtCache {
+
+    public interface Callback {
+        /**
+         * Called on the main thread; never called for songs without art or after cancel. The
+         * latter holds because cancel and delivery both run on the main thread: cancel takes the
+         * callback out of the shared load's waiting list, and if it was the last one, drops the
+         * load from inFlight, which the delivery checks ({@code inFlight.get(requestKey) != created})
+         * before calling anyone.
+         */
+        void onArtLoaded(Bitmap bitmap);
+    }
+
+    public interface Request {
+        void cancel();
+    }
+
+    private static final String TAG = "ArtCache";
+    private static final String NO_ART = "-";
+    private static final int JPEG_QUALITY = 85;
+
+    private static ArtCache instance;
+
+    private final Context context;
+    private final File dir;
+    private final File keyFile;
+    private final LruCache<String, Bitmap> memory;
+    private final ExecutorService decoder = Executors.newFixedThreadPool(2);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // "docId:size:modified" -> content hash (or NO_ART), mirrored to keyFile so it survives restarts
+    private final Map<String, String> contentKeys = new ConcurrentHashMap<>();
+    // docId -> its current key in contentKeys; an edited file's older key is dropped
+    private final Map<String, String> keyByDocument = new ConcurrentHashMap<>();
+    private volatile boolean keysLoaded;
+    // Lines in keyFile, guarded by keyFile. The file is append-only until stale lines outnumber live ones
+    private int keyLines;
+    private final Map<String, InFlight> inFlight = new HashMap<>();
+
+    private final AtomicInteger memoryHits = new AtomicInteger();
+    private final AtomicInteger memoryMisses = new AtomicInteger();
+    private final AtomicInteger diskHits = new AtomicInteger();
+    private final AtomicInteger diskMisses = new AtomicInteger();
+    private final AtomicInteger evictions = new AtomicInteger();
+
+    private class InFlight {
+        final List<Callback> waiting = new ArrayList<>();
+        Future<?> future;
+    }
+
+    public static synchronized ArtCache get(Context context) {
+        if (instance == null) instance = new ArtCache(context.getApplicationContext());
+        return instance;
+    }
+
+    private ArtCache(Context context) {
+        this.context = context;
+        dir = new File(context.getCacheDir(), "art");
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+        keyFile = new File(dir, "keys.tsv");
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+        memory = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (evicted) evictions.incrementAndGet();
+            }
+        };
+    }
+
+    /** Returns the bitmap if it is already in memory, without starting a load. */
+    public Bitmap peek(Song song, int sizePx) {
+        String hash = contentKeys.get(songKey(song));
+        if (hash == null || NO_ART.equals(hash)) return null;
+        return memory.get(hash + "_" + sizePx);
+    }
+
+    /** Must be called on the main thread. Returns null when the bitmap was delivered synchronously. */
+    public Request load(Song song, int sizePx, Callback callback) {
+        Bitmap cached = peek(song, sizePx);
+        if (cached != null) {
+            memoryHits.incrementAndGet();
+            callback.onArtLoaded(cached);
+            return null;
+        }
+        memoryMisses.incrementAndGet();
+
+        final String requestKey = songKey(song) + "@" + sizePx;
+        InFlight pending = inFlight.get(requestKey);
+        if (pending == null) {
+            final InFlight created = new InFlight();
+            pending = created;
+            inFlight.put(requestKey, created);
+            created.future = decoder.submit(() -> {
+                Bitmap bitmap = loadBlocking(song, sizePx);
+                mainHandler.post(() -> {
+                    if (inFlight.get(requestKey) != created) return;
+                    inFlight.remove(requestKey);
+                    if (bitmap == null) return;
+                    for (Callback waiting : created.waiting) waiting.onArtLoaded(bitmap);
+                });
+            });
+        }
+        pending.waiting.add(callback);
+
+        final InFlight target = pending;
+        return () -> {
+            target.waiting.remove(callback);
+            if (target.waiting.isEmpty() && inFlight.get(requestKey) == target) {
+                inFlight.remove(requestKey);
+                target.future.cancel(true);
+            }
+        };
+    }
+
+    public String getStats() {
+        return "memory " + memoryHits.get() + " hits / " + memoryMisses.get() + " misses, disk "
+                + diskHits.get() + " hits / " + diskMisses.get() + " misses, " + evictions.get()
+                + " evictions, " + memory.size() / 1024 + "/" + memory.maxSize() / 1024 + " KB";
+    }
+
+    public int getMemoryHits() { return memoryHits.get(); }
+    public int getMemoryMisses() { return memoryMisses.get(); }
+    public int getDiskHits() { return diskHits.get(); }
+    public int getDiskMisses() { return diskMisses.get(); }
+    public int getEvictions() { return evictions.get(); }
+
+    private Bitmap loadBlocking(Song song, int sizePx) {
+        ensureKeysLoaded();
+        String songKey = songKey(song);
+        String hash = contentKeys.get(songKey);
+        byte[] encoded = null;
+        if (hash == null) {
+            encoded = readArtwork(song);
+            hash = encoded != null ? sha1(encoded) : NO_ART;
+            rememberKey(songKey, hash);
+        }
+        if (NO_ART.equals(hash) || Thread.currentThread().isInterrupted()) return null;
+
+        String memoryKey = hash + "_" + sizePx;
+        Bitmap bitmap = memory.get(memoryKey);
+        if (bitmap != null) return bitmap;
+
+        File thumb = new File(dir, memoryKey + ".jpg");
+        if (thumb.exists()) {
+            bitmap = BitmapFactory.decodeFile(thumb.getPath());
+            if (bitmap != null) {
+                diskHits.incrementAndGet();
+                memory.put(memoryKey, bitmap);
+                return bitmap;
+            }
+        }
+        diskMisses.incrementAndGet();
+
+        if (encoded == null) encoded = readArtwork(song);
+        if (encoded == null || Thread.currentThread().isInterrupted()) return null;
+        bitmap = decodeScaled(encoded, sizePx);
+        if (bitmap == null) return null;
+        memory.put(memoryKey, bitmap);
+        writeThumbnail(thumb, bitmap);
+        return bitmap;
+    }
+
+    private byte[] readArtwork(Song song) {
+        try (ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(song.getUri(), "r");
+             FileInputStream in = new FileInputStream(pfd.getFileDescriptor())) {
+            byte[] art = TagReader.readArtwork(in.getChannel());
+            if (art != null) return art;
+        } catch (IOException | RuntimeException e) {
+            // Fall through to the platform retriever
+        }
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(context, song.getUri());
+            return retriever.getEmbeddedPicture();
+        } catch (RuntimeException e) {
+            return null;
+        } finally {
+            try {
+                retriever.release();
+            } catch (IOException ignored) { }
+        }
+    }
+
+    private static Bitmap decodeScaled(byte[] encoded, int sizePx) {
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(encoded, 0, encoded.length, opts);
+        if (opts.outWidth <= 0 || opts.outHeight <= 0) return null;
+        int sample = 1;
+        while (opts.outWidth / (sample * 2) >= sizePx && opts.outHeight / (sample * 2) >= sizePx) sample *= 2;
+        opts.inJustDecodeBounds = false;
+        opts.inSampleSize = sample;
+        Bitmap decoded = BitmapFactory.decodeByteArray(encoded, 0, encoded.length, opts);
+        if (decoded == null || (decoded.getWidth() <= sizePx && decoded.getHeight() <= sizePx)) return decoded;
+        float scale = (float) sizePx / Math.max(decoded.getWidth(), decoded.getHeight());
+        Bitmap scaled = Bitmap.createScaledBitmap(decoded,
+                Math.max(1, Math.round(decoded.getWidth() * scale)), Math.max(1, Math.round(decoded.getHeight() * scale)), true);
+        if (scaled != decoded) decoded.recycle();
+        return scaled;
+    }
+
+    private static void writeThumbnail(File file, Bitmap bitmap) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + file, e);
+            return;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        tmp.renameTo(file);
+    }
+
+    private void ensureKeysLoaded() {
+        if (keysLoaded) return;
+        synchronized (keyFile) {
+            if (keysLoaded) return;
+            if (keyFile.exists()) {
+                try (BufferedReader reader = new BufferedReader(new FileReader(keyFile))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        keyLines++;
+                        int tab = line.lastIndexOf('\t');
+                        if (tab > 0) putKey(line.substring(0, tab), line.substring(tab + 1));
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to read art keys", e);
+                }
+            }
+            keysLoaded = true;
+        }
+    }
+
+    private void rememberKey(String songKey, String hash) {
+        putKey(songKey, hash);
+        synchronized (keyFile) {
+            if (keyLines + 1 > 2 * contentKeys.size() && rewriteKeys()) return;
+            try (Writer writer = new FileWriter(keyFile, true)) {
+                writer.write(songKey + "\t" + hash + "\n");
+                keyLines++;
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to append art key", e);
+            }
+        }
+    }
+
+    /** Later lines win: a file edited since its key was written has a newer key for the same document. */
+    private void putKey(String songKey, String hash) {
+        contentKeys.put(songKey, hash);
+        String replaced = keyByDocument.put(documentIdOf(songKey), songKey);
+        if (replaced != null && !replaced.equals(songKey)) contentKeys.remove(replaced);
+    }
+
+    /** Writes only the live keys to a temporary file and renames it over keyFile. Holds keyFile. */
+    private boolean rewriteKeys() {
+        File tmp = new File(keyFile.getPath() + ".tmp");
+        int lines = 0;
+        try (Writer writer = new FileWriter(tmp)) {
+            for (Map.Entry<String, String> entry : contentKeys.entrySet()) {
+                writer.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+                lines++;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to rewrite art keys", e);
+            return false;
+        }
+        if (!tmp.renameTo(keyFile)) return false;
+        Log.d(TAG, "Compacted art keys from " + keyLines + " to " + lines + " lines");
+        keyLines = lines;
+        return true;
+    }
+
+    /** Includes size and mtime so an edited file gets its art re-read. */
+    private static String songKey(Song song) {
+        return song.getDocumentId() + ":" + song.getSize() + ":" + song.getLastModified();
+    }
+
+    private static String documentIdOf(String songKey) {
+        int modified = songKey.lastIndexOf(':');
+        int size = modified > 0 ? songKey.lastIndexOf(':', modified - 1) : -1;
+        return size > 0 ? songKey.substring(0, size) : songKey;
+    }
+
+    private static String sha1(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.notdheeraj06.musicplayer;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Process;
+import android.util.Log;
+
+import com.notdheeraj06.musicplayer.core.Metrics;
+import com.notdheeraj06.musicplayer.core.PcmMixer;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The audio thread of the codec engine: one float stereo AudioTrack at the device's native rate,
+ * fed by a {@link PcmMixer} over the {@link CodecTrackPlayer}s' rings. The mixer and the track's
+ * transport belong to the audio thread alone; other threads queue commands that it runs between
+ * buffers, so nothing on the audio path takes a lock.
+ */
+public class AudioOutput implements PcmMixer.Listener {
+
+    private static final String TAG = "AudioOutput";
+
+    public static final int CHANNELS = 2;
+
+    private static final Metrics.Counter UNDERRUNS = Metrics.counter("engine.underruns");
+    private static final Metrics.Histogram RING_FILL_PCT = Metrics.histogram("engine.ring_fill_pct");
+    // About every 200 ms at the usual buffer sizes
+    private static final int FILL_SAMPLE_EVERY = 16;
+
+    private final AudioTrack track;
+    private final int sampleRate;
+    private final int bufferFrames;
+    private final int chunkFrames;
+    private final PcmMixer mixer;
+    private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+
+    // Audio thread only
+    private boolean playing;
+    private long renders;
+    private long reportedUnderruns;
+
+    // Readable from any thread
+    private volatile boolean running = true;
+    private volatile CodecTrackPlayer playingPlayer;
+    private volatile int crossfadeMs;
+    private volatile long underruns;
+    private volatile int currentFillPercent;
+    private volatile int nextFillPercent;
+
+    public AudioOutput() {
+        sampleRate = AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+        int minBytes = AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_STEREO, AudioFormat.ENCODING_PCM_FLOAT);
+        track = new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                        .setUsage(AudioAttributes.USAGE_MEDIA).build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setEncoding(AudioFormat.ENCODING_PCM_FLOAT)
+                        .setSampleRate(sampleRate)
+                        .setChannelMask(AudioFormat.CHANNEL_OUT_STEREO).build())
+                .setBufferSizeInBytes(2 * minBytes)
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .build();
+        bufferFrames = track.getBufferSizeInFrames();
+        // Commands wait at most one chunk, and a chunk is a quarter of what the track holds
+        chunkFrames = Math.max(64, bufferFrames / 4);
+        mixer = new PcmMixer(CHANNELS, this);
+        thread = new Thread(this::run, "AudioOutput");
+        thread.start();
+        Log.d(TAG, "Output " + sampleRate + " Hz, " + bufferFrames + " frames buffered");
+    }
+
+    public int getSampleRate() { return sampleRate; }
+    /** Frames written but not yet heard. */
+    public int getLatencyFrames() { return bufferFrames; }
+    public int getCrossfadeMs() { return crossfadeMs; }
+
+    public void setCrossfadeMs(int ms) {
+        crossfadeMs = ms;
+        command(() -> mixer.setCrossfadeFrames((long) ms * sampleRate / 1000));
+    }
+
+    public boolean isPlaying(CodecTrackPlayer player) {
+        return playingPlayer == player;
+    }
+
+    /** Plays {@code player} (resuming it if it is already current) with its chained successor queued. */
+    void play(CodecTrackPlayer player) {
+        playingPlayer = player;
+        command(() -> {
+            mixer.setCurrent(player);
+            mixer.setNext(player.getNext());
+            if (!playing) {
+                track.play();
+                playing = true;
+            }
+        });
+    }
+
+    void pause(CodecTrackPlayer player) {
+        if (playingPlayer == player) playingPlayer = null;
+        command(() -> {
+            if (mixer.current() != player || !playing) return;
+            track.pause();
+            playing = false;
+        });
+    }
+
+    void setNext(CodecTrackPlayer player, CodecTrackPlayer next) {
+        command(() -> {
+            if (mixer.current() == player) mixer.setNext(next);
+        });
+    }
+
+    /** Stops using {@code player}; if it was playing, what the track still holds of it is dropped. */
+    void detach(CodecTrackPlayer player) {
+        if (playingPlayer == player) playingPlayer = null;
+        command(() -> {
+            if (mixer.next() == player) mixer.setNext(null);
+            if (mixer.current() != player) return;
+            mixer.setCurrent(null);
+            track.pause();
+            track.flush();
+            playing = false;
+        });
+    }
+
+    public void release() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    public String getStats() {
+        return String.format(Locale.US, "%d Hz, %d frames buffered, crossfade %d ms, underruns %d (track %d), fill %d%%/%d%%",
+                sampleRate, bufferFrames, crossfadeMs, underruns, track.getUnderrunCount(),
+                currentFillPercent, nextFillPercent);
+    }
+
+    // Audio thread
+
+    @Override
+    public void onTransition(PcmMixer.Source finished, PcmMixer.Source next) {
+        playingPlayer = (CodecTrackPlayer) next;
+        ((CodecTrackPlayer) finished).onPlayedOut();
+        if (next != null) ((CodecTrackPlayer) next).onStartedAsNext();
+    }
+
+    private void command(Runnable command) {
+        commands.add(command);
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        float[] buffer = new float[chunkFrames * CHANNELS];
+        while (running) {
+            Runnable command;
+            while ((command = commands.poll()) != null) command.run();
+            if (!playing) {
+                LockSupport.park(this);
+                continue;
+            }
+            if (mixer.current() == null) {
+                // Played out: stop() lets the track finish what it holds
+                track.stop();
+                playing = false;
+                continue;
+            }
+            mixer.render(buffer, chunkFrames);
+            track.write(buffer, 0, buffer.length, AudioTrack.WRITE_BLOCKING);
+            report();
+        }
+        track.release();
+    }
+
+    private void report() {
+        long total = mixer.getUnderruns();
+        if (total != reportedUnderruns) {
+            UNDERRUNS.add(total - reportedUnderruns);
+            reportedUnderruns = total;
+            underruns = total;
+        }
+        if (++renders % FILL_SAMPLE_EVERY != 0) return;
+        CodecTrackPlayer current = (CodecTrackPlayer) mixer.current();
+        CodecTrackPlayer next = (CodecTrackPlayer) mixer.next();
+        currentFillPercent = current == null ? 0 : current.getFillPercent();
+        nextFillPercent = next == null ? 0 : next.getFillPercent();
+        RING_FILL_PCT.record(currentFillPercent);
+    }
+}
@@ -0,0 +1,447 @@
+package com.notdheeraj06.musicplayer;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaDataSource;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.notdheeraj06.musicplayer.core.PcmMixer;
+import com.notdheeraj06.musicplayer.core.PcmRingBuffer;
+import com.notdheeraj06.musicplayer.core.Resampler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.Consumer;
+
+/**
+ * {@link TrackPlayer} of the codec engine: MediaExtractor and MediaCodec decode on this player's
+ * own thread, convert to float stereo at the output rate and fill a {@link PcmRingBuffer} that the
+ * {@link AudioOutput} thread drains. Decoding runs ahead of playback by up to the ring's capacity,
+ * and prepare returns once a little is buffered, so start() and chained transitions have audio
+ * ready. Chaining hands the successor to the output's mixer, which crossfades if configured.
+ */
+public class CodecTrackPlayer implements TrackPlayer, PcmMixer.Source {
+
+    private static final String TAG = "CodecTrackPlayer";
+
+    private static final int RING_MS = 1000;
+    // Decoded before onPrepared, so start() never waits on the decoder
+    private static final int PREROLL_MS = 200;
+    private static final long DEQUEUE_TIMEOUT_US = 5000;
+    private static final long RING_FULL_RETRY_MS = 10;
+
+    private final AudioOutput output;
+    private final Handler callbackHandler = new Handler(Looper.myLooper());
+    private final HandlerThread decoderThread = new HandlerThread("Decoder", Process.THREAD_PRIORITY_AUDIO);
+    private final Handler decoder;
+    private final Runnable decodeStep = this::decodeStep;
+    private final int outRate;
+    private final PcmRingBuffer ring;
+
+    private Callback callback;
+    private MediaDataSource dataSource;
+    private Context context;
+    private Uri uri;
+    // Bumped by reset(); work and callbacks of an earlier stream check it and drop out
+    private volatile int generation;
+    private volatile CodecTrackPlayer next;
+
+    // Decoder thread
+    private MediaExtractor extractor;
+    private MediaCodec codec;
+    private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    private Resampler resampler;
+    private int inChannels;
+    private int pcmEncoding;
+    private boolean inputDone;
+    private boolean outputDone;
+    private boolean prepared;
+    // After a seek, decoding restarts at a sync frame; output before the target is dropped
+    private long skipUntilUs = -1;
+    private float[] converted = new float[0];
+    private float[] pending = new float[0];
+    private int pendingOffset;
+    private int pendingFrames;
+
+    // Shared with the audio thread
+    private volatile boolean endQueued;
+    private volatile long totalFrames = -1;
+    // Output frame where the ring's current stream starts (0, or the seek target)
+    private volatile long baseFrame;
+    private volatile int durationMs;
+    private volatile float volume = 1f;
+
+    public CodecTrackPlayer(AudioOutput output) {
+        this.output = output;
+        outRate = output.getSampleRate();
+        ring = new PcmRingBuffer(AudioOutput.CHANNELS, outRate * RING_MS / 1000);
+        decoderThread.start();
+        decoder = new Handler(decoderThread.getLooper());
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    @Override
+    public void setDataSource(MediaDataSource source) {
+        dataSource = source;
+    }
+
+    @Override
+    public void setDataSource(Context context, Uri uri) {
+        this.context = context;
+        this.uri = uri;
+    }
+
+    @Override
+    public void prepareAsync() {
+        int gen = generation;
+        MediaDataSource source = dataSource;
+        Context context = this.context;
+        Uri uri = this.uri;
+        decoder.post(() -> {
+            if (gen != generation) return;
+            try {
+                openDecoder(source, context, uri);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Can't decode " + uri, e);
+                post(gen, cb -> cb.onError(this, MediaPlayer.MEDIA_ERROR_UNKNOWN, MediaPlayer.MEDIA_ERROR_IO));
+                return;
+            }
+            decoder.post(decodeStep);
+        });
+    }
+
+    @Override
+    public void start() {
+        output.play(this);
+    }
+
+    @Override
+    public void pause() {
+        output.pause(this);
+    }
+
+    @Override
+    public void seekTo(int ms) {
+        int gen = generation;
+        decoder.post(() -> {
+            if (gen != generation || codec == null) return;
+            try {
+                seekDecoder(ms * 1000L);
+            } catch (IllegalStateException e) {
+                fail(gen, e);
+                return;
+            }
+            post(gen, cb -> cb.onSeekComplete(this));
+        });
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return output.isPlaying(this);
+    }
+
+    /** What has been heard: frames the output took from the ring, less what the track still holds. */
+    @Override
+    public int getCurrentPosition() {
+        long base = baseFrame;
+        long frames = Math.max(base, base + ring.readSinceDiscard() - output.getLatencyFrames());
+        int ms = (int) (frames * 1000 / outRate);
+        return durationMs > 0 ? Math.min(ms, durationMs) : ms;
+    }
+
+    @Override
+    public int getDuration() {
+        return durationMs;
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        this.volume = volume;
+    }
+
+    @Override
+    public void setNext(TrackPlayer next) {
+        this.next = (CodecTrackPlayer) next;
+        output.setNext(this, this.next);
+    }
+
+    CodecTrackPlayer getNext() {
+        return next;
+    }
+
+    int getFillPercent() {
+        return ring.fillPercent();
+    }
+
+    @Override
+    public void reset() {
+        generation++;
+        next = null;
+        output.detach(this);
+        MediaDataSource source = dataSource;
+        dataSource = null;
+        context = null;
+        uri = null;
+        decoder.post(() -> releaseDecoder(source));
+    }
+
+    @Override
+    public void release() {
+        reset();
+        decoderThread.quitSafely();
+    }
+
+    // region PcmMixer.Source (audio thread)
+
+    @Override
+    public int read(float[] buffer, int offset, int frames) {
+        int read = ring.read(buffer, offset, frames);
+        float gain = volume;
+        if (gain != 1f) {
+            int end = (offset + read) * AudioOutput.CHANNELS;
+            for (int i = offset * AudioOutput.CHANNELS; i < end; i++) buffer[i] *= gain;
+        }
+        return read;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return ring.isFinished();
+    }
+
+    @Override
+    public long remainingFrames() {
+        if (endQueued) return ring.available();
+        long total = totalFrames;
+        if (total < 0) return -1;
+        return Math.max(0, total - baseFrame - ring.readSinceDiscard());
+    }
+
+    void onPlayedOut() {
+        post(generation, cb -> cb.onCompletion(this));
+    }
+
+    void onStartedAsNext() {
+        post(generation, cb -> cb.onStartedAsNext(this));
+    }
+
+    // endregion
+
+    // region Decoder thread
+
+    private void openDecoder(MediaDataSource source, Context context, Uri uri) throws IOException {
+        extractor = new MediaExtractor();
+        if (source != null) {
+            extractor.setDataSource(source);
+        } else {
+            extractor.setDataSource(context, uri, null);
+        }
+        MediaFormat format = null;
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat candidate = extractor.getTrackFormat(i);
+            String mime = candidate.getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                extractor.selectTrack(i);
+                format = candidate;
+                break;
+            }
+        }
+        if (format == null) throw new IOException("No audio track");
+        long durationUs = format.containsKey(MediaFormat.KEY_DURATION) ? format.getLong(MediaFormat.KEY_DURATION) : -1;
+        durationMs = durationUs > 0 ? (int) (durationUs / 1000) : 0;
+        totalFrames = durationUs > 0 ? durationUs * outRate / 1_000_000 : -1;
+        codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+        codec.configure(format, null, null, 0);
+        codec.start();
+        applyFormat(format);
+    }
+
+    private void applyFormat(MediaFormat format) {
+        inChannels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        pcmEncoding = format.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                ? format.getInteger(MediaFormat.KEY_PCM_ENCODING) : AudioFormat.ENCODING_PCM_16BIT;
+        int rate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        if (resampler == null || resampler.inRate() != rate) resampler = new Resampler(rate, outRate, AudioOutput.CHANNELS);
+    }
+
+    /** One round of feeding and draining the codec; reposts itself until the stream is in the ring. */
+    private void decodeStep() {
+        if (codec == null) return;
+        int gen = generation;
+        try {
+            if (pendingFrames > 0 && !flushPending()) {
+                // Ring full: playback is far enough behind
+                decoder.postDelayed(decodeStep, RING_FULL_RETRY_MS);
+                return;
+            }
+            if (outputDone) {
+                ring.markEnd();
+                endQueued = true;
+                checkPrepared(gen);
+                return;
+            }
+            if (!inputDone) feedInput();
+            int index = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+            if (index >= 0) {
+                ByteBuffer buffer = codec.getOutputBuffer(index);
+                if (buffer != null && info.size > 0) convert(buffer);
+                codec.releaseOutputBuffer(index, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    outputDone = true;
+                    drainResampler();
+                }
+                flushPending();
+            } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                applyFormat(codec.getOutputFormat());
+            }
+        } catch (IllegalStateException e) {
+            fail(gen, e);
+            return;
+        }
+        checkPrepared(gen);
+        decoder.post(decodeStep);
+    }
+
+    private void feedInput() {
+        int index = codec.dequeueInputBuffer(0);
+        if (index < 0) return;
+        ByteBuffer buffer = codec.getInputBuffer(index);
+        int size = buffer == null ? -1 : extractor.readSampleData(buffer, 0);
+        if (size < 0) {
+            codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            inputDone = true;
+        } else {
+            codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+            extractor.advance();
+        }
+    }
+
+    /** Decoded PCM (16-bit or float, any channel count) to float stereo, resampled into pending. */
+    private void convert(ByteBuffer buffer) {
+        buffer.position(info.offset);
+        buffer.limit(info.offset + info.size);
+        ByteBuffer data = buffer.slice().order(ByteOrder.nativeOrder());
+        boolean isFloat = pcmEncoding == AudioFormat.ENCODING_PCM_FLOAT;
+        int bytesPerSample = isFloat ? 4 : 2;
+        int frames = info.size / (bytesPerSample * inChannels);
+        int skip = 0;
+        if (skipUntilUs >= 0) {
+            long earlyUs = skipUntilUs - info.presentationTimeUs;
+            skip = earlyUs <= 0 ? 0 : (int) Math.min(frames, earlyUs * resampler.inRate() / 1_000_000);
+            if (skip < frames) skipUntilUs = -1;
+        }
+        int kept = frames - skip;
+        if (kept <= 0) return;
+        if (converted.length < kept * AudioOutput.CHANNELS) converted = new float[kept * AudioOutput.CHANNELS];
+        int stride = inChannels * bytesPerSample;
+        int right = inChannels > 1 ? bytesPerSample : 0;
+        for (int f = 0; f < kept; f++) {
+            // Mono is duplicated; beyond stereo, the front pair is kept
+            int at = (skip + f) * stride;
+            converted[2 * f] = isFloat ? data.getFloat(at) : data.getShort(at) / 32768f;
+            converted[2 * f + 1] = isFloat ? data.getFloat(at + right) : data.getShort(at + right) / 32768f;
+        }
+        ensurePending(resampler.maxOutputFrames(kept));
+        pendingFrames = resampler.process(converted, 0, kept, pending, 0);
+        pendingOffset = 0;
+    }
+
+    private void drainResampler() {
+        ensurePending(pendingOffset + pendingFrames + resampler.maxOutputFrames(2));
+        pendingFrames += resampler.drain(pending, pendingOffset + pendingFrames);
+    }
+
+    private void ensurePending(int frames) {
+        if (pending.length >= frames * AudioOutput.CHANNELS) return;
+        float[] grown = new float[frames * AudioOutput.CHANNELS];
+        System.arraycopy(pending, 0, grown, 0, pending.length);
+        pending = grown;
+    }
+
+    /** Moves pending frames into the ring; true if it all fit. */
+    private boolean flushPending() {
+        int n = ring.write(pending, pendingOffset, pendingFrames);
+        pendingOffset += n;
+        pendingFrames -= n;
+        return pendingFrames == 0;
+    }
+
+    private void checkPrepared(int gen) {
+        if (prepared || (!endQueued && ring.available() < outRate * PREROLL_MS / 1000)) return;
+        prepared = true;
+        post(gen, cb -> cb.onPrepared(this));
+    }
+
+    private void seekDecoder(long us) {
+        decoder.removeCallbacks(decodeStep);
+        extractor.seekTo(us, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        codec.flush();
+        resampler.reset();
+        inputDone = false;
+        outputDone = false;
+        pendingFrames = 0;
+        skipUntilUs = us;
+        endQueued = false;
+        baseFrame = us * outRate / 1_000_000;
+        ring.discard();
+        decoder.post(decodeStep);
+    }
+
+    private void releaseDecoder(MediaDataSource source) {
+        decoder.removeCallbacks(decodeStep);
+        if (codec != null) {
+            try {
+                codec.stop();
+            } catch (IllegalStateException ignored) { }
+            codec.release();
+            codec = null;
+        }
+        if (extractor != null) {
+            extractor.release();
+            extractor = null;
+        }
+        if (source != null) {
+            try {
+                source.close();
+            } catch (IOException ignored) { }
+        }
+        resampler = null;
+        inputDone = false;
+        outputDone = false;
+        prepared = false;
+        pendingFrames = 0;
+        skipUntilUs = -1;
+        endQueued = false;
+        totalFrames = -1;
+        baseFrame = 0;
+        durationMs = 0;
+        ring.discard();
+    }
+
+    private void fail(int gen, Exception e) {
+        Log.w(TAG, "Decoder failed", e);
+        post(gen, cb -> cb.onError(this, MediaPlayer.MEDIA_ERROR_UNKNOWN, 0));
+    }
+
+    // endregion
+
+    private void post(int gen, Consumer<Callback> action) {
+        callbackHandler.post(() -> {
+            if (gen == generation && callback != null) action.accept(callback);
+        });
+    }
+}
@@ -0,0 +1,126 @@
+package com.notdheeraj06.musicplayer;
+
+import android.content.Context;
+import android.media.MediaDataSource;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import com.notdheeraj06.musicplayer.core.ReadAheadReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Feeds MediaPlayer from a document's file descriptor instead of letting it open the Uri itself.
+ * A regular local file is memory-mapped, so reads are plain memory copies; anything else (FUSE
+ * or proxy descriptors of slow providers, SD cards) is read through a {@link ReadAheadReader}
+ * that keeps a background thread fetching ahead of the decoder.
+ */
+public class DocumentDataSource extends MediaDataSource {
+
+    private static final String TAG = "DocumentDataSource";
+
+    private final String name;
+    private final FileChannel channel;
+    private final long size;
+    private final MappedByteBuffer mapped;
+    private final ReadAheadReader reader;
+
+    private DocumentDataSource(String name, ParcelFileDescriptor pfd) throws IOException {
+        this.name = name;
+        // Closing the channel closes the stream, which closes the descriptor
+        channel = new ParcelFileDescriptor.AutoCloseInputStream(pfd).getChannel();
+        size = channel.size();
+        // Pipes and sockets report 0 and can't serve positional reads; the caller falls back to the Uri
+        if (size <= 0) throw new IOException("Not a seekable file");
+        mapped = isRegularFile(pfd) ? tryMap(channel, size) : null;
+        reader = mapped == null ? new ReadAheadReader(new ChannelSource(channel, size), ReadAheadReader.DEFAULT_CAPACITY) : null;
+    }
+
+    public static DocumentDataSource open(Context context, Song song) throws IOException {
+        Uri uri = song.getUri();
+        ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(uri, "r");
+        if (pfd == null) throw new IOException("No descriptor for " + uri);
+        try {
+            return new DocumentDataSource(song.getTitle(), pfd);
+        } catch (IOException | RuntimeException e) {
+            pfd.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        if (mapped == null) return reader.readAt(position, buffer, offset, size);
+        if (position >= this.size) return -1;
+        int n = (int) Math.min(size, this.size - position);
+        ByteBuffer view = mapped.duplicate();
+        view.position((int) position);
+        view.get(buffer, offset, n);
+        return n;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            Log.d(TAG, "Read-ahead for " + name + ": " + reader.getStats());
+            reader.close();
+        }
+        channel.close();
+    }
+
+    private static boolean isRegularFile(ParcelFileDescriptor pfd) {
+        try {
+            return OsConstants.S_ISREG(Os.fstat(pfd.getFileDescriptor()).st_mode);
+        } catch (ErrnoException e) {
+            return false;
+        }
+    }
+
+    /** Null if the file can't be mapped (too large for one buffer, or the descriptor refuses mmap). */
+    private static MappedByteBuffer tryMap(FileChannel channel, long size) {
+        if (size <= 0 || size > Integer.MAX_VALUE) return null;
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** pread on the descriptor; FileChannel positional reads don't move a shared file position. */
+    private static final class ChannelSource implements ReadAheadReader.Source {
+        private final FileChannel channel;
+        private final long size;
+
+        ChannelSource(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+            return channel.read(ByteBuffer.wrap(buffer, offset, length), position);
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public void close() {
+            // The descriptor is owned by DocumentDataSource
+        }
+    }
+}
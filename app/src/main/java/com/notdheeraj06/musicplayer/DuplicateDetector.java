@@ -0,0 +1,112 @@
+package com.notdheeraj06.musicplayer;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.notdheeraj06.musicplayer.core.DuplicateFinder;
+import com.notdheeraj06.musicplayer.core.Metrics;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs {@link DuplicateFinder} over a library snapshot in the background. Hashes cached in the
+ * {@link LibraryIndex} are reused for files whose size and modification time haven't changed, and
+ * new ones are saved back, so a repeated search reads only what was added or changed since. A new
+ * search cancels one still running.
+ */
+public class DuplicateDetector {
+
+    /** Called on the main thread; the result's items index {@code songs}. */
+    public interface Callback {
+        void onResult(List<Song> songs, DuplicateFinder.Result result);
+    }
+
+    private static final String TAG = "DuplicateDetector";
+    // Reads through SAF are mostly waiting on the provider; a few in flight keep the disk busy
+    private static final int HASH_THREADS = 4;
+
+    private static final Metrics.Histogram SCAN_MS = Metrics.histogram("duplicates.scan_ms");
+    private static final Metrics.Counter BYTES_READ = Metrics.counter("duplicates.bytes_read");
+
+    private final ContentResolver resolver;
+    private final LibraryIndex index;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ExecutorService hashPool = Executors.newFixedThreadPool(HASH_THREADS);
+    private final DuplicateFinder finder = new DuplicateFinder(hashPool);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private Future<?> running;
+
+    public DuplicateDetector(Context context, LibraryIndex index) {
+        resolver = context.getApplicationContext().getContentResolver();
+        this.index = index;
+    }
+
+    /** {@code songs} must not change while the search runs; pass a snapshot. */
+    public void find(List<Song> songs, Callback callback) {
+        if (running != null) running.cancel(true);
+        running = executor.submit(() -> {
+            long start = SystemClock.elapsedRealtime();
+            int n = songs.size();
+            long[] sampleHashes = new long[n];
+            long[] fullHashes = new long[n];
+            Map<String, long[]> cached = index.readContentHashes();
+            for (int i = 0; i < n; i++) {
+                Song song = songs.get(i);
+                long[] known = song.getDocumentId() != null ? cached.get(song.getDocumentId()) : null;
+                if (known == null || known[0] != song.getSize() || known[1] != song.getLastModified()) continue;
+                sampleHashes[i] = known[2];
+                fullHashes[i] = known[3];
+            }
+
+            DuplicateFinder.Result result;
+            try {
+                result = finder.find(songs, sampleHashes, fullHashes, item -> {
+                    ParcelFileDescriptor pfd = resolver.openFileDescriptor(songs.get(item).getUri(), "r");
+                    if (pfd == null) throw new FileNotFoundException(songs.get(item).getUri().toString());
+                    // Closing the channel closes the descriptor
+                    return new ParcelFileDescriptor.AutoCloseInputStream(pfd).getChannel();
+                });
+            } catch (InterruptedException e) {
+                Log.d(TAG, "Duplicate search cancelled");
+                return;
+            }
+
+            if (result.hashed.length > 0) {
+                List<Song> hashedSongs = new ArrayList<>(result.hashed.length);
+                long[] samples = new long[result.hashed.length];
+                long[] fulls = new long[result.hashed.length];
+                for (int k = 0; k < result.hashed.length; k++) {
+                    int item = result.hashed[k];
+                    hashedSongs.add(songs.get(item));
+                    samples[k] = sampleHashes[item];
+                    fulls[k] = fullHashes[item];
+                }
+                index.saveContentHashes(hashedSongs, samples, fulls);
+            }
+            long ms = SystemClock.elapsedRealtime() - start;
+            SCAN_MS.record(ms);
+            BYTES_READ.add(result.bytesRead);
+            Log.d(TAG, String.format(Locale.US, "%d duplicates in %d sets among %d songs in %d ms; read %.1f of %.1f MB (%.2f%%), %d hashed, %d unreadable",
+                    result.redundantCount(), result.groups.size(), n, ms, result.bytesRead / 1e6, result.totalBytes / 1e6,
+                    result.totalBytes > 0 ? 100.0 * result.bytesRead / result.totalBytes : 0.0, result.hashed.length, result.failed));
+            mainHandler.post(() -> callback.onResult(songs, result));
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        hashPool.shutdownNow();
+    }
+}
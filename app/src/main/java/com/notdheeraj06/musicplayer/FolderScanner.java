@@ -0,0 +1,279 @@
+package com.notdheeraj06.musicplayer;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+
+import com.notdheeraj06.musicplayer.core.AudioFiles;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Walks a SAF tree on a background thread with one children query per directory
+ * and streams the audio files it finds back to the main thread in batches.
+ * The last complete walk is kept as a directory model, so {@link #refresh} can re-list only the
+ * directories that changed since.
+ */
+public class FolderScanner {
+
+    public interface Callback {
+        void onBatch(List<Song> batch);
+        void onProgress(int foldersScanned, int songsFound);
+        /**
+         * {@code unlistedDirIds} are the directories whose listing failed; their contents (and
+         * subdirectories) are unknown, not gone.
+         */
+        void onComplete(int songsFound, Set<String> unlistedDirIds);
+    }
+
+    public interface RefreshCallback {
+        /** {@code delta} is null when there is no model for the tree yet and a full scan is needed. */
+        void onRefreshed(LibraryIndex.Delta delta);
+    }
+
+    /** One directory as of the last listing. */
+    private static final class Directory {
+        final long lastModified;
+        // False if the query failed, so a refresh lists it again whatever its mtime
+        boolean listed = true;
+        final List<String> subdirs = new ArrayList<>();
+        final Map<String, Song> songs = new HashMap<>();
+
+        Directory(long lastModified) {
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static final String[] PROJECTION = {
+            Document.COLUMN_DOCUMENT_ID,
+            Document.COLUMN_DISPLAY_NAME,
+            Document.COLUMN_MIME_TYPE,
+            Document.COLUMN_SIZE,
+            Document.COLUMN_LAST_MODIFIED
+    };
+    private static final int COL_ID = 0, COL_NAME = 1, COL_MIME = 2, COL_SIZE = 3, COL_MODIFIED = 4;
+    private static final int BATCH_SIZE = 200;
+    // The progress line is only text; a post per folder just queues work on the main thread
+    private static final long PROGRESS_INTERVAL_MS = 200;
+    private static final String TAG = "FolderScanner";
+
+    private final ContentResolver resolver;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Bumped on every scan/cancel; a running scan stops as soon as it sees a newer generation
+    private final AtomicInteger generation = new AtomicInteger();
+
+    // Directory model of modelTree, confined to the executor thread
+    private Uri modelTree;
+    private Map<String, Directory> directories = new HashMap<>();
+
+    public FolderScanner(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    public void scan(Uri treeUri, Callback callback) {
+        final int gen = generation.incrementAndGet();
+        executor.execute(() -> {
+            Trace.beginSection("FolderScanner.walk");
+            try {
+                walk(treeUri, gen, callback);
+            } finally {
+                Trace.endSection();
+            }
+        });
+    }
+
+    /**
+     * Re-lists only the directories that may have changed since the last walk: every directory
+     * whose modification time moved, new directories, directories in {@code hintDirIds}, and
+     * their ancestors (a directory's mtime is only visible in its parent's listing). Leaf
+     * directories that didn't change, which hold most of the files, are not queried.
+     */
+    public void refresh(Uri treeUri, Set<String> hintDirIds, RefreshCallback callback) {
+        final int gen = generation.get();
+        final Set<String> hints = new HashSet<>(hintDirIds);
+        executor.execute(() -> {
+            if (isCancelled(gen)) return;
+            Trace.beginSection("FolderScanner.refresh");
+            try {
+                LibraryIndex.Delta delta = treeUri.equals(modelTree) ? refreshModel(treeUri, hints) : null;
+                mainHandler.post(() -> { if (!isCancelled(gen)) callback.onRefreshed(delta); });
+            } finally {
+                Trace.endSection();
+            }
+        });
+    }
+
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private boolean isCancelled(int gen) {
+        return generation.get() != gen;
+    }
+
+    private void walk(Uri treeUri, int gen, Callback callback) {
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        String rootId = DocumentsContract.getTreeDocumentId(treeUri);
+        pending.add(rootId);
+        Map<String, Directory> model = new HashMap<>();
+        model.put(rootId, new Directory(-1));
+        List<Song> batch = new ArrayList<>(BATCH_SIZE);
+        Set<String> unlisted = new HashSet<>();
+        int folders = 0;
+        int found = 0;
+        long lastProgress = 0;
+
+        while (!pending.isEmpty()) {
+            if (isCancelled(gen)) return;
+            String dirId = pending.poll();
+            Directory dir = model.get(dirId);
+            if (list(treeUri, dirId, dir, model)) {
+                for (String subdir : dir.subdirs) pending.add(subdir);
+            } else {
+                dir.listed = false;
+                unlisted.add(dirId);
+            }
+            for (Song song : dir.songs.values()) {
+                batch.add(song);
+                found++;
+                if (batch.size() >= BATCH_SIZE) {
+                    deliver(gen, callback, batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            folders++;
+            long now = SystemClock.uptimeMillis();
+            if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+                lastProgress = now;
+                final int f = folders, n = found;
+                mainHandler.post(() -> { if (!isCancelled(gen)) callback.onProgress(f, n); });
+            }
+        }
+
+        if (!batch.isEmpty()) deliver(gen, callback, batch);
+        modelTree = treeUri;
+        directories = model;
+        final int total = found;
+        mainHandler.post(() -> { if (!isCancelled(gen)) callback.onComplete(total, unlisted); });
+    }
+
+    /**
+     * Lists one directory into {@code dir}, registering its subdirectories in {@code model} with
+     * the mtimes the listing reports. Returns false if the query failed.
+     */
+    private boolean list(Uri treeUri, String dirId, Directory dir, Map<String, Directory> model) {
+        Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, dirId);
+        try (Cursor c = resolver.query(childrenUri, PROJECTION, null, null, null)) {
+            while (c != null && c.moveToNext()) {
+                String docId = c.getString(COL_ID);
+                long modified = c.isNull(COL_MODIFIED) ? 0 : c.getLong(COL_MODIFIED);
+                if (Document.MIME_TYPE_DIR.equals(c.getString(COL_MIME))) {
+                    dir.subdirs.add(docId);
+                    model.put(docId, new Directory(modified));
+                    continue;
+                }
+                String name = c.getString(COL_NAME);
+                if (name == null || !AudioFiles.isAudioFile(name)) continue;
+                long size = c.isNull(COL_SIZE) ? -1 : c.getLong(COL_SIZE);
+                dir.songs.put(docId, Song.inTree(treeUri, name, docId, size, modified));
+            }
+            return true;
+        } catch (RuntimeException e) {
+            // Provider went away or revoked access for this directory; keep scanning the rest
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private LibraryIndex.Delta refreshModel(Uri treeUri, Set<String> hints) {
+        LibraryIndex.Delta delta = new LibraryIndex.Delta();
+        Map<String, Directory> model = new HashMap<>(directories);
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        pending.add(DocumentsContract.getTreeDocumentId(treeUri));
+        int listed = 0;
+
+        while (!pending.isEmpty()) {
+            String dirId = pending.poll();
+            Directory old = directories.get(dirId);
+            Directory dir = new Directory(model.get(dirId).lastModified);
+            model.put(dirId, dir);
+            if (!list(treeUri, dirId, dir, model)) {
+                // A directory new since the last walk stays in the model, to be listed next time
+                if (old != null) model.put(dirId, old);
+                else dir.listed = false;
+                continue;
+            }
+            listed++;
+
+            for (Song song : dir.songs.values()) {
+                Song before = old != null ? old.songs.get(song.getDocumentId()) : null;
+                if (before == null) {
+                    delta.added.add(song);
+                } else if (before.getSize() != song.getSize() || before.getLastModified() != song.getLastModified()) {
+                    delta.changed.add(song);
+                } else {
+                    // Unchanged: keep the instance the UI already holds (and its metadata)
+                    dir.songs.put(song.getDocumentId(), before);
+                }
+            }
+            if (old != null) {
+                for (String docId : old.songs.keySet()) {
+                    if (!dir.songs.containsKey(docId)) delta.removed.add(docId);
+                }
+                for (String subdir : old.subdirs) {
+                    if (!dir.subdirs.contains(subdir)) removeSubtree(subdir, model, delta);
+                }
+            }
+
+            for (String subdir : dir.subdirs) {
+                Directory before = directories.get(subdir);
+                Directory now = model.get(subdir);
+                if (before == null || !before.listed || before.lastModified != now.lastModified
+                        || !before.subdirs.isEmpty() || hints.contains(subdir)) {
+                    pending.add(subdir);
+                } else {
+                    // Unchanged leaf: carry its contents over without querying it
+                    now.songs.putAll(before.songs);
+                }
+            }
+        }
+        directories = model;
+        Log.d(TAG, "Refresh listed " + listed + " of " + model.size() + " directories: +" + delta.added.size()
+                + " ~" + delta.changed.size() + " -" + delta.removed.size());
+        return delta;
+    }
+
+    private void removeSubtree(String dirId, Map<String, Directory> model, LibraryIndex.Delta delta) {
+        Directory dir = directories.get(dirId);
+        model.remove(dirId);
+        if (dir == null) return;
+        delta.removed.addAll(dir.songs.keySet());
+        for (String subdir : dir.subdirs) removeSubtree(subdir, model, delta);
+    }
+
+    private void deliver(int gen, Callback callback, List<Song> batch) {
+        mainHandler.post(() -> { if (!isCancelled(gen)) callback.onBatch(batch); });
+    }
+}
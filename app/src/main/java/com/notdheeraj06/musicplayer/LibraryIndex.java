@@ -0,0 +1,384 @@
+package com.notdheeraj06.musicplayer;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.notdheeraj06.musicplayer.core.DuplicateFinder;
+import com.notdheeraj06.musicplayer.core.SongMetadata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * On-disk copy of the scanned library so the list can be shown at startup without
+ * touching SAF. A later scan is diffed against it on size/lastModified and only the
+ * changed rows are written back. One instance per process ({@link #get}): the activity and the
+ * playback service share its connection, so a schema upgrade runs exactly once.
+ */
+public class LibraryIndex extends SQLiteOpenHelper {
+
+    private static final String DB_NAME = "library.db";
+    private static final int DB_VERSION = 4;
+    private static final String KEY_TREE_URI = "tree_uri";
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    /**
+     * A file's measured loudness, valid while its size and modification time are unchanged.
+     * {@code lufs} is NaN for a silent file; {@code peak} is negative if the file couldn't be decoded.
+     */
+    public static class Loudness {
+        public final long size;
+        public final long modified;
+        public final float lufs;
+        public final float peak;
+
+        public Loudness(long size, long modified, float lufs, float peak) {
+            this.size = size;
+            this.modified = modified;
+            this.lufs = lufs;
+            this.peak = peak;
+        }
+
+        public boolean isFailed() { return peak < 0; }
+    }
+
+    public static class Delta {
+        public final List<Song> added = new ArrayList<>();
+        public final List<Song> changed = new ArrayList<>();
+        public final List<String> removed = new ArrayList<>();
+
+        public boolean isEmpty() { return added.isEmpty() && changed.isEmpty() && removed.isEmpty(); }
+    }
+
+    private static LibraryIndex instance;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static synchronized LibraryIndex get(Context context) {
+        if (instance == null) instance = new LibraryIndex(context.getApplicationContext());
+        return instance;
+    }
+
+    private LibraryIndex(Context context) {
+        this(context, DB_NAME);
+    }
+
+    /** An index in its own database file, so tests don't touch the app's. */
+    LibraryIndex(Context context, String name) {
+        super(context, name, null, DB_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        // Metadata columns stay NULL until MetadataExtractor has parsed the file; a changed file is
+        // re-inserted without them, which is what invalidates its cached metadata
+        db.execSQL("CREATE TABLE songs (doc_id TEXT PRIMARY KEY, title TEXT NOT NULL, uri TEXT NOT NULL, " +
+                "size INTEGER NOT NULL, modified INTEGER NOT NULL, " +
+                "artist TEXT, album TEXT, track INTEGER, duration INTEGER, bitrate INTEGER, has_art INTEGER, " +
+                "sample_hash INTEGER, full_hash INTEGER, loudness REAL, peak REAL)");
+        db.execSQL("CREATE TABLE meta (key TEXT PRIMARY KEY, value TEXT)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion >= 2) {
+            // Columns added since 2 are appended in place, keeping the scanned rows and their metadata
+            if (oldVersion < 3) {
+                db.execSQL("ALTER TABLE songs ADD COLUMN sample_hash INTEGER");
+                db.execSQL("ALTER TABLE songs ADD COLUMN full_hash INTEGER");
+            }
+            db.execSQL("ALTER TABLE songs ADD COLUMN loudness REAL");
+            db.execSQL("ALTER TABLE songs ADD COLUMN peak REAL");
+            return;
+        }
+        db.execSQL("DROP TABLE IF EXISTS songs");
+        db.execSQL("DROP TABLE IF EXISTS meta");
+        onCreate(db);
+    }
+
+    /** Loads the indexed songs for {@code treeUri}; empty if the index belongs to another folder. */
+    public void load(Uri treeUri, Callback<List<Song>> callback) {
+        executor.execute(() -> {
+            List<Song> result = load(treeUri);
+            mainHandler.post(() -> callback.onResult(result));
+        });
+    }
+
+    /** Diffs a finished scan against the index, persists the changes and reports them. */
+    public void applyScan(Uri treeUri, List<Song> scanned, Callback<Delta> callback) {
+        applyScan(treeUri, scanned, Collections.emptySet(), callback);
+    }
+
+    /**
+     * As {@link #applyScan(Uri, List, Callback)}, for a scan that couldn't list the directories in
+     * {@code unlistedDirIds}: what the index holds under them is kept as it is rather than removed.
+     */
+    public void applyScan(Uri treeUri, List<Song> scanned, Set<String> unlistedDirIds, Callback<Delta> callback) {
+        executor.execute(() -> {
+            Delta delta = applyScan(treeUri, scanned, unlistedDirIds);
+            mainHandler.post(() -> callback.onResult(delta));
+        });
+    }
+
+    /** Persists a delta found by an incremental refresh (the index must already belong to the tree). */
+    public void applyDelta(Delta delta) {
+        if (delta.isEmpty()) return;
+        executor.execute(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                SQLiteStatement upsert = compileUpsert(db);
+                for (Song song : delta.added) upsert(upsert, song);
+                for (Song song : delta.changed) upsert(upsert, song);
+                SQLiteStatement delete = db.compileStatement("DELETE FROM songs WHERE doc_id = ?");
+                for (String docId : delta.removed) {
+                    delete.bindString(1, docId);
+                    delete.executeUpdateDelete();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        });
+    }
+
+    /** Persists extracted metadata for songs whose file hasn't changed since they were scanned. */
+    public void saveMetadata(List<Song> songs) {
+        executor.execute(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                SQLiteStatement update = db.compileStatement("UPDATE songs SET artist = ?, album = ?, track = ?, " +
+                        "duration = ?, bitrate = ?, has_art = ? WHERE doc_id = ? AND size = ? AND modified = ?");
+                for (Song song : songs) {
+                    SongMetadata m = song.getMetadata();
+                    if (m == null) continue;
+                    bindMetadata(update, 1, m);
+                    update.bindString(7, song.getDocumentId());
+                    update.bindLong(8, song.getSize());
+                    update.bindLong(9, song.getLastModified());
+                    update.executeUpdateDelete();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        });
+    }
+
+    /**
+     * Persists {@link DuplicateFinder} hashes for songs whose file hasn't changed since they were
+     * scanned; the arrays are parallel to {@code songs}, 0 where unknown. Like metadata, the hashes
+     * are dropped when a rescan re-inserts a changed file.
+     */
+    public void saveContentHashes(List<Song> songs, long[] sampleHashes, long[] fullHashes) {
+        executor.execute(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                SQLiteStatement update = db.compileStatement("UPDATE songs SET sample_hash = ?, full_hash = ? " +
+                        "WHERE doc_id = ? AND size = ? AND modified = ?");
+                for (int i = 0; i < songs.size(); i++) {
+                    Song song = songs.get(i);
+                    if (song.getDocumentId() == null) continue;
+                    bindHash(update, 1, sampleHashes[i]);
+                    bindHash(update, 2, fullHashes[i]);
+                    update.bindString(3, song.getDocumentId());
+                    update.bindLong(4, song.getSize());
+                    update.bindLong(5, song.getLastModified());
+                    update.executeUpdateDelete();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        });
+    }
+
+    /**
+     * Cached content hashes by document id, as {size, modified, sample, full} with 0 for a hash
+     * not computed yet. Reads the database on the calling thread; call it off the main thread.
+     */
+    public Map<String, long[]> readContentHashes() {
+        Map<String, long[]> hashes = new HashMap<>();
+        SQLiteDatabase db = getReadableDatabase();
+        try (Cursor c = db.rawQuery("SELECT doc_id, size, modified, sample_hash, full_hash FROM songs " +
+                "WHERE sample_hash IS NOT NULL OR full_hash IS NOT NULL", null)) {
+            while (c.moveToNext()) {
+                hashes.put(c.getString(0), new long[]{c.getLong(1), c.getLong(2),
+                        c.isNull(3) ? 0 : c.getLong(3), c.isNull(4) ? 0 : c.getLong(4)});
+            }
+        }
+        return hashes;
+    }
+
+    /** Saves {@link LoudnessAnalyzer} results; {@code results} is parallel to {@code songs} and records what was measured. */
+    public void saveLoudness(List<Song> songs, List<Loudness> results) {
+        executor.execute(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                SQLiteStatement update = db.compileStatement("UPDATE songs SET loudness = ?, peak = ? " +
+                        "WHERE doc_id = ? AND size = ? AND modified = ?");
+                for (int i = 0; i < songs.size(); i++) {
+                    Song song = songs.get(i);
+                    Loudness loudness = results.get(i);
+                    // NaN can't be stored; NULL loudness with a peak reads back as NaN
+                    if (Float.isNaN(loudness.lufs)) update.bindNull(1);
+                    else update.bindDouble(1, loudness.lufs);
+                    update.bindDouble(2, loudness.peak);
+                    update.bindString(3, song.getDocumentId());
+                    update.bindLong(4, loudness.size);
+                    update.bindLong(5, loudness.modified);
+                    update.executeUpdateDelete();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        });
+    }
+
+    /** Analyzed songs by document id. Reads the database on the calling thread; call it off the main thread. */
+    public Map<String, Loudness> readLoudness() {
+        Map<String, Loudness> result = new HashMap<>();
+        SQLiteDatabase db = getReadableDatabase();
+        try (Cursor c = db.rawQuery("SELECT doc_id, size, modified, loudness, peak FROM songs WHERE peak IS NOT NULL", null)) {
+            while (c.moveToNext()) {
+                result.put(c.getString(0), new Loudness(c.getLong(1), c.getLong(2),
+                        c.isNull(3) ? Float.NaN : c.getFloat(3), c.getFloat(4)));
+            }
+        }
+        return result;
+    }
+
+    private List<Song> load(Uri treeUri) {
+        List<Song> result = new ArrayList<>();
+        SQLiteDatabase db = getReadableDatabase();
+        if (!treeUri.toString().equals(readMeta(db, KEY_TREE_URI))) return result;
+        // Uris are rebuilt from the tree on demand, so the stored uri column isn't read back
+        try (Cursor c = db.rawQuery("SELECT doc_id, title, size, modified, " +
+                "artist, album, track, duration, bitrate, has_art FROM songs ORDER BY rowid", null)) {
+            while (c.moveToNext()) {
+                Song song = Song.inTree(treeUri, c.getString(1), c.getString(0), c.getLong(2), c.getLong(3));
+                if (!c.isNull(9)) {
+                    song.setMetadata(new SongMetadata(c.getString(4), c.getString(5), c.getInt(6),
+                            c.getLong(7), c.getInt(8), c.getInt(9) != 0));
+                }
+                result.add(song);
+            }
+        }
+        return result;
+    }
+
+    private Delta applyScan(Uri treeUri, List<Song> scanned, Set<String> unlistedDirIds) {
+        Delta delta = new Delta();
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (!treeUri.toString().equals(readMeta(db, KEY_TREE_URI))) {
+                db.delete("songs", null, null);
+                ContentValues meta = new ContentValues();
+                meta.put("key", KEY_TREE_URI);
+                meta.put("value", treeUri.toString());
+                db.insertWithOnConflict("meta", null, meta, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+
+            // doc_id -> {size, modified} of what is on disk now
+            Map<String, long[]> indexed = new HashMap<>();
+            try (Cursor c = db.rawQuery("SELECT doc_id, size, modified FROM songs", null)) {
+                while (c.moveToNext()) indexed.put(c.getString(0), new long[]{c.getLong(1), c.getLong(2)});
+            }
+
+            SQLiteStatement upsert = compileUpsert(db);
+            for (Song song : scanned) {
+                long[] old = indexed.remove(song.getDocumentId());
+                if (old != null && old[0] == song.getSize() && old[1] == song.getLastModified()) continue;
+                if (old == null) delta.added.add(song);
+                else delta.changed.add(song);
+                upsert(upsert, song);
+            }
+
+            SQLiteStatement delete = db.compileStatement("DELETE FROM songs WHERE doc_id = ?");
+            for (String docId : indexed.keySet()) {
+                if (isUnder(docId, unlistedDirIds)) continue;
+                delete.bindString(1, docId);
+                delete.executeUpdateDelete();
+                delta.removed.add(docId);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return delta;
+    }
+
+    /** Whether a document lies anywhere below one of {@code dirIds}; tree document ids are paths. */
+    static boolean isUnder(String docId, Set<String> dirIds) {
+        if (dirIds.isEmpty()) return false;
+        for (int slash = docId.lastIndexOf('/'); slash > 0; slash = docId.lastIndexOf('/', slash - 1)) {
+            if (dirIds.contains(docId.substring(0, slash))) return true;
+        }
+        // A child of a volume root, such as "primary:Music" under "primary:"
+        int colon = docId.indexOf(':');
+        return colon >= 0 && dirIds.contains(docId.substring(0, colon + 1));
+    }
+
+    private static SQLiteStatement compileUpsert(SQLiteDatabase db) {
+        return db.compileStatement("INSERT OR REPLACE INTO songs (doc_id, title, uri, size, modified, " +
+                "artist, album, track, duration, bitrate, has_art) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+    }
+
+    private static void upsert(SQLiteStatement upsert, Song song) {
+        upsert.bindString(1, song.getDocumentId());
+        upsert.bindString(2, song.getTitle());
+        upsert.bindString(3, song.getUri().toString());
+        upsert.bindLong(4, song.getSize());
+        upsert.bindLong(5, song.getLastModified());
+        if (song.getMetadata() != null) {
+            bindMetadata(upsert, 6, song.getMetadata());
+        } else {
+            for (int i = 6; i <= 11; i++) upsert.bindNull(i);
+        }
+        upsert.executeInsert();
+    }
+
+    private static void bindMetadata(SQLiteStatement statement, int first, SongMetadata m) {
+        if (m.getArtist() != null) statement.bindString(first, m.getArtist());
+        else statement.bindNull(first);
+        if (m.getAlbum() != null) statement.bindString(first + 1, m.getAlbum());
+        else statement.bindNull(first + 1);
+        statement.bindLong(first + 2, m.getTrackNumber());
+        statement.bindLong(first + 3, m.getDurationMs());
+        statement.bindLong(first + 4, m.getBitrate());
+        statement.bindLong(first + 5, m.hasEmbeddedArt() ? 1 : 0);
+    }
+
+    private static void bindHash(SQLiteStatement statement, int index, long hash) {
+        if (hash != 0) statement.bindLong(index, hash);
+        else statement.bindNull(index);
+    }
+
+    private static String readMeta(SQLiteDatabase db, String key) {
+        try (Cursor c = db.rawQuery("SELECT value FROM meta WHERE key = ?", new String[]{key})) {
+            return c.moveToFirst() ? c.getString(0) : null;
+        }
+    }
+}
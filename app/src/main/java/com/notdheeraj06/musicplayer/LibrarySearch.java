@@ -0,0 +1,86 @@
+package com.notdheeraj06.musicplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.notdheeraj06.musicplayer.core.SearchIndex;
+import com.notdheeraj06.musicplayer.core.SongMetadata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link SearchIndex} builds and queries on a background thread. Every new query
+ * supersedes the previous one: a running query stops at its next cancellation check and a
+ * queued one is dropped without running.
+ */
+public class LibrarySearch {
+
+    public interface Callback {
+        void onResults(String query, List<Song> results);
+    }
+
+    private static final String TAG = "LibrarySearch";
+    private static final int MAX_RESULTS = 1000;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger generation = new AtomicInteger();
+
+    // Written and read on the executor thread only
+    private List<Song> library = Collections.emptyList();
+    private SearchIndex index = SearchIndex.build(Collections.emptyList());
+
+    /** Rebuilds the index from an immutable snapshot of the library. */
+    public void setLibrary(List<Song> snapshot) {
+        executor.execute(() -> {
+            long started = SystemClock.elapsedRealtime();
+            List<String> documents = new ArrayList<>(snapshot.size());
+            for (Song song : snapshot) documents.add(searchText(song));
+            index = SearchIndex.build(documents);
+            library = snapshot;
+            Log.d(TAG, "Indexed " + snapshot.size() + " songs in " + (SystemClock.elapsedRealtime() - started) + " ms");
+        });
+    }
+
+    public void search(String query, Callback callback) {
+        final int gen = generation.incrementAndGet();
+        executor.execute(() -> {
+            if (generation.get() != gen) return;
+            int[] ids = index.search(query, MAX_RESULTS, () -> generation.get() != gen);
+            if (ids == null) return;
+            List<Song> results = new ArrayList<>(ids.length);
+            for (int id : ids) results.add(library.get(id));
+            mainHandler.post(() -> {
+                if (generation.get() == gen) callback.onResults(query, Collections.unmodifiableList(results));
+            });
+        });
+    }
+
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private static String searchText(Song song) {
+        String title = song.getTitle();
+        int dot = title.lastIndexOf('.');
+        StringBuilder sb = new StringBuilder(dot > 0 ? title.substring(0, dot) : title);
+        SongMetadata metadata = song.getMetadata();
+        if (metadata != null) {
+            if (metadata.getArtist() != null) sb.append(' ').append(metadata.getArtist());
+            if (metadata.getAlbum() != null) sb.append(' ').append(metadata.getAlbum());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,226 @@
+package com.notdheeraj06.musicplayer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.notdheeraj06.musicplayer.core.ListeningLog;
+import com.notdheeraj06.musicplayer.core.Metrics;
+import com.notdheeraj06.musicplayer.core.PlayStats;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Listening history on its own thread: each completion or skip is appended to a
+ * {@link ListeningLog} and folded into the live {@link PlayStats}, so queries never read the log.
+ * Records reach disk in batches, at most {@link #FLUSH_DELAY_MS} after the first unflushed one.
+ * Compaction seals the log segment, saves the stats as covering it and deletes it; at startup the
+ * saved stats are loaded and only the segments written since are replayed.
+ */
+public class ListeningHistory {
+
+    private static final String TAG = "ListeningHistory";
+
+    private static final int BUFFER_RECORDS = 64;
+    private static final long FLUSH_DELAY_MS = 30_000;
+    private static final long COMPACT_INTERVAL_MS = 15 * 60_000;
+
+    private static final Metrics.Counter EVENTS = Metrics.counter("history.events");
+    private static final Metrics.Histogram FLUSH_MS = Metrics.histogram("history.flush_ms");
+    private static final Metrics.Histogram COMPACT_MS = Metrics.histogram("history.compact_ms");
+    private static final Metrics.Histogram TOP_QUERY_US = Metrics.histogram("history.top_query_us");
+
+    public interface Callback {
+        void onResult(List<PlayStats.Entry> entries);
+    }
+
+    private final File dir;
+    private final File statsFile;
+    private final HandlerThread thread = new HandlerThread("History", Process.THREAD_PRIORITY_BACKGROUND);
+    private final Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+    private final Runnable compactRunnable = this::compact;
+
+    // Confined to the history thread
+    private ListeningLog log;
+    private PlayStats stats = new PlayStats();
+    // Records appended since the last compaction
+    private int uncompacted;
+    private boolean flushScheduled;
+
+    private volatile String summary = "not loaded";
+
+    public ListeningHistory(Context context) {
+        dir = new File(context.getApplicationContext().getFilesDir(), "history");
+        statsFile = new File(dir, "play_stats.bin");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        handler.post(this::load);
+    }
+
+    /** Records a listen of {@code documentId}; {@code type} is one of the ListeningLog event types. */
+    public void record(String documentId, byte type, int listenedMs, int durationMs) {
+        if (documentId == null) return;
+        long now = System.currentTimeMillis();
+        handler.post(() -> {
+            ListeningLog.Event event = new ListeningLog.Event(now, PlayStats.trackKey(documentId), type, listenedMs, durationMs);
+            stats.add(event);
+            EVENTS.increment();
+            uncompacted++;
+            if (log == null) return;
+            try {
+                log.append(event);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to append to the history log", e);
+            }
+            if (log.pendingRecords() > 0 && !flushScheduled) {
+                flushScheduled = true;
+                handler.postDelayed(flushRunnable, FLUSH_DELAY_MS);
+            }
+            updateSummary();
+        });
+    }
+
+    /** The top {@code n} tracks by {@code ranking}, delivered on the main thread. */
+    public void top(PlayStats.Ranking ranking, int n, Callback callback) {
+        handler.post(() -> {
+            long start = SystemClock.elapsedRealtimeNanos();
+            List<PlayStats.Entry> entries = stats.top(ranking, n);
+            TOP_QUERY_US.record((SystemClock.elapsedRealtimeNanos() - start) / 1000);
+            mainHandler.post(() -> callback.onResult(entries));
+        });
+    }
+
+    /** Flushes what is buffered; the thread ends once it has. */
+    public void release() {
+        handler.post(() -> {
+            handler.removeCallbacks(flushRunnable);
+            handler.removeCallbacks(compactRunnable);
+            if (log == null) return;
+            try {
+                log.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close the history log", e);
+            }
+            log = null;
+        });
+        thread.quitSafely();
+    }
+
+    public String getStats() { return summary; }
+
+    // History thread
+
+    private void load() {
+        long start = SystemClock.elapsedRealtime();
+        PlayStats saved = readStats();
+        if (saved != null) stats = saved;
+        int replayed = 0;
+        try {
+            for (long segment : ListeningLog.segments(dir)) {
+                if (segment <= stats.foldedThrough()) continue;
+                long before = stats.events();
+                ListeningLog.read(ListeningLog.segmentFile(dir, segment), stats::add);
+                replayed += stats.events() - before;
+            }
+            // Never append to a segment the saved stats claim to include
+            log = ListeningLog.open(dir, stats.foldedThrough() + 1, BUFFER_RECORDS);
+            // Compacted but not yet deleted when the process died
+            log.deleteThrough(stats.foldedThrough());
+        } catch (IOException e) {
+            Log.w(TAG, "History log unavailable; listens are kept in memory only", e);
+        }
+        uncompacted = replayed;
+        Log.d(TAG, "Loaded " + stats.size() + " tracks, replayed " + replayed + " events in "
+                + (SystemClock.elapsedRealtime() - start) + " ms"
+                + (log != null && log.truncatedBytes() > 0 ? ", cut " + log.truncatedBytes() + " torn bytes" : ""));
+        updateSummary();
+        if (uncompacted > 0) handler.post(compactRunnable);
+        else handler.postDelayed(compactRunnable, COMPACT_INTERVAL_MS);
+    }
+
+    private void flush() {
+        handler.removeCallbacks(flushRunnable);
+        flushScheduled = false;
+        if (log == null) return;
+        long start = SystemClock.elapsedRealtime();
+        try {
+            log.flush();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to flush the history log", e);
+            return;
+        }
+        FLUSH_MS.record(SystemClock.elapsedRealtime() - start);
+        updateSummary();
+    }
+
+    /**
+     * Seals the segment and saves the stats as covering it, then deletes the sealed segments. A
+     * crash before the stats are renamed into place replays the segments; after, they are skipped.
+     */
+    private void compact() {
+        handler.removeCallbacks(compactRunnable);
+        handler.postDelayed(compactRunnable, COMPACT_INTERVAL_MS);
+        if (log == null || uncompacted == 0) return;
+        long start = SystemClock.elapsedRealtime();
+        try {
+            long sealed = log.rotate();
+            stats.setFoldedThrough(sealed);
+            writeStats();
+            log.deleteThrough(sealed);
+        } catch (IOException e) {
+            Log.w(TAG, "History compaction failed", e);
+            return;
+        }
+        uncompacted = 0;
+        // Rotating flushed the buffer
+        handler.removeCallbacks(flushRunnable);
+        flushScheduled = false;
+        long ms = SystemClock.elapsedRealtime() - start;
+        COMPACT_MS.record(ms);
+        Log.d(TAG, "Compacted history of " + stats.size() + " tracks in " + ms + " ms");
+        updateSummary();
+    }
+
+    private PlayStats readStats() {
+        if (!statsFile.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(statsFile)))) {
+            return PlayStats.readFrom(in);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read play stats", e);
+            return null;
+        }
+    }
+
+    /** Temp file, fsync, rename: the old stats stay valid until the new ones are complete. */
+    private void writeStats() throws IOException {
+        File tmp = new File(statsFile.getPath() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+            stats.writeTo(out);
+            out.flush();
+            file.getFD().sync();
+        }
+        if (!tmp.renameTo(statsFile)) throw new IOException("Cannot replace " + statsFile);
+    }
+
+    private void updateSummary() {
+        summary = String.format(Locale.US, "%d events over %d tracks, segment %d, %d buffered, %d since compaction",
+                stats.events(), stats.size(), log != null ? log.segment() : -1,
+                log != null ? log.pendingRecords() : 0, uncompacted);
+    }
+}
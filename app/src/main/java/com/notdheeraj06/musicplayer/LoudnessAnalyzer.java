@@ -0,0 +1,313 @@
+package com.notdheeraj06.musicplayer;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.notdheeraj06.musicplayer.core.LoudnessMeter;
+import com.notdheeraj06.musicplayer.core.Metrics;
+import com.notdheeraj06.musicplayer.core.TrackTable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures the loudness of every library track in the background so playback can level them
+ * (ReplayGain 2.0 through the player volume, see {@link LoudnessMeter#volumeFor}). Tracks are
+ * decoded one at a time with MediaCodec on a low-priority thread, and results are saved to the
+ * {@link LibraryIndex} every {@link #BATCH_SIZE} tracks; after a process death the saved tracks
+ * are skipped and analysis carries on with the rest. Work stops while playback is decoding (the
+ * track in progress is dropped and redone later). Otherwise each track is followed by enough idle
+ * time, with its decoder released, to keep analysis within the CPU budget.
+ */
+public class LoudnessAnalyzer {
+
+    private static final String TAG = "LoudnessAnalyzer";
+
+    public static final float DEFAULT_CPU_BUDGET = 0.25f;
+    private static final int BATCH_SIZE = 8;
+    // Quick pause/resume toggles shouldn't restart a decode each time
+    private static final long IDLE_DELAY_MS = 5000;
+    private static final long DEQUEUE_TIMEOUT_US = 10_000;
+
+    private static final Metrics.Counter TRACKS = Metrics.counter("loudness.tracks");
+    private static final Metrics.Counter FAILED = Metrics.counter("loudness.failed");
+    private static final Metrics.Histogram ANALYZE_MS = Metrics.histogram("loudness.analyze_ms");
+
+    private final Context context;
+    private final LibraryIndex index;
+    private final HandlerThread thread = new HandlerThread("Loudness", Process.THREAD_PRIORITY_BACKGROUND);
+    private final Handler handler;
+    private final Runnable analyzeRunnable = this::analyzeNext;
+    private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    // Written on the analysis thread, read by the playback thread
+    private final Map<String, LibraryIndex.Loudness> results = new ConcurrentHashMap<>();
+
+    // Analysis thread
+    private TrackTable library = TrackTable.empty();
+    private Uri treeUri;
+    // Rows before the cursor have been analyzed (or were already)
+    private int cursor;
+    // Rows of the library still to analyze, counted when it's set
+    private int pending;
+    private float[] pcm = new float[0];
+    private int analyzed;
+    private int failed;
+    private long activeMs;
+    // Measured but not saved yet
+    private final List<Song> unsavedSongs = new ArrayList<>(BATCH_SIZE);
+    private final List<LibraryIndex.Loudness> unsaved = new ArrayList<>(BATCH_SIZE);
+    // End of the idle time owed for the last track's work
+    private volatile long idleUntil;
+
+    private volatile boolean playbackActive;
+    private volatile boolean released;
+    private volatile float cpuBudget = DEFAULT_CPU_BUDGET;
+    private volatile String summary = "not started";
+
+    public LoudnessAnalyzer(Context context) {
+        this.context = context.getApplicationContext();
+        index = LibraryIndex.get(this.context);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        handler.post(() -> results.putAll(index.readLoudness()));
+    }
+
+    /** Analyzes the tracks of {@code table} that have no result yet; O(1) for the caller. */
+    public void setLibrary(TrackTable table, Uri tree) {
+        handler.post(() -> {
+            library = table;
+            treeUri = tree;
+            cursor = 0;
+            pending = 0;
+            for (int row = 0; row < table.size(); row++) if (!isAnalyzed(row)) pending++;
+            updateSummary();
+            if (!playbackActive) schedule(0);
+        });
+    }
+
+    /** Analysis yields to playback: it stops while true and resumes a little after it turns false. */
+    public void setPlaybackActive(boolean active) {
+        if (active == playbackActive) return;
+        playbackActive = active;
+        if (active) handler.removeCallbacks(analyzeRunnable);
+        else schedule(IDLE_DELAY_MS);
+        handler.post(this::updateSummary);
+    }
+
+    /** Fraction of wall time analysis may keep a core (and the decoder) busy, in (0, 1]. */
+    public void setCpuBudget(float budget) {
+        cpuBudget = Math.max(0.01f, Math.min(1f, budget));
+    }
+
+    public float getCpuBudget() { return cpuBudget; }
+
+    /** Player volume that levels {@code song}; 1 until it has been analyzed. Any thread. */
+    public float volumeFor(Song song) {
+        if (song.getDocumentId() == null) return 1f;
+        LibraryIndex.Loudness loudness = results.get(song.getDocumentId());
+        if (!matches(loudness, song.getSize(), song.getLastModified()) || loudness.isFailed()) return 1f;
+        return LoudnessMeter.volumeFor(loudness.lufs, loudness.peak);
+    }
+
+    public String getStats() { return summary; }
+
+    /** Stops at the next decode step; measured results are saved. */
+    public void release() {
+        released = true;
+        handler.post(() -> {
+            handler.removeCallbacks(analyzeRunnable);
+            save();
+        });
+        thread.quitSafely();
+    }
+
+    /** Runs analysis after {@code delayMs}, or once the idle time owed for the last track is over. */
+    private void schedule(long delayMs) {
+        long delay = Math.max(delayMs, idleUntil - SystemClock.elapsedRealtime());
+        handler.removeCallbacks(analyzeRunnable);
+        handler.postDelayed(analyzeRunnable, delay);
+    }
+
+    // Analysis thread
+
+    private void analyzeNext() {
+        if (playbackActive || released || treeUri == null) return;
+        while (cursor < library.size() && isAnalyzed(cursor)) cursor++;
+        if (cursor >= library.size()) {
+            if (!unsaved.isEmpty()) Log.d(TAG, "Library analyzed: " + summary);
+            save();
+            return;
+        }
+        Song song = Song.fromTable(library, cursor, treeUri);
+        long start = SystemClock.elapsedRealtime();
+        LibraryIndex.Loudness loudness = analyze(song);
+        long busy = SystemClock.elapsedRealtime() - start;
+        activeMs += busy;
+        if (loudness == null) {
+            // Playback started or the analyzer was released: the row stays pending
+            save();
+            updateSummary();
+            return;
+        }
+        cursor++;
+        pending--;
+        ANALYZE_MS.record(busy);
+        if (loudness.isFailed()) {
+            failed++;
+            FAILED.increment();
+        } else {
+            analyzed++;
+            TRACKS.increment();
+        }
+        results.put(song.getDocumentId(), loudness);
+        unsavedSongs.add(song);
+        unsaved.add(loudness);
+        if (unsaved.size() >= BATCH_SIZE) save();
+        updateSummary();
+
+        // Wall time rather than thread CPU time is what's budgeted: most of the cost is the
+        // decoder, which runs in the media codec process and doesn't show up in this thread
+        float budget = cpuBudget;
+        idleUntil = SystemClock.elapsedRealtime() + (long) (busy * (1 - budget) / budget);
+        schedule(0);
+    }
+
+    private void save() {
+        if (unsaved.isEmpty()) return;
+        index.saveLoudness(new ArrayList<>(unsavedSongs), new ArrayList<>(unsaved));
+        unsavedSongs.clear();
+        unsaved.clear();
+    }
+
+    private boolean isAnalyzed(int row) {
+        String documentId = library.documentId(row);
+        return documentId == null
+                || matches(results.get(documentId), library.fileSize(row), library.lastModified(row));
+    }
+
+    private static boolean matches(LibraryIndex.Loudness loudness, long size, long modified) {
+        return loudness != null && loudness.size == size && loudness.modified == modified;
+    }
+
+    /** Decodes the whole track through a {@link LoudnessMeter}; null if interrupted by playback. */
+    private LibraryIndex.Loudness analyze(Song song) {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(context, song.getUri(), null);
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat candidate = extractor.getTrackFormat(i);
+                String mime = candidate.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = candidate;
+                    break;
+                }
+            }
+            if (format == null) throw new IOException("No audio track");
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            int rate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            int encoding = AudioFormat.ENCODING_PCM_16BIT;
+            LoudnessMeter meter = null;
+            boolean inputDone = false;
+            boolean outputDone = false;
+            while (!outputDone) {
+                if (playbackActive || released) return null;
+                if (!inputDone) inputDone = feedInput(extractor, codec);
+                int index = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+                if (index >= 0) {
+                    ByteBuffer buffer = codec.getOutputBuffer(index);
+                    if (buffer != null && info.size > 0) {
+                        if (meter == null) meter = new LoudnessMeter(rate, channels);
+                        int frames = convert(buffer, channels, encoding);
+                        meter.addFrames(pcm, 0, frames);
+                    }
+                    codec.releaseOutputBuffer(index, false);
+                    outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat output = codec.getOutputFormat();
+                    int newRate = output.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    int newChannels = output.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                    if (meter != null && (newRate != rate || newChannels != channels)) {
+                        throw new IOException("Format changed mid-stream to " + output);
+                    }
+                    rate = newRate;
+                    channels = newChannels;
+                    encoding = output.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                            ? output.getInteger(MediaFormat.KEY_PCM_ENCODING) : AudioFormat.ENCODING_PCM_16BIT;
+                }
+            }
+            double lufs = meter != null ? meter.integratedLoudness() : Double.NEGATIVE_INFINITY;
+            return new LibraryIndex.Loudness(song.getSize(), song.getLastModified(),
+                    Double.isInfinite(lufs) ? Float.NaN : (float) lufs, meter != null ? (float) meter.samplePeak() : 0f);
+        } catch (IOException | RuntimeException e) {
+            // Recorded as failed so it isn't retried until the file changes
+            Log.w(TAG, "Cannot analyze " + song.getTitle(), e);
+            return new LibraryIndex.Loudness(song.getSize(), song.getLastModified(), Float.NaN, -1f);
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException ignored) { }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    private static boolean feedInput(MediaExtractor extractor, MediaCodec codec) {
+        int index = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+        if (index < 0) return false;
+        ByteBuffer buffer = codec.getInputBuffer(index);
+        int size = buffer == null ? -1 : extractor.readSampleData(buffer, 0);
+        if (size < 0) {
+            codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            return true;
+        }
+        codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+        extractor.advance();
+        return false;
+    }
+
+    /** Decoded PCM (16-bit or float) into {@link #pcm} as interleaved floats; returns the frame count. */
+    private int convert(ByteBuffer buffer, int channels, int encoding) {
+        buffer.position(info.offset);
+        buffer.limit(info.offset + info.size);
+        ByteBuffer data = buffer.slice().order(ByteOrder.nativeOrder());
+        boolean isFloat = encoding == AudioFormat.ENCODING_PCM_FLOAT;
+        int samples = info.size / (isFloat ? 4 : 2);
+        if (pcm.length < samples) pcm = new float[samples];
+        if (isFloat) {
+            data.asFloatBuffer().get(pcm, 0, samples);
+        } else {
+            for (int i = 0; i < samples; i++) pcm[i] = data.getShort(2 * i) / 32768f;
+        }
+        return samples / channels;
+    }
+
+    private void updateSummary() {
+        double perMinute = activeMs > 0 ? (analyzed + failed) * 60_000.0 / activeMs : 0;
+        summary = String.format(Locale.US, "%d analyzed, %d failed, %d pending, %.1f tracks/min at %.0f%% budget%s",
+                analyzed, failed, pending, perMinute, cpuBudget * 100, playbackActive ? ", paused for playback" : "");
+    }
+}
@@ -3,67 +3,146 @@ package com.notdheeraj06.musicplayer;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.documentfile.provider.DocumentFile;
+import androidx.appcompat.widget.SearchView;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import android.content.ComponentName;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
+import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.MediaControllerCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+import android.util.Log;
 import android.widget.ImageButton;
 import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.google.android.material.appbar.MaterialToolbar;
+import com.notdheeraj06.musicplayer.core.DuplicateFinder;
+import com.notdheeraj06.musicplayer.core.LibrarySort;
+import com.notdheeraj06.musicplayer.core.LibrarySorter;
+import com.notdheeraj06.musicplayer.core.Metrics;
+import com.notdheeraj06.musicplayer.core.PlaylistImport;
+import com.notdheeraj06.musicplayer.core.SectionIndex;
+import com.notdheeraj06.musicplayer.core.TrackTable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
-import android.annotation.SuppressLint;
 import android.content.SharedPreferences;
-import android.media.AudioAttributes;
-import android.media.MediaPlayer;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
 
-import java.io.IOException;
-import java.util.Random;
-
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements ServiceConnection {
 
+    private static final String TAG = "MainActivity";
     private static final int REQ_PICK_FOLDER = 1001;
+    private static final int REQ_IMPORT_PLAYLIST = 1002;
+    private static final String[] PLAYLIST_MIME_TYPES = {
+            "audio/x-mpegurl", "audio/mpegurl", "application/vnd.apple.mpegurl", "application/x-mpegurl",
+            "audio/x-scpls", "text/plain", "application/octet-stream" };
     private static final String PREFS = "music_prefs";
     private static final String KEY_FOLDER_URI = "folder_uri";
+    private static final String KEY_SORT_ORDER = "sort_order";
+    private static final long REINDEX_DELAY_MS = 3000;
+    private static final long REFRESH_DELAY_MS = 1500;
+    private static final long SECTION_HIDE_DELAY_MS = 800;
+
+    private static final Metrics.Histogram FIRST_RENDER_WARM_MS = Metrics.histogram("library.first_render_warm_ms");
+    private static final Metrics.Histogram FIRST_RENDER_COLD_MS = Metrics.histogram("library.first_render_cold_ms");
+    private static final Metrics.Histogram SCAN_MS = Metrics.histogram("library.scan_ms");
+    private static final Metrics.Counter SONGS_SCANNED = Metrics.counter("library.songs_scanned");
+    // Seek bar wakeups while visible and playing, and the ones that actually moved the thumb
+    private static final Metrics.Counter SEEK_FRAMES = Metrics.counter("ui.seek_frames");
+    private static final Metrics.Counter SEEK_UPDATES = Metrics.counter("ui.seek_updates");
 
     private RecyclerView recyclerSongs;
     private TextView txtTitle;
+    private TextView txtSection;
     private SeekBar seekBar;
     private ImageButton btnPlayPause;
 
-    private final List<Song> songs = new ArrayList<>();
-    private int currentIndex = -1;
-    private MediaPlayer mediaPlayer;
-    private boolean isShuffle = false;
-    private int repeatMode = 0; // 0 = off, 1 = one, 2 = all
+    // Main thread only; replaced wholesale when a sort lands
+    private List<Song> songs = new ArrayList<>();
+    private SongsAdapter adapter;
+    // Playback lives in the service; every command goes through it once bound
+    private MusicService musicService;
+    private boolean isBound;
+    // Tapped before a snapshot holding it was published (a cold scan publishes when it ends)
+    @Nullable private String pendingPlayId;
 
     private final Handler handler = new Handler();
-    private final Random random = new Random();
-
-    private final Runnable updateSeekRunnable = new Runnable() {
-        @Override
-        public void run() {
-            if (mediaPlayer != null && mediaPlayer.isPlaying()) {
-                seekBar.setProgress(mediaPlayer.getCurrentPosition());
-                handler.postDelayed(this, 1000);
-            }
-        }
+    private FolderScanner scanner;
+    private LibraryIndex libraryIndex;
+    private MetadataExtractor metadataExtractor;
+    private LibrarySearch librarySearch;
+    private String searchQuery = "";
+    private LibrarySort.Order sortOrder = LibrarySort.Order.TITLE;
+    // Collation keys persist across re-sorts; a locale change recreates the activity and the sorter.
+    // Only touched on the library executor, which runs one sort at a time
+    private LibrarySorter sorter;
+    // Sorts and playback snapshots of the list are built here, in the order they were asked for
+    private final ExecutorService libraryExecutor = Executors.newSingleThreadExecutor();
+    private boolean sortRunning;
+    private boolean resortPending;
+    private boolean publishPending;
+    // Bumped when songs changes other than by appending, which voids the sort in flight
+    private int songEdits;
+    private final Runnable hideSectionRunnable = () -> txtSection.setVisibility(View.GONE);
+    private int libraryGeneration = 0;
+
+    private final Runnable reindexRunnable = () -> {
+        reindexForSearch();
+        // The service only sees extracted tags through a new snapshot
+        publishLibrary();
     };
 
+    // Live folder watching: change notifications are collected and debounced into one refresh
+    private Uri watchedTree;
+    private ContentObserver folderObserver;
+    private final Set<String> changedDirs = new HashSet<>();
+    private final Runnable refreshRunnable = this::refreshLibrary;
+    // Immutable snapshot of songs, rebuilt on every change and shared with the playback queue
+    private TrackTable library = TrackTable.empty();
+    // Bumped per publish; a snapshot built for an older one is dropped
+    private final AtomicInteger publishGeneration = new AtomicInteger();
+    @Nullable private Consumer<TrackTable> libraryListener;
+    private PlaylistImporter playlistImporter;
+    private DuplicateDetector duplicateDetector;
+    // Set while the service is bound; takes rows of the library an import resolved against
+    @Nullable private BiConsumer<TrackTable, int[]> playlistListener;
+
+    // Session state the seek bar extrapolates from; callbacks are registered only while resumed
+    private MediaControllerCompat mediaController;
+    private PlaybackStateCompat playbackState;
+    private long durationMs;
+    private boolean resumed;
+    private boolean userSeeking;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -74,6 +153,7 @@ public class MainActivity extends AppCompatActivity {
 
         recyclerSongs = findViewById(R.id.recyclerSongs);
         txtTitle = findViewById(R.id.txtTitle);
+        txtSection = findViewById(R.id.txtSection);
         seekBar = findViewById(R.id.seekBar);
         btnPlayPause = findViewById(R.id.btnPlayPause);
         ImageButton btnNext = findViewById(R.id.btnNext);
@@ -82,31 +162,77 @@ public class MainActivity extends AppCompatActivity {
         ImageButton btnRepeat = findViewById(R.id.btnRepeat);
 
         recyclerSongs.setLayoutManager(new LinearLayoutManager(this));
-        recyclerSongs.setAdapter(new SongsAdapter(songs, this::playSong));
+        adapter = new SongsAdapter((song, position) -> playSong(song));
+        recyclerSongs.setAdapter(adapter);
+        scanner = new FolderScanner(getContentResolver());
+        libraryIndex = LibraryIndex.get(this);
+        metadataExtractor = new MetadataExtractor(this, libraryIndex, this::onMetadataExtracted);
+        playlistImporter = new PlaylistImporter(this);
+        duplicateDetector = new DuplicateDetector(this, libraryIndex);
+        librarySearch = new LibrarySearch();
+        sorter = new LibrarySorter(Locale.getDefault());
+        sortOrder = loadSortOrder();
+        recyclerSongs.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    prioritizeVisibleRows();
+                    handler.postDelayed(hideSectionRunnable, SECTION_HIDE_DELAY_MS);
+                }
+            }
 
-        btnPlayPause.setOnClickListener(v -> togglePlayPause());
-        btnNext.setOnClickListener(v -> playNext());
-        btnPrev.setOnClickListener(v -> playPrevious());
-        btnShuffle.setOnClickListener(v -> toggleShuffle());
-        btnRepeat.setOnClickListener(v -> toggleRepeat());
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (recyclerView.getScrollState() != RecyclerView.SCROLL_STATE_IDLE) showSection();
+            }
+        });
+
+        btnPlayPause.setOnClickListener(v -> {
+            if (!isBound) return;
+            if (musicService.isPlaying()) musicService.pause();
+            else musicService.resume();
+        });
+        btnNext.setOnClickListener(v -> { if (isBound) musicService.playNext(); });
+        btnPrev.setOnClickListener(v -> { if (isBound) musicService.playPrevious(); });
+        btnShuffle.setOnClickListener(v -> { if (isBound) musicService.toggleShuffle(); });
+        btnRepeat.setOnClickListener(v -> { if (isBound) musicService.toggleRepeat(); });
 
         seekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
-            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) { }
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                // Drag bursts are coalesced by the service, so every change can be forwarded
+                if (fromUser && isBound) musicService.seekTo(progress);
+            }
             @Override
-            public void onStartTrackingTouch(SeekBar seekBar) { }
+            public void onStartTrackingTouch(SeekBar seekBar) { userSeeking = true; }
             @Override
-            public void onStopTrackingTouch(SeekBar seekBar) {
-                if (mediaPlayer != null) mediaPlayer.seekTo(seekBar.getProgress());
-            }
+            public void onStopTrackingTouch(SeekBar seekBar) { userSeeking = false; }
         });
 
+        Intent intent = new Intent(this, MusicService.class);
+        startService(intent); // Keeps playback going after the activity is gone
+        bindService(intent, this, Context.BIND_AUTO_CREATE);
         loadSavedFolder();
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main_menu, menu);
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        if (searchView != null) {
+            searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+                @Override
+                public boolean onQueryTextSubmit(String query) { return onQueryTextChange(query); }
+
+                @Override
+                public boolean onQueryTextChange(String newText) {
+                    searchQuery = newText == null ? "" : newText.trim();
+                    submitSongs();
+                    return true;
+                }
+            });
+        }
+        menu.findItem(sortMenuId(sortOrder)).setChecked(true);
         return true;
     }
 
@@ -128,136 +254,413 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        resumed = true;
+        if (mediaController != null) {
+            mediaController.registerCallback(controllerCallback);
+            onSessionChanged(mediaController.getPlaybackState(), mediaController.getMetadata());
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Nothing updates the seek bar while it isn't visible
+        resumed = false;
+        if (mediaController != null) mediaController.unregisterCallback(controllerCallback);
+        seekBar.removeCallbacks(seekFrame);
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        releasePlayer();
-        handler.removeCallbacks(updateSeekRunnable);
+        if (mediaController != null) mediaController.unregisterCallback(controllerCallback);
+        if (isBound) {
+            musicService.setSongChangedListener(null);
+            unbindService(this);
+            isBound = false;
+        }
+        scanner.shutdown();
+        handler.removeCallbacks(reindexRunnable);
+        metadataExtractor.shutdown();
+        librarySearch.shutdown();
+        libraryExecutor.shutdownNow();
+        playlistImporter.shutdown();
+        duplicateDetector.shutdown();
+        handler.removeCallbacks(hideSectionRunnable);
+        unwatchFolder();
     }
 
-    private void releasePlayer() {
-        if (mediaPlayer != null) {
-            mediaPlayer.reset();
-            mediaPlayer.release();
-            mediaPlayer = null;
+    @Override
+    public void onServiceConnected(ComponentName name, IBinder binder) {
+        musicService = ((MusicService.MusicBinder) binder).getService();
+        isBound = true;
+        musicService.setLibrary(library, watchedTree);
+        // Folder changes update the service queue; it keeps the current track by document id
+        libraryListener = snapshot -> { if (isBound) musicService.setLibrary(snapshot, watchedTree); };
+        // An import replaces the queue; rows are carried over if the library changed meanwhile
+        playlistListener = (snapshot, rows) -> { if (isBound) musicService.playRows(snapshot, rows, 0); };
+        mediaController = new MediaControllerCompat(this, musicService.getSessionToken());
+        if (resumed) {
+            mediaController.registerCallback(controllerCallback);
+            onSessionChanged(mediaController.getPlaybackState(), mediaController.getMetadata());
         }
+        musicService.setSongChangedListener((song, isPlaying) -> {
+            txtTitle.setText(song.getTitle());
+            btnPlayPause.setImageResource(isPlaying ? android.R.drawable.ic_media_pause : android.R.drawable.ic_media_play);
+        });
+        Song current = musicService.getCurrentSong();
+        if (current != null) {
+            txtTitle.setText(current.getTitle());
+            btnPlayPause.setImageResource(musicService.isPlaying() ? android.R.drawable.ic_media_pause : android.R.drawable.ic_media_play);
+        }
+    }
+
+    @Override
+    public void onServiceDisconnected(ComponentName name) {
+        isBound = false;
+        musicService = null;
+        libraryListener = null;
+        playlistListener = null;
+        if (mediaController != null) mediaController.unregisterCallback(controllerCallback);
+        mediaController = null;
+        seekBar.removeCallbacks(seekFrame);
     }
 
-    @SuppressLint("NotifyDataSetChanged")
+    private final MediaControllerCompat.Callback controllerCallback = new MediaControllerCompat.Callback() {
+        @Override
+        public void onPlaybackStateChanged(PlaybackStateCompat state) {
+            onSessionChanged(state, mediaController != null ? mediaController.getMetadata() : null);
+        }
+
+        @Override
+        public void onMetadataChanged(MediaMetadataCompat metadata) {
+            onSessionChanged(playbackState, metadata);
+        }
+    };
+
+    private void onSessionChanged(PlaybackStateCompat state, MediaMetadataCompat metadata) {
+        playbackState = state;
+        durationMs = metadata != null ? metadata.getLong(MediaMetadataCompat.METADATA_KEY_DURATION) : 0;
+        seekBar.setMax((int) durationMs);
+        seekBar.removeCallbacks(seekFrame);
+        // Position only moves on its own while playing; otherwise a single update is enough
+        seekFrame.run();
+    }
+
+    /**
+     * Extrapolates the position from the last published session state while playing, waking on
+     * the first frame after the thumb would have moved a whole pixel rather than on every frame.
+     */
+    private final Runnable seekFrame = new Runnable() {
+        @Override
+        public void run() {
+            PlaybackStateCompat state = playbackState;
+            if (state == null || !resumed) return;
+            long position = state.getPosition();
+            // Milliseconds per pixel of seek bar
+            long step = Math.max(1, durationMs / Math.max(1, seekBar.getWidth()));
+            if (state.getState() == PlaybackStateCompat.STATE_PLAYING) {
+                SEEK_FRAMES.increment();
+                float speed = state.getPlaybackSpeed() > 0 ? state.getPlaybackSpeed() : 1f;
+                position += (long) ((SystemClock.elapsedRealtime() - state.getLastPositionUpdateTime()) * speed);
+                seekBar.postOnAnimationDelayed(this, (long) (step / speed));
+            }
+            if (durationMs > 0) position = Math.min(position, durationMs);
+            if (!userSeeking && Math.abs(seekBar.getProgress() - position) >= step) {
+                SEEK_UPDATES.increment();
+                seekBar.setProgress((int) position);
+            }
+        }
+    };
+
     private void loadSongsFromFolder(Uri treeUri) {
+        Trace.beginSection("MainActivity.loadSongsFromFolder");
+        try {
+            loadSongsFromFolderTraced(treeUri);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private void loadSongsFromFolderTraced(Uri treeUri) {
+        final int gen = ++libraryGeneration;
+        final long started = SystemClock.elapsedRealtime();
+        watchFolder(treeUri);
+        scanner.cancel();
+        metadataExtractor.clear();
         songs.clear();
-        DocumentFile root = DocumentFile.fromTreeUri(this, treeUri);
-        if (root != null && root.isDirectory()) {
-            for (DocumentFile file : root.listFiles()) {
-                if (file.isFile()) {
-                    String name = file.getName();
-                    if (name != null && isAudioFile(name)) {
-                        songs.add(new Song(name, file.getUri()));
-                    }
-                }
+        songEdits++;
+        submitSongs();
+        libraryIndex.load(treeUri, cached -> {
+            if (gen != libraryGeneration) return;
+            if (!cached.isEmpty()) {
+                songs.addAll(cached);
+                submitSongs();
+                FIRST_RENDER_WARM_MS.record(SystemClock.elapsedRealtime() - started);
+                publishLibrary();
+                Log.d(TAG, "First render (warm index): " + cached.size() + " songs in " + (SystemClock.elapsedRealtime() - started) + " ms");
+                metadataExtractor.enqueue(cached);
+                prioritizeVisibleRows();
+                reindexForSearch();
             }
-        }
-        if(recyclerSongs.getAdapter() != null) recyclerSongs.getAdapter().notifyDataSetChanged();
-        if (songs.isEmpty()) Toast.makeText(this, "No audio files found", Toast.LENGTH_SHORT).show();
+            rescanFolder(treeUri, gen, !cached.isEmpty(), started);
+        });
     }
 
-    private boolean isAudioFile(String name) {
-        name = name.toLowerCase();
-        return name.endsWith(".mp3") || name.endsWith(".wav") || name.endsWith(".flac") || 
-               name.endsWith(".aac") || name.endsWith(".ogg") || name.endsWith(".m4a");
+    /**
+     * With a warm index the list is already on screen, so the scan only collects results and the
+     * index diff is applied at the end. With a cold index the scan streams straight into the list.
+     */
+    private void rescanFolder(Uri treeUri, int gen, boolean warm, long started) {
+        final List<Song> scanned = new ArrayList<>();
+        // Starting a new scan supersedes (and cancels) whatever folder was being scanned before
+        scanner.scan(treeUri, new FolderScanner.Callback() {
+            @Override
+            public void onBatch(List<Song> batch) {
+                scanned.addAll(batch);
+                if (warm) return;
+                int start = songs.size();
+                songs.addAll(batch);
+                submitSongs();
+                if (start == 0) FIRST_RENDER_COLD_MS.record(SystemClock.elapsedRealtime() - started);
+                if (start == 0) Log.d(TAG, "First render (cold index): " + batch.size() + " songs in " + (SystemClock.elapsedRealtime() - started) + " ms");
+                metadataExtractor.enqueue(batch);
+                if (start == 0) recyclerSongs.post(MainActivity.this::prioritizeVisibleRows);
+            }
+
+            @Override
+            public void onProgress(int foldersScanned, int songsFound) {
+                setScanStatus("Scanning… " + songsFound + " songs in " + foldersScanned + " folders");
+            }
+
+            @Override
+            public void onComplete(int songsFound, Set<String> unlistedDirIds) {
+                setScanStatus(null);
+                SCAN_MS.record(SystemClock.elapsedRealtime() - started);
+                SONGS_SCANNED.add(songsFound);
+                libraryIndex.applyScan(treeUri, scanned, unlistedDirIds, delta -> {
+                    if (gen != libraryGeneration) return;
+                    if (warm) applyLibraryDelta(delta);
+                    else publishLibrary();
+                    reindexForSearch();
+                    if (songs.isEmpty()) Toast.makeText(MainActivity.this, "No audio files found", Toast.LENGTH_SHORT).show();
+                });
+            }
+        });
     }
 
-    private void playSong(int index) {
-        if (index < 0 || index >= songs.size()) return;
-        currentIndex = index;
-        Song song = songs.get(index);
-        txtTitle.setText(song.getTitle());
-        releasePlayer();
+    private void applyLibraryDelta(LibraryIndex.Delta delta) {
+        if (delta.isEmpty()) return;
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < songs.size(); i++) positions.put(songs.get(i).getDocumentId(), i);
 
-        mediaPlayer = new MediaPlayer();
-        mediaPlayer.setAudioAttributes(new AudioAttributes.Builder()
-                .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-                .setUsage(AudioAttributes.USAGE_MEDIA).build());
-        try {
-            mediaPlayer.setDataSource(this, song.getUri());
-            mediaPlayer.setOnPreparedListener(mp -> {
-                seekBar.setMax(mp.getDuration());
-                mp.start();
-                btnPlayPause.setImageResource(android.R.drawable.ic_media_pause);
-                handler.post(updateSeekRunnable);
-            });
-            mediaPlayer.setOnCompletionListener(mp -> onSongCompleted());
-            mediaPlayer.prepareAsync();
-        } catch (IOException e) {
-            e.printStackTrace();
-            Toast.makeText(this, "Error playing file", Toast.LENGTH_SHORT).show();
+        for (Song song : delta.changed) {
+            Integer pos = positions.get(song.getDocumentId());
+            if (pos != null) songs.set(pos, song);
+        }
+        List<Song> added = new ArrayList<>(delta.added.size());
+        for (Song song : delta.added) {
+            // A directory whose last listing failed reports everything in it as added
+            Integer pos = positions.get(song.getDocumentId());
+            if (pos != null) songs.set(pos, song);
+            else added.add(song);
         }
+        if (!delta.removed.isEmpty()) {
+            Set<String> gone = new HashSet<>(delta.removed);
+            songs.removeIf(song -> gone.contains(song.getDocumentId()));
+        }
+        songs.addAll(added);
+        songEdits++;
+        // The service keeps playing the same track by document id when the snapshot lands
+        submitSongs();
+        publishLibrary();
+        metadataExtractor.enqueue(delta.changed);
+        metadataExtractor.enqueue(delta.added);
     }
 
-    private void onSongCompleted() {
-        if (repeatMode == 1) playSong(currentIndex);
-        else if (isShuffle) playRandom();
-        else {
-            if (currentIndex == songs.size() - 1) {
-                if (repeatMode == 2) playSong(0);
-                else {
-                    btnPlayPause.setImageResource(android.R.drawable.ic_media_play);
-                    seekBar.setProgress(0);
-                }
-            } else playSong(currentIndex + 1);
+    private void publishLibrary() {
+        // Playback follows list order, so with a sort in flight the snapshot waits for it
+        if (sortRunning) {
+            publishPending = true;
+            return;
         }
+        final List<Song> snapshot = new ArrayList<>(songs);
+        final int gen = publishGeneration.incrementAndGet();
+        libraryExecutor.execute(() -> {
+            if (publishGeneration.get() != gen) return;
+            TrackTable table = TrackTable.of(snapshot);
+            handler.post(() -> {
+                if (publishGeneration.get() != gen) return;
+                library = table;
+                if (libraryListener != null) libraryListener.accept(table);
+                if (pendingPlayId != null) {
+                    String id = pendingPlayId;
+                    pendingPlayId = null;
+                    int row = table.indexOf(id);
+                    if (row >= 0 && isBound) musicService.playSong(row);
+                }
+            });
+        });
     }
 
-    private void playRandom() {
-        if (!songs.isEmpty()) playSong(random.nextInt(songs.size()));
+    private void watchFolder(Uri treeUri) {
+        unwatchFolder();
+        watchedTree = treeUri;
+        folderObserver = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange, @Nullable Uri uri) {
+                onFolderChanged(uri);
+            }
+        };
+        ContentResolver resolver = getContentResolver();
+        Uri rootChildren = DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, DocumentsContract.getTreeDocumentId(treeUri));
+        resolver.registerContentObserver(rootChildren, true, folderObserver);
+        // Storage providers only notify for directories someone has a listing open on; MediaStore
+        // hears about every audio file the media scanner sees on shared storage
+        resolver.registerContentObserver(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, folderObserver);
     }
 
-    private void playNext() {
-        if (songs.isEmpty()) return;
-        if (isShuffle) { playRandom(); return; }
-        int nextIndex = currentIndex + 1;
-        if (nextIndex >= songs.size()) {
-            if (repeatMode == 2) nextIndex = 0;
-            else return;
-        }
-        playSong(nextIndex);
+    private void unwatchFolder() {
+        handler.removeCallbacks(refreshRunnable);
+        changedDirs.clear();
+        if (folderObserver != null) getContentResolver().unregisterContentObserver(folderObserver);
+        folderObserver = null;
+        watchedTree = null;
     }
 
-    private void playPrevious() {
-        if (songs.isEmpty()) return;
-        if (isShuffle) { playRandom(); return; }
-        int prevIndex = currentIndex - 1;
-        if (prevIndex < 0) {
-            if (repeatMode == 2) prevIndex = songs.size() - 1;
-            else return;
+    private void onFolderChanged(@Nullable Uri uri) {
+        // A children Uri names the directory that changed; anything else just triggers the sweep
+        if (uri != null && "children".equals(uri.getLastPathSegment())) {
+            List<String> segments = uri.getPathSegments();
+            int document = segments.indexOf("document");
+            if (document >= 0 && document + 1 < segments.size()) changedDirs.add(segments.get(document + 1));
         }
-        playSong(prevIndex);
+        handler.removeCallbacks(refreshRunnable);
+        handler.postDelayed(refreshRunnable, REFRESH_DELAY_MS);
+    }
+
+    private void refreshLibrary() {
+        if (watchedTree == null) return;
+        final int gen = libraryGeneration;
+        Set<String> hints = new HashSet<>(changedDirs);
+        changedDirs.clear();
+        scanner.refresh(watchedTree, hints, delta -> {
+            // No delta yet means the first scan is still running; it lists everything anyway
+            if (gen != libraryGeneration || delta == null || delta.isEmpty()) return;
+            libraryIndex.applyDelta(delta);
+            applyLibraryDelta(delta);
+            reindexForSearch();
+        });
     }
 
-    private void togglePlayPause() {
-        if (mediaPlayer == null) {
-            if (!songs.isEmpty()) playSong(Math.max(0, currentIndex));
+    /**
+     * Re-sorts a snapshot of the list on the sort executor, then hands the adapter an immutable
+     * copy; it diffs it against what is on screen off the main thread too. Calls made while a sort
+     * runs are coalesced into one more sort after it lands.
+     */
+    private void submitSongs() {
+        if (sortRunning) {
+            resortPending = true;
             return;
         }
-        if (mediaPlayer.isPlaying()) {
-            mediaPlayer.pause();
-            btnPlayPause.setImageResource(android.R.drawable.ic_media_play);
+        sortRunning = true;
+        final List<Song> snapshot = new ArrayList<>(songs);
+        final LibrarySort.Order order = sortOrder;
+        final int edits = songEdits;
+        libraryExecutor.execute(() -> {
+            // Only titles and tags new since the last sort are collated
+            LibrarySorter.Result sorted = sorter.sort(snapshot, order);
+            int n = snapshot.size();
+            List<Song> ordered = new ArrayList<>(n);
+            int[] newPosition = new int[n];
+            for (int i = 0; i < n; i++) {
+                ordered.add(snapshot.get(sorted.order[i]));
+                newPosition[sorted.order[i]] = i;
+            }
+            List<Song> shown = Collections.unmodifiableList(new ArrayList<>(ordered));
+            handler.post(() -> onSorted(edits, ordered, newPosition, shown, sorted.sections));
+        });
+    }
+
+    private void onSorted(int edits, List<Song> ordered, int[] newPosition, List<Song> shown, SectionIndex sections) {
+        sortRunning = false;
+        // After a clear or a delta the result is stale, and the sort that edit asked for is pending
+        if (edits == songEdits) {
+            int sorted = newPosition.length;
+            // Batches appended meanwhile stay at the end until the pending re-sort
+            ordered.addAll(songs.subList(sorted, songs.size()));
+            songs = ordered;
+            if (searchQuery.isEmpty()) {
+                librarySearch.cancel();
+                adapter.submitList(shown, sections);
+            } else {
+                librarySearch.search(searchQuery, (query, results) -> adapter.submitList(results));
+            }
+            if (publishPending) {
+                publishPending = false;
+                publishLibrary();
+            }
+        }
+        if (resortPending) {
+            resortPending = false;
+            submitSongs();
+        }
+    }
+
+    /** Plays {@code song} from its row in the last snapshot handed to the service. */
+    private void playSong(Song song) {
+        if (!isBound) return;
+        int row = library.indexOf(song.getDocumentId());
+        if (row >= 0) {
+            pendingPlayId = null;
+            musicService.playSong(row);
         } else {
-            mediaPlayer.start();
-            btnPlayPause.setImageResource(android.R.drawable.ic_media_pause);
-            handler.post(updateSeekRunnable);
+            pendingPlayId = song.getDocumentId();
+            publishLibrary();
+        }
+    }
+
+    private void reindexForSearch() {
+        handler.removeCallbacks(reindexRunnable);
+        librarySearch.setLibrary(Collections.unmodifiableList(new ArrayList<>(songs)));
+        if (!searchQuery.isEmpty()) submitSongs();
+    }
+
+    /** Shows the section of the first visible row while the list scrolls (or the thumb is dragged). */
+    private void showSection() {
+        LinearLayoutManager lm = (LinearLayoutManager) recyclerSongs.getLayoutManager();
+        String label = lm == null ? null : adapter.getSectionLabel(lm.findFirstVisibleItemPosition());
+        handler.removeCallbacks(hideSectionRunnable);
+        if (label == null) {
+            txtSection.setVisibility(View.GONE);
+            return;
         }
+        txtSection.setText(label);
+        txtSection.setVisibility(View.VISIBLE);
+    }
+
+    private void prioritizeVisibleRows() {
+        LinearLayoutManager lm = (LinearLayoutManager) recyclerSongs.getLayoutManager();
+        if (lm == null) return;
+        List<Song> shown = adapter.getCurrentList();
+        int first = lm.findFirstVisibleItemPosition();
+        int last = lm.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || last >= shown.size()) return;
+        metadataExtractor.prioritize(shown.subList(first, last + 1));
     }
 
-    private void toggleShuffle() {
-        isShuffle = !isShuffle;
-        Toast.makeText(this, "Shuffle " + (isShuffle ? "ON" : "OFF"), Toast.LENGTH_SHORT).show();
+    private void onMetadataExtracted(List<Song> extracted) {
+        adapter.notifySongsChanged(extracted);
+        // Artists and albums become searchable once extracted; rebuild at most every few seconds
+        handler.removeCallbacks(reindexRunnable);
+        handler.postDelayed(reindexRunnable, REINDEX_DELAY_MS);
     }
 
-    private void toggleRepeat() {
-        repeatMode = (repeatMode + 1) % 3;
-        String text = (repeatMode == 0) ? "Repeat OFF" : (repeatMode == 1) ? "Repeat ONE" : "Repeat ALL";
-        Toast.makeText(this, text, Toast.LENGTH_SHORT).show();
+    private void setScanStatus(@Nullable String status) {
+        if (getSupportActionBar() != null) getSupportActionBar().setSubtitle(status);
     }
 
     @Override
@@ -266,18 +669,104 @@ public class MainActivity extends AppCompatActivity {
             pickFolder();
             return true;
         }
+        if (item.getItemId() == R.id.action_import_playlist) {
+            pickPlaylist();
+            return true;
+        }
+        if (item.getItemId() == R.id.action_find_duplicates) {
+            Toast.makeText(this, "Looking for duplicates...", Toast.LENGTH_SHORT).show();
+            duplicateDetector.find(new ArrayList<>(songs), this::onDuplicatesFound);
+            return true;
+        }
+        LibrarySort.Order order = sortOrderFor(item.getItemId());
+        if (order != null) {
+            item.setChecked(true);
+            if (order != sortOrder) {
+                sortOrder = order;
+                getSharedPreferences(PREFS, MODE_PRIVATE).edit().putString(KEY_SORT_ORDER, order.name()).apply();
+                submitSongs();
+                // Playback follows list order
+                publishLibrary();
+            }
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 
+    private LibrarySort.Order loadSortOrder() {
+        String name = getSharedPreferences(PREFS, MODE_PRIVATE).getString(KEY_SORT_ORDER, null);
+        if (name == null) return LibrarySort.Order.TITLE;
+        try {
+            return LibrarySort.Order.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return LibrarySort.Order.TITLE;
+        }
+    }
+
+    @Nullable
+    private static LibrarySort.Order sortOrderFor(int menuId) {
+        if (menuId == R.id.sort_title) return LibrarySort.Order.TITLE;
+        if (menuId == R.id.sort_artist) return LibrarySort.Order.ARTIST;
+        if (menuId == R.id.sort_album) return LibrarySort.Order.ALBUM;
+        if (menuId == R.id.sort_folder) return LibrarySort.Order.FOLDER;
+        return null;
+    }
+
+    private static int sortMenuId(LibrarySort.Order order) {
+        switch (order) {
+            case ARTIST: return R.id.sort_artist;
+            case ALBUM: return R.id.sort_album;
+            case FOLDER: return R.id.sort_folder;
+            default: return R.id.sort_title;
+        }
+    }
+
     private void pickFolder() {
         Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE);
         intent.addFlags(Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION | Intent.FLAG_GRANT_READ_URI_PERMISSION);
         startActivityForResult(intent, REQ_PICK_FOLDER);
     }
 
+    private void pickPlaylist() {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        // Providers disagree on playlist MIME types; the parser checks the content anyway
+        intent.setType("*/*");
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, PLAYLIST_MIME_TYPES);
+        startActivityForResult(intent, REQ_IMPORT_PLAYLIST);
+    }
+
+    private void onPlaylistImported(Uri playlist, TrackTable resolvedAgainst, @Nullable PlaylistImport.Result result) {
+        if (result == null) {
+            Toast.makeText(this, "Couldn't read the playlist", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        String text = "Imported " + result.rows.length + " of " + result.entries + " tracks";
+        if (result.unresolvedCount > 0) text += " (" + result.unresolvedCount + " not found)";
+        Toast.makeText(this, text, Toast.LENGTH_LONG).show();
+        for (PlaylistImport.Unresolved entry : result.unresolved) Log.d(TAG, "Not in library: " + entry);
+        if (result.rows.length > 0 && playlistListener != null) playlistListener.accept(resolvedAgainst, result.rows);
+    }
+
+    private void onDuplicatesFound(List<Song> scanned, DuplicateFinder.Result result) {
+        String text = result.groups.isEmpty() ? "No duplicates found"
+                : result.redundantCount() + " duplicate files in " + result.groups.size() + " sets";
+        text += String.format(Locale.US, "; read %.0f of %.0f MB", result.bytesRead / 1e6, result.totalBytes / 1e6);
+        Toast.makeText(this, text, Toast.LENGTH_LONG).show();
+        for (int[] group : result.groups) {
+            StringBuilder sb = new StringBuilder("Identical:");
+            for (int item : group) sb.append(' ').append(scanned.get(item).getDocumentId()).append(';');
+            Log.d(TAG, sb.toString());
+        }
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == REQ_IMPORT_PLAYLIST && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            playlistImporter.importPlaylist(data.getData(), library, this::onPlaylistImported);
+            return;
+        }
         if (requestCode == REQ_PICK_FOLDER && resultCode == RESULT_OK && data != null) {
             Uri treeUri = data.getData();
             if (treeUri != null) {
@@ -290,83 +779,4 @@ public class MainActivity extends AppCompatActivity {
             }
         }
     }
-    public class MainActivity extends AppCompatActivity implements ServiceConnection {
-
-        private static final int REQ_PICK_FOLDER = 1001;
-        private MusicService musicService;
-        private boolean isBound = false;
-        private final List<Song> songs = new ArrayList<>();
-        private SongsAdapter adapter;
-
-        private TextView txtTitle;
-        private ImageButton btnPlayPause;
-        private SeekBar seekBar;
-        private Handler handler = new Handler();
-
-        @Override
-        protected void onCreate(Bundle savedInstanceState) {
-            super.onCreate(savedInstanceState);
-            setContentView(R.layout.activity_main);
-            MaterialToolbar toolbar = findViewById(R.id.toolbar);
-            setSupportActionBar(toolbar);
-
-            recyclerSongs = findViewById(R.id.recyclerSongs);
-            txtTitle = findViewById(R.id.txtTitle);
-            btnPlayPause = findViewById(R.id.btnPlayPause);
-            seekBar = findViewById(R.id.seekBar);
-            adapter = new SongsAdapter(songs, position -> {
-                if (isBound) musicService.playSong(position);
-            });
-            recyclerSongs.setLayoutManager(new LinearLayoutManager(this));
-            recyclerSongs.setAdapter(adapter);
-            btnPlayPause.setOnClickListener(v -> {
-                if (isBound) {
-                    if (musicService.isPlaying()) musicService.pause();
-                    else musicService.resume();
-                }
-            });
-            findViewById(R.id.btnNext).setOnClickListener(v -> { if(isBound) musicService.playNext(); });
-            findViewById(R.id.btnPrev).setOnClickListener(v -> { if(isBound) musicService.playPrevious(); });
-            findViewById(R.id.btnShuffle).setOnClickListener(v -> { if(isBound) musicService.toggleShuffle(); });
-            findViewById(R.id.btnRepeat).setOnClickListener(v -> { if(isBound) musicService.toggleRepeat(); });
-            Intent intent = new Intent(this, MusicService.class);
-            startService(intent); // Keeps service alive even if activity dies
-            bindService(intent, this, Context.BIND_AUTO_CREATE);
-            loadSavedFolder();
-            handler.post(updateSeekRunnable);
-        }
-
-        @Override
-        public void onServiceConnected(ComponentName name, IBinder binder) {
-            MusicService.MusicBinder musicBinder = (MusicService.MusicBinder) binder;
-            musicService = musicBinder.getService();
-            isBound = true;
-            musicService.setSongs(songs);
-            musicService.setSongChangedListener((song, isPlaying) -> {
-                txtTitle.setText(song.getTitle());
-                btnPlayPause.setImageResource(isPlaying ? android.R.drawable.ic_media_pause : android.R.drawable.ic_media_play);
-            });
-
-            if (musicService.isPlaying() && musicService.getCurrentSong() != null) {
-                txtTitle.setText(musicService.getCurrentSong().getTitle());
-                btnPlayPause.setImageResource(android.R.drawable.ic_media_pause);
-            }
-        }
-
-        @Override
-        public void onServiceDisconnected(ComponentName name) {
-            isBound = false;
-        }
-
-        private Runnable updateSeekRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (isBound && musicService != null && musicService.isPlaying()) {
-                    seekBar.setMax(musicService.getDuration());
-                    seekBar.setProgress(musicService.getCurrentPosition());
-                }
-                handler.postDelayed(this, 1000);
-            }
-        };
-    }
 }
@@ -0,0 +1,100 @@
+package com.notdheeraj06.musicplayer;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.MediaDataSource;
+import android.media.MediaPlayer;
+import android.net.Uri;
+
+import java.io.IOException;
+
+/** {@link TrackPlayer} on a framework MediaPlayer; chaining is setNextMediaPlayer, so gapless only. */
+public class MediaTrackPlayer implements TrackPlayer {
+
+    private final MediaPlayer player = new MediaPlayer();
+    private Callback callback;
+
+    public MediaTrackPlayer() {
+        player.setAudioAttributes(new AudioAttributes.Builder()
+                .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                .setUsage(AudioAttributes.USAGE_MEDIA).build());
+        player.setOnPreparedListener(mp -> { if (callback != null) callback.onPrepared(this); });
+        player.setOnCompletionListener(mp -> { if (callback != null) callback.onCompletion(this); });
+        player.setOnSeekCompleteListener(mp -> { if (callback != null) callback.onSeekComplete(this); });
+        player.setOnErrorListener((mp, what, extra) -> callback != null && callback.onError(this, what, extra));
+        player.setOnInfoListener((mp, what, extra) -> {
+            if (what == MediaPlayer.MEDIA_INFO_STARTED_AS_NEXT && callback != null) callback.onStartedAsNext(this);
+            return false;
+        });
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    @Override
+    public void setDataSource(MediaDataSource source) {
+        player.setDataSource(source);
+    }
+
+    @Override
+    public void setDataSource(Context context, Uri uri) throws IOException {
+        player.setDataSource(context, uri);
+    }
+
+    @Override
+    public void prepareAsync() {
+        player.prepareAsync();
+    }
+
+    @Override
+    public void start() {
+        player.start();
+    }
+
+    @Override
+    public void pause() {
+        player.pause();
+    }
+
+    @Override
+    public void seekTo(int ms) {
+        player.seekTo(ms);
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return player.isPlaying();
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return player.getCurrentPosition();
+    }
+
+    @Override
+    public int getDuration() {
+        return player.getDuration();
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        player.setVolume(volume, volume);
+    }
+
+    @Override
+    public void setNext(TrackPlayer next) {
+        player.setNextMediaPlayer(next == null ? null : ((MediaTrackPlayer) next).player);
+    }
+
+    @Override
+    public void reset() {
+        player.reset();
+    }
+
+    @Override
+    public void release() {
+        player.release();
+    }
+}
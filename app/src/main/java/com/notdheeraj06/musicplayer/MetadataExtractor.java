@@ -0,0 +1,195 @@
+package com.notdheeraj06.musicplayer;
+
+import android.content.Context;
+import android.media.MediaMetadataRetriever;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+
+import com.notdheeraj06.musicplayer.core.SongMetadata;
+import com.notdheeraj06.musicplayer.core.TagReader;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fills in {@link SongMetadata} for songs that don't have it yet on a fixed pool of worker
+ * threads, using {@link TagReader} and falling back to MediaMetadataRetriever. Rows that are
+ * on screen are taken first; results are saved to the {@link LibraryIndex} in batches and
+ * handed to the UI in batches so it can update just those rows.
+ */
+public class MetadataExtractor {
+
+    /** Called on the main thread with songs whose metadata was just filled in. */
+    public interface Callback {
+        void onExtracted(List<Song> songs);
+    }
+
+    private static final int SAVE_BATCH = 64;
+    private static final long DELIVER_DELAY_MS = 100;
+
+    private final Context context;
+    private final LibraryIndex index;
+    private final Callback callback;
+    private final ExecutorService workers;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<String, Song> queue = new LinkedHashMap<>();
+    private final ArrayDeque<Song> visible = new ArrayDeque<>();
+    private final List<Song> unsaved = new ArrayList<>();
+    private final List<Song> undelivered = new ArrayList<>();
+    private boolean deliveryScheduled;
+    private boolean shutdown;
+
+    public MetadataExtractor(Context context, LibraryIndex index, Callback callback) {
+        this.context = context.getApplicationContext();
+        this.index = index;
+        this.callback = callback;
+        // Leave a core for the UI thread
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        workers = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) workers.execute(this::workLoop);
+    }
+
+    public void enqueue(Collection<Song> songs) {
+        synchronized (lock) {
+            for (Song song : songs) {
+                if (song.getMetadata() == null && song.getDocumentId() != null) queue.put(song.getDocumentId(), song);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /** Moves the given (on-screen) songs to the front of the queue, replacing the previous set. */
+    public void prioritize(List<Song> onScreen) {
+        synchronized (lock) {
+            visible.clear();
+            for (Song song : onScreen) {
+                if (song.getDocumentId() != null && queue.containsKey(song.getDocumentId())) visible.add(song);
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (lock) {
+            queue.clear();
+            visible.clear();
+        }
+    }
+
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            queue.clear();
+            visible.clear();
+            lock.notifyAll();
+        }
+        workers.shutdownNow();
+        flushSaves();
+    }
+
+    private Song take() throws InterruptedException {
+        synchronized (lock) {
+            while (!shutdown) {
+                Song song;
+                while ((song = visible.poll()) != null) {
+                    if (queue.remove(song.getDocumentId()) != null) return song;
+                }
+                Iterator<Song> it = queue.values().iterator();
+                if (it.hasNext()) {
+                    song = it.next();
+                    it.remove();
+                    return song;
+                }
+                lock.wait();
+            }
+            return null;
+        }
+    }
+
+    private void workLoop() {
+        try {
+            Song song;
+            while ((song = take()) != null) {
+                song.setMetadata(extract(song));
+                onExtracted(song);
+            }
+        } catch (InterruptedException ignored) { }
+    }
+
+    private SongMetadata extract(Song song) {
+        try (ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(song.getUri(), "r");
+             FileInputStream in = new FileInputStream(pfd.getFileDescriptor())) {
+            SongMetadata metadata = TagReader.read(in.getChannel());
+            if (metadata != null) return metadata;
+        } catch (IOException | RuntimeException e) {
+            // Pipe-backed or otherwise unseekable descriptor; let the platform retriever try
+        }
+        return extractWithRetriever(song);
+    }
+
+    private SongMetadata extractWithRetriever(Song song) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(context, song.getUri());
+            return new SongMetadata(
+                    retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ARTIST),
+                    retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ALBUM),
+                    TagReader.parseLeadingInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_CD_TRACK_NUMBER)),
+                    TagReader.parseLeadingInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION)),
+                    TagReader.parseLeadingInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_BITRATE)),
+                    retriever.getEmbeddedPicture() != null);
+        } catch (RuntimeException e) {
+            // Unreadable or unsupported file: cache an empty result so it isn't retried every launch
+            return new SongMetadata(null, null, 0, 0, 0, false);
+        } finally {
+            try {
+                retriever.release();
+            } catch (IOException ignored) { }
+        }
+    }
+
+    private void onExtracted(Song song) {
+        boolean flush;
+        synchronized (lock) {
+            unsaved.add(song);
+            undelivered.add(song);
+            flush = unsaved.size() >= SAVE_BATCH || queue.isEmpty();
+            if (!deliveryScheduled) {
+                deliveryScheduled = true;
+                mainHandler.postDelayed(this::deliver, DELIVER_DELAY_MS);
+            }
+        }
+        if (flush) flushSaves();
+    }
+
+    private void flushSaves() {
+        List<Song> batch;
+        synchronized (lock) {
+            if (unsaved.isEmpty()) return;
+            batch = new ArrayList<>(unsaved);
+            unsaved.clear();
+        }
+        index.saveMetadata(batch);
+    }
+
+    private void deliver() {
+        List<Song> batch;
+        synchronized (lock) {
+            deliveryScheduled = false;
+            if (shutdown || undelivered.isEmpty()) return;
+            batch = new ArrayList<>(undelivered);
+            undelivered.clear();
+        }
+        callback.onExtracted(batch);
+    }
+}
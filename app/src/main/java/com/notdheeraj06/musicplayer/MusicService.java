@@ -1,45 +1,46 @@
 package com.notdheeraj06.musicplayer;
 
-import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Intent;
-import android.media.AudioAttributes;
-import android.media.MediaPlayer;
+import android.net.Uri;
 import android.os.Binder;
-import android.os.Build;
 import android.os.IBinder;
+import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.session.MediaSessionCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+import android.util.Log;
 
 import androidx.annotation.Nullable;
-import androidx.core.app.NotificationCompat;
 
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import com.notdheeraj06.musicplayer.core.Metrics;
+import com.notdheeraj06.musicplayer.core.PlayQueue;
+import com.notdheeraj06.musicplayer.core.PlayStats;
+import com.notdheeraj06.musicplayer.core.TrackTable;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 
 public class MusicService extends Service {
 
+    private static final String TAG = "MusicService";
+
     public static final String ACTION_PLAY = "ACTION_PLAY";
     public static final String ACTION_PAUSE = "ACTION_PAUSE";
     public static final String ACTION_NEXT = "ACTION_NEXT";
     public static final String ACTION_PREV = "ACTION_PREV";
 
-    private static final String CHANNEL_ID = "MusicChannel";
-    private static final int NOTIFICATION_ID = 1;
+    private static final long SESSION_ACTIONS = PlaybackStateCompat.ACTION_PLAY | PlaybackStateCompat.ACTION_PAUSE
+            | PlaybackStateCompat.ACTION_PLAY_PAUSE | PlaybackStateCompat.ACTION_SKIP_TO_NEXT
+            | PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS | PlaybackStateCompat.ACTION_SEEK_TO;
 
-    private MediaPlayer mediaPlayer;
-    private final List<Song> songs = new ArrayList<>();
-    private int currentIndex = -1;
-    private boolean isShuffle = false;
-    private int repeatMode = 0; // 0=off, 1=one, 2=all
+    private PlaybackController playback;
 
     private MediaSessionCompat mediaSession;
     private final IBinder binder = new MusicBinder();
     private OnSongChangedListener songChangedListener;
+    private PlaybackNotification notification;
+    private Song sessionSong;
+    private int sessionDurationMs = -1;
 
     public interface OnSongChangedListener {
         void onSongChanged(Song song, boolean isPlaying);
@@ -55,7 +56,31 @@ public class MusicService extends Service {
     public void onCreate() {
         super.onCreate();
         mediaSession = new MediaSessionCompat(this, "MusicService");
-        createNotificationChannel();
+        notification = new PlaybackNotification(this, mediaSession.getSessionToken());
+        playback = new PlaybackController(this, (song, state, playWhenReady, positionMs, durationMs, updatedAt) -> {
+            publishSessionState(song, state, positionMs, durationMs, updatedAt);
+            notification.update(song, playWhenReady);
+            if (songChangedListener != null) songChangedListener.onSongChanged(song, playWhenReady);
+        });
+        // Transport controls from the lock screen, Bluetooth and headsets; play/pause toggling
+        // of media buttons is resolved against the published state before reaching these
+        mediaSession.setCallback(new MediaSessionCompat.Callback() {
+            @Override
+            public void onPlay() { resume(); }
+
+            @Override
+            public void onPause() { pause(); }
+
+            @Override
+            public void onSkipToNext() { playNext(); }
+
+            @Override
+            public void onSkipToPrevious() { playPrevious(); }
+
+            @Override
+            public void onSeekTo(long pos) { seekTo((int) pos); }
+        });
+        mediaSession.setActive(true);
     }
 
     @Override
@@ -63,10 +88,10 @@ public class MusicService extends Service {
         if (intent != null && intent.getAction() != null) {
             switch (intent.getAction()) {
                 case ACTION_PLAY:
-                    if (mediaPlayer != null && !mediaPlayer.isPlaying()) playSong(currentIndex);
+                    resume();
                     break;
                 case ACTION_PAUSE:
-                    if (mediaPlayer != null && mediaPlayer.isPlaying()) pause();
+                    pause();
                     break;
                 case ACTION_NEXT:
                     playNext();
@@ -88,148 +113,114 @@ public class MusicService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (mediaPlayer != null) {
-            mediaPlayer.release();
-            mediaPlayer = null;
-        }
+        playback.release();
+        notification.cancel();
+        Log.d(TAG, "Notifications " + notification.getStats());
         mediaSession.release();
     }
 
-    public void setSongs(List<Song> newSongs) {
-        songs.clear();
-        songs.addAll(newSongs);
-    }
-
-    public void setSongChangedListener(OnSongChangedListener listener) {
-        this.songChangedListener = listener;
-    }
-
-    public void playSong(int index) {
-        if (songs.isEmpty()) return;
-        if (index < 0) index = 0;
-        if (index >= songs.size()) index = 0;
-
-        currentIndex = index;
-        Song song = songs.get(currentIndex);
-
-        if (mediaPlayer != null) {
-            mediaPlayer.reset();
-        } else {
-            mediaPlayer = new MediaPlayer();
-            mediaPlayer.setAudioAttributes(new AudioAttributes.Builder()
-                    .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-                    .setUsage(AudioAttributes.USAGE_MEDIA).build());
-        }
-
-        try {
-            mediaPlayer.setDataSource(getApplicationContext(), song.getUri());
-            mediaPlayer.prepare();
-            mediaPlayer.start();
-            mediaPlayer.setOnCompletionListener(mp -> onSongCompleted());
-
-            showNotification(song, true);
-            if (songChangedListener != null) songChangedListener.onSongChanged(song, true);
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    public void pause() {
-        if (mediaPlayer != null && mediaPlayer.isPlaying()) {
-            mediaPlayer.pause();
-            showNotification(songs.get(currentIndex), false);
-            if (songChangedListener != null) songChangedListener.onSongChanged(songs.get(currentIndex), false);
-        }
+    /** adb shell dumpsys activity service com.notdheeraj06.musicplayer/.MusicService */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println("Playback: " + playback.getState() + ", gapless=" + playback.isGapless()
+                + ", readAhead=" + playback.isReadAhead() + ", codecEngine=" + playback.isCodecEngine()
+                + ", last gap " + playback.getLastTransitionGapMs() + " ms, last command latency "
+                + playback.getLastCommandLatencyMs() + " ms");
+        PlayQueue queue = playback.getQueue();
+        writer.println("Queue: " + queue.size() + " entries in " + queue.runCount() + " runs, version " + queue.version());
+        String engine = playback.getEngineStats();
+        if (engine != null) writer.println("Codec engine: " + engine);
+        writer.println("History: " + playback.getHistory().getStats());
+        writer.println("Loudness: " + playback.getLoudness().getStats());
+        writer.println("Notifications: " + notification.getStats());
+        writer.println("Art cache: " + ArtCache.get(this).getStats());
+        writer.println("Metrics:");
+        Metrics.dump(writer);
     }
 
-    public void resume() {
-        if (mediaPlayer != null && !mediaPlayer.isPlaying()) {
-            mediaPlayer.start();
-            showNotification(songs.get(currentIndex), true);
-            if (songChangedListener != null) songChangedListener.onSongChanged(songs.get(currentIndex), true);
-        }
+    /** {@code library} is shared with the caller, not copied; rows are documents of {@code treeUri}. */
+    public void setLibrary(TrackTable library, Uri treeUri) {
+        playback.setLibrary(library, treeUri);
     }
 
-    public void playNext() {
-        if (songs.isEmpty()) return;
-        int nextIndex = currentIndex + 1;
-        if (isShuffle) nextIndex = new Random().nextInt(songs.size());
-        if (nextIndex >= songs.size()) nextIndex = 0;
-        playSong(nextIndex);
+    /** Playback state and position are published here; controllers extrapolate position from it. */
+    public MediaSessionCompat.Token getSessionToken() {
+        return mediaSession.getSessionToken();
     }
 
-    public void playPrevious() {
-        if (songs.isEmpty()) return;
-        int prevIndex = currentIndex - 1;
-        if (isShuffle) prevIndex = new Random().nextInt(songs.size());
-        if (prevIndex < 0) prevIndex = songs.size() - 1;
-        playSong(prevIndex);
+    public void setSongChangedListener(OnSongChangedListener listener) {
+        this.songChangedListener = listener;
     }
 
-    private void onSongCompleted() {
-        if (repeatMode == 1) { // Repeat One
-            playSong(currentIndex);
-        } else {
-            playNext();
+    public void playSong(int index) { playback.play(index); }
+    /** Queues {@code rows} of {@code library} in order (an imported playlist) and plays from {@code position}. */
+    public void playRows(TrackTable library, int[] rows, int position) { playback.playRows(library, rows, position); }
+    public void pause() { playback.pause(); }
+    public void resume() { playback.resume(); }
+    public void playNext() { playback.next(); }
+    public void playPrevious() { playback.previous(); }
+    public void seekTo(int ms) { playback.seekTo(ms); }
+
+    public boolean isPlaying() { return playback.isPlaying(); }
+    public int getCurrentPosition() { return playback.getCurrentPosition(); }
+    public int getDuration() { return playback.getDuration(); }
+    public Song getCurrentSong() { return playback.getCurrentSong(); }
+
+    /** "Play next" when {@code next}, otherwise "add to queue"; {@code row} is a library row. */
+    public void enqueue(int row, boolean next) { playback.enqueue(row, next); }
+    public void moveQueueEntry(int from, int to) { playback.moveQueueEntry(from, to); }
+    public void removeQueueEntry(int position) { playback.removeQueueEntry(position); }
+    /** Immutable snapshot; safe to keep and read on any thread. */
+    public PlayQueue getQueue() { return playback.getQueue(); }
+
+    /** Top tracks by plays, recency or skip rate; keys are {@link PlayStats#trackKey} of document ids. */
+    public void queryHistory(PlayStats.Ranking ranking, int n, ListeningHistory.Callback callback) {
+        playback.getHistory().top(ranking, n, callback);
+    }
+
+    public void toggleShuffle() { playback.toggleShuffle(); }
+    public void toggleRepeat() { playback.toggleRepeat(); }
+    public boolean isGapless() { return playback.isGapless(); }
+    public void setGapless(boolean enabled) { playback.setGapless(enabled); }
+    public boolean isReadAhead() { return playback.isReadAhead(); }
+    public void setReadAhead(boolean enabled) { playback.setReadAhead(enabled); }
+    public boolean isCodecEngine() { return playback.isCodecEngine(); }
+    public void setCodecEngine(boolean enabled) { playback.setCodecEngine(enabled); }
+    /** Share of wall time background loudness analysis may use while nothing is playing, in (0, 1]. */
+    public void setLoudnessCpuBudget(float budget) { playback.getLoudness().setCpuBudget(budget); }
+    public int getCrossfadeMs() { return playback.getCrossfadeMs(); }
+    public void setCrossfadeMs(int ms) { playback.setCrossfadeMs(ms); }
+    public long getLastTransitionGapMs() { return playback.getLastTransitionGapMs(); }
+    public long getNotificationsRequested() { return notification.getRequestedCount(); }
+    public long getNotificationsPosted() { return notification.getPostedCount(); }
+
+    private void publishSessionState(Song song, PlaybackController.State state, int positionMs, int durationMs, long updatedAt) {
+        if (song != sessionSong || durationMs != sessionDurationMs) {
+            sessionSong = song;
+            sessionDurationMs = durationMs;
+            MediaMetadataCompat.Builder metadata = new MediaMetadataCompat.Builder()
+                    .putString(MediaMetadataCompat.METADATA_KEY_TITLE, song.getTitle())
+                    .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, durationMs);
+            if (song.getMetadata() != null) {
+                metadata.putString(MediaMetadataCompat.METADATA_KEY_ARTIST, song.getMetadata().getArtist())
+                        .putString(MediaMetadataCompat.METADATA_KEY_ALBUM, song.getMetadata().getAlbum());
+            }
+            mediaSession.setMetadata(metadata.build());
         }
-    }
-
-    public boolean isPlaying() {
-        return mediaPlayer != null && mediaPlayer.isPlaying();
-    }
-
-    public int getCurrentPosition() {
-        return mediaPlayer != null ? mediaPlayer.getCurrentPosition() : 0;
-    }
-
-    public int getDuration() {
-        return mediaPlayer != null ? mediaPlayer.getDuration() : 0;
-    }
-
-    public void toggleShuffle() { isShuffle = !isShuffle; }
-    public void toggleRepeat() { repeatMode = (repeatMode + 1) % 3; }
-    public Song getCurrentSong() { return (currentIndex >= 0 && currentIndex < songs.size()) ? songs.get(currentIndex) : null; }
-
-    private void showNotification(Song song, boolean isPlaying) {
-        Intent intent = new Intent(this, MainActivity.class);
-        PendingIntent contentIntent = PendingIntent.getActivity(this, 0, intent, PendingIntent.FLAG_IMMUTABLE);
-
-        Intent prevIntent = new Intent(this, MusicService.class).setAction(ACTION_PREV);
-        PendingIntent prevPending = PendingIntent.getService(this, 0, prevIntent, PendingIntent.FLAG_IMMUTABLE);
-
-        Intent playIntent = new Intent(this, MusicService.class).setAction(isPlaying ? ACTION_PAUSE : ACTION_PLAY);
-        PendingIntent playPending = PendingIntent.getService(this, 1, playIntent, PendingIntent.FLAG_IMMUTABLE);
-
-        Intent nextIntent = new Intent(this, MusicService.class).setAction(ACTION_NEXT);
-        PendingIntent nextPending = PendingIntent.getService(this, 2, nextIntent, PendingIntent.FLAG_IMMUTABLE);
-
-        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setSmallIcon(R.drawable.ic_launcher_foreground) // Replace with a music note icon if you have one
-                .setContentTitle(song.getTitle())
-                .setContentText("Playing Music")
-                .setLargeIcon(null) // Add album art bitmap here if you parse it
-                .setContentIntent(contentIntent)
-                .setStyle(new androidx.media.app.NotificationCompat.MediaStyle()
-                        .setMediaSession(mediaSession.getSessionToken())
-                        .setShowActionsInCompactView(0, 1, 2)) // Indexes of buttons to show in collapsed view
-                .addAction(android.R.drawable.ic_media_previous, "Previous", prevPending)
-                .addAction(isPlaying ? android.R.drawable.ic_media_pause : android.R.drawable.ic_media_play, isPlaying ? "Pause" : "Play", playPending)
-                .addAction(android.R.drawable.ic_media_next, "Next", nextPending)
-                .setPriority(NotificationCompat.PRIORITY_LOW)
-                .setOnlyAlertOnce(true) // Don't vibrate on update
-                .setOngoing(isPlaying) // Persistent when playing
-                .build();
-
-        startForeground(NOTIFICATION_ID, notification);
-    }
 
-    private void createNotificationChannel() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Music Player", NotificationManager.IMPORTANCE_LOW);
-            channel.setDescription("Controls for music playback");
-            NotificationManager manager = getSystemService(NotificationManager.class);
-            if (manager != null) manager.createNotificationChannel(channel);
+        int sessionState;
+        switch (state) {
+            case STARTED: sessionState = PlaybackStateCompat.STATE_PLAYING; break;
+            case PREPARING: sessionState = PlaybackStateCompat.STATE_BUFFERING; break;
+            case PREPARED:
+            case PAUSED: sessionState = PlaybackStateCompat.STATE_PAUSED; break;
+            case ERROR: sessionState = PlaybackStateCompat.STATE_ERROR; break;
+            default: sessionState = PlaybackStateCompat.STATE_STOPPED; break;
         }
+        float speed = state == PlaybackController.State.STARTED ? 1f : 0f;
+        mediaSession.setPlaybackState(new PlaybackStateCompat.Builder()
+                .setActions(SESSION_ACTIONS)
+                .setState(sessionState, positionMs, speed, updatedAt)
+                .build());
     }
 }
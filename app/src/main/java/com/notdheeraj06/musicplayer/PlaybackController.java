@@ -0,0 +1,938 @@
+package com.notdheeraj06.musicplayer;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import com.notdheeraj06.musicplayer.core.ListeningLog;
+import com.notdheeraj06.musicplayer.core.Metrics;
+import com.notdheeraj06.musicplayer.core.PlayQueue;
+import com.notdheeraj06.musicplayer.core.QueueNavigator;
+import com.notdheeraj06.musicplayer.core.SessionSnapshot;
+import com.notdheeraj06.musicplayer.core.ShuffleOrder;
+import com.notdheeraj06.musicplayer.core.TrackTable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Owns the play queue and the track players on a single playback thread. Every public command is
+ * posted to that thread, so callers never block on a prepare. Tracks are prepared with
+ * prepareAsync; skips and seeks that arrive while a prepare or seek is in flight are folded into
+ * one pending target so only the last one is actually prepared.
+ */
+public class PlaybackController {
+
+    public enum State { IDLE, PREPARING, PREPARED, STARTED, PAUSED, ERROR }
+
+    /**
+     * Called on the main thread whenever the current track, the player state or the position
+     * base changes (seeks). While playing, position advances from {@code positionMs} at
+     * {@code positionUpdatedAt} (elapsedRealtime) in real time, so callers can extrapolate it
+     * instead of polling.
+     */
+    public interface Listener {
+        void onPlaybackChanged(Song song, State state, boolean playWhenReady, int positionMs, int durationMs, long positionUpdatedAt);
+    }
+
+    private static final String TAG = "PlaybackController";
+
+    private static final Metrics.Histogram PREPARE_MS = Metrics.histogram("playback.prepare_ms");
+    private static final Metrics.Histogram TAP_TO_AUDIO_MS = Metrics.histogram("playback.tap_to_audio_ms");
+    private static final Metrics.Histogram TRACK_GAP_MS = Metrics.histogram("playback.track_gap_ms");
+    private static final Metrics.Counter TRACKS_PREPARED = Metrics.counter("playback.tracks_prepared");
+    private static final Metrics.Counter COMMANDS_COALESCED = Metrics.counter("playback.commands_coalesced");
+    private static final Metrics.Counter ERRORS = Metrics.counter("playback.errors");
+    private static final Metrics.Histogram COLD_START_RESUMABLE_MS = Metrics.histogram("playback.cold_start_resumable_ms");
+
+    // Session checkpoints: right away on track changes and pauses, otherwise debounced by position
+    private static final long CHECKPOINT_DEBOUNCE_MS = 1000;
+    private static final long CHECKPOINT_PLAYING_MS = 10_000;
+
+    private final Context context;
+    private final Listener listener;
+    private final HandlerThread thread = new HandlerThread("Playback");
+    private final Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+    private final ExecutorService persistExecutor = Executors.newSingleThreadExecutor();
+    private final File shuffleFile;
+    private final File sessionFile;
+    private final Runnable checkpointRunnable = this::checkpoint;
+    private final ListeningHistory history;
+    private final LoudnessAnalyzer loudness;
+    // Null in the app, which picks MediaTrackPlayer or CodecTrackPlayer per codecEngine
+    private final Supplier<TrackPlayer> players;
+
+    // Confined to the playback thread. The queue indexes into the activity's library snapshot,
+    // shared rather than copied; only the current and next tracks are materialized as Songs.
+    // Indexes below (currentIndex, pendingIndex, nextIndex) are queue positions.
+    private Uri treeUri;
+    // Until it is edited the queue is the library in list order, and is rebuilt when that changes
+    private boolean followsLibrary = true;
+    // The playing entry by identity; currentIndex is only where it was last seen
+    private long currentEntry = -1;
+    // Restored at startup and prepared before the library arrives; its queue is adopted with the library
+    private SessionSnapshot restoredSession;
+    private boolean restorePending;
+    private final QueueNavigator queue = new QueueNavigator(random);
+    private long libraryFingerprint;
+    private boolean shuffleRestoreChecked;
+    private TrackPlayer player;
+    private boolean playWhenPrepared;
+    private int pendingIndex = -1;
+    private int pendingSeekMs = -1;
+    private boolean seeking;
+    private long commandAt = -1;
+    private long prepareStartedAt = -1;
+
+    // Gapless: the following queue entry is prepared on a second player and chained with setNext
+    private boolean gapless = true;
+    // Read through DocumentDataSource (mmap or read-ahead) instead of handing the player the Uri
+    private boolean readAhead;
+    // MediaCodec/AudioTrack engine instead of MediaPlayer; its output is created on first use
+    private boolean codecEngine;
+    private int crossfadeMs;
+    private volatile AudioOutput audioOutput;
+    private TrackPlayer nextPlayer;
+    private int nextIndex = -1;
+    private long trackEndedAt = -1;
+    private long nextStartedAt = -1;
+
+    // Snapshot readable from any thread
+    private volatile PlayQueue playQueue = PlayQueue.empty();
+    private volatile State state = State.IDLE;
+    private volatile int currentIndex = -1;
+    private volatile Song currentSong;
+    private volatile int durationMs;
+    private volatile int positionMs;
+    private volatile long positionUpdatedAt;
+    private volatile long lastCommandLatencyMs = -1;
+    private volatile long lastTransitionGapMs = -1;
+
+    public PlaybackController(Context context, Listener listener) {
+        this(context, listener, context.getApplicationContext().getFilesDir(), null);
+    }
+
+    /** Saves its state in {@code stateDir} and plays on players from {@code players}, so tests can script them. */
+    PlaybackController(Context context, Listener listener, File stateDir, Supplier<TrackPlayer> players) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+        this.players = players;
+        shuffleFile = new File(stateDir, "shuffle_order.bin");
+        sessionFile = new File(stateDir, "session.bin");
+        history = new ListeningHistory(this.context);
+        loudness = new LoudnessAnalyzer(this.context);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        // First in the queue, so a play command sent with the start resumes the restored track
+        handler.post(this::restoreSession);
+    }
+
+    // region Commands
+
+    /** O(1) for the caller; {@code table} is kept, not copied. */
+    public void setLibrary(TrackTable table, Uri tree) {
+        loudness.setLibrary(table, tree);
+        handler.post(() -> {
+            TrackTable library = playQueue.library();
+            boolean sameRows = table.size() == library.size() && table.fingerprint() == library.fingerprint();
+            // Same rows from the same tree: typically a snapshot with freshly extracted tags
+            boolean unchanged = sameRows && Objects.equals(tree, treeUri) && shuffleRestoreChecked && restoredSession == null;
+            if (sameRows) {
+                playQueue = playQueue.withLibrary(table);
+            } else {
+                // Old row -> new row, so the queue, the shuffle order and the current track follow the change
+                int[] oldToNewRow = new int[library.size()];
+                for (int i = 0; i < oldToNewRow.length; i++) oldToNewRow[i] = table.indexOf(library.documentId(i));
+                int[] oldToNew;
+                if (followsLibrary) {
+                    oldToNew = oldToNewRow;
+                    playQueue = PlayQueue.of(table);
+                } else {
+                    oldToNew = new int[playQueue.size()];
+                    playQueue = playQueue.remap(table, oldToNewRow, oldToNew);
+                }
+                if (currentIndex >= 0 && currentIndex < oldToNew.length) currentIndex = oldToNew[currentIndex];
+                currentEntry = currentIndex >= 0 ? playQueue.idAt(currentIndex) : -1;
+                if (pendingIndex >= 0 && pendingIndex < oldToNew.length) {
+                    pendingIndex = oldToNew[pendingIndex];
+                    // The requested track was deleted while preparing; let the in-flight prepare stand
+                    if (pendingIndex < 0) pendingIndex = -1;
+                }
+                queue.remap(oldToNew, playQueue.size());
+            }
+            treeUri = tree;
+            libraryFingerprint = table.fingerprint();
+            if (restoredSession != null && !table.isEmpty()) adoptRestoredSession(table, tree);
+            if (currentSong != null && currentSong.getMetadata() == null
+                    && currentIndex >= 0 && table.hasMetadata(playQueue.rowAt(currentIndex))) {
+                // Tags were extracted since the current song was materialized
+                currentSong = songAt(currentIndex);
+                publish();
+            }
+            // The queue, the shuffle order and every Uri are as before: the next player stays
+            // prepared for the gapless handoff, and there is nothing new to persist
+            if (unchanged) return;
+            if (!shuffleRestoreChecked) {
+                // An empty snapshot (before the index loads) can't match the saved order; wait for
+                // the first real one rather than overwriting the file with an empty order
+                if (!table.isEmpty()) {
+                    shuffleRestoreChecked = true;
+                    restoreShuffle();
+                }
+            } else {
+                persistShuffle();
+            }
+            prepareNext();
+        });
+    }
+
+    /** Plays library row {@code row}; an edited queue is replaced by the library again. */
+    public void play(int row) {
+        // Timestamped on the caller's thread so tap-to-audio includes the hop to the playback thread
+        final long at = SystemClock.elapsedRealtime();
+        handler.post(() -> {
+            TrackTable library = playQueue.library();
+            if (library.isEmpty()) return;
+            int target = row < 0 || row >= library.size() ? 0 : row;
+            if (!followsLibrary) {
+                followsLibrary = true;
+                playQueue = PlayQueue.of(library);
+                queue.reset(library.size(), target);
+            }
+            if (queue.isShuffleEnabled()) {
+                queue.jumpTo(target);
+                persistShuffle();
+            }
+            requestTrack(target, at);
+        });
+    }
+
+    /**
+     * Replaces the queue with rows of {@code table} (an imported playlist) and plays from
+     * {@code position}. Rows are carried over by document id if the library has changed since.
+     */
+    public void playRows(TrackTable table, int[] rows, int position) {
+        final long at = SystemClock.elapsedRealtime();
+        handler.post(() -> {
+            TrackTable library = playQueue.library();
+            int[] mapped = rows;
+            if (table.size() != library.size() || table.fingerprint() != library.fingerprint()) {
+                mapped = new int[rows.length];
+                int count = 0;
+                for (int row : rows) {
+                    int now = library.indexOf(table.documentId(row));
+                    if (now >= 0) mapped[count++] = now;
+                }
+                mapped = Arrays.copyOf(mapped, count);
+            }
+            PlayQueue imported = PlayQueue.ofRows(library, mapped);
+            if (imported == null || imported.isEmpty()) return;
+            int target = position < 0 || position >= imported.size() ? 0 : position;
+            playQueue = imported;
+            followsLibrary = false;
+            queue.reset(imported.size(), target);
+            if (queue.isShuffleEnabled()) {
+                queue.jumpTo(target);
+                persistShuffle();
+            }
+            requestTrack(target, at);
+            scheduleCheckpoint(0);
+        });
+    }
+
+    public void next() {
+        final long at = SystemClock.elapsedRealtime();
+        handler.post(() -> skip(true, at));
+    }
+
+    public void previous() {
+        final long at = SystemClock.elapsedRealtime();
+        handler.post(() -> skip(false, at));
+    }
+
+    public void pause() {
+        handler.post(() -> {
+            if (state == State.PREPARING) {
+                playWhenPrepared = false;
+                publish();
+            } else if (state == State.STARTED) {
+                player.pause();
+                capturePosition();
+                setState(State.PAUSED);
+                scheduleCheckpoint(0);
+            }
+        });
+    }
+
+    public void resume() {
+        final long at = SystemClock.elapsedRealtime();
+        handler.post(() -> {
+            switch (state) {
+                case PREPARING:
+                    playWhenPrepared = true;
+                    publish();
+                    break;
+                case PREPARED:
+                case PAUSED:
+                    startPlayer();
+                    break;
+                case IDLE:
+                case ERROR:
+                    if (!playQueue.isEmpty()) requestTrack(Math.max(0, Math.min(currentIndex, playQueue.size() - 1)), at);
+                    break;
+                default:
+                    break;
+            }
+        });
+    }
+
+    public void seekTo(int ms) {
+        handler.post(() -> {
+            positionMs = ms;
+            positionUpdatedAt = SystemClock.elapsedRealtime();
+            publish();
+            scheduleCheckpoint(CHECKPOINT_DEBOUNCE_MS);
+            if (state == State.PREPARING || seeking) {
+                pendingSeekMs = ms;
+            } else if (state == State.PREPARED || state == State.STARTED || state == State.PAUSED) {
+                seeking = true;
+                player.seekTo(ms);
+            }
+        });
+    }
+
+    /** Queues library {@code row} right after the current entry, or at the end of the queue. */
+    public void enqueue(int row, boolean next) {
+        handler.post(() -> {
+            if (row < 0 || row >= playQueue.library().size()) return;
+            int position = next && currentIndex >= 0 ? currentIndex + 1 : playQueue.size();
+            editQueue(playQueue.insert(position, row), -1, position, next);
+        });
+    }
+
+    /** Moves the queue entry at {@code from} to {@code to}; the current track keeps playing. */
+    public void moveQueueEntry(int from, int to) {
+        handler.post(() -> {
+            int size = playQueue.size();
+            if (from < 0 || from >= size || to < 0 || to >= size || from == to) return;
+            editQueue(playQueue.move(from, to), from, to, false);
+        });
+    }
+
+    /** Removes a queue entry other than the one playing or being prepared. */
+    public void removeQueueEntry(int position) {
+        handler.post(() -> {
+            if (position < 0 || position >= playQueue.size()) return;
+            if (position == currentIndex || position == pendingIndex) return;
+            editQueue(playQueue.remove(position), position, -1, false);
+        });
+    }
+
+    public void toggleShuffle() {
+        handler.post(() -> {
+            queue.setShuffleEnabled(!queue.isShuffleEnabled(), currentIndex);
+            persistShuffle();
+            prepareNext();
+        });
+    }
+
+    public void toggleRepeat() {
+        handler.post(() -> {
+            queue.cycleRepeatMode();
+            prepareNext();
+            scheduleCheckpoint(CHECKPOINT_DEBOUNCE_MS);
+        });
+    }
+
+    public void setGapless(boolean enabled) {
+        handler.post(() -> { gapless = enabled; prepareNext(); });
+    }
+
+    /** Takes effect from the next track prepared. */
+    public void setReadAhead(boolean enabled) {
+        handler.post(() -> readAhead = enabled);
+    }
+
+    /** Switches between MediaPlayer and the codec engine; takes effect from the next track prepared. */
+    public void setCodecEngine(boolean enabled) {
+        handler.post(() -> {
+            codecEngine = enabled;
+            prepareNext();
+        });
+    }
+
+    /** Crossfade between consecutive tracks; only the codec engine fades, MediaPlayer stays gapless. */
+    public void setCrossfadeMs(int ms) {
+        handler.post(() -> {
+            crossfadeMs = Math.max(0, ms);
+            if (audioOutput != null) audioOutput.setCrossfadeMs(crossfadeMs);
+        });
+    }
+
+    /** Runs {@code task} on the playback thread after every command sent before it. */
+    void post(Runnable task) {
+        handler.post(task);
+    }
+
+    public void release() {
+        handler.post(() -> {
+            checkpoint();
+            handler.removeCallbacks(checkpointRunnable);
+            releaseNextPlayer();
+            if (player != null) {
+                player.release();
+                player = null;
+            }
+            if (audioOutput != null) {
+                audioOutput.release();
+                audioOutput = null;
+            }
+            state = State.IDLE;
+            // After the last checkpoint has been queued
+            persistExecutor.shutdown();
+            history.release();
+            loudness.release();
+        });
+        thread.quitSafely();
+    }
+
+    // endregion
+
+    // region Snapshot
+
+    public State getState() { return state; }
+    /** Immutable; together with its library() it can be read on any thread. */
+    public PlayQueue getQueue() { return playQueue; }
+    public boolean isPlaying() { return state == State.STARTED; }
+    public Song getCurrentSong() { return currentSong; }
+    public int getDuration() { return durationMs; }
+    public boolean isGapless() { return gapless; }
+    public boolean isReadAhead() { return readAhead; }
+    public boolean isCodecEngine() { return codecEngine; }
+    public int getCrossfadeMs() { return crossfadeMs; }
+    /** Completions and skips, with play counts per track. */
+    public ListeningHistory getHistory() { return history; }
+    /** Per-track loudness behind the volume each track is played at. */
+    public LoudnessAnalyzer getLoudness() { return loudness; }
+
+    /** Output and buffer statistics of the codec engine, or null if it hasn't been used. */
+    public String getEngineStats() {
+        AudioOutput output = audioOutput;
+        return output == null ? null : output.getStats();
+    }
+    public long getLastTransitionGapMs() { return lastTransitionGapMs; }
+    public long getLastCommandLatencyMs() { return lastCommandLatencyMs; }
+
+    public int getCurrentPosition() {
+        if (state != State.STARTED) return positionMs;
+        long position = positionMs + (SystemClock.elapsedRealtime() - positionUpdatedAt);
+        return (int) (durationMs > 0 ? Math.min(position, durationMs) : position);
+    }
+
+    // endregion
+
+    private void skip(boolean forward, long at) {
+        if (playQueue.isEmpty()) return;
+        // Skips coalesced behind a prepare pass over tracks that were never heard
+        if (pendingIndex < 0 && (state == State.STARTED || state == State.PAUSED)) {
+            recordListen(forward ? ListeningLog.SKIPPED : ListeningLog.PREVIOUS, getCurrentPosition());
+        }
+        // While a prepare is in flight, step from the track already requested rather than the one playing
+        int from = pendingIndex >= 0 ? pendingIndex : currentIndex;
+        // The shuffle cursor already follows coalesced skips, so it needs no special casing
+        int target = forward ? queue.skipNext(from) : queue.skipPrevious(from);
+        if (queue.isShuffleEnabled()) persistShuffle();
+        requestTrack(target, at);
+    }
+
+    private void requestTrack(int index, long at) {
+        commandAt = at;
+        playWhenPrepared = true;
+        pendingSeekMs = -1;
+        if (state == State.PREPARING) {
+            // Coalesce: remember the newest target and prepare it once the in-flight prepare returns
+            COMMANDS_COALESCED.increment();
+            pendingIndex = index;
+            setCurrent(index);
+            publish();
+            return;
+        }
+        prepareTrack(index);
+    }
+
+    private void prepareTrack(int index) {
+        Trace.beginSection("Playback.prepareTrack");
+        try {
+            prepareTrackTraced(index);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private void prepareTrackTraced(int index) {
+        setCurrent(index);
+        preparePlayer();
+    }
+
+    /** Prepares currentSong on the main player, seeking to pendingSeekMs if set. */
+    private void preparePlayer() {
+        releaseNextPlayer();
+        pendingIndex = -1;
+        seeking = false;
+        durationMs = 0;
+        positionMs = pendingSeekMs >= 0 ? pendingSeekMs : 0;
+        positionUpdatedAt = SystemClock.elapsedRealtime();
+
+        if (player != null && (player instanceof CodecTrackPlayer) == codecEngine) {
+            player.reset();
+        } else {
+            if (player != null) player.release();
+            player = createPlayer();
+        }
+        try {
+            setDataSource(player, currentSong);
+            prepareStartedAt = SystemClock.elapsedRealtime();
+            player.prepareAsync();
+            setState(State.PREPARING);
+        } catch (IOException | IllegalStateException e) {
+            e.printStackTrace();
+            setState(State.ERROR);
+        }
+    }
+
+    private void onPrepared(TrackPlayer mp) {
+        if (mp != player) return;
+        if (pendingIndex >= 0) {
+            // Superseded while preparing; never start the stale track
+            prepareTrack(pendingIndex);
+            return;
+        }
+        PREPARE_MS.record(SystemClock.elapsedRealtime() - prepareStartedAt);
+        TRACKS_PREPARED.increment();
+        durationMs = mp.getDuration();
+        if (pendingSeekMs >= 0) {
+            mp.seekTo(pendingSeekMs);
+            positionMs = pendingSeekMs;
+            pendingSeekMs = -1;
+        }
+        if (restorePending) {
+            restorePending = false;
+            // Process start to a track that plays on the next tap
+            long resumableMs = SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+            COLD_START_RESUMABLE_MS.record(resumableMs);
+            Log.d(TAG, "Session resumable " + resumableMs + " ms after process start");
+        }
+        if (playWhenPrepared) startPlayer();
+        else setState(State.PREPARED);
+        prepareNext();
+    }
+
+    private void startPlayer() {
+        player.start();
+        positionUpdatedAt = SystemClock.elapsedRealtime();
+        if (commandAt >= 0) {
+            lastCommandLatencyMs = positionUpdatedAt - commandAt;
+            commandAt = -1;
+            TAP_TO_AUDIO_MS.record(lastCommandLatencyMs);
+            Log.d(TAG, "Command-to-audio latency: " + lastCommandLatencyMs + " ms");
+        }
+        if (trackEndedAt >= 0) reportTransitionGap(positionUpdatedAt - trackEndedAt);
+        setState(State.STARTED);
+        scheduleCheckpoint(CHECKPOINT_PLAYING_MS);
+    }
+
+    private void onSeekComplete(TrackPlayer mp) {
+        if (mp != player) return;
+        seeking = false;
+        if (pendingSeekMs >= 0) {
+            int ms = pendingSeekMs;
+            pendingSeekMs = -1;
+            seeking = true;
+            mp.seekTo(ms);
+        } else {
+            capturePosition();
+            publish();
+        }
+    }
+
+    private boolean onError(TrackPlayer mp, int what, int extra) {
+        Log.w(TAG, "Player error " + what + "/" + extra);
+        ERRORS.increment();
+        if (mp == nextPlayer) {
+            releaseNextPlayer();
+        } else if (mp == player) {
+            pendingIndex = -1;
+            setState(State.ERROR);
+        }
+        return true;
+    }
+
+    private void onCompleted(TrackPlayer finished) {
+        if (finished != player) return;
+        trackEndedAt = SystemClock.elapsedRealtime();
+        recordListen(ListeningLog.COMPLETED, durationMs);
+        if (nextPlayer == null || !nextPlayer.isPlaying()) {
+            int index = computeNextIndex();
+            if (index >= 0) {
+                advanceQueue();
+                commandAt = -1;
+                playWhenPrepared = true;
+                prepareTrack(index);
+            } else {
+                trackEndedAt = -1;
+                positionMs = 0;
+                setState(State.PAUSED);
+            }
+            return;
+        }
+        // The chained player has already taken over; promote it and line up the one after
+        TrackPlayer promoted = nextPlayer;
+        int promotedIndex = nextIndex;
+        nextPlayer = null;
+        nextIndex = -1;
+        advanceQueue();
+        finished.release();
+        player = promoted;
+        setCurrent(promotedIndex);
+        durationMs = player.getDuration();
+        // Not 0 after a crossfade: the next track has been playing for the length of the fade
+        positionMs = player.getCurrentPosition();
+        positionUpdatedAt = SystemClock.elapsedRealtime();
+        // STARTED_AS_NEXT can arrive before or after this completion callback
+        if (nextStartedAt >= 0) reportTransitionGap(nextStartedAt - trackEndedAt);
+        setState(State.STARTED);
+        prepareNext();
+    }
+
+    private TrackPlayer createPlayer() {
+        TrackPlayer player;
+        if (players != null) {
+            player = players.get();
+        } else if (codecEngine) {
+            if (audioOutput == null) {
+                audioOutput = new AudioOutput();
+                audioOutput.setCrossfadeMs(crossfadeMs);
+            }
+            player = new CodecTrackPlayer(audioOutput);
+        } else {
+            player = new MediaTrackPlayer();
+        }
+        player.setCallback(playerCallback);
+        return player;
+    }
+
+    /** Routes player callbacks by identity; a callback from a player that has been replaced is ignored. */
+    private final TrackPlayer.Callback playerCallback = new TrackPlayer.Callback() {
+        @Override
+        public void onPrepared(TrackPlayer mp) {
+            if (mp == player) {
+                PlaybackController.this.onPrepared(mp);
+            } else if (mp == nextPlayer && player != null) {
+                try {
+                    player.setNext(mp);
+                } catch (IllegalStateException e) {
+                    releaseNextPlayer();
+                }
+            }
+        }
+
+        @Override
+        public void onCompletion(TrackPlayer mp) {
+            onCompleted(mp);
+        }
+
+        @Override
+        public void onSeekComplete(TrackPlayer mp) {
+            PlaybackController.this.onSeekComplete(mp);
+        }
+
+        @Override
+        public void onStartedAsNext(TrackPlayer mp) {
+            if (mp != nextPlayer) return;
+            nextStartedAt = SystemClock.elapsedRealtime();
+            if (trackEndedAt >= 0) reportTransitionGap(nextStartedAt - trackEndedAt);
+        }
+
+        @Override
+        public boolean onError(TrackPlayer mp, int what, int extra) {
+            return PlaybackController.this.onError(mp, what, extra);
+        }
+    };
+
+    private void setDataSource(TrackPlayer mp, Song song) throws IOException {
+        mp.setVolume(loudness.volumeFor(song));
+        if (readAhead) {
+            try {
+                // The player closes the data source when it is reset or released
+                mp.setDataSource(DocumentDataSource.open(context, song));
+                return;
+            } catch (IOException e) {
+                Log.w(TAG, "Read-ahead unavailable for " + song.getTitle() + ", using the Uri", e);
+            }
+        }
+        mp.setDataSource(context, song.getUri());
+    }
+
+    /** Index that auto-advance will play after the current track, or -1 when playback should stop. */
+    private int computeNextIndex() {
+        return queue.peekAutoAdvance(currentIndex);
+    }
+
+    /** Prepares the next queue entry on a second player and chains it behind the current one. */
+    private void prepareNext() {
+        releaseNextPlayer();
+        if (!gapless || player == null || state == State.PREPARING || state == State.ERROR) return;
+        int index = computeNextIndex();
+        if (index < 0) return;
+
+        // Only players of one kind chain; after an engine switch the next track waits for the current one
+        if ((player instanceof CodecTrackPlayer) != codecEngine) return;
+
+        TrackPlayer next = createPlayer();
+        nextPlayer = next;
+        nextIndex = index;
+        try {
+            setDataSource(next, songAt(index));
+            next.prepareAsync();
+        } catch (IOException | IllegalStateException e) {
+            e.printStackTrace();
+            releaseNextPlayer();
+        }
+    }
+
+    /** Commits the auto-advance {@link #computeNextIndex} predicted (moves the shuffle cursor). */
+    private void advanceQueue() {
+        queue.autoAdvance(currentIndex);
+        if (queue.isShuffleEnabled()) persistShuffle();
+    }
+
+    /**
+     * Adopts an edited queue. The shuffle order follows the same position shift, and the current
+     * entry is looked up by identity with the shifted position as the hint.
+     */
+    private void editQueue(PlayQueue edited, int removedAt, int insertedAt, boolean playNext) {
+        playQueue = edited;
+        followsLibrary = false;
+        if (removedAt >= 0 && insertedAt >= 0) queue.move(removedAt, insertedAt);
+        else if (removedAt >= 0) queue.remove(removedAt);
+        else queue.insert(insertedAt, playNext);
+        if (currentEntry >= 0) {
+            currentIndex = edited.indexOf(currentEntry, QueueNavigator.shiftPosition(currentIndex, removedAt, insertedAt));
+        }
+        pendingIndex = QueueNavigator.shiftPosition(pendingIndex, removedAt, insertedAt);
+        if (queue.isShuffleEnabled()) persistShuffle();
+        prepareNext();
+        scheduleCheckpoint(CHECKPOINT_DEBOUNCE_MS);
+    }
+
+    /** Writes the shuffle order off the playback thread so it survives a service restart. */
+    private void persistShuffle() {
+        final byte[] bytes;
+        try {
+            ShuffleOrder shuffle = queue.getShuffleOrder();
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 + shuffle.size() * 4);
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeLong(libraryFingerprint);
+            out.writeBoolean(queue.isShuffleEnabled());
+            shuffle.writeTo(out);
+            bytes = buffer.toByteArray();
+        } catch (IOException e) {
+            return;
+        }
+        writeAtomically(shuffleFile, bytes);
+    }
+
+    /** Writes {@code bytes} to a temp file off the playback thread and renames it over {@code file}. */
+    private void writeAtomically(File file, byte[] bytes) {
+        persistExecutor.execute(() -> {
+            File tmp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                out.write(bytes);
+                // Durable before the rename, or a crash can leave an empty file under the real name
+                out.getFD().sync();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to save " + file.getName(), e);
+                return;
+            }
+            //noinspection ResultOfMethodCallIgnored
+            tmp.renameTo(file);
+        });
+    }
+
+    private void scheduleCheckpoint(long delayMs) {
+        handler.removeCallbacks(checkpointRunnable);
+        handler.postDelayed(checkpointRunnable, delayMs);
+    }
+
+    /** Saves the session; while playing, the next checkpoint follows on a timer to keep the position fresh. */
+    private void checkpoint() {
+        handler.removeCallbacks(checkpointRunnable);
+        Song song = currentSong;
+        if (song == null || song.getDocumentId() == null || treeUri == null) return;
+        SessionSnapshot pending = restoredSession;
+        SessionSnapshot snapshot;
+        if (pending != null) {
+            // The library hasn't arrived yet; keep the restored queue for when it does
+            snapshot = new SessionSnapshot(treeUri.toString(), song.getDocumentId(), song.getTitle(), song.getSize(),
+                    song.getLastModified(), getCurrentPosition(), queue.getRepeatMode(), pending.libraryFingerprint,
+                    pending.queueRuns, pending.queuePosition);
+        } else {
+            snapshot = new SessionSnapshot(treeUri.toString(), song.getDocumentId(), song.getTitle(), song.getSize(),
+                    song.getLastModified(), getCurrentPosition(), queue.getRepeatMode(), playQueue.library().fingerprint(),
+                    followsLibrary ? null : playQueue.toRuns(), currentIndex);
+        }
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+            snapshot.writeTo(new DataOutputStream(buffer));
+            writeAtomically(sessionFile, buffer.toByteArray());
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to encode session", e);
+            return;
+        }
+        if (state == State.STARTED) scheduleCheckpoint(CHECKPOINT_PLAYING_MS);
+    }
+
+    /** Prepares the last session's track, paused at its position, before any library is known. */
+    private void restoreSession() {
+        if (!sessionFile.exists()) return;
+        Trace.beginSection("Playback.restoreSession");
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sessionFile)))) {
+            SessionSnapshot snapshot = SessionSnapshot.readFrom(in);
+            if (snapshot == null || currentSong != null) return;
+            restoredSession = snapshot;
+            treeUri = Uri.parse(snapshot.treeUri);
+            queue.setRepeatMode(snapshot.repeatMode);
+            currentIndex = -1;
+            currentEntry = -1;
+            currentSong = Song.inTree(treeUri, snapshot.title, snapshot.documentId, snapshot.size, snapshot.lastModified);
+            commandAt = -1;
+            playWhenPrepared = false;
+            pendingSeekMs = snapshot.positionMs;
+            restorePending = true;
+            preparePlayer();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to restore session", e);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /** Places the restored track in the first non-empty library, with its edited queue if that still fits. */
+    private void adoptRestoredSession(TrackTable table, Uri tree) {
+        SessionSnapshot snapshot = restoredSession;
+        restoredSession = null;
+        if (currentIndex >= 0 || currentSong == null || !tree.toString().equals(snapshot.treeUri)) return;
+        if (!snapshot.documentId.equals(currentSong.getDocumentId())) return;
+        int row = table.indexOf(snapshot.documentId);
+        if (row < 0) return; // Deleted meanwhile: it keeps playing, outside the queue
+        int position = row;
+        if (followsLibrary && snapshot.queueRuns != null && snapshot.libraryFingerprint == table.fingerprint()) {
+            PlayQueue restored = PlayQueue.fromRuns(table, snapshot.queueRuns);
+            int saved = snapshot.queuePosition;
+            if (restored != null && saved >= 0 && saved < restored.size() && restored.rowAt(saved) == row) {
+                playQueue = restored;
+                followsLibrary = false;
+                queue.reset(restored.size(), -1);
+                position = saved;
+            }
+        }
+        currentIndex = position;
+        currentEntry = playQueue.idAt(position);
+        Log.d(TAG, "Restored session at queue position " + position + " of " + playQueue.size());
+    }
+
+    private void restoreShuffle() {
+        if (!shuffleFile.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(shuffleFile)))) {
+            if (in.readLong() != libraryFingerprint) return;
+            boolean enabled = in.readBoolean();
+            ShuffleOrder saved = ShuffleOrder.readFrom(in, random);
+            if (queue.restore(saved, enabled)) Log.d(TAG, "Restored shuffle order of " + saved.size() + " songs");
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to restore shuffle order", e);
+        }
+    }
+
+    private void setCurrent(int index) {
+        Song previous = currentSong;
+        currentIndex = index;
+        currentEntry = playQueue.idAt(index);
+        currentSong = songAt(index);
+        restoredSession = null;
+        if (previous == null || !Objects.equals(currentSong.getDocumentId(), previous.getDocumentId())) scheduleCheckpoint(0);
+    }
+
+    private Song songAt(int index) {
+        return Song.fromTable(playQueue.library(), playQueue.rowAt(index), treeUri);
+    }
+
+    private void releaseNextPlayer() {
+        if (nextPlayer == null) return;
+        if (player != null) {
+            try {
+                player.setNext(null);
+            } catch (IllegalStateException ignored) { }
+        }
+        nextPlayer.release();
+        nextPlayer = null;
+        nextIndex = -1;
+        nextStartedAt = -1;
+    }
+
+    private void recordListen(byte type, int listenedMs) {
+        Song song = currentSong;
+        if (song != null) history.record(song.getDocumentId(), type, listenedMs, durationMs);
+    }
+
+    private void reportTransitionGap(long gapMs) {
+        lastTransitionGapMs = Math.max(0, gapMs);
+        TRACK_GAP_MS.record(lastTransitionGapMs);
+        trackEndedAt = -1;
+        nextStartedAt = -1;
+        Log.d(TAG, "Inter-track gap: " + lastTransitionGapMs + " ms (gapless=" + gapless + ")");
+    }
+
+    private void capturePosition() {
+        if (player != null) positionMs = player.getCurrentPosition();
+        positionUpdatedAt = SystemClock.elapsedRealtime();
+    }
+
+    private void setState(State newState) {
+        state = newState;
+        // Background loudness analysis would compete with the decoder for CPU
+        loudness.setPlaybackActive(newState == State.PREPARING || newState == State.STARTED);
+        publish();
+    }
+
+    private void publish() {
+        final Song song = currentSong;
+        final State s = state;
+        final boolean playWhenReady = s == State.STARTED || (s == State.PREPARING && playWhenPrepared);
+        final int position = positionMs;
+        final int duration = durationMs;
+        final long updatedAt = positionUpdatedAt;
+        if (song != null) {
+            mainHandler.post(() -> listener.onPlaybackChanged(song, s, playWhenReady, position, duration, updatedAt));
+        }
+    }
+}
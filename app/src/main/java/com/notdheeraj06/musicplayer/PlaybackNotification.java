@@ -0,0 +1,206 @@
+package com.notdheeraj06.musicplayer;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.app.ServiceCompat;
+
+import com.notdheeraj06.musicplayer.core.Metrics;
+
+/**
+ * The media notification for {@link MusicService}. PendingIntents, actions and the builder are
+ * created once; updates that wouldn't change what is shown are dropped, and bursts (rapid skips)
+ * are coalesced so at most one notification is posted per {@link #COALESCE_MS}. startForeground
+ * is only called when playback enters the foreground state. Must be used on the main thread.
+ */
+public class PlaybackNotification {
+
+    private static final String TAG = "PlaybackNotification";
+    private static final String CHANNEL_ID = "MusicChannel";
+    private static final int NOTIFICATION_ID = 1;
+    private static final long COALESCE_MS = 250;
+
+    // Process-wide totals for dumpsys; the counts of this notification are the fields below
+    private static final Metrics.Counter REQUESTED = Metrics.counter("notification.requested");
+    private static final Metrics.Counter POSTED = Metrics.counter("notification.posted");
+    private static final Metrics.Histogram POST_US = Metrics.histogram("notification.post_us");
+
+    private final Service service;
+    private final NotificationManagerCompat manager;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final NotificationCompat.Builder builder;
+    private final NotificationCompat.Action prevAction;
+    private final NotificationCompat.Action playAction;
+    private final NotificationCompat.Action pauseAction;
+    private final NotificationCompat.Action nextAction;
+    private final int artSize;
+
+    // Requested state, and what the posted notification currently shows
+    private Song song;
+    private boolean playing;
+    private Song postedSong;
+    private boolean postedPlaying;
+    private Bitmap postedArt;
+    private boolean foreground;
+    private boolean scheduled;
+    private long lastPostAt = -COALESCE_MS;
+    private ArtCache.Request artRequest;
+    // Written on the main thread only; read by dumpsys from a binder thread
+    private volatile long requested;
+    private volatile long posted;
+
+    private final Runnable postRunnable = () -> {
+        scheduled = false;
+        post();
+    };
+
+    public PlaybackNotification(Service service, MediaSessionCompat.Token sessionToken) {
+        this.service = service;
+        manager = NotificationManagerCompat.from(service);
+        createChannel();
+        artSize = service.getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+
+        Intent intent = new Intent(service, MainActivity.class);
+        PendingIntent contentIntent = PendingIntent.getActivity(service, 0, intent, PendingIntent.FLAG_IMMUTABLE);
+        prevAction = new NotificationCompat.Action(android.R.drawable.ic_media_previous, "Previous", serviceIntent(0, MusicService.ACTION_PREV));
+        playAction = new NotificationCompat.Action(android.R.drawable.ic_media_play, "Play", serviceIntent(1, MusicService.ACTION_PLAY));
+        pauseAction = new NotificationCompat.Action(android.R.drawable.ic_media_pause, "Pause", serviceIntent(3, MusicService.ACTION_PAUSE));
+        nextAction = new NotificationCompat.Action(android.R.drawable.ic_media_next, "Next", serviceIntent(2, MusicService.ACTION_NEXT));
+
+        builder = new NotificationCompat.Builder(service, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_launcher_foreground) // Replace with a music note icon if you have one
+                .setContentText("Playing Music")
+                .setContentIntent(contentIntent)
+                .setStyle(new androidx.media.app.NotificationCompat.MediaStyle()
+                        .setMediaSession(sessionToken)
+                        .setShowActionsInCompactView(0, 1, 2)) // Indexes of buttons to show in collapsed view
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setOnlyAlertOnce(true); // Don't vibrate on update
+    }
+
+    /** Requests that the notification show {@code song}; cheap to call on every state change. */
+    public void update(Song song, boolean playing) {
+        requested++;
+        REQUESTED.increment();
+        this.song = song;
+        this.playing = playing;
+        schedule();
+    }
+
+    public void cancel() {
+        handler.removeCallbacks(postRunnable);
+        scheduled = false;
+        cancelArt();
+    }
+
+    public long getRequestedCount() { return requested; }
+    public long getPostedCount() { return posted; }
+
+    public String getStats() {
+        return posted + " posted / " + requested + " requested";
+    }
+
+    private void schedule() {
+        if (scheduled) return;
+        scheduled = true;
+        // Leading edge posts right away; anything inside the window waits for the trailing post
+        long delay = lastPostAt + COALESCE_MS - SystemClock.elapsedRealtime();
+        handler.postDelayed(postRunnable, Math.max(0, delay));
+    }
+
+    private void post() {
+        Trace.beginSection("PlaybackNotification.post");
+        long started = System.nanoTime();
+        try {
+            postTraced();
+        } finally {
+            POST_US.record((System.nanoTime() - started) / 1000);
+            Trace.endSection();
+        }
+    }
+
+    private void postTraced() {
+        if (song == null) return;
+        if (song != postedSong) cancelArt();
+        Bitmap art = song == postedSong ? postedArt : loadArt(song);
+        if (song == postedSong && playing == postedPlaying && art == postedArt) return;
+
+        builder.setContentTitle(song.getTitle())
+                .setLargeIcon(art)
+                .setOngoing(playing) // Persistent when playing
+                .clearActions()
+                .addAction(prevAction)
+                .addAction(playing ? pauseAction : playAction)
+                .addAction(nextAction);
+        Notification notification = builder.build();
+
+        if (playing && !foreground) {
+            service.startForeground(NOTIFICATION_ID, notification);
+            foreground = true;
+        } else {
+            manager.notify(NOTIFICATION_ID, notification);
+            if (!playing && foreground) {
+                // Keep the notification but let the system stop the service while paused
+                ServiceCompat.stopForeground(service, ServiceCompat.STOP_FOREGROUND_DETACH);
+                foreground = false;
+            }
+        }
+        postedSong = song;
+        postedPlaying = playing;
+        postedArt = art;
+        lastPostAt = SystemClock.elapsedRealtime();
+        posted++;
+        POSTED.increment();
+        if ((posted & 31) == 0) Log.d(TAG, "Notifications " + getStats());
+    }
+
+    private Bitmap loadArt(Song target) {
+        if (target.getMetadata() == null || !target.getMetadata().hasEmbeddedArt()) return null;
+        ArtCache artCache = ArtCache.get(service);
+        Bitmap art = artCache.peek(target, artSize);
+        if (art == null) {
+            artRequest = artCache.load(target, artSize, bitmap -> {
+                artRequest = null;
+                if (target != song) return;
+                postedSong = null; // Force a repost; the art is in the memory cache now
+                requested++;
+                REQUESTED.increment();
+                schedule();
+            });
+        }
+        return art;
+    }
+
+    private void cancelArt() {
+        if (artRequest != null) artRequest.cancel();
+        artRequest = null;
+    }
+
+    private PendingIntent serviceIntent(int requestCode, String action) {
+        Intent intent = new Intent(service, MusicService.class).setAction(action);
+        return PendingIntent.getService(service, requestCode, intent, PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    private void createChannel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Music Player", NotificationManager.IMPORTANCE_LOW);
+            channel.setDescription("Controls for music playback");
+            NotificationManager manager = service.getSystemService(NotificationManager.class);
+            if (manager != null) manager.createNotificationChannel(channel);
+        }
+    }
+}
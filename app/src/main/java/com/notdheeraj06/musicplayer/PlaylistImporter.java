@@ -0,0 +1,91 @@
+package com.notdheeraj06.musicplayer;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.notdheeraj06.musicplayer.core.Metrics;
+import com.notdheeraj06.musicplayer.core.PathIndex;
+import com.notdheeraj06.musicplayer.core.PlaylistImport;
+import com.notdheeraj06.musicplayer.core.TrackTable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Imports M3U/M3U8/PLS files on a background thread. The {@link PathIndex} is built on the first
+ * import against a library snapshot and reused until the snapshot changes, so an import costs one
+ * pass over the file.
+ */
+public class PlaylistImporter {
+
+    /** {@code result} is null if the file couldn't be read; its rows index {@code library}. */
+    public interface Callback {
+        void onImported(Uri playlist, TrackTable library, @Nullable PlaylistImport.Result result);
+    }
+
+    private static final String TAG = "PlaylistImporter";
+
+    private static final Metrics.Histogram INDEX_MS = Metrics.histogram("playlist.index_ms");
+    private static final Metrics.Histogram IMPORT_MS = Metrics.histogram("playlist.import_ms");
+    private static final Metrics.Counter UNRESOLVED = Metrics.counter("playlist.unresolved");
+
+    private final ContentResolver resolver;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Executor thread only
+    private PathIndex index;
+
+    public PlaylistImporter(Context context) {
+        resolver = context.getApplicationContext().getContentResolver();
+    }
+
+    public void importPlaylist(Uri playlist, TrackTable library, Callback callback) {
+        executor.execute(() -> {
+            long start = SystemClock.elapsedRealtime();
+            if (index == null || index.library() != library) {
+                index = PathIndex.build(library);
+                INDEX_MS.record(SystemClock.elapsedRealtime() - start);
+            }
+            PlaylistImport.Result result = null;
+            String name = displayName(playlist);
+            try (InputStream in = resolver.openInputStream(playlist)) {
+                if (in == null) throw new IOException("No content at " + playlist);
+                result = PlaylistImport.run(in, name, index);
+                IMPORT_MS.record(SystemClock.elapsedRealtime() - start);
+                UNRESOLVED.add(result.unresolvedCount);
+                Log.d(TAG, "Imported " + name + ": " + result.rows.length + " of " + result.entries + " entries in "
+                        + (SystemClock.elapsedRealtime() - start) + " ms, unresolved " + result.unresolved);
+            } catch (IOException | SecurityException e) {
+                Log.w(TAG, "Failed to import " + playlist, e);
+            }
+            PlaylistImport.Result imported = result;
+            mainHandler.post(() -> callback.onImported(playlist, library, imported));
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Nullable
+    private String displayName(Uri uri) {
+        try (Cursor cursor = resolver.query(uri, new String[] { OpenableColumns.DISPLAY_NAME }, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) return cursor.getString(0);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "No display name for " + uri, e);
+        }
+        return uri.getLastPathSegment();
+    }
+}
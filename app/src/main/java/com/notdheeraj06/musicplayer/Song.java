@@ -1,15 +1,42 @@
 package com.notdheeraj06.musicplayer;
 import android.net.Uri;
+import android.provider.DocumentsContract;
 
-public class Song {
-    private final String title;
+import com.notdheeraj06.musicplayer.core.Track;
+import com.notdheeraj06.musicplayer.core.TrackTable;
+
+public class Song extends Track {
+    // Either the document's own Uri, or the tree it lives in (shared by every song of a scan)
     private final Uri uri;
+    private final boolean inTree;
 
     public Song(String title, Uri uri) {
-        this.title = title;
+        this(title, uri, null, -1, 0);
+    }
+
+    public Song(String title, Uri uri, String documentId, long size, long lastModified) {
+        this(title, uri, false, documentId, size, lastModified);
+    }
+
+    private Song(String title, Uri uri, boolean inTree, String documentId, long size, long lastModified) {
+        super(title, documentId, size, lastModified);
         this.uri = uri;
+        this.inTree = inTree;
     }
 
-    public String getTitle() { return title; }
-    public Uri getUri() { return uri; }
+    /** A document of {@code treeUri}; its Uri is built when asked for rather than held per song. */
+    public static Song inTree(Uri treeUri, String title, String documentId, long size, long lastModified) {
+        return new Song(title, treeUri, true, documentId, size, lastModified);
+    }
+
+    /** Materializes one row of a shared library snapshot. */
+    public static Song fromTable(TrackTable table, int row, Uri treeUri) {
+        Song song = inTree(treeUri, table.title(row), table.documentId(row), table.fileSize(row), table.lastModified(row));
+        song.setMetadata(table.metadata(row));
+        return song;
+    }
+
+    public Uri getUri() {
+        return inTree ? DocumentsContract.buildDocumentUriUsingTree(uri, getDocumentId()) : uri;
+    }
 }
@@ -3,48 +3,170 @@ package com.notdheeraj06.musicplayer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
+import com.notdheeraj06.musicplayer.core.SectionIndex;
+import com.notdheeraj06.musicplayer.core.SongMetadata;
+
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Shows immutable snapshots of the library. Each {@link #submitList} is diffed against the
+ * previous snapshot on a background thread and only the resulting changes are dispatched.
+ */
 public class SongsAdapter extends RecyclerView.Adapter<SongsAdapter.SongViewHolder> {
 
-    private final List<Song> songs;
+    private static final DiffUtil.ItemCallback<Song> DIFF = new DiffUtil.ItemCallback<Song>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Song oldItem, @NonNull Song newItem) {
+            return oldItem == newItem || (oldItem.getDocumentId() != null && oldItem.getDocumentId().equals(newItem.getDocumentId()));
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Song oldItem, @NonNull Song newItem) {
+            return oldItem == newItem || (oldItem.getTitle().equals(newItem.getTitle())
+                    && oldItem.getSize() == newItem.getSize()
+                    && oldItem.getLastModified() == newItem.getLastModified()
+                    && oldItem.getMetadata() == newItem.getMetadata());
+        }
+    };
+
+    private final AsyncListDiffer<Song> differ = new AsyncListDiffer<>(this, DIFF);
     private final OnSongClickListener listener;
+    // docId -> position in the current snapshot, rebuilt lazily after each commit
+    private Map<String, Integer> positions;
+    // Sections of the current snapshot; swapped in when the diff of its list is committed
+    private SectionIndex sections = SectionIndex.empty();
 
     public interface OnSongClickListener {
-        void onSongClick(int position);
+        /** {@code position} is where {@code song} is bound in the list currently shown. */
+        void onSongClick(Song song, int position);
     }
 
-    public SongsAdapter(List<Song> songs, OnSongClickListener listener) {
-        this.songs = songs;
+    public SongsAdapter(OnSongClickListener listener) {
         this.listener = listener;
+        setHasStableIds(true);
+        differ.addListListener((previousList, currentList) -> positions = null);
+    }
+
+    /** The list must not be modified after it is submitted. */
+    public void submitList(List<Song> snapshot) {
+        submitList(snapshot, SectionIndex.empty());
+    }
+
+    /** As {@link #submitList(List)}, with the fast-scroll sections of {@code snapshot}. */
+    public void submitList(List<Song> snapshot, SectionIndex sections) {
+        differ.submitList(snapshot, () -> this.sections = sections);
+    }
+
+    /** Fast-scroll label of the row at {@code position}, or null if the list has no sections. */
+    public String getSectionLabel(int position) {
+        if (sections.size() != getItemCount() || position < 0 || position >= sections.size()) return null;
+        return sections.labelAt(position);
+    }
+
+    public List<Song> getCurrentList() {
+        return differ.getCurrentList();
+    }
+
+    /** Rebinds rows whose songs were updated in place (e.g. metadata filled in). */
+    public void notifySongsChanged(Collection<Song> changed) {
+        List<Song> current = differ.getCurrentList();
+        if (positions == null) {
+            positions = new HashMap<>(current.size() * 2);
+            for (int i = 0; i < current.size(); i++) positions.put(current.get(i).getDocumentId(), i);
+        }
+        for (Song song : changed) {
+            Integer pos = positions.get(song.getDocumentId());
+            if (pos != null && current.get(pos) == song) notifyItemChanged(pos);
+        }
     }
 
     @NonNull
     @Override
     public SongViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
-                .inflate(android.R.layout.simple_list_item_1, parent, false);
-        return new SongViewHolder(view);
+                .inflate(R.layout.item_song, parent, false);
+        SongViewHolder holder = new SongViewHolder(view);
+        view.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) listener.onSongClick(differ.getCurrentList().get(position), position);
+        });
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull SongViewHolder holder, int position) {
-        Song song = songs.get(position);
+        Song song = differ.getCurrentList().get(position);
         holder.title.setText(song.getTitle());
-        holder.itemView.setOnClickListener(v -> listener.onSongClick(position));
+        holder.subtitle.setText(describe(song.getMetadata()));
+        bindArt(holder, song);
+    }
+
+    private void bindArt(SongViewHolder holder, Song song) {
+        holder.cancelArt();
+        holder.art.setImageResource(android.R.drawable.ic_media_play);
+        if (song.getMetadata() == null || !song.getMetadata().hasEmbeddedArt()) return;
+        int size = holder.itemView.getResources().getDimensionPixelSize(R.dimen.song_art_size);
+        holder.artRequest = ArtCache.get(holder.itemView.getContext()).load(song, size, bitmap -> {
+            holder.artRequest = null;
+            holder.art.setImageBitmap(bitmap);
+        });
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull SongViewHolder holder) {
+        // The row is off screen; don't decode art nobody will see
+        holder.cancelArt();
+    }
+
+    private static String describe(SongMetadata metadata) {
+        if (metadata == null) return "";
+        String artist = metadata.getArtist() != null ? metadata.getArtist() : "Unknown artist";
+        return metadata.getAlbum() != null ? artist + " — " + metadata.getAlbum() : artist;
     }
 
     @Override
-    public int getItemCount() { return songs.size(); }
+    public long getItemId(int position) {
+        return stableId(differ.getCurrentList().get(position).getDocumentId());
+    }
+
+    /** 64-bit FNV-1a of the document id; String.hashCode collides too often at library scale. */
+    static long stableId(String documentId) {
+        if (documentId == null) return RecyclerView.NO_ID;
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < documentId.length(); i++) {
+            hash ^= documentId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public int getItemCount() { return differ.getCurrentList().size(); }
 
     static class SongViewHolder extends RecyclerView.ViewHolder {
         TextView title;
+        TextView subtitle;
+        ImageView art;
+        ArtCache.Request artRequest;
         public SongViewHolder(@NonNull View itemView) {
             super(itemView);
             title = itemView.findViewById(android.R.id.text1);
+            subtitle = itemView.findViewById(android.R.id.text2);
+            art = itemView.findViewById(R.id.imgArt);
+        }
+
+        void cancelArt() {
+            if (artRequest != null) artRequest.cancel();
+            artRequest = null;
         }
     }
 }
@@ -0,0 +1,47 @@
+package com.notdheeraj06.musicplayer;
+
+import android.content.Context;
+import android.media.MediaDataSource;
+import android.net.Uri;
+
+import java.io.IOException;
+
+/**
+ * One track's player, shaped after the parts of MediaPlayer that PlaybackController uses, so the
+ * controller can run on either {@link MediaTrackPlayer} or the MediaCodec/AudioTrack engine
+ * ({@link CodecTrackPlayer}). Callbacks arrive on the thread that created the player.
+ */
+public interface TrackPlayer {
+
+    interface Callback {
+        void onPrepared(TrackPlayer player);
+        void onCompletion(TrackPlayer player);
+        void onSeekComplete(TrackPlayer player);
+        /** This player took over from the one it was chained behind with {@link #setNext}. */
+        void onStartedAsNext(TrackPlayer player);
+        boolean onError(TrackPlayer player, int what, int extra);
+    }
+
+    void setCallback(Callback callback);
+
+    /** The player closes {@code source} when it is reset or released. */
+    void setDataSource(MediaDataSource source) throws IOException;
+    void setDataSource(Context context, Uri uri) throws IOException;
+    void prepareAsync();
+
+    void start();
+    void pause();
+    void seekTo(int ms);
+    boolean isPlaying();
+    int getCurrentPosition();
+    int getDuration();
+
+    /** Linear gain in [0, 1] for this player's output; set per track, before or after setDataSource. */
+    void setVolume(float volume);
+
+    /** Chains {@code next} (same implementation, prepared) to start when this one ends; null unchains. */
+    void setNext(TrackPlayer next);
+
+    void reset();
+    void release();
+}
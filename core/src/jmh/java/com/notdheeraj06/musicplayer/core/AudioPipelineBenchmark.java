@@ -0,0 +1,92 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the codec engine's JVM-side stages for one 10 ms buffer at 48 kHz stereo: the audio
+ * thread's ring read plus mix (plain and mid-crossfade) and the decoder thread's resample. The
+ * audio thread has 10 ms per buffer; its stages should be a few microseconds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AudioPipelineBenchmark {
+
+    private static final int RATE = 48_000;
+    private static final int FRAMES = RATE / 100;
+
+    @Param({"44100", "48000"})
+    public int inputRate;
+
+    private final float[] block = new float[FRAMES * 2];
+    private final float[] out = new float[FRAMES * 2];
+    private float[] resampled;
+    private Resampler resampler;
+    private PcmMixer plain;
+    private PcmMixer fading;
+
+    /** Never runs dry: each read refills the ring, as a decoder keeping up would. */
+    private class Endless implements PcmMixer.Source {
+        final PcmRingBuffer ring = new PcmRingBuffer(2, RATE);
+
+        @Override
+        public int read(float[] buffer, int offset, int frames) {
+            if (ring.available() < frames) ring.write(block, 0, FRAMES);
+            return ring.read(buffer, offset, frames);
+        }
+
+        @Override
+        public boolean isFinished() { return false; }
+
+        @Override
+        public long remainingFrames() { return -1; }
+    }
+
+    /** Always inside the fade window. */
+    private final class Fading extends Endless {
+        @Override
+        public long remainingFrames() { return Long.MAX_VALUE / 4; }
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < block.length; i++) block[i] = random.nextFloat() * 2 - 1;
+        resampler = new Resampler(inputRate, RATE, 2);
+        resampled = new float[resampler.maxOutputFrames(FRAMES) * 2];
+        plain = new PcmMixer(2, (finished, next) -> { });
+        plain.setCurrent(new Endless());
+        fading = new PcmMixer(2, (finished, next) -> { });
+        // A fade far longer than the run, so it never completes and every render mixes
+        fading.setCrossfadeFrames(Long.MAX_VALUE / 2);
+        fading.setCurrent(new Fading());
+        fading.setNext(new Endless());
+    }
+
+    @Benchmark
+    public float[] render() {
+        plain.render(out, FRAMES);
+        return out;
+    }
+
+    @Benchmark
+    public float[] renderCrossfade() {
+        fading.render(out, FRAMES);
+        return out;
+    }
+
+    @Benchmark
+    public int resample() {
+        return resampler.process(block, 0, FRAMES, resampled, 0);
+    }
+}
@@ -0,0 +1,91 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Locale-aware library sorts: a Collator comparator (collating both strings on every comparison)
+ * against {@link LibrarySorter} with its key cache warm (a resort) and cold (the first sort).
+ * The case-insensitive comparator sort is the baseline without collation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CollationSortBenchmark {
+
+    @Param({"10000", "100000", "500000"})
+    public int size;
+
+    private List<Track> tracks;
+    private Comparator<Track> collatedTitle;
+    private Comparator<Track> collatedArtist;
+    private LibrarySorter warm;
+
+    @Setup
+    public void setUp() {
+        tracks = Libraries.tracks(size, 7);
+        Collator collator = Collator.getInstance(Locale.US);
+        collator.setStrength(Collator.SECONDARY);
+        collatedTitle = (a, b) -> collator.compare(a.getTitle(), b.getTitle());
+        Comparator<Track> collatedAlbum = (a, b) -> {
+            int c = collator.compare(a.getMetadata().getAlbum(), b.getMetadata().getAlbum());
+            if (c == 0) c = Integer.compare(a.getMetadata().getTrackNumber(), b.getMetadata().getTrackNumber());
+            return c != 0 ? c : collatedTitle.compare(a, b);
+        };
+        collatedArtist = (a, b) -> {
+            int c = collator.compare(a.getMetadata().getArtist(), b.getMetadata().getArtist());
+            return c != 0 ? c : collatedAlbum.compare(a, b);
+        };
+        warm = new LibrarySorter(Locale.US);
+        warm.sort(tracks, LibrarySort.Order.ARTIST);
+    }
+
+    @Benchmark
+    public List<Track> caseInsensitiveTitle() {
+        List<Track> copy = new ArrayList<>(tracks);
+        LibrarySort.sort(copy, LibrarySort.Order.TITLE);
+        return copy;
+    }
+
+    @Benchmark
+    public List<Track> comparatorTitle() {
+        List<Track> copy = new ArrayList<>(tracks);
+        copy.sort(collatedTitle);
+        return copy;
+    }
+
+    @Benchmark
+    public LibrarySorter.Result sorterTitle() {
+        return warm.sort(tracks, LibrarySort.Order.TITLE);
+    }
+
+    @Benchmark
+    public LibrarySorter.Result sorterTitleCold() {
+        return new LibrarySorter(Locale.US).sort(tracks, LibrarySort.Order.TITLE);
+    }
+
+    @Benchmark
+    public List<Track> comparatorArtist() {
+        List<Track> copy = new ArrayList<>(tracks);
+        copy.sort(collatedArtist);
+        return copy;
+    }
+
+    @Benchmark
+    public LibrarySorter.Result sorterArtist() {
+        return warm.sort(tracks, LibrarySort.Order.ARTIST);
+    }
+}
@@ -0,0 +1,116 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Retained heap of the library at 10k/100k/500k tracks. Before: activity and service each held a
+ * list of tracks with a parsed Uri. After: the activity still holds a list of tracks, now without
+ * Uris, for its adapter, and shares one TrackTable with the service. Both totals are printed.
+ * Not a JMH benchmark: it measures used heap after GC, so run it alone with a fixed heap.
+ *
+ * ./gradlew :core:heapFootprint
+ */
+public final class HeapFootprint {
+
+    private static final String AUTHORITY = "com.android.externalstorage.documents";
+    private static final int[] SIZES = {10_000, 100_000, 500_000};
+
+    /**
+     * Field layout of the HierarchicalUri that DocumentsContract.buildDocumentUriUsingTree
+     * returns: the authority Part wraps the tree's string, the path is a freshly encoded String,
+     * query and fragment are shared empty Parts. android.net.Uri doesn't exist off-device.
+     */
+    static final class UriLayout {
+        final String scheme = "content";
+        final Part authority;
+        final Part path;
+        final Part query = Part.NULL;
+        final Part fragment = Part.NULL;
+        String ssp;
+        String uriString;
+
+        UriLayout(Part authority, Part path) {
+            this.authority = authority;
+            this.path = path;
+        }
+    }
+
+    static final class Part {
+        static final Part NULL = new Part(null, null);
+        final String encoded;
+        final String decoded;
+        Object pathSegments;
+
+        Part(String encoded, String decoded) {
+            this.encoded = encoded;
+            this.decoded = decoded;
+        }
+    }
+
+    static final class LegacySong {
+        final Track track;
+        final UriLayout uri;
+
+        LegacySong(Track track, UriLayout uri) {
+            this.track = track;
+            this.uri = uri;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%8s %14s %10s %11s %14s %12s %11s%n", "tracks", "list+uri (MB)", "list (MB)",
+                "table (MB)", "estimate (MB)", "before (MB)", "after (MB)");
+        for (int count : SIZES) {
+            // Fill the string pool first so no measurement is charged for the shared artists/albums
+            Libraries.safTracks(count, 42);
+            long before = usedHeap();
+            List<LegacySong> legacy = legacy(Libraries.safTracks(count, 42));
+            long legacyBytes = usedHeap() - before;
+            if (legacy.size() != count) throw new AssertionError();
+            legacy = null;
+
+            before = usedHeap();
+            List<Track> list = Libraries.safTracks(count, 42);
+            long listBytes = usedHeap() - before;
+            if (list.size() != count) throw new AssertionError();
+            list = null;
+
+            before = usedHeap();
+            TrackTable table = TrackTable.of(Libraries.safTracks(count, 42));
+            long tableBytes = usedHeap() - before;
+            if (table.indexOf(table.documentId(count - 1)) != count - 1) throw new AssertionError();
+
+            // Before: a list with Uris in activity and service each; after: the activity's list plus the shared table
+            System.out.printf("%8d %14.1f %10.1f %11.1f %14.1f %12.1f %11.1f%n", count, mb(legacyBytes), mb(listBytes),
+                    mb(tableBytes), mb(table.estimatedBytes()), mb(2 * legacyBytes), mb(listBytes + tableBytes));
+        }
+    }
+
+    private static List<LegacySong> legacy(List<Track> tracks) throws Exception {
+        Part authority = new Part(null, AUTHORITY);
+        String treeSegment = "/tree/" + URLEncoder.encode("primary:Music", "UTF-8");
+        List<LegacySong> songs = new ArrayList<>(tracks.size());
+        for (Track track : tracks) {
+            String path = treeSegment + "/document/" + URLEncoder.encode(track.getDocumentId(), "UTF-8").replace("+", "%20");
+            songs.add(new LegacySong(track, new UriLayout(authority, new Part(path, null))));
+        }
+        return songs;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    private static double mb(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+}
@@ -0,0 +1,71 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Deterministic synthetic libraries for the benchmarks. */
+final class Libraries {
+
+    private static final String[] WORDS = {
+            "love", "night", "blue", "river", "fire", "dream", "heart", "road", "summer", "light",
+            "city", "rain", "gold", "shadow", "ocean", "wild", "stone", "echo", "silver", "home"
+    };
+    private static final String[] EXTENSIONS = {
+            ".mp3", ".flac", ".m4a", ".ogg", ".wav", ".aac", ".jpg", ".txt", ".MP3", ".nfo"
+    };
+
+    private Libraries() { }
+
+    static List<Track> tracks(int count, long seed) {
+        Random random = new Random(seed);
+        List<Track> tracks = new ArrayList<>(count);
+        int artists = Math.max(1, count / 100);
+        for (int i = 0; i < count; i++) {
+            Track track = new Track(phrase(random, 1 + random.nextInt(4)) + ".mp3", "doc/" + i, 4_000_000, i);
+            int artist = random.nextInt(artists);
+            track.setMetadata(new SongMetadata("Artist " + artist, "Album " + artist + "-" + random.nextInt(5),
+                    1 + random.nextInt(14), 180_000, 320, false));
+            tracks.add(track);
+        }
+        return tracks;
+    }
+
+    /**
+     * Tracks as a SAF scan of external storage produces them: document ids are
+     * "primary:Music/Artist/Album/NN title.mp3", twelve tracks per album and five albums per artist.
+     */
+    static List<Track> safTracks(int count, long seed) {
+        Random random = new Random(seed);
+        List<Track> tracks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String artist = "Artist " + i / 60;
+            String album = "Album " + i / 12;
+            String name = String.format("%02d %s.mp3", i % 12 + 1, phrase(random, 1 + random.nextInt(4)));
+            Track track = new Track(name, "primary:Music/" + artist + "/" + album + "/" + name,
+                    3_000_000 + random.nextInt(7_000_000), 1_600_000_000_000L + random.nextInt(1_000_000_000));
+            track.setMetadata(new SongMetadata(artist, album, i % 12 + 1, 120_000 + random.nextInt(240_000), 320, i % 12 == 0));
+            tracks.add(track);
+        }
+        return tracks;
+    }
+
+    /** File names as a folder scan sees them; roughly 70% are audio. */
+    static List<String> fileNames(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(phrase(random, 1 + random.nextInt(4)) + EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+        }
+        return names;
+    }
+
+    private static String phrase(Random random, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            if (w > 0) sb.append(' ');
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Filtering scanned file names and sorting the library. Sorts include copying the list. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LibraryBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private List<String> fileNames;
+    private List<Track> tracks;
+    private List<Track> sortedByTitle;
+
+    @Setup
+    public void setUp() {
+        fileNames = Libraries.fileNames(size, 7);
+        tracks = Libraries.tracks(size, 7);
+        sortedByTitle = new ArrayList<>(tracks);
+        LibrarySort.sort(sortedByTitle, LibrarySort.Order.TITLE);
+        // A freshly scanned batch appended to an already sorted library
+        sortedByTitle.addAll(Libraries.tracks(Math.max(1, size / 100), 8));
+    }
+
+    @Benchmark
+    public List<String> filterAudioFiles() {
+        return AudioFiles.filter(fileNames);
+    }
+
+    @Benchmark
+    public List<Track> sortByTitle() {
+        List<Track> copy = new ArrayList<>(tracks);
+        LibrarySort.sort(copy, LibrarySort.Order.TITLE);
+        return copy;
+    }
+
+    @Benchmark
+    public List<Track> sortByArtist() {
+        List<Track> copy = new ArrayList<>(tracks);
+        LibrarySort.sort(copy, LibrarySort.Order.ARTIST);
+        return copy;
+    }
+
+    @Benchmark
+    public List<Track> resortAfterAppend() {
+        List<Track> copy = new ArrayList<>(sortedByTitle);
+        LibrarySort.sort(copy, LibrarySort.Order.TITLE);
+        return copy;
+    }
+}
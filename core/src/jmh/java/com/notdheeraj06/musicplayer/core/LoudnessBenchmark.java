@@ -0,0 +1,59 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LoudnessMeter} over one four-minute stereo track fed in decoder-sized buffers: the
+ * JVM-side share of background analysis per track, decoding excluded. 60,000 divided by the
+ * score in milliseconds is the tracks per minute the math alone allows on one core.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LoudnessBenchmark {
+
+    private static final int SECONDS = 240;
+    // A typical MediaCodec output buffer
+    private static final int BUFFER_FRAMES = 1024;
+
+    @Param({"44100", "48000"})
+    public int sampleRate;
+
+    private float[] buffer;
+
+    @Setup
+    public void setUp() {
+        // Noise with a slow swell, so both gates have blocks to drop
+        Random random = new Random(3);
+        buffer = new float[sampleRate * 2 * 10];
+        for (int f = 0; f < buffer.length / 2; f++) {
+            float level = (float) (0.3 * (1.1 + Math.sin(2 * Math.PI * f / (sampleRate * 5.0))));
+            buffer[2 * f] = level * (random.nextFloat() - 0.5f);
+            buffer[2 * f + 1] = level * (random.nextFloat() - 0.5f);
+        }
+    }
+
+    @Benchmark
+    public double measureTrack() {
+        LoudnessMeter meter = new LoudnessMeter(sampleRate, 2);
+        int framesPerLoop = buffer.length / 2;
+        long total = (long) sampleRate * SECONDS;
+        for (long done = 0; done < total; ) {
+            int offset = (int) (done % framesPerLoop);
+            int frames = (int) Math.min(Math.min(BUFFER_FRAMES, framesPerLoop - offset), total - done);
+            meter.addFrames(buffer, offset, frames);
+            done += frames;
+        }
+        return meter.integratedLoudness() + meter.samplePeak();
+    }
+}
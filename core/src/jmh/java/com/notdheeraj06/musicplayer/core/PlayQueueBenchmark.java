@@ -0,0 +1,69 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue edits against the persistent PlayQueue versus copying an ArrayList, which is what
+ * re-sending the queue to the service used to cost. Edits should grow with log n, copies with n.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlayQueueBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private final Random random = new Random(42);
+    private TrackTable library;
+    private PlayQueue queue;
+    private List<Integer> list;
+
+    @Setup
+    public void setUp() {
+        library = TrackTable.of(Libraries.tracks(size, 42));
+        queue = PlayQueue.of(library);
+        // Start from a queue that has already been edited a lot, not the single-run best case
+        for (int i = 0; i < 1000; i++) queue = queue.move(random.nextInt(size), random.nextInt(size));
+        list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) list.add(i);
+    }
+
+    @Benchmark
+    public PlayQueue bind() {
+        return PlayQueue.of(library);
+    }
+
+    @Benchmark
+    public PlayQueue move() {
+        return queue = queue.move(random.nextInt(size), random.nextInt(size));
+    }
+
+    @Benchmark
+    public PlayQueue insertThenRemove() {
+        int position = random.nextInt(size);
+        return queue = queue.insert(position, random.nextInt(size)).remove(position);
+    }
+
+    @Benchmark
+    public int rowAt() {
+        return queue.rowAt(random.nextInt(size));
+    }
+
+    @Benchmark
+    public List<Integer> copyList() {
+        return new ArrayList<>(list);
+    }
+}
@@ -0,0 +1,93 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Importing a 50,000-entry M3U8 written on another machine (Windows paths, #EXTINF titles, one in
+ * twenty entries missing from the library): building the {@link PathIndex}, a full import against
+ * a built one, and the same import resolved through a map of folded path strings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PlaylistImportBenchmark {
+
+    private static final int ENTRIES = 50_000;
+
+    @Param({"50000", "200000"})
+    public int librarySize;
+
+    private TrackTable library;
+    private PathIndex index;
+    private byte[] playlist;
+    private Map<String, Integer> byPath;
+
+    @Setup
+    public void setUp() {
+        List<Track> tracks = Libraries.safTracks(librarySize, 11);
+        library = TrackTable.of(tracks);
+        index = PathIndex.build(library);
+        byPath = new HashMap<>();
+        for (int row = 0; row < library.size(); row++) {
+            String documentId = library.documentId(row);
+            byPath.put(documentId.substring(documentId.indexOf(':') + 1).toLowerCase(Locale.ROOT), row);
+        }
+
+        Random random = new Random(5);
+        StringBuilder sb = new StringBuilder("#EXTM3U\n");
+        for (int i = 0; i < ENTRIES; i++) {
+            Track track = tracks.get(random.nextInt(tracks.size()));
+            String path = track.getDocumentId().substring("primary:".length());
+            if (random.nextInt(20) == 0) path = path.replace(".mp3", " (live).mp3");
+            sb.append("#EXTINF:").append(track.getMetadata().getDurationMs() / 1000).append(',')
+                    .append(track.getMetadata().getArtist()).append(" - ").append(track.getTitle()).append('\n')
+                    .append("C:\\Users\\me\\").append(path.replace('/', '\\')).append('\n');
+        }
+        playlist = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public PathIndex buildIndex() {
+        return PathIndex.build(library);
+    }
+
+    @Benchmark
+    public PlaylistImport.Result importPlaylist() throws IOException {
+        return PlaylistImport.run(new ByteArrayInputStream(playlist), "mixed.m3u8", index);
+    }
+
+    /** Baseline: the same parse, each entry tried as "music/..." and then with one more segment cut each time. */
+    @Benchmark
+    public int importWithStringMap() throws IOException {
+        int[] resolved = new int[1];
+        PlaylistParser.parse(PlaylistParser.reader(new ByteArrayInputStream(playlist), "mixed.m3u8"),
+                (line, location, title) -> {
+                    String path = location.replace('\\', '/').toLowerCase(Locale.ROOT);
+                    for (int slash = 0; slash >= 0; slash = path.indexOf('/', slash + 1)) {
+                        Integer row = byPath.get(slash == 0 ? path : path.substring(slash + 1));
+                        if (row != null) {
+                            resolved[0]++;
+                            return;
+                        }
+                    }
+                });
+        return resolved[0];
+    }
+}
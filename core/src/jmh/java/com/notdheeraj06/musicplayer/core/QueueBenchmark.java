@@ -0,0 +1,54 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Per-operation cost of skips and auto-advance; should not grow with the queue size. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class QueueBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean shuffle;
+
+    private QueueNavigator queue;
+    private int current;
+
+    @Setup
+    public void setUp() {
+        queue = new QueueNavigator(new Random(42));
+        queue.reset(size, 0);
+        queue.setShuffleEnabled(shuffle, 0);
+        queue.setRepeatMode(QueueNavigator.REPEAT_ALL);
+        current = 0;
+    }
+
+    @Benchmark
+    public int skipNext() {
+        return current = queue.skipNext(current);
+    }
+
+    @Benchmark
+    public int skipNextThenPrevious() {
+        current = queue.skipNext(current);
+        return current = queue.skipPrevious(current);
+    }
+
+    @Benchmark
+    public int autoAdvance() {
+        return current = queue.autoAdvance(current);
+    }
+}
@@ -0,0 +1,97 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Seek latency against a throttled fake provider: every read costs a fixed round trip plus
+ * transfer time, like a SAF provider backed by a slow SD card or the network. A seek is followed
+ * by the run of small sequential reads a decoder does to resume playback.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReadAheadBenchmark {
+
+    private static final int FILE_SIZE = 64 * 1024 * 1024;
+    private static final int READ_SIZE = 16 * 1024;
+    private static final int READS_AFTER_SEEK = 32;
+
+    /** Round trip per read in microseconds. */
+    @Param({"500", "2000"})
+    public int latencyUs;
+
+    @Param({"false", "true"})
+    public boolean readAhead;
+
+    private final Random random = new Random(42);
+    private final byte[] buffer = new byte[READ_SIZE];
+    private ThrottledSource source;
+    private ReadAheadReader reader;
+
+    static final class ThrottledSource implements ReadAheadReader.Source {
+        private final long size;
+        private final long latencyNs;
+        // 20 MB/s, a slow SD card
+        private static final long NS_PER_KB = 50_000;
+
+        ThrottledSource(long size, long latencyNs) {
+            this.size = size;
+            this.latencyNs = latencyNs;
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int length) {
+            if (position >= size) return -1;
+            int n = (int) Math.min(length, size - position);
+            LockSupport.parkNanos(latencyNs + n / 1024 * NS_PER_KB);
+            for (int i = 0; i < n; i++) buffer[offset + i] = (byte) (position + i);
+            return n;
+        }
+
+        @Override
+        public long size() { return size; }
+
+        @Override
+        public void close() { }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        source = new ThrottledSource(FILE_SIZE, latencyUs * 1000L);
+        if (readAhead) reader = new ReadAheadReader(source, ReadAheadReader.DEFAULT_CAPACITY);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (reader != null) {
+            System.out.println("\n" + reader.getStats());
+            reader.close();
+        }
+    }
+
+    @Benchmark
+    public long seekThenStream() throws IOException {
+        long position = (long) random.nextInt(FILE_SIZE - READS_AFTER_SEEK * READ_SIZE);
+        long total = 0;
+        for (int i = 0; i < READS_AFTER_SEEK; i++) {
+            int n = readAhead ? reader.readAt(position, buffer, 0, READ_SIZE) : source.read(position, buffer, 0, READ_SIZE);
+            position += n;
+            total += n;
+        }
+        return total;
+    }
+}
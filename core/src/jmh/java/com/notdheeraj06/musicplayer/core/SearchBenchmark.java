@@ -0,0 +1,60 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SearchIndex#search} as typed: each call takes the next query from a cycle of growing
+ * prefixes, multi-term and mid-word queries. Sampled so the report carries p50 and p99 per
+ * keystroke, which is what the 16 ms frame budget is about.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchBenchmark {
+
+    // The cap LibrarySearch passes
+    private static final int LIMIT = 1000;
+    private static final String[] QUERIES = {
+            "r", "ri", "riv", "rive", "river",
+            "river n", "river ni", "river nig",
+            "artist 1", "artist 12",
+            "ove", "adow", "ilv",
+            "s", "su", "sum", "summer g"
+    };
+
+    @Param({"10000", "100000", "500000"})
+    public int size;
+
+    private SearchIndex index;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        // Documents as LibrarySearch builds them: title without extension, artist, album
+        List<String> documents = new ArrayList<>(size);
+        for (Track track : Libraries.tracks(size, 9)) {
+            String title = track.getTitle();
+            documents.add(title.substring(0, title.lastIndexOf('.')) + ' '
+                    + track.getMetadata().getArtist() + ' ' + track.getMetadata().getAlbum());
+        }
+        index = SearchIndex.build(documents);
+    }
+
+    @Benchmark
+    public int[] search() {
+        String query = QUERIES[next];
+        next = (next + 1) % QUERIES.length;
+        return index.search(query, LIMIT, () -> false);
+    }
+}
@@ -0,0 +1,48 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Building a whole shuffle order, and following a library change that removes and adds 1%. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShuffleBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private ShuffleOrder order;
+    private int[] oldToNew;
+
+    @Setup
+    public void setUp() {
+        order = new ShuffleOrder(new Random(42));
+        order.reset(size, 0);
+        // Drop every 100th song; the same number of new songs are appended
+        oldToNew = new int[size];
+        int next = 0;
+        for (int i = 0; i < size; i++) oldToNew[i] = i % 100 == 0 ? -1 : next++;
+    }
+
+    @Benchmark
+    public ShuffleOrder generate() {
+        order.reset(size, size / 2);
+        return order;
+    }
+
+    @Benchmark
+    public ShuffleOrder remap() {
+        order.remap(oldToNew, size);
+        return order;
+    }
+}
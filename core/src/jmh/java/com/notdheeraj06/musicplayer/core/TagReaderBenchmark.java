@@ -0,0 +1,155 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TagReader#read} over a folder of synthetic five-megabyte files (sparse past the tags)
+ * with 100 KB of cover art each. The score is files per second with the page cache warm, so it
+ * is the parsing and syscall cost a scan pays per file, not the storage.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TagReaderBenchmark {
+
+    private static final int FILES = 200;
+    private static final int FILE_BYTES = 5 * 1024 * 1024;
+    private static final int ART_BYTES = 100 * 1024;
+
+    @Param({"mp3", "flac", "m4a"})
+    public String format;
+
+    private File dir;
+    private File[] files;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("tags").toFile();
+        files = new File[FILES];
+        for (int i = 0; i < FILES; i++) {
+            byte[] head;
+            switch (format) {
+                case "flac": head = flac(i); break;
+                case "m4a": head = mp4(i); break;
+                default: head = mp3(i); break;
+            }
+            files[i] = new File(dir, i + "." + format);
+            try (RandomAccessFile out = new RandomAccessFile(files[i], "rw")) {
+                out.write(head);
+                out.setLength(Math.max(FILE_BYTES, head.length));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public SongMetadata readFile() throws IOException {
+        File file = files[next];
+        next = (next + 1) % FILES;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            return TagReader.read(in.getChannel());
+        }
+    }
+
+    private static byte[] mp3(int i) {
+        byte[] frames = cat(
+                id3Frame("TPE1", text("Artist " + i % 50)),
+                id3Frame("TALB", text("Album " + i % 20)),
+                id3Frame("TRCK", text(i % 12 + 1 + "/12")),
+                id3Frame("APIC", cat(ascii("\0image/jpeg\0\3\0"), new byte[ART_BYTES])));
+        byte[] header = ascii("ID3\3\0\0\0\0\0\0");
+        for (int b = 0; b < 4; b++) header[6 + b] = (byte) ((frames.length >> (7 * (3 - b))) & 0x7f);
+        // MPEG-1 Layer III, 128 kbit/s, 44.1 kHz, then silence
+        return cat(header, frames, new byte[]{(byte) 0xff, (byte) 0xfb, (byte) 0x90, 0x40}, new byte[4096]);
+    }
+
+    private static byte[] flac(int i) {
+        ByteBuffer info = ByteBuffer.allocate(34);
+        info.putLong(10, (44100L << 44) | (1L << 41) | (15L << 36) | 44100L * 240);
+        ByteBuffer comments = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        String[] values = {"ARTIST=Artist " + i % 50, "ALBUM=Album " + i % 20, "TRACKNUMBER=" + (i % 12 + 1)};
+        comments.putInt(0).putInt(values.length);
+        for (String v : values) comments.putInt(v.length()).put(ascii(v));
+        ByteBuffer picture = ByteBuffer.allocate(4 + 4 + 10 + 4 + 16 + 4 + ART_BYTES);
+        picture.putInt(3).putInt(10).put(ascii("image/jpeg")).putInt(0).position(picture.position() + 16);
+        picture.putInt(ART_BYTES);
+        return cat(ascii("fLaC"),
+                flacBlock(0, info.array(), 34),
+                flacBlock(4, comments.array(), comments.position()),
+                flacBlock(0x86, picture.array(), picture.capacity()));
+    }
+
+    private static byte[] mp4(int i) {
+        ByteBuffer mvhd = ByteBuffer.allocate(100).putInt(12, 1000).putInt(16, 240000);
+        byte[] ilst = atom("ilst", cat(
+                atom("\u00a9ART", data(ascii("Artist " + i % 50))),
+                atom("\u00a9alb", data(ascii("Album " + i % 20))),
+                atom("trkn", data(new byte[]{0, 0, 0, (byte) (i % 12 + 1), 0, 12, 0, 0})),
+                atom("covr", data(new byte[ART_BYTES]))));
+        byte[] meta = atom("meta", cat(new byte[4], atom("hdlr", new byte[25]), ilst));
+        return cat(atom("ftyp", ascii("M4A \0\0\0\0")),
+                atom("moov", cat(atom("mvhd", mvhd.array()), atom("udta", meta))));
+    }
+
+    private static byte[] id3Frame(String id, byte[] body) {
+        ByteBuffer h = ByteBuffer.allocate(10).put(ascii(id)).putInt(body.length);
+        return cat(h.array(), body);
+    }
+
+    private static byte[] text(String value) {
+        return cat(new byte[]{0}, ascii(value));
+    }
+
+    private static byte[] flacBlock(int type, byte[] body, int length) {
+        byte[] h = {(byte) type, (byte) (length >> 16), (byte) (length >> 8), (byte) length};
+        byte[] out = new byte[4 + length];
+        System.arraycopy(h, 0, out, 0, 4);
+        System.arraycopy(body, 0, out, 4, length);
+        return out;
+    }
+
+    private static byte[] atom(String type, byte[] body) {
+        ByteBuffer h = ByteBuffer.allocate(8).putInt(8 + body.length);
+        byte[] out = cat(h.array(), body);
+        for (int c = 0; c < 4; c++) out[4 + c] = (byte) type.charAt(c);
+        return out;
+    }
+
+    private static byte[] data(byte[] payload) {
+        return atom("data", cat(new byte[8], payload));
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] cat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] p : parts) out.write(p, 0, p.length);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,29 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Decides which files in a scanned folder are treated as songs. */
+public final class AudioFiles {
+
+    private AudioFiles() { }
+
+    /** Matches on the extension only, ignoring case, without allocating. */
+    public static boolean isAudioFile(String name) {
+        return endsWithIgnoreCase(name, ".mp3") || endsWithIgnoreCase(name, ".wav")
+                || endsWithIgnoreCase(name, ".flac") || endsWithIgnoreCase(name, ".aac")
+                || endsWithIgnoreCase(name, ".ogg") || endsWithIgnoreCase(name, ".m4a");
+    }
+
+    public static List<String> filter(List<String> names) {
+        List<String> result = new ArrayList<>();
+        for (String name : names) {
+            if (name != null && isAudioFile(name)) result.add(name);
+        }
+        return result;
+    }
+
+    private static boolean endsWithIgnoreCase(String name, String suffix) {
+        return name.regionMatches(true, name.length() - suffix.length(), suffix, 0, suffix.length());
+    }
+}
@@ -0,0 +1,60 @@
+package com.notdheeraj06.musicplayer.core;
+
+/**
+ * Equal-power crossfade gains: the outgoing track follows cos and the incoming one sin over the
+ * fade, so their summed power stays constant and uncorrelated material doesn't dip in the middle
+ * the way a linear fade does. Gains come from a quarter-sine table, so the audio thread does a
+ * lookup per frame rather than a cos.
+ */
+public final class Crossfade {
+
+    private static final int TABLE_SIZE = 1024;
+    private static final float[] SINE = new float[TABLE_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= TABLE_SIZE; i++) SINE[i] = (float) Math.sin(Math.PI / 2 * i / TABLE_SIZE);
+    }
+
+    private Crossfade() { }
+
+    /** Gain of the incoming track at {@code progress} (0 to 1) through the fade. */
+    public static float fadeIn(float progress) {
+        if (progress <= 0) return 0;
+        if (progress >= 1) return 1;
+        float x = progress * TABLE_SIZE;
+        int i = (int) x;
+        return SINE[i] + (SINE[i + 1] - SINE[i]) * (x - i);
+    }
+
+    /** Gain of the outgoing track at {@code progress} (0 to 1) through the fade. */
+    public static float fadeOut(float progress) {
+        return fadeIn(1 - progress);
+    }
+
+    /**
+     * Scales {@code frames} frames of {@code buffer[offset..]} (frames, interleaved) by the
+     * fade-in or fade-out gain, frame {@code i} being at {@code (position + i) / length}.
+     */
+    public static void apply(float[] buffer, int offset, int frames, int channels, long position, long length, boolean in) {
+        int s = offset * channels;
+        for (int i = 0; i < frames; i++) {
+            float progress = (float) (position + i) / length;
+            float gain = in ? fadeIn(progress) : fadeOut(progress);
+            for (int c = 0; c < channels; c++) buffer[s++] *= gain;
+        }
+    }
+
+    /**
+     * Adds {@code frames} frames of {@code from[fromOffset..]} into {@code to[toOffset..]}, clipped
+     * to full scale: equal-power gains sum to up to 1.41 on correlated material, and the output
+     * path's handling of float samples past 1 is device-dependent.
+     */
+    public static void mixInto(float[] to, int toOffset, float[] from, int fromOffset, int frames, int channels) {
+        int t = toOffset * channels;
+        int f = fromOffset * channels;
+        for (int i = frames * channels; i > 0; i--, t++) {
+            float sum = to[t] + from[f++];
+            to[t] = sum > 1f ? 1f : sum < -1f ? -1f : sum;
+        }
+    }
+}
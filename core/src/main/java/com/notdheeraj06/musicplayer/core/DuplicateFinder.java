@@ -0,0 +1,238 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds byte-identical copies in a library while reading as little of it as possible. Tracks
+ * are grouped by size; only sizes shared by two or more are sampled (a hash of the size and of
+ * {@link #SAMPLE_BYTES} at the head, middle and tail); only samples shared by two or more are
+ * hashed in full. Hashes are 64-bit prefixes of SHA-256, so 0 can mean "not known": known hashes
+ * passed in are trusted, and the ones computed are written back for the caller to persist.
+ * Files are read with positional reads, one task per file on the caller's pool.
+ */
+public final class DuplicateFinder {
+
+    /** Opens a track's content for positional reads; the finder closes it. */
+    public interface Files {
+        FileChannel open(int item) throws IOException;
+    }
+
+    public static final class Result {
+        /** Items of each set of identical files, smallest item first; sets ordered by their first item. */
+        public final List<int[]> groups;
+        /** Items whose sample or full hash was computed in this run. */
+        public final int[] hashed;
+        public final int failed;
+        public final long bytesRead;
+        public final long totalBytes;
+
+        Result(List<int[]> groups, int[] hashed, int failed, long bytesRead, long totalBytes) {
+            this.groups = Collections.unmodifiableList(groups);
+            this.hashed = hashed;
+            this.failed = failed;
+            this.bytesRead = bytesRead;
+            this.totalBytes = totalBytes;
+        }
+
+        /** Files that could be removed while keeping one of each set. */
+        public int redundantCount() {
+            int count = 0;
+            for (int[] group : groups) count += group.length - 1;
+            return count;
+        }
+    }
+
+    static final int SAMPLE_BYTES = 64 * 1024;
+    private static final int FULL_CHUNK_BYTES = 256 * 1024;
+    private static final byte SAMPLE = 1;
+    private static final byte FULL = 2;
+
+    private final ExecutorService pool;
+
+    public DuplicateFinder(ExecutorService pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * {@code sampleHashes} and {@code fullHashes} are parallel to {@code tracks}, 0 where unknown,
+     * and are filled in as hashes are computed. Blocks until done; an interrupt cancels the reads.
+     */
+    public Result find(List<? extends Track> tracks, long[] sampleHashes, long[] fullHashes, Files files)
+            throws InterruptedException {
+        int n = tracks.size();
+        long totalBytes = 0;
+        for (Track track : tracks) totalBytes += Math.max(0, track.getSize());
+        AtomicLong bytesRead = new AtomicLong();
+        boolean[] failed = new boolean[n];
+        boolean[] hashed = new boolean[n];
+
+        List<int[]> groups = refine(groupBySize(tracks), sampleHashes, SAMPLE, tracks, files, bytesRead, failed, hashed);
+        List<int[]> needFull = new ArrayList<>();
+        List<int[]> identical = new ArrayList<>();
+        for (int[] group : groups) {
+            // The sample of a small file is all of it
+            if (tracks.get(group[0]).getSize() <= 3L * SAMPLE_BYTES) identical.add(group);
+            else needFull.add(group);
+        }
+        identical.addAll(refine(needFull, fullHashes, FULL, tracks, files, bytesRead, failed, hashed));
+        Collections.sort(identical, (a, b) -> Integer.compare(a[0], b[0]));
+
+        int failures = 0;
+        int hashedCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (failed[i]) failures++;
+            if (hashed[i]) hashedCount++;
+        }
+        int[] hashedItems = new int[hashedCount];
+        for (int i = 0, k = 0; i < n; i++) if (hashed[i]) hashedItems[k++] = i;
+        return new Result(identical, hashedItems, failures, bytesRead.get(), totalBytes);
+    }
+
+    /** Items sharing a size with at least one other, as groups of ascending items. */
+    private static List<int[]> groupBySize(List<? extends Track> tracks) {
+        Map<Long, IntList> bySize = new HashMap<>();
+        for (int i = 0; i < tracks.size(); i++) {
+            long size = tracks.get(i).getSize();
+            // Empty files are all alike and none of them is a track
+            if (size <= 0) continue;
+            IntList items = bySize.get(size);
+            if (items == null) bySize.put(size, items = new IntList());
+            items.add(i);
+        }
+        List<int[]> groups = new ArrayList<>();
+        for (IntList items : bySize.values()) if (items.size > 1) groups.add(items.toArray());
+        return groups;
+    }
+
+    /**
+     * Hashes the members of {@code groups} that have no hash yet, in parallel, then splits each
+     * group by hash and keeps the parts with two or more members.
+     */
+    private List<int[]> refine(List<int[]> groups, long[] hashes, byte kind, List<? extends Track> tracks,
+                               Files files, AtomicLong bytesRead, boolean[] failed, boolean[] hashed)
+            throws InterruptedException {
+        List<Future<?>> pending = new ArrayList<>();
+        try {
+            for (int[] group : groups) {
+                for (int item : group) {
+                    if (hashes[item] != 0) continue;
+                    long size = tracks.get(item).getSize();
+                    pending.add(pool.submit(() -> {
+                        try (FileChannel channel = files.open(item)) {
+                            hashes[item] = kind == SAMPLE ? sampleHash(channel, size, bytesRead) : fullHash(channel, size, bytesRead);
+                            hashed[item] = true;
+                        } catch (IOException | RuntimeException e) {
+                            failed[item] = true;
+                        }
+                        return null;
+                    }));
+                }
+            }
+            for (Future<?> future : pending) future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<?> future : pending) future.cancel(true);
+        }
+
+        List<int[]> refined = new ArrayList<>();
+        Map<Long, IntList> byHash = new HashMap<>();
+        for (int[] group : groups) {
+            byHash.clear();
+            for (int item : group) {
+                if (failed[item]) continue;
+                IntList items = byHash.get(hashes[item]);
+                if (items == null) byHash.put(hashes[item], items = new IntList());
+                items.add(item);
+            }
+            for (IntList items : byHash.values()) if (items.size > 1) refined.add(items.toArray());
+        }
+        return refined;
+    }
+
+    /** The size, then the head, middle and tail regions; the whole file if they would overlap. */
+    static long sampleHash(FileChannel channel, long size, AtomicLong bytesRead) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(SAMPLE);
+        updateLong(digest, size);
+        ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_BYTES);
+        if (size <= 3L * SAMPLE_BYTES) {
+            digestRange(channel, 0, size, buffer, digest, bytesRead);
+        } else {
+            digestRange(channel, 0, SAMPLE_BYTES, buffer, digest, bytesRead);
+            digestRange(channel, (size - SAMPLE_BYTES) / 2, SAMPLE_BYTES, buffer, digest, bytesRead);
+            digestRange(channel, size - SAMPLE_BYTES, SAMPLE_BYTES, buffer, digest, bytesRead);
+        }
+        return toHash(digest.digest());
+    }
+
+    static long fullHash(FileChannel channel, long size, AtomicLong bytesRead) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(FULL);
+        updateLong(digest, size);
+        digestRange(channel, 0, size, ByteBuffer.allocate(FULL_CHUNK_BYTES), digest, bytesRead);
+        return toHash(digest.digest());
+    }
+
+    private static void digestRange(FileChannel channel, long position, long length, ByteBuffer buffer,
+                                    MessageDigest digest, AtomicLong bytesRead) throws IOException {
+        long end = position + length;
+        while (position < end) {
+            if (Thread.interrupted()) throw new IOException("Interrupted");
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            // The file shrank since it was scanned; the hash is of what is there
+            if (read < 0) break;
+            position += read;
+            bytesRead.addAndGet(read);
+            digest.update(buffer.array(), 0, buffer.position());
+        }
+    }
+
+    private static void updateLong(MessageDigest digest, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) digest.update((byte) (value >>> shift));
+    }
+
+    private static long toHash(byte[] digest) {
+        long hash = 0;
+        for (int i = 0; i < 8; i++) hash = hash << 8 | (digest[i] & 0xff);
+        return hash != 0 ? hash : 1;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class IntList {
+        int[] items = new int[2];
+        int size;
+
+        void add(int item) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            items[size++] = item;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(items, size);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Library orders as comparators. Tracks without metadata, or with a blank tag, sort after those
+ * with it in artist and album order. {@link LibrarySorter} produces the same orders with locale-aware collation.
+ */
+public final class LibrarySort {
+
+    public enum Order { TITLE, ARTIST, ALBUM, FOLDER }
+
+    private static final Comparator<Track> BY_TITLE =
+            (a, b) -> String.CASE_INSENSITIVE_ORDER.compare(a.getTitle(), b.getTitle());
+
+    private static final Comparator<Track> BY_ALBUM = (a, b) -> {
+        int c = compareNullsLast(album(a), album(b));
+        if (c == 0) c = Integer.compare(trackNumber(a), trackNumber(b));
+        return c != 0 ? c : BY_TITLE.compare(a, b);
+    };
+
+    private static final Comparator<Track> BY_ARTIST = (a, b) -> {
+        int c = compareNullsLast(artist(a), artist(b));
+        return c != 0 ? c : BY_ALBUM.compare(a, b);
+    };
+
+    private static final Comparator<Track> BY_FOLDER = (a, b) -> {
+        int c = compareNullsLast(folder(a.getDocumentId()), folder(b.getDocumentId()));
+        return c != 0 ? c : BY_TITLE.compare(a, b);
+    };
+
+    private LibrarySort() { }
+
+    public static Comparator<Track> comparator(Order order) {
+        switch (order) {
+            case ARTIST: return BY_ARTIST;
+            case ALBUM: return BY_ALBUM;
+            case FOLDER: return BY_FOLDER;
+            default: return BY_TITLE;
+        }
+    }
+
+    /** Stable, and close to linear when the list is already mostly in order (e.g. a new batch appended). */
+    public static <T extends Track> void sort(List<T> tracks, Order order) {
+        tracks.sort(comparator(order));
+    }
+
+    private static String artist(Track t) {
+        return t.getMetadata() != null ? blankToNull(t.getMetadata().getArtist()) : null;
+    }
+
+    private static String album(Track t) {
+        return t.getMetadata() != null ? blankToNull(t.getMetadata().getAlbum()) : null;
+    }
+
+    static String blankToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value;
+    }
+
+    private static int trackNumber(Track t) {
+        return t.getMetadata() != null ? t.getMetadata().getTrackNumber() : 0;
+    }
+
+    /** The directory part of a document id ("primary:Music/Album/01.mp3" -> "primary:Music/Album"). */
+    static String folder(String documentId) {
+        if (documentId == null) return null;
+        int slash = documentId.lastIndexOf('/');
+        return slash < 0 ? "" : documentId.substring(0, slash);
+    }
+
+    private static int compareNullsLast(String a, String b) {
+        if (a == null) return b == null ? 0 : 1;
+        if (b == null) return -1;
+        return String.CASE_INSENSITIVE_ORDER.compare(a, b);
+    }
+}
@@ -0,0 +1,263 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.text.Collator;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@link LibrarySort} orders with locale-aware collation, plus fast-scroll sections.
+ *
+ * <p>Each distinct title, artist, album and folder is collated once into a key and kept across
+ * sorts, so a rescan that adds a batch, or a switch of order, only collates strings it hasn't
+ * seen. A sort turns every field
+ * into a dense int rank (one parallel sort over the distinct keys) and then orders row indices
+ * with stable LSD passes, least significant field first, each pass a parallel sort of packed
+ * (rank, position) longs; no comparator or string is touched per row comparison. Sections come
+ * from one pass over the sorted ranks. Not thread-safe.
+ */
+public final class LibrarySorter {
+
+    private static final int NULL_RANK = Integer.MAX_VALUE;
+
+    public static final class Result {
+        /** {@code order[i]} is the index in the input list of the row that sorts to position i. */
+        public final int[] order;
+        public final SectionIndex sections;
+
+        Result(int[] order, SectionIndex sections) {
+            this.order = order;
+            this.sections = sections;
+        }
+    }
+
+    private final Collator collator;
+    private final Locale locale;
+    private final Map<String, CachedKey> keys = new HashMap<>();
+    private int generation;
+    private int used;
+
+    public LibrarySorter(Locale locale) {
+        this.locale = locale;
+        collator = Collator.getInstance(locale);
+        // Case-insensitive, accent-sensitive, like the comparators' CASE_INSENSITIVE_ORDER
+        collator.setStrength(Collator.SECONDARY);
+    }
+
+    public Locale getLocale() { return locale; }
+
+    /** Distinct strings with a cached collation key. */
+    public int cachedKeys() { return keys.size(); }
+
+    public Result sort(List<? extends Track> tracks, LibrarySort.Order order) {
+        generation++;
+        used = 0;
+        int n = tracks.size();
+        String[] titles = new String[n];
+        for (int i = 0; i < n; i++) titles[i] = tracks.get(i).getTitle();
+        int[] titleRank = ranks(titles);
+
+        int[] perm = new int[n];
+        for (int i = 0; i < n; i++) perm[i] = i;
+        perm = sortBy(perm, titleRank);
+
+        SectionIndex sections;
+        switch (order) {
+            case ALBUM:
+            case ARTIST: {
+                String[] albums = new String[n];
+                String[] artists = new String[n];
+                int[] trackNumbers = new int[n];
+                for (int i = 0; i < n; i++) {
+                    SongMetadata meta = tracks.get(i).getMetadata();
+                    if (meta == null) continue;
+                    // Blank tags are unknown, and sort with the untagged
+                    albums[i] = LibrarySort.blankToNull(meta.getAlbum());
+                    artists[i] = LibrarySort.blankToNull(meta.getArtist());
+                    trackNumbers[i] = Math.max(0, meta.getTrackNumber());
+                }
+                perm = sortBy(perm, trackNumbers);
+                int[] albumRank = ranks(albums);
+                perm = sortBy(perm, albumRank);
+                if (order == LibrarySort.Order.ALBUM) {
+                    sections = groups(perm, albumRank, albums, "Unknown album");
+                } else {
+                    int[] artistRank = ranks(artists);
+                    perm = sortBy(perm, artistRank);
+                    sections = groups(perm, artistRank, artists, "Unknown artist");
+                }
+                break;
+            }
+            case FOLDER: {
+                String[] folders = new String[n];
+                for (int i = 0; i < n; i++) folders[i] = LibrarySort.folder(tracks.get(i).getDocumentId());
+                int[] folderRank = ranks(folders);
+                perm = sortBy(perm, folderRank);
+                for (int i = 0; i < n; i++) folders[i] = folderLabel(folders[i]);
+                sections = groups(perm, folderRank, folders, "Unknown folder");
+                break;
+            }
+            default:
+                sections = initials(perm, titles);
+        }
+        evict();
+        return new Result(perm, sections);
+    }
+
+    /** Dense collation rank per row: equal strings (under the collator) share a rank; null ranks last. */
+    private int[] ranks(String[] values) {
+        int n = values.length;
+        HashMap<String, Integer> ids = new HashMap<>();
+        int[] rowIds = new int[n];
+        String[] distinct = new String[16];
+        for (int i = 0; i < n; i++) {
+            String value = values[i];
+            if (value == null) {
+                rowIds[i] = -1;
+                continue;
+            }
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = ids.size();
+                ids.put(value, id);
+                if (id == distinct.length) distinct = Arrays.copyOf(distinct, id * 2);
+                distinct[id] = value;
+            }
+            rowIds[i] = id;
+        }
+
+        int count = ids.size();
+        Key[] sorted = new Key[count];
+        for (int id = 0; id < count; id++) sorted[id] = new Key(key(distinct[id]), id);
+        Arrays.parallelSort(sorted);
+        int[] rankOfId = new int[count];
+        int rank = -1;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || sorted[i].compareTo(sorted[i - 1]) != 0) rank++;
+            rankOfId[sorted[i].id] = rank;
+        }
+
+        int[] rowRanks = new int[n];
+        for (int i = 0; i < n; i++) rowRanks[i] = rowIds[i] < 0 ? NULL_RANK : rankOfId[rowIds[i]];
+        return rowRanks;
+    }
+
+    private byte[] key(String value) {
+        CachedKey cached = keys.get(value);
+        if (cached == null) {
+            cached = new CachedKey(collator.getCollationKey(value).toByteArray());
+            keys.put(value, cached);
+        }
+        if (cached.generation != generation) {
+            cached.generation = generation;
+            used++;
+        }
+        return cached.bytes;
+    }
+
+    /**
+     * Drops strings this sort didn't use once they are half the cache, so renamed and deleted
+     * tracks don't accumulate while switching between orders keeps the other fields' keys.
+     */
+    private void evict() {
+        if (keys.size() <= 2 * used) return;
+        keys.values().removeIf(cached -> cached.generation != generation);
+    }
+
+    /** One stable pass: reorders {@code perm} by {@code rank} of each row, keeping ties in place. */
+    private static int[] sortBy(int[] perm, int[] rank) {
+        int n = perm.length;
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) packed[i] = (long) rank[perm[i]] << 32 | i;
+        Arrays.parallelSort(packed);
+        int[] sorted = new int[n];
+        for (int i = 0; i < n; i++) sorted[i] = perm[(int) packed[i]];
+        return sorted;
+    }
+
+    /** A section wherever the group rank changes along the sorted order. */
+    private static SectionIndex groups(int[] perm, int[] rank, String[] labels, String unknown) {
+        SectionIndex.Builder builder = new SectionIndex.Builder();
+        int previous = 0;
+        for (int i = 0; i < perm.length; i++) {
+            int row = perm[i];
+            if (i > 0 && rank[row] == previous) continue;
+            previous = rank[row];
+            String label = labels[row];
+            builder.add(label == null || label.isEmpty() ? unknown : label, i);
+        }
+        return builder.build(perm.length);
+    }
+
+    /** Title order is sectioned by initial letter, accents folded (E-acute under "E"), others under "#". */
+    private SectionIndex initials(int[] perm, String[] titles) {
+        SectionIndex.Builder builder = new SectionIndex.Builder();
+        String previous = null;
+        for (int i = 0; i < perm.length; i++) {
+            String label = initial(titles[perm[i]]);
+            if (label.equals(previous)) continue;
+            previous = label;
+            builder.add(label, i);
+        }
+        return builder.build(perm.length);
+    }
+
+    private String initial(String title) {
+        if (title == null) return "#";
+        // The collator skips leading spaces and punctuation, so the section does too
+        int first = -1;
+        for (int i = 0; i < title.length(); i += Character.charCount(first)) {
+            first = title.codePointAt(i);
+            if (Character.isLetterOrDigit(first)) break;
+        }
+        if (first < 0 || !Character.isLetter(first)) return "#";
+        String letter = new String(Character.toChars(first));
+        if (first >= 0x80) {
+            // Decomposes to the base letter followed by combining marks
+            letter = Normalizer.normalize(letter, Normalizer.Form.NFD);
+            letter = letter.substring(0, Character.charCount(letter.codePointAt(0)));
+        }
+        return letter.toUpperCase(locale);
+    }
+
+    /** "primary:Music/Album" -> "Album"; files at the top of a volume group under "/". */
+    private static String folderLabel(String folder) {
+        if (folder == null) return null;
+        if (folder.isEmpty()) return "/";
+        return folder.substring(Math.max(folder.lastIndexOf('/'), folder.lastIndexOf(':')) + 1);
+    }
+
+    private static final class CachedKey {
+        final byte[] bytes;
+        int generation;
+
+        CachedKey(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class Key implements Comparable<Key> {
+        final byte[] bytes;
+        final int id;
+
+        Key(byte[] bytes, int id) {
+            this.bytes = bytes;
+            this.id = id;
+        }
+
+        /** Collation keys compare as unsigned bytes, shorter prefix first. */
+        @Override
+        public int compareTo(Key other) {
+            byte[] a = bytes, b = other.bytes;
+            int length = Math.min(a.length, b.length);
+            for (int i = 0; i < length; i++) {
+                int c = (a[i] & 0xff) - (b[i] & 0xff);
+                if (c != 0) return c;
+            }
+            return a.length - b.length;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of listening events as fixed 32-byte records with a CRC32 each, split into
+ * numbered segment files ("listening-7.log"). Appends collect in a memory buffer and reach disk
+ * with one write and one fsync per {@link #flush}. Only the open segment's tail can be torn by a
+ * crash; {@link #open} reads it back and cuts it at the first record that doesn't check out.
+ * Segments are sealed by {@link #rotate} and deleted once {@link PlayStats} has folded them in.
+ * Not thread-safe.
+ */
+public final class ListeningLog implements Closeable {
+
+    public static final int RECORD_BYTES = 32;
+    // time, track, listened, duration, type, 3 reserved; then the CRC of those 28 bytes
+    private static final int PAYLOAD_BYTES = 28;
+
+    public static final byte COMPLETED = 1;
+    public static final byte SKIPPED = 2;
+    public static final byte PREVIOUS = 3;
+
+    private static final String PREFIX = "listening-";
+    private static final String SUFFIX = ".log";
+
+    /** One listen: a track played to the end, or left for the next or previous one after {@code listenedMs}. */
+    public static final class Event {
+        public final long timeMs;
+        public final long trackKey;
+        public final byte type;
+        public final int listenedMs;
+        public final int durationMs;
+
+        public Event(long timeMs, long trackKey, byte type, int listenedMs, int durationMs) {
+            this.timeMs = timeMs;
+            this.trackKey = trackKey;
+            this.type = type;
+            this.listenedMs = listenedMs;
+            this.durationMs = durationMs;
+        }
+    }
+
+    private final File dir;
+    private final ByteBuffer buffer;
+    private final CRC32 crc = new CRC32();
+    private long segment;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private long truncatedBytes;
+
+    private ListeningLog(File dir, int bufferRecords) {
+        this.dir = dir;
+        buffer = ByteBuffer.allocate(Math.max(1, bufferRecords) * RECORD_BYTES);
+    }
+
+    /**
+     * Opens the newest segment of {@code dir} for appending, creating the directory and a segment
+     * numbered at least {@code minSegment} if needed. Appends flush by themselves once
+     * {@code bufferRecords} are buffered.
+     */
+    public static ListeningLog open(File dir, long minSegment, int bufferRecords) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        ListeningLog log = new ListeningLog(dir, bufferRecords);
+        List<Long> segments = segments(dir);
+        log.openSegment(segments.isEmpty() ? minSegment : Math.max(minSegment, segments.get(segments.size() - 1)));
+        return log;
+    }
+
+    /** Segment numbers present in {@code dir}, oldest first. */
+    public static List<Long> segments(File dir) {
+        List<Long> segments = new ArrayList<>();
+        String[] names = dir.list();
+        if (names == null) return segments;
+        for (String name : names) {
+            if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) continue;
+            try {
+                segments.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+            } catch (NumberFormatException ignored) { }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    public static File segmentFile(File dir, long segment) {
+        return new File(dir, PREFIX + segment + SUFFIX);
+    }
+
+    /**
+     * Passes each intact record of a segment to {@code sink}, in order, stopping at the first
+     * torn or corrupt one. Returns the length of the intact prefix in bytes.
+     */
+    public static long read(File segmentFile, Consumer<Event> sink) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(segmentFile, "r")) {
+            return read(in.getChannel(), sink);
+        }
+    }
+
+    private static long read(FileChannel channel, Consumer<Event> sink) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(RECORD_BYTES * 256);
+        CRC32 crc = new CRC32();
+        long valid = 0;
+        long position = 0;
+        while (true) {
+            chunk.clear();
+            int read = channel.read(chunk, position);
+            if (read <= 0) return valid;
+            position += read;
+            chunk.flip();
+            while (chunk.remaining() >= RECORD_BYTES) {
+                Event event = decode(chunk, crc);
+                if (event == null) return valid;
+                valid += RECORD_BYTES;
+                if (sink != null) sink.accept(event);
+            }
+            // A partial record: re-read it with what follows, or stop there if nothing does
+            position -= chunk.remaining();
+            if (chunk.remaining() > 0 && read < chunk.capacity()) return valid;
+        }
+    }
+
+    public long segment() { return segment; }
+    /** Records buffered but not yet written. */
+    public int pendingRecords() { return buffer.position() / RECORD_BYTES; }
+    /** Bytes cut from torn tails when segments were opened. */
+    public long truncatedBytes() { return truncatedBytes; }
+
+    public void append(Event event) throws IOException {
+        if (!buffer.hasRemaining()) flush();
+        int start = buffer.position();
+        buffer.putLong(event.timeMs)
+                .putLong(event.trackKey)
+                .putInt(event.listenedMs)
+                .putInt(event.durationMs)
+                .put(event.type)
+                .put((byte) 0).put((byte) 0).put((byte) 0);
+        crc.reset();
+        crc.update(buffer.array(), start, PAYLOAD_BYTES);
+        buffer.putInt((int) crc.getValue());
+        if (!buffer.hasRemaining()) flush();
+    }
+
+    /** Writes the buffered records and fsyncs the segment. */
+    public void flush() throws IOException {
+        if (buffer.position() == 0) return;
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+        channel.force(false);
+    }
+
+    /** Seals the current segment and continues in a new one; returns the sealed segment's number. */
+    public long rotate() throws IOException {
+        flush();
+        long sealed = segment;
+        closeSegment();
+        openSegment(sealed + 1);
+        return sealed;
+    }
+
+    /** Deletes sealed segments up to and including {@code segment}. */
+    public void deleteThrough(long segment) {
+        for (long s : segments(dir)) {
+            if (s > segment || s >= this.segment) break;
+            //noinspection ResultOfMethodCallIgnored
+            segmentFile(dir, s).delete();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            closeSegment();
+        }
+    }
+
+    private void openSegment(long number) throws IOException {
+        segment = number;
+        file = new RandomAccessFile(segmentFile(dir, number), "rw");
+        channel = file.getChannel();
+        long valid = read(channel, null);
+        long size = channel.size();
+        if (size > valid) {
+            // A crash mid-write: drop the torn record and anything after it
+            truncatedBytes += size - valid;
+            channel.truncate(valid);
+            channel.force(false);
+        }
+        channel.position(valid);
+    }
+
+    private void closeSegment() throws IOException {
+        if (file == null) return;
+        file.close();
+        file = null;
+        channel = null;
+    }
+
+    private static Event decode(ByteBuffer in, CRC32 crc) {
+        int start = in.position();
+        crc.reset();
+        crc.update(in.array(), in.arrayOffset() + start, PAYLOAD_BYTES);
+        if (in.getInt(start + PAYLOAD_BYTES) != (int) crc.getValue()) return null;
+        long timeMs = in.getLong();
+        long trackKey = in.getLong();
+        int listenedMs = in.getInt();
+        int durationMs = in.getInt();
+        byte type = in.get();
+        in.position(start + RECORD_BYTES);
+        return new Event(timeMs, trackKey, type, listenedMs, durationMs);
+    }
+}
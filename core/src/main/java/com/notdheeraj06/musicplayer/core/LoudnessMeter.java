@@ -0,0 +1,182 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.util.Arrays;
+
+/**
+ * Integrated loudness (ITU-R BS.1770-4, as used by EBU R128 and ReplayGain 2.0) and sample peak
+ * of a stream of interleaved float PCM. Samples are K-weighted per channel, mean squares are
+ * taken over 400 ms blocks overlapping by 75%, and blocks are gated at -70 LUFS and then 10 LU
+ * below the loudness of the blocks that passed. Memory is one double per 100 ms of audio.
+ * Not thread-safe.
+ */
+public final class LoudnessMeter {
+
+    /** ReplayGain 2.0 plays every track as if it measured this. */
+    public static final double REFERENCE_LUFS = -18;
+
+    private static final double ABSOLUTE_GATE_LUFS = -70;
+    private static final double RELATIVE_GATE_LU = -10;
+    private static final int SUB_BLOCKS_PER_BLOCK = 4;
+
+    private final int channels;
+    private final double[] weights;
+    private final int hopFrames;
+    // K-weighting: a high shelf then a high pass, as biquads with a0 = 1
+    private final double sb0, sb1, sb2, sa1, sa2;
+    private final double hb0, hb1, hb2, ha1, ha2;
+    // Direct form II transposed state, two values per filter per channel
+    private final double[] shelfState;
+    private final double[] passState;
+
+    private final double[] subBlocks = new double[SUB_BLOCKS_PER_BLOCK];
+    private int subBlockCount;
+    private double subBlockSum;
+    private int subBlockFrames;
+    private double[] blocks = new double[64];
+    private int blockCount;
+    private double peak;
+    private long frames;
+
+    public LoudnessMeter(int sampleRate, int channels) {
+        if (sampleRate <= 0 || channels <= 0) throw new IllegalArgumentException(sampleRate + " Hz, " + channels + " channels");
+        this.channels = channels;
+        weights = channelWeights(channels);
+        hopFrames = Math.max(1, Math.round(sampleRate / 10f));
+
+        // Coefficients for any rate, derived from the 48 kHz ones in BS.1770 (as in libebur128)
+        double f0 = 1681.974450955533;
+        double gain = 3.999843853973347;
+        double q = 0.7071752369554196;
+        double k = Math.tan(Math.PI * f0 / sampleRate);
+        double vh = Math.pow(10, gain / 20);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1 + k / q + k * k;
+        sb0 = (vh + vb * k / q + k * k) / a0;
+        sb1 = 2 * (k * k - vh) / a0;
+        sb2 = (vh - vb * k / q + k * k) / a0;
+        sa1 = 2 * (k * k - 1) / a0;
+        sa2 = (1 - k / q + k * k) / a0;
+
+        f0 = 38.13547087602444;
+        q = 0.5003270373238773;
+        k = Math.tan(Math.PI * f0 / sampleRate);
+        a0 = 1 + k / q + k * k;
+        hb0 = 1;
+        hb1 = -2;
+        hb2 = 1;
+        ha1 = 2 * (k * k - 1) / a0;
+        ha2 = (1 - k / q + k * k) / a0;
+
+        shelfState = new double[2 * channels];
+        passState = new double[2 * channels];
+    }
+
+    /** BS.1770 weights for the usual layouts: surrounds count 1.41, the LFE not at all. */
+    private static double[] channelWeights(int channels) {
+        double[] weights = new double[channels];
+        Arrays.fill(weights, 1);
+        if (channels == 5) {
+            // L R C Ls Rs
+            weights[3] = weights[4] = 1.41;
+        } else if (channels == 6) {
+            // L R C LFE Ls Rs
+            weights[3] = 0;
+            weights[4] = weights[5] = 1.41;
+        }
+        return weights;
+    }
+
+    /** Adds {@code count} frames of {@code pcm}, interleaved and nominally in [-1, 1], from frame {@code offset}. */
+    public void addFrames(float[] pcm, int offset, int count) {
+        int at = offset * channels;
+        for (int f = 0; f < count; f++) {
+            double energy = 0;
+            for (int c = 0; c < channels; c++, at++) {
+                double x = pcm[at];
+                double magnitude = Math.abs(x);
+                if (magnitude > peak) peak = magnitude;
+
+                int s = 2 * c;
+                double y = sb0 * x + shelfState[s];
+                shelfState[s] = sb1 * x - sa1 * y + shelfState[s + 1];
+                shelfState[s + 1] = sb2 * x - sa2 * y;
+
+                double z = hb0 * y + passState[s];
+                passState[s] = hb1 * y - ha1 * z + passState[s + 1];
+                passState[s + 1] = hb2 * y - ha2 * z;
+
+                energy += weights[c] * z * z;
+            }
+            subBlockSum += energy;
+            if (++subBlockFrames == hopFrames) endSubBlock();
+        }
+        frames += count;
+    }
+
+    /** Every 100 ms closes a sub-block; from the fourth on, each closes a 400 ms block too. */
+    private void endSubBlock() {
+        subBlocks[subBlockCount++ % SUB_BLOCKS_PER_BLOCK] = subBlockSum / hopFrames;
+        subBlockSum = 0;
+        subBlockFrames = 0;
+        if (subBlockCount < SUB_BLOCKS_PER_BLOCK) return;
+        double sum = 0;
+        for (double subBlock : subBlocks) sum += subBlock;
+        if (blockCount == blocks.length) blocks = Arrays.copyOf(blocks, blockCount * 2);
+        blocks[blockCount++] = sum / SUB_BLOCKS_PER_BLOCK;
+    }
+
+    /** Gated loudness in LUFS of everything added so far; negative infinity if nothing passes the gates. */
+    public double integratedLoudness() {
+        double absoluteGate = energyOf(ABSOLUTE_GATE_LUFS);
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < blockCount; i++) {
+            if (blocks[i] > absoluteGate) {
+                sum += blocks[i];
+                count++;
+            }
+        }
+        if (count == 0) return Double.NEGATIVE_INFINITY;
+        double relativeGate = energyOf(loudnessOf(sum / count) + RELATIVE_GATE_LU);
+        double gate = Math.max(absoluteGate, relativeGate);
+        sum = 0;
+        count = 0;
+        for (int i = 0; i < blockCount; i++) {
+            if (blocks[i] > gate) {
+                sum += blocks[i];
+                count++;
+            }
+        }
+        return count == 0 ? Double.NEGATIVE_INFINITY : loudnessOf(sum / count);
+    }
+
+    /** Largest absolute sample value; 1.0 is full scale. */
+    public double samplePeak() { return peak; }
+
+    public long frames() { return frames; }
+
+    private static double loudnessOf(double energy) {
+        return -0.691 + 10 * Math.log10(energy);
+    }
+
+    private static double energyOf(double lufs) {
+        return Math.pow(10, (lufs + 0.691) / 10);
+    }
+
+    /** ReplayGain 2.0 track gain in dB for a measured loudness. */
+    public static double replayGainDb(double lufs) {
+        return REFERENCE_LUFS - lufs;
+    }
+
+    /**
+     * Linear volume in [0, 1] that applies {@link #replayGainDb} without clipping {@code peak}.
+     * A player's volume can only attenuate, so tracks quieter than the reference play unchanged.
+     * 1 if the loudness is unknown (NaN) or the track is silent.
+     */
+    public static float volumeFor(double lufs, double peak) {
+        if (Double.isNaN(lufs) || Double.isInfinite(lufs)) return 1f;
+        double volume = Math.pow(10, replayGainDb(lufs) / 20);
+        if (peak > 0) volume = Math.min(volume, 1 / peak);
+        return (float) Math.min(1, volume);
+    }
+}
@@ -0,0 +1,138 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide counters and latency histograms. Look a metric up once (typically into a static
+ * field); after that, recording is lock- and allocation-free and safe from any thread. The unit
+ * is whatever the caller records, so put it in the name ("prepare_ms", "notification_us").
+ */
+public final class Metrics {
+
+    private static final Map<String, Counter> counters = new LinkedHashMap<>();
+    private static final Map<String, Histogram> histograms = new LinkedHashMap<>();
+
+    private Metrics() { }
+
+    public static synchronized Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) counters.put(name, counter = new Counter());
+        return counter;
+    }
+
+    public static synchronized Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) histograms.put(name, histogram = new Histogram());
+        return histogram;
+    }
+
+    /** One line per metric, in registration order. */
+    public static void dump(PrintWriter writer) {
+        List<Map.Entry<String, Counter>> counterEntries;
+        List<Map.Entry<String, Histogram>> histogramEntries;
+        synchronized (Metrics.class) {
+            counterEntries = new ArrayList<>(counters.entrySet());
+            histogramEntries = new ArrayList<>(histograms.entrySet());
+        }
+        for (Map.Entry<String, Counter> e : counterEntries) {
+            writer.println(e.getKey() + ": " + e.getValue().get());
+        }
+        for (Map.Entry<String, Histogram> e : histogramEntries) {
+            Histogram h = e.getValue();
+            long count = h.getCount();
+            if (count == 0) {
+                writer.println(e.getKey() + ": no samples");
+                continue;
+            }
+            writer.println(e.getKey() + ": n=" + count + " mean=" + h.getSum() / count
+                    + " p50=" + h.percentile(50) + " p95=" + h.percentile(95)
+                    + " p99=" + h.percentile(99) + " max=" + h.getMax());
+        }
+    }
+
+    /** Clears every value but keeps the registrations. */
+    public static synchronized void reset() {
+        for (Counter counter : counters.values()) counter.value.set(0);
+        for (Histogram histogram : histograms.values()) histogram.reset();
+    }
+
+    public static final class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        private Counter() { }
+
+        public void increment() { value.incrementAndGet(); }
+        public void add(long delta) { value.addAndGet(delta); }
+        public long get() { return value.get(); }
+    }
+
+    /**
+     * Log-linear buckets: exact below 8, then four buckets per power of two, so a reported
+     * percentile is within 25% of the true value across the whole long range.
+     */
+    public static final class Histogram {
+        private static final int BUCKETS = 4 * 62 + 4;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram() { }
+
+        public void record(long value) {
+            if (value < 0) value = 0;
+            buckets.incrementAndGet(bucketOf(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long seen;
+            while (value > (seen = max.get()) && !max.compareAndSet(seen, value)) { }
+        }
+
+        public long getCount() { return count.get(); }
+        public long getSum() { return sum.get(); }
+        public long getMax() { return max.get(); }
+
+        /** Upper bound of the bucket holding the given percentile (0-100); 0 without samples. */
+        public long percentile(double percentile) {
+            long total = count.get();
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(total * percentile / 100.0);
+            if (rank < 1) rank = 1;
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return Math.min(upperBound(i), max.get());
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+
+        static int bucketOf(long value) {
+            if (value < 4) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int mantissa = (int) (value >>> (exponent - 2)) & 3;
+            return 4 * (exponent - 1) + mantissa;
+        }
+
+        static long upperBound(int bucket) {
+            if (bucket < 4) return bucket;
+            int exponent = bucket / 4 + 1;
+            int mantissa = bucket & 3;
+            long next = (long) (5 + mantissa) << (exponent - 2);
+            return next < 0 ? Long.MAX_VALUE : next - 1;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Resolves playlist entries to rows of a {@link TrackTable} with a constant number of hash probes
+ * each. Every track is indexed under 64-bit hashes of its path's last one to
+ * {@link #MAX_SEGMENTS} segments ("01 x.mp3", "album/01 x.mp3", "artist/album/01 x.mp3") and of
+ * its display names. Keys are case-folded and NFC-normalized, so "C:\Music\Album\01 X.mp3" finds
+ * "primary:Music/Album/01 x.mp3" whatever directory the playlist was written in. An entry takes
+ * the longest path suffix that names exactly one track, then falls back to its title. Only
+ * hashes are stored, not strings; at 64 bits a false match is not a practical concern.
+ * Immutable once built.
+ */
+public final class PathIndex {
+
+    static final int MAX_SEGMENTS = 3;
+
+    private static final int NONE = -1;
+    private static final int AMBIGUOUS = -2;
+    private static final long SEPARATOR = '/';
+
+    private final TrackTable library;
+    private final HashTable paths;
+    private final HashTable names;
+
+    private PathIndex(TrackTable library, HashTable paths, HashTable names) {
+        this.library = library;
+        this.paths = paths;
+        this.names = names;
+    }
+
+    /** O(n) in the library; build it off the main thread and reuse it while the library is unchanged. */
+    public static PathIndex build(TrackTable library) {
+        int n = library.size();
+        HashTable paths = new HashTable(n * MAX_SEGMENTS);
+        HashTable names = new HashTable(n * 3);
+        long[] suffixes = new long[MAX_SEGMENTS];
+        for (int row = 0; row < n; row++) {
+            String documentId = library.documentId(row);
+            int count = documentId == null ? 0 : suffixHashes(documentId, suffixes);
+            for (int k = 0; k < count; k++) paths.put(suffixes[k], row);
+
+            String name = baseName(library.title(row));
+            if (name.isEmpty()) continue;
+            names.put(hash(name), row);
+            String bare = stripTrackNumber(name);
+            if (bare != name) names.put(hash(bare), row);
+            SongMetadata meta = library.metadata(row);
+            if (meta != null && meta.getArtist() != null) names.put(hash(fold(meta.getArtist()) + " - " + bare), row);
+        }
+        return new PathIndex(library, paths, names);
+    }
+
+    public TrackTable library() { return library; }
+
+    /** Library row for a playlist entry, or -1 if it names no single track. */
+    public int resolve(String location, String title) {
+        long[] suffixes = new long[MAX_SEGMENTS];
+        String path = localPath(location);
+        int count = path == null ? 0 : suffixHashes(path, suffixes);
+        for (int k = count - 1; k >= 0; k--) {
+            int row = paths.get(suffixes[k]);
+            if (row >= 0) return row;
+            // A shorter suffix can only be more ambiguous
+            if (row == AMBIGUOUS) break;
+        }
+        if (title != null) {
+            String folded = fold(title);
+            int row = names.get(hash(folded));
+            if (row == NONE) row = names.get(hash(stripTrackNumber(folded)));
+            if (row >= 0) return row;
+        }
+        if (path != null) {
+            // A path that isn't under the library folder may still carry the file's name
+            int slash = path.lastIndexOf('/');
+            int row = names.get(hash(baseName(fold(path.substring(slash + 1)))));
+            if (row >= 0) return row;
+        }
+        return NONE;
+    }
+
+    /**
+     * Hashes of the last 1..MAX_SEGMENTS path segments into {@code out[0..]}, shortest first;
+     * returns how many there are. Segments are hashed from the last one backwards so every suffix
+     * falls out of a single pass. Volume prefixes ("primary:", "C:"), "." and ".." are skipped.
+     */
+    private static int suffixHashes(String path, long[] out) {
+        String folded = fold(path);
+        int colon = folded.indexOf(':');
+        int start = colon >= 0 && colon < firstSlash(folded) ? colon + 1 : 0;
+        long hash = 0xcbf29ce484222325L;
+        int count = 0;
+        int end = folded.length();
+        while (end > start && count < MAX_SEGMENTS) {
+            int slash = folded.lastIndexOf('/', end - 1);
+            int segmentStart = Math.max(slash + 1, start);
+            int length = end - segmentStart;
+            boolean dots = (length == 1 && folded.charAt(segmentStart) == '.')
+                    || (length == 2 && folded.startsWith("..", segmentStart));
+            if (length > 0 && !dots) {
+                if (count > 0) hash = (hash ^ SEPARATOR) * 0x100000001b3L;
+                for (int i = segmentStart; i < end; i++) hash = (hash ^ folded.charAt(i)) * 0x100000001b3L;
+                out[count++] = hash;
+            }
+            end = slash < start ? start : slash;
+        }
+        return count;
+    }
+
+    private static int firstSlash(String path) {
+        int slash = path.indexOf('/');
+        return slash < 0 ? path.length() : slash;
+    }
+
+    /** The file path of a local entry ("file:" URLs decoded), or null for a stream URL. */
+    private static String localPath(String location) {
+        int colon = location.indexOf("://");
+        if (colon < 0) return location;
+        if (!location.regionMatches(true, 0, "file", 0, colon) || colon != 4) return null;
+        return percentDecode(location.substring(colon + 3));
+    }
+
+    private static String percentDecode(String value) {
+        if (value.indexOf('%') < 0) return value;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < value.length() && Character.digit(value.charAt(i + 1), 16) >= 0
+                    && Character.digit(value.charAt(i + 2), 16) >= 0) {
+                bytes.write(Character.digit(value.charAt(i + 1), 16) << 4 | Character.digit(value.charAt(i + 2), 16));
+                i += 2;
+            } else {
+                byte[] encoded = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Lower case, '/' separators, NFC; the common all-ASCII case skips normalization. */
+    static String fold(String value) {
+        boolean ascii = true;
+        for (int i = 0; i < value.length() && ascii; i++) ascii = value.charAt(i) < 0x80;
+        String normalized = ascii ? value : Normalizer.normalize(value, Normalizer.Form.NFC);
+        return normalized.toLowerCase(Locale.ROOT).replace('\\', '/').trim();
+    }
+
+    /** Folded file name without its extension. */
+    private static String baseName(String fileName) {
+        if (fileName == null) return "";
+        String folded = fold(fileName);
+        int dot = folded.lastIndexOf('.');
+        return dot > 0 ? folded.substring(0, dot).trim() : folded;
+    }
+
+    /** "01 title", "01. title", "1-02 - title" -> "title"; the same instance if there is no number. */
+    private static String stripTrackNumber(String name) {
+        int i = 0;
+        while (i < name.length() && (Character.isDigit(name.charAt(i)) || name.charAt(i) == '-')) i++;
+        if (i == 0 || i == name.length()) return name;
+        int digitsEnd = i;
+        while (i < name.length() && " .-_)".indexOf(name.charAt(i)) >= 0) i++;
+        return i == digitsEnd || i == name.length() ? name : name.substring(i);
+    }
+
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        return hash;
+    }
+
+    /** Open addressing from 64-bit key hashes to rows; a key claimed by two rows maps to AMBIGUOUS. */
+    private static final class HashTable {
+        private final long[] keys;
+        private final int[] rows;
+        private final int mask;
+
+        HashTable(int expected) {
+            // Load factor at most 3/4
+            int capacity = Integer.highestOneBit(Math.max(4, expected * 4 / 3)) << 1;
+            keys = new long[capacity];
+            rows = new int[capacity];
+            Arrays.fill(rows, NONE);
+            mask = capacity - 1;
+        }
+
+        void put(long key, int row) {
+            int i = slot(key);
+            if (rows[i] == NONE) {
+                keys[i] = key;
+                rows[i] = row;
+            } else if (rows[i] != row) {
+                rows[i] = AMBIGUOUS;
+            }
+        }
+
+        int get(long key) {
+            return rows[slot(key)];
+        }
+
+        /** The key's slot, or the empty slot where it would go. */
+        private int slot(long key) {
+            int i = (int) (key ^ key >>> 32) * 0x9e3779b9 & mask;
+            while (rows[i] != NONE && keys[i] != key) i = (i + 1) & mask;
+            return i;
+        }
+    }
+}
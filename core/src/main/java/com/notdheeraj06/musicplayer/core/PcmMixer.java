@@ -0,0 +1,152 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.util.Arrays;
+
+/**
+ * Renders the output stream from the current source and the one queued after it. Without a
+ * crossfade the next source starts on the frame after the current one ends, inside the same
+ * buffer, so transitions are sample-accurate. With one, the next source starts when the current
+ * one has {@code crossfadeFrames} left and the two are mixed with {@link Crossfade} gains; the
+ * current source counts as finished when the fade is over, even if it had frames left.
+ *
+ * Not thread-safe: everything runs on the audio thread, and other threads hand it commands.
+ */
+public final class PcmMixer {
+
+    /** A decoded stream at the output rate and channel count, read on the audio thread. */
+    public interface Source {
+        /** Copies up to {@code frames} frames into {@code buffer[offset..]} (frames); 0 if none are ready. */
+        int read(float[] buffer, int offset, int frames);
+        /** True once the last frame has been read. */
+        boolean isFinished();
+        /** Frames left until the end, or -1 if not known yet. */
+        long remainingFrames();
+    }
+
+    public interface Listener {
+        /** {@code finished} has been played out (or faded out) and {@code next}, possibly null, took over. */
+        void onTransition(Source finished, Source next);
+    }
+
+    private final int channels;
+    private final Listener listener;
+    private long crossfadeFrames;
+
+    private Source current;
+    private Source next;
+    // Fade in progress: length fixed when it starts, position shared by both sides. If the
+    // outgoing source ends early, the incoming one (now current) keeps ramping up on its own.
+    private long fadeLength;
+    private long fadePosition;
+    private boolean fadingOut;
+
+    private float[] scratch = new float[0];
+    private long underruns;
+    private long underrunFrames;
+
+    public PcmMixer(int channels, Listener listener) {
+        this.channels = channels;
+        this.listener = listener;
+    }
+
+    public int channels() { return channels; }
+    public Source current() { return current; }
+    public Source next() { return next; }
+    public long getUnderruns() { return underruns; }
+    public long getUnderrunFrames() { return underrunFrames; }
+    public boolean isFading() { return fadeLength > 0; }
+
+    public void setCrossfadeFrames(long frames) {
+        crossfadeFrames = Math.max(0, frames);
+    }
+
+    /** Replaces what is playing, cancelling any fade; {@code next} is kept only if it's a different source. */
+    public void setCurrent(Source source) {
+        if (source == current) return;
+        current = source;
+        if (next == source) next = null;
+        fadeLength = 0;
+        fadePosition = 0;
+        fadingOut = false;
+    }
+
+    /** Queues the source that follows the current one; null unqueues it (a fade in progress snaps back). */
+    public void setNext(Source source) {
+        if (source == next || source == current) return;
+        if (fadingOut) {
+            fadingOut = false;
+            fadeLength = 0;
+        }
+        next = source;
+    }
+
+    /**
+     * Fills {@code frames} frames of {@code out} (interleaved); whatever the sources can't supply is
+     * silence, counted as an underrun unless there is simply nothing to play.
+     */
+    public void render(float[] out, int frames) {
+        if (scratch.length < frames * channels) scratch = new float[frames * channels];
+        int done = 0;
+        while (done < frames && current != null) {
+            Source source = current;
+            int chunk = frames - done;
+            if (fadeLength == 0 && next != null && crossfadeFrames > 0) {
+                long remaining = source.remainingFrames();
+                if (remaining >= 0 && remaining <= crossfadeFrames) {
+                    fadeLength = Math.max(1, remaining);
+                    fadePosition = 0;
+                    fadingOut = true;
+                } else if (remaining > crossfadeFrames) {
+                    // Stop exactly where the fade has to begin
+                    chunk = (int) Math.min(chunk, remaining - crossfadeFrames);
+                }
+            }
+            boolean mixing = fadingOut;
+            if (fadeLength > 0) chunk = (int) Math.min(chunk, fadeLength - fadePosition);
+
+            int got = source.read(out, done, chunk);
+            if (mixing) {
+                Crossfade.apply(out, done, got, channels, fadePosition, fadeLength, false);
+                int incoming = next.read(scratch, 0, got);
+                Crossfade.apply(scratch, 0, incoming, channels, fadePosition, fadeLength, true);
+                Crossfade.mixInto(out, done, scratch, 0, incoming, channels);
+                if (incoming < got) underrun(got - incoming);
+            } else if (fadeLength > 0) {
+                Crossfade.apply(out, done, got, channels, fadePosition, fadeLength, true);
+            }
+            done += got;
+            if (fadeLength > 0) {
+                fadePosition += got;
+                if (fadePosition >= fadeLength) {
+                    fadeLength = 0;
+                    // Faded out: whatever is left of the outgoing source is dropped
+                    if (mixing) handOver();
+                    continue;
+                }
+            }
+            if (got < chunk) {
+                if (source.isFinished()) {
+                    handOver();
+                } else {
+                    underrun(frames - done);
+                    break;
+                }
+            }
+        }
+        Arrays.fill(out, done * channels, frames * channels, 0f);
+    }
+
+    private void handOver() {
+        Source finished = current;
+        current = next;
+        next = null;
+        fadingOut = false;
+        if (current == null) fadeLength = 0;
+        listener.onTransition(finished, current);
+    }
+
+    private void underrun(int frames) {
+        underruns++;
+        underrunFrames += frames;
+    }
+}
@@ -0,0 +1,126 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer ring of interleaved float PCM. One thread writes
+ * (the decoder), one thread reads (the audio thread); neither ever blocks or allocates. Both
+ * positions only grow and are published with ordered writes, so each side sees the other's data
+ * complete. Counts and offsets are in frames.
+ *
+ * A seek is the producer's business but stale audio sits on the consumer's side: the producer
+ * calls {@link #discard()}, and the consumer skips everything written before it on its next read.
+ */
+public final class PcmRingBuffer {
+
+    private final int channels;
+    private final int capacity;
+    private final int mask;
+    private final float[] samples;
+
+    private final AtomicLong writeFrame = new AtomicLong();
+    private final AtomicLong readFrame = new AtomicLong();
+    // Producer-written marks: frames before discardFrame are dropped, the stream ends at endFrame
+    private volatile long discardFrame;
+    private volatile long endFrame = Long.MAX_VALUE;
+
+    /** {@code capacityFrames} is rounded up to a power of two. */
+    public PcmRingBuffer(int channels, int capacityFrames) {
+        if (channels <= 0 || capacityFrames <= 0) throw new IllegalArgumentException();
+        this.channels = channels;
+        int size = Integer.highestOneBit(capacityFrames);
+        capacity = size < capacityFrames ? size << 1 : size;
+        mask = capacity - 1;
+        samples = new float[capacity * channels];
+    }
+
+    public int channels() { return channels; }
+    public int capacity() { return capacity; }
+
+    // region Producer
+
+    /** Copies up to {@code frames} frames from {@code from[offset..]}; returns how many fit. */
+    public int write(float[] from, int offset, int frames) {
+        long write = writeFrame.get();
+        int n = (int) Math.min(frames, capacity - (write - readFrame.get()));
+        if (n <= 0) return 0;
+        copyIn((int) (write & mask), from, offset * channels, n);
+        writeFrame.lazySet(write + n);
+        return n;
+    }
+
+    /** Frames that can be written right now; the consumer may free more at any time. */
+    public int free() {
+        return capacity - (int) (writeFrame.get() - readFrame.get());
+    }
+
+    /** The stream ends after what has been written so far. */
+    public void markEnd() {
+        endFrame = writeFrame.get();
+    }
+
+    /** Drops everything written so far (the consumer skips it), e.g. after a seek. */
+    public void discard() {
+        endFrame = Long.MAX_VALUE;
+        discardFrame = writeFrame.get();
+    }
+
+    // endregion
+
+    // region Consumer
+
+    /** Copies up to {@code frames} frames into {@code to[offset..]}; returns how many were available. */
+    public int read(float[] to, int offset, int frames) {
+        long read = skipDiscarded();
+        int n = (int) Math.min(frames, writeFrame.get() - read);
+        if (n <= 0) return 0;
+        copyOut((int) (read & mask), to, offset * channels, n);
+        readFrame.lazySet(read + n);
+        return n;
+    }
+
+    /** Frames readable right now. */
+    public int available() {
+        long read = Math.max(readFrame.get(), discardFrame);
+        return (int) Math.max(0, writeFrame.get() - read);
+    }
+
+    /** True once every frame before {@link #markEnd} has been read. */
+    public boolean isFinished() {
+        return skipDiscarded() >= endFrame;
+    }
+
+    /** Frames read since the last discard, i.e. the consumer's position in the current stream. */
+    public long readSinceDiscard() {
+        return Math.max(0, readFrame.get() - discardFrame);
+    }
+
+    private long skipDiscarded() {
+        long read = readFrame.get();
+        long discard = discardFrame;
+        if (discard > read) {
+            readFrame.lazySet(discard);
+            return discard;
+        }
+        return read;
+    }
+
+    // endregion
+
+    /** Fill level as a percentage of capacity; either thread may ask, the answer is approximate. */
+    public int fillPercent() {
+        return (int) (100L * available() / capacity);
+    }
+
+    private void copyIn(int ringFrame, float[] from, int fromIndex, int frames) {
+        int first = Math.min(frames, capacity - ringFrame) * channels;
+        System.arraycopy(from, fromIndex, samples, ringFrame * channels, first);
+        System.arraycopy(from, fromIndex + first, samples, 0, frames * channels - first);
+    }
+
+    private void copyOut(int ringFrame, float[] to, int toIndex, int frames) {
+        int first = Math.min(frames, capacity - ringFrame) * channels;
+        System.arraycopy(samples, ringFrame * channels, to, toIndex, first);
+        System.arraycopy(samples, 0, to, toIndex + first, frames * channels - first);
+    }
+}
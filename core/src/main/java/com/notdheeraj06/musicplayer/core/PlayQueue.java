@@ -0,0 +1,290 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The play queue as an immutable, persistent sequence. Each entry is a row of the queue's
+ * {@link TrackTable} plus an id that is unique for the life of the process, so the same track can
+ * be queued twice and an entry keeps its identity while others move around it.
+ *
+ * Entries are stored as runs (consecutive ids over consecutive rows) in a treap ordered by
+ * position, so the whole-library queue is a single node and is O(1) to build and hand over.
+ * Insert, remove and move are O(log n) and return a new queue that shares every untouched node
+ * with the old one. A queue never changes once built, so any thread can read it without locking.
+ */
+public final class PlayQueue {
+
+    private static final AtomicLong nextId = new AtomicLong();
+    private static final PlayQueue EMPTY = new PlayQueue(TrackTable.empty(), null, 0);
+
+    private static final class Node {
+        final long firstId;
+        final int firstRow;
+        final int length;
+        final int priority;
+        final Node left;
+        final Node right;
+        final int size;
+        final int runs;
+
+        Node(long firstId, int firstRow, int length, Node left, Node right) {
+            this.firstId = firstId;
+            this.firstRow = firstRow;
+            this.length = length;
+            this.priority = priority(firstId);
+            this.left = left;
+            this.right = right;
+            size = size(left) + length + size(right);
+            runs = runs(left) + 1 + runs(right);
+        }
+
+        Node with(Node left, Node right) {
+            return left == this.left && right == this.right ? this : new Node(firstId, firstRow, length, left, right);
+        }
+    }
+
+    private final TrackTable library;
+    private final Node root;
+    private final long version;
+
+    private PlayQueue(TrackTable library, Node root, long version) {
+        this.library = library;
+        this.root = root;
+        this.version = version;
+    }
+
+    public static PlayQueue empty() { return EMPTY; }
+
+    /** Every row of {@code library}, in order. */
+    public static PlayQueue of(TrackTable library) {
+        int size = library.size();
+        if (size == 0) return new PlayQueue(library, null, 0);
+        return new PlayQueue(library, new Node(nextId.getAndAdd(size), 0, size, null, null), 0);
+    }
+
+    /** The snapshot the rows refer to; read together with them, so the pair is always consistent. */
+    public TrackTable library() { return library; }
+
+    /** Same entries against a new snapshot with identical rows (e.g. only tags changed). */
+    public PlayQueue withLibrary(TrackTable sameRows) {
+        return new PlayQueue(sameRows, root, version);
+    }
+
+    public int size() { return size(root); }
+    public boolean isEmpty() { return root == null; }
+    /** Number of edits since the queue was built; two snapshots of one queue compare by this. */
+    public long version() { return version; }
+    /** Tree nodes; 1 for a queue that was never edited. */
+    public int runCount() { return runs(root); }
+
+    public int rowAt(int position) {
+        Node node = root;
+        checkIndex(position, size());
+        while (true) {
+            int left = size(node.left);
+            if (position < left) {
+                node = node.left;
+            } else if (position < left + node.length) {
+                return node.firstRow + position - left;
+            } else {
+                position -= left + node.length;
+                node = node.right;
+            }
+        }
+    }
+
+    public long idAt(int position) {
+        Node node = root;
+        checkIndex(position, size());
+        while (true) {
+            int left = size(node.left);
+            if (position < left) {
+                node = node.left;
+            } else if (position < left + node.length) {
+                return node.firstId + position - left;
+            } else {
+                position -= left + node.length;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Position of the entry with this id, or -1. {@code hint} is where the caller last saw it; if
+     * it is still there the lookup is O(log n), otherwise the runs are scanned in order.
+     */
+    public int indexOf(long id, int hint) {
+        if (hint >= 0 && hint < size() && idAt(hint) == id) return hint;
+        return indexOf(root, id, 0);
+    }
+
+    /** Queues a new entry for library {@code row} so that it ends up at {@code position}. */
+    public PlayQueue insert(int position, int row) {
+        checkIndex(position, size() + 1);
+        checkIndex(row, library.size());
+        return insertNode(position, new Node(nextId.getAndIncrement(), row, 1, null, null));
+    }
+
+    public PlayQueue remove(int position) {
+        checkIndex(position, size());
+        Node[] head = split(root, position);
+        Node[] tail = split(head[1], 1);
+        return new PlayQueue(library, merge(head[0], tail[1]), version + 1);
+    }
+
+    /** Moves the entry at {@code from} so that it ends up at {@code to}, keeping its id. */
+    public PlayQueue move(int from, int to) {
+        checkIndex(from, size());
+        checkIndex(to, size());
+        if (from == to) return this;
+        Node[] head = split(root, from);
+        Node[] tail = split(head[1], 1);
+        PlayQueue without = new PlayQueue(library, merge(head[0], tail[1]), version);
+        return without.insertNode(to, tail[0]);
+    }
+
+    /**
+     * Moves the queue onto a changed library: {@code oldToNewRow[r]} is the row in
+     * {@code newLibrary} of old row {@code r}, or -1 if it was removed, in which case its entries
+     * drop out. Ids are kept. If {@code oldToNewPosition} is non-null it receives each old
+     * position's new one (or -1). O(n).
+     */
+    public PlayQueue remap(TrackTable newLibrary, int[] oldToNewRow, int[] oldToNewPosition) {
+        Builder builder = new Builder();
+        remap(root, oldToNewRow, oldToNewPosition, 0, builder);
+        return new PlayQueue(newLibrary, builder.build(), version + 1);
+    }
+
+    /** The rows as (first row, length) pairs in queue order, for persisting; ids aren't kept. */
+    public int[] toRuns() {
+        int[] runs = new int[2 * runCount()];
+        collectRuns(root, runs, 0);
+        return runs;
+    }
+
+    /** Rebuilds a queue written with {@link #toRuns}, with fresh ids; null if it doesn't fit the library. */
+    public static PlayQueue fromRuns(TrackTable library, int[] runs) {
+        Builder builder = new Builder();
+        for (int i = 0; i + 1 < runs.length; i += 2) {
+            int row = runs[i], length = runs[i + 1];
+            if (row < 0 || length <= 0 || (long) row + length > library.size()) return null;
+            long firstId = nextId.getAndAdd(length);
+            for (int k = 0; k < length; k++) builder.add(firstId + k, row + k);
+        }
+        return new PlayQueue(library, builder.build(), 0);
+    }
+
+    /** {@code rows} in order (e.g. an imported playlist), with fresh ids; null if a row doesn't fit the library. */
+    public static PlayQueue ofRows(TrackTable library, int[] rows) {
+        Builder builder = new Builder();
+        long firstId = nextId.getAndAdd(rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i] < 0 || rows[i] >= library.size()) return null;
+            builder.add(firstId + i, rows[i]);
+        }
+        return new PlayQueue(library, builder.build(), 0);
+    }
+
+    private PlayQueue insertNode(int position, Node single) {
+        Node[] parts = split(root, position);
+        return new PlayQueue(library, merge(merge(parts[0], single), parts[1]), version + 1);
+    }
+
+    private static int indexOf(Node node, long id, int offset) {
+        if (node == null) return -1;
+        int left = size(node.left);
+        if (id >= node.firstId && id < node.firstId + node.length) return offset + left + (int) (id - node.firstId);
+        int found = indexOf(node.left, id, offset);
+        return found >= 0 ? found : indexOf(node.right, id, offset + left + node.length);
+    }
+
+    private static int collectRuns(Node node, int[] runs, int at) {
+        if (node == null) return at;
+        at = collectRuns(node.left, runs, at);
+        runs[at++] = node.firstRow;
+        runs[at++] = node.length;
+        return collectRuns(node.right, runs, at);
+    }
+
+    private static int remap(Node node, int[] oldToNewRow, int[] positions, int offset, Builder out) {
+        if (node == null) return offset;
+        offset = remap(node.left, oldToNewRow, positions, offset, out);
+        for (int i = 0; i < node.length; i++) {
+            int row = node.firstRow + i;
+            int mapped = row < oldToNewRow.length ? oldToNewRow[row] : -1;
+            if (positions != null) positions[offset + i] = mapped < 0 ? -1 : out.size;
+            if (mapped >= 0) out.add(node.firstId + i, mapped);
+        }
+        return remap(node.right, oldToNewRow, positions, offset + node.length, out);
+    }
+
+    /** {@code [0, k)} and {@code [k, size)}; a run that straddles k is cut in two. */
+    private static Node[] split(Node node, int k) {
+        if (node == null) return new Node[2];
+        int left = size(node.left);
+        if (k <= left) {
+            Node[] parts = split(node.left, k);
+            parts[1] = node.with(parts[1], node.right);
+            return parts;
+        }
+        if (k >= left + node.length) {
+            Node[] parts = split(node.right, k - left - node.length);
+            parts[0] = node.with(node.left, parts[0]);
+            return parts;
+        }
+        int cut = k - left;
+        Node head = new Node(node.firstId, node.firstRow, cut, null, null);
+        Node tail = new Node(node.firstId + cut, node.firstRow + cut, node.length - cut, null, null);
+        return new Node[]{merge(node.left, head), merge(tail, node.right)};
+    }
+
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority >= b.priority) return a.with(a.left, merge(a.right, b));
+        return b.with(merge(a, b.left), b.right);
+    }
+
+    /** Appends entries in order, joining consecutive ones into runs. */
+    private static final class Builder {
+        Node root;
+        int size;
+        long runId = -1;
+        int runRow;
+        int runLength;
+
+        void add(long id, int row) {
+            if (runLength > 0 && id == runId + runLength && row == runRow + runLength) {
+                runLength++;
+            } else {
+                flush();
+                runId = id;
+                runRow = row;
+                runLength = 1;
+            }
+            size++;
+        }
+
+        Node build() {
+            flush();
+            return root;
+        }
+
+        private void flush() {
+            if (runLength > 0) root = merge(root, new Node(runId, runRow, runLength, null, null));
+            runLength = 0;
+        }
+    }
+
+    private static int size(Node node) { return node == null ? 0 : node.size; }
+    private static int runs(Node node) { return node == null ? 0 : node.runs; }
+
+    private static int priority(long id) {
+        long h = id * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ h >>> 32);
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+    }
+}
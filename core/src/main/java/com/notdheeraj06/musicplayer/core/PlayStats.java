@@ -0,0 +1,231 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Per-track totals folded from {@link ListeningLog} events, in columns indexed by slot. A listen
+ * counts as a play when the track completed or at least half of it (or four minutes) was heard;
+ * leaving for the next track before that is a skip. Top-N queries are a bounded heap over the
+ * slots, so they cost the number of tracks ever played, not the length of the history.
+ *
+ * <p>Saved as a versioned file together with {@link #foldedThrough()}, the last log segment it
+ * includes; on load, later segments are replayed and earlier ones can be deleted. Not thread-safe.
+ */
+public final class PlayStats {
+
+    private static final int MAGIC = 0x4d505053; // "MPPS"
+    private static final int VERSION = 1;
+
+    private static final int PLAY_THRESHOLD_MS = 4 * 60 * 1000;
+    // Fewer listens than this say nothing about a track's skip rate
+    private static final int MIN_LISTENS_FOR_SKIP_RATE = 3;
+
+    public enum Ranking { MOST_PLAYED, RECENTLY_PLAYED, MOST_SKIPPED }
+
+    public static final class Entry {
+        public final long trackKey;
+        public final int plays;
+        public final int skips;
+        public final long lastPlayedAt;
+        public final long listenedMs;
+
+        Entry(long trackKey, int plays, int skips, long lastPlayedAt, long listenedMs) {
+            this.trackKey = trackKey;
+            this.plays = plays;
+            this.skips = skips;
+            this.lastPlayedAt = lastPlayedAt;
+            this.listenedMs = listenedMs;
+        }
+
+        /** Skips as a share of plays plus skips. */
+        public float skipRate() {
+            int listens = plays + skips;
+            return listens == 0 ? 0f : (float) skips / listens;
+        }
+    }
+
+    private final HashMap<Long, Integer> slots = new HashMap<>();
+    private long[] keys = new long[64];
+    private int[] plays = new int[64];
+    private int[] skips = new int[64];
+    private long[] lastPlayedAt = new long[64];
+    private long[] listenedMs = new long[64];
+    private int count;
+    private long foldedThrough;
+    private long events;
+
+    /** The key history uses for a document: 64-bit FNV-1a of its id, stable across scans and sorts. */
+    public static long trackKey(String documentId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < documentId.length(); i++) {
+            hash ^= documentId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public int size() { return count; }
+    /** Events folded in, over the lifetime of the history. */
+    public long events() { return events; }
+    public long foldedThrough() { return foldedThrough; }
+    public void setFoldedThrough(long segment) { foldedThrough = segment; }
+
+    public void add(ListeningLog.Event event) {
+        int slot = slot(event.trackKey);
+        events++;
+        listenedMs[slot] += Math.max(0, event.listenedMs);
+        boolean played = event.type == ListeningLog.COMPLETED
+                || (event.durationMs > 0 && event.listenedMs >= Math.min(event.durationMs / 2, PLAY_THRESHOLD_MS));
+        if (played) {
+            plays[slot]++;
+            lastPlayedAt[slot] = Math.max(lastPlayedAt[slot], event.timeMs);
+        } else if (event.type == ListeningLog.SKIPPED) {
+            skips[slot]++;
+        }
+    }
+
+    /** Totals for one track, or null if it has never been listened to. */
+    public Entry get(long trackKey) {
+        Integer slot = slots.get(trackKey);
+        return slot == null ? null : entry(slot);
+    }
+
+    /** Up to {@code n} tracks, best first; ties go to the more recently played, then in no set order. */
+    public List<Entry> top(Ranking ranking, int n) {
+        // Min-heap of the best n slots seen so far; its root is the one to beat
+        int[] heap = new int[Math.max(0, Math.min(n, count))];
+        int size = 0;
+        for (int slot = 0; slot < count && heap.length > 0; slot++) {
+            if (!ranked(ranking, slot)) continue;
+            if (size < heap.length) {
+                heap[size] = slot;
+                siftUp(heap, size++, ranking);
+            } else if (compare(ranking, slot, heap[0]) > 0) {
+                heap[0] = slot;
+                siftDown(heap, size, ranking);
+            }
+        }
+        List<Entry> result = new ArrayList<>(size);
+        // Popping the min-heap yields worst first
+        for (int end = size; end > 0; end--) {
+            result.add(entry(heap[0]));
+            heap[0] = heap[end - 1];
+            siftDown(heap, end - 1, ranking);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(foldedThrough);
+        out.writeLong(events);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeLong(keys[i]);
+            out.writeInt(plays[i]);
+            out.writeInt(skips[i]);
+            out.writeLong(lastPlayedAt[i]);
+            out.writeLong(listenedMs[i]);
+        }
+    }
+
+    /** Returns null if the data isn't stats in this format or version. */
+    public static PlayStats readFrom(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+        PlayStats stats = new PlayStats();
+        stats.foldedThrough = in.readLong();
+        stats.events = in.readLong();
+        int count = in.readInt();
+        if (count < 0) return null;
+        for (int i = 0; i < count; i++) {
+            int slot = stats.slot(in.readLong());
+            stats.plays[slot] = in.readInt();
+            stats.skips[slot] = in.readInt();
+            stats.lastPlayedAt[slot] = in.readLong();
+            stats.listenedMs[slot] = in.readLong();
+        }
+        return stats;
+    }
+
+    private int slot(long trackKey) {
+        Integer slot = slots.get(trackKey);
+        if (slot != null) return slot;
+        if (count == keys.length) {
+            int capacity = count * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            plays = Arrays.copyOf(plays, capacity);
+            skips = Arrays.copyOf(skips, capacity);
+            lastPlayedAt = Arrays.copyOf(lastPlayedAt, capacity);
+            listenedMs = Arrays.copyOf(listenedMs, capacity);
+        }
+        keys[count] = trackKey;
+        slots.put(trackKey, count);
+        return count++;
+    }
+
+    private Entry entry(int slot) {
+        return new Entry(keys[slot], plays[slot], skips[slot], lastPlayedAt[slot], listenedMs[slot]);
+    }
+
+    private boolean ranked(Ranking ranking, int slot) {
+        switch (ranking) {
+            case MOST_SKIPPED: return skips[slot] > 0 && plays[slot] + skips[slot] >= MIN_LISTENS_FOR_SKIP_RATE;
+            default: return plays[slot] > 0;
+        }
+    }
+
+    /** Positive when {@code a} ranks above {@code b}. */
+    private int compare(Ranking ranking, int a, int b) {
+        int c;
+        switch (ranking) {
+            case MOST_PLAYED:
+                c = Integer.compare(plays[a], plays[b]);
+                break;
+            case MOST_SKIPPED:
+                // skips[a] / listens[a] vs skips[b] / listens[b], without division
+                c = Long.compare((long) skips[a] * (plays[b] + skips[b]), (long) skips[b] * (plays[a] + skips[a]));
+                // At the same rate, more listens are more telling
+                if (c == 0) c = Integer.compare(skips[a], skips[b]);
+                break;
+            default:
+                c = 0;
+        }
+        return c != 0 ? c : Long.compare(lastPlayedAt[a], lastPlayedAt[b]);
+    }
+
+    private void siftUp(int[] heap, int i, Ranking ranking) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (compare(ranking, heap[i], heap[parent]) >= 0) return;
+            swap(heap, i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int size, Ranking ranking) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) return;
+            if (child + 1 < size && compare(ranking, heap[child + 1], heap[child]) < 0) child++;
+            if (compare(ranking, heap[child], heap[i]) >= 0) return;
+            swap(heap, i, child);
+            i = child;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int t = heap[i];
+        heap[i] = heap[j];
+        heap[j] = t;
+    }
+}
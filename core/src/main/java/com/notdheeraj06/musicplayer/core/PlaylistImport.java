@@ -0,0 +1,83 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads a playlist file and resolves its entries against a {@link PathIndex} as they are parsed;
+ * neither the file nor its entry strings are held in memory. Entries that name no single track
+ * are counted and the first {@link #MAX_REPORTED} of them kept for reporting.
+ */
+public final class PlaylistImport {
+
+    static final int MAX_REPORTED = 50;
+
+    /** An entry that didn't resolve, as written in the file. */
+    public static final class Unresolved {
+        public final int line;
+        public final String location;
+
+        Unresolved(int line, String location) {
+            this.line = line;
+            this.location = location;
+        }
+
+        @Override
+        public String toString() {
+            return line + ": " + location;
+        }
+    }
+
+    public static final class Result {
+        /** Rows of the index's library, in playlist order; a track listed twice appears twice. */
+        public final int[] rows;
+        public final int entries;
+        public final int unresolvedCount;
+        /** At most {@link #MAX_REPORTED} of the unresolved entries, in file order. */
+        public final List<Unresolved> unresolved;
+
+        Result(int[] rows, int entries, int unresolvedCount, List<Unresolved> unresolved) {
+            this.rows = rows;
+            this.entries = entries;
+            this.unresolvedCount = unresolvedCount;
+            this.unresolved = Collections.unmodifiableList(unresolved);
+        }
+    }
+
+    private PlaylistImport() { }
+
+    /** {@code fileName} only picks the encoding of a .m3u; see {@link PlaylistParser#reader}. */
+    public static Result run(InputStream in, String fileName, PathIndex index) throws IOException {
+        Collector collector = new Collector(index);
+        int entries = PlaylistParser.parse(PlaylistParser.reader(in, fileName), collector);
+        return new Result(Arrays.copyOf(collector.rows, collector.size), entries,
+                collector.unresolvedCount, collector.unresolved);
+    }
+
+    private static final class Collector implements PlaylistParser.Sink {
+        private final PathIndex index;
+        private int[] rows = new int[64];
+        private int size;
+        private int unresolvedCount;
+        private final List<Unresolved> unresolved = new ArrayList<>();
+
+        Collector(PathIndex index) {
+            this.index = index;
+        }
+
+        @Override
+        public void onEntry(int line, String location, String title) {
+            int row = index.resolve(location, title);
+            if (row < 0) {
+                if (unresolvedCount++ < MAX_REPORTED) unresolved.add(new Unresolved(line, location));
+                return;
+            }
+            if (size == rows.length) rows = Arrays.copyOf(rows, size * 2);
+            rows[size++] = row;
+        }
+    }
+}
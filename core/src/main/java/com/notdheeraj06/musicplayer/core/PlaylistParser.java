@@ -0,0 +1,160 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Streaming M3U, M3U8 and PLS parser: one line at a time, each entry handed to a {@link Sink} as
+ * soon as it is complete, so a playlist of any length is read in constant memory. The format is
+ * taken from the content ("[playlist]" starts a PLS), not the file name.
+ */
+public final class PlaylistParser {
+
+    /** An entry as written: a path or URL, and the title from #EXTINF or TitleN if there was one. */
+    public interface Sink {
+        void onEntry(int line, String location, String title);
+    }
+
+    // Enough of a .m3u to tell UTF-8 from the legacy 8-bit encodings
+    private static final int SNIFF_BYTES = 64 * 1024;
+    private static final Charset LEGACY = Charset.forName("windows-1252");
+
+    private PlaylistParser() { }
+
+    /**
+     * Reader for a playlist file. M3U8 and PLS are UTF-8; an M3U is read as UTF-8 if its start
+     * decodes as such, and as Windows-1252 otherwise.
+     */
+    public static Reader reader(InputStream in, String fileName) throws IOException {
+        String name = fileName == null ? "" : fileName.toLowerCase(Locale.ROOT);
+        if (!name.endsWith(".m3u")) return new InputStreamReader(in, StandardCharsets.UTF_8);
+        BufferedInputStream buffered = new BufferedInputStream(in, SNIFF_BYTES);
+        buffered.mark(SNIFF_BYTES);
+        byte[] head = new byte[SNIFF_BYTES];
+        int length = 0;
+        for (int n; length < head.length && (n = buffered.read(head, length, head.length - length)) > 0; ) length += n;
+        buffered.reset();
+        return new InputStreamReader(buffered, isUtf8(head, length) ? StandardCharsets.UTF_8 : LEGACY);
+    }
+
+    /** Parses {@code reader} to the end; returns the number of entries. */
+    public static int parse(Reader reader, Sink sink) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        Pls pls = null;
+        boolean started = false;
+        String title = null;
+        int entries = 0;
+        int number = 0;
+        for (String line; (line = lines.readLine()) != null; ) {
+            number++;
+            if (!started && !line.isEmpty() && line.charAt(0) == '\uFEFF') line = line.substring(1);
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            if (!started) {
+                started = true;
+                if (line.equalsIgnoreCase("[playlist]")) {
+                    pls = new Pls(sink);
+                    continue;
+                }
+            }
+            if (pls != null) {
+                entries += pls.line(number, line);
+            } else if (line.charAt(0) == '#') {
+                if (line.regionMatches(true, 0, "#EXTINF:", 0, 8)) {
+                    // #EXTINF:<seconds>[ attributes],<title>
+                    int comma = line.indexOf(',');
+                    title = comma < 0 ? null : line.substring(comma + 1).trim();
+                }
+            } else {
+                sink.onEntry(number, line, title == null || title.isEmpty() ? null : title);
+                title = null;
+                entries++;
+            }
+        }
+        if (pls != null) entries += pls.finish();
+        return entries;
+    }
+
+    /** FileN/TitleN keys; an entry is complete once a key with another N (or the end) arrives. */
+    private static final class Pls {
+        private final Sink sink;
+        private int index = -1;
+        private int line;
+        private String location;
+        private String title;
+
+        Pls(Sink sink) {
+            this.sink = sink;
+        }
+
+        int line(int number, String text) {
+            int equals = text.indexOf('=');
+            if (equals < 0) return 0;
+            String key = text.substring(0, equals).trim().toLowerCase(Locale.ROOT);
+            String value = text.substring(equals + 1).trim();
+            boolean file = key.startsWith("file");
+            if (!file && !key.startsWith("title")) return 0;
+            int n;
+            try {
+                n = Integer.parseInt(key.substring(file ? 4 : 5));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+            int emitted = 0;
+            if (n != index) {
+                emitted = finish();
+                index = n;
+            }
+            if (file) {
+                location = value;
+                line = number;
+            } else {
+                title = value;
+            }
+            return emitted;
+        }
+
+        int finish() {
+            int emitted = 0;
+            if (location != null && !location.isEmpty()) {
+                sink.onEntry(line, location, title == null || title.isEmpty() ? null : title);
+                emitted = 1;
+            }
+            location = null;
+            title = null;
+            return emitted;
+        }
+    }
+
+    private static boolean isUtf8(byte[] bytes, int length) {
+        // A sequence cut off by the end of the sample still counts as UTF-8
+        int end = length;
+        for (int back = 1; back <= 3 && end - back >= 0; back++) {
+            int b = bytes[end - back] & 0xff;
+            if (b < 0x80) break;
+            if (b >= 0xc0) {
+                end -= back;
+                break;
+            }
+        }
+        try {
+            StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes, 0, end));
+            return true;
+        } catch (CharacterCodingException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.util.Random;
+
+/**
+ * Decides which queue entry plays next for skips and auto-advance, given the shuffle and repeat
+ * settings. Holds no tracks, only the queue size and the shuffle order over it.
+ */
+public final class QueueNavigator {
+
+    public static final int REPEAT_OFF = 0;
+    public static final int REPEAT_ONE = 1;
+    public static final int REPEAT_ALL = 2;
+
+    private ShuffleOrder shuffle;
+    private int size;
+    private boolean shuffleEnabled;
+    private int repeatMode = REPEAT_OFF;
+
+    public QueueNavigator(Random random) {
+        shuffle = new ShuffleOrder(random);
+    }
+
+    public int size() { return size; }
+    public boolean isShuffleEnabled() { return shuffleEnabled; }
+    public int getRepeatMode() { return repeatMode; }
+    public ShuffleOrder getShuffleOrder() { return shuffle; }
+
+    /** Turning shuffle on builds a fresh order that starts at {@code current}. */
+    public void setShuffleEnabled(boolean enabled, int current) {
+        if (enabled && !shuffleEnabled) shuffle.reset(size, current);
+        shuffleEnabled = enabled;
+    }
+
+    public void setRepeatMode(int mode) {
+        repeatMode = mode;
+    }
+
+    /** Cycles off, one, all. */
+    public int cycleRepeatMode() {
+        repeatMode = (repeatMode + 1) % 3;
+        return repeatMode;
+    }
+
+    /** Follows a change to the queue; see {@link ShuffleOrder#remap}. */
+    public void remap(int[] oldToNew, int newSize) {
+        size = newSize;
+        shuffle.remap(oldToNew, newSize);
+    }
+
+    /**
+     * An entry was inserted at {@code position}. While shuffled it goes to a random upcoming slot,
+     * or right after the current one if {@code playNext}. Shuffled edits remap the whole order, O(n).
+     */
+    public void insert(int position, boolean playNext) {
+        edit(-1, position, size + 1);
+        if (playNext && shuffleEnabled) shuffle.moveToNext(position);
+    }
+
+    public void remove(int position) {
+        edit(position, -1, size - 1);
+    }
+
+    /** The entry at {@code from} now sits at {@code to}; it keeps its place in the shuffle order. */
+    public void move(int from, int to) {
+        edit(from, to, size);
+    }
+
+    /**
+     * Where the entry at {@code position} ends up after the entry at {@code removedAt} is taken out
+     * and one is put in at {@code insertedAt} (either may be -1). With both set it is a move, and
+     * the moved entry itself lands on {@code insertedAt}; a removed one maps to -1.
+     */
+    public static int shiftPosition(int position, int removedAt, int insertedAt) {
+        if (position < 0) return position;
+        if (position == removedAt) return insertedAt;
+        if (removedAt >= 0 && position > removedAt) position--;
+        if (insertedAt >= 0 && position >= insertedAt) position++;
+        return position;
+    }
+
+    private void edit(int removedAt, int insertedAt, int newSize) {
+        if (!shuffleEnabled) {
+            // The order is rebuilt when shuffle is turned on, so there is nothing to keep in step
+            size = newSize;
+            return;
+        }
+        int[] oldToNew = new int[size];
+        for (int i = 0; i < size; i++) oldToNew[i] = shiftPosition(i, removedAt, insertedAt);
+        remap(oldToNew, newSize);
+    }
+
+    /** Replaces the queue without a mapping from the old one; the shuffle order starts over. */
+    public void reset(int newSize, int current) {
+        size = newSize;
+        shuffle.reset(newSize, current);
+    }
+
+    /** Adopts a previously saved order; ignored unless it covers exactly the current queue. */
+    public boolean restore(ShuffleOrder saved, boolean enabled) {
+        if (saved == null || saved.size() != size) return false;
+        shuffle = saved;
+        shuffleEnabled = enabled;
+        return true;
+    }
+
+    /** The user picked {@code index} directly. */
+    public void jumpTo(int index) {
+        if (shuffleEnabled) shuffle.jumpTo(index);
+    }
+
+    /** Entry auto-advance would play after {@code current}, without moving; -1 to stop. */
+    public int peekAutoAdvance(int current) {
+        if (size == 0 || current < 0) return -1;
+        if (repeatMode == REPEAT_ONE) return current;
+        if (shuffleEnabled) return shuffle.peekNext(repeatMode == REPEAT_ALL);
+        if (current + 1 < size) return current + 1;
+        return repeatMode == REPEAT_ALL ? 0 : -1;
+    }
+
+    /** Like {@link #peekAutoAdvance} but commits the move, e.g. when the track has finished. */
+    public int autoAdvance(int current) {
+        int next = peekAutoAdvance(current);
+        if (next >= 0 && shuffleEnabled && repeatMode != REPEAT_ONE) shuffle.next(repeatMode == REPEAT_ALL);
+        return next;
+    }
+
+    /** Skip forward always lands somewhere, wrapping at the end of the queue. */
+    public int skipNext(int from) {
+        if (size == 0) return -1;
+        if (shuffleEnabled) {
+            int next = shuffle.next(true);
+            return next >= 0 ? next : Math.max(from, 0);
+        }
+        return from + 1 >= size ? 0 : from + 1;
+    }
+
+    /** Skip back walks shuffle history; at its start it restarts the current entry. */
+    public int skipPrevious(int from) {
+        if (size == 0) return -1;
+        if (shuffleEnabled) {
+            int previous = shuffle.previous();
+            return previous >= 0 ? previous : Math.max(from, 0);
+        }
+        return from - 1 < 0 ? size - 1 : from - 1;
+    }
+}
@@ -0,0 +1,216 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Positional reads over a slow {@link Source}, served from a ring buffer that a background thread
+ * keeps filled ahead of the last read. Like the kernel's read-ahead, the chunk size starts small
+ * after a seek and doubles with every chunk fetched, up to {@link #MAX_CHUNK} so a reader waiting
+ * at the frontier never waits for more than one bounded transfer. A quarter of the buffer is kept
+ * behind the read position for the small backward seeks decoders do when parsing headers.
+ *
+ * Reads outside the buffered window go to the source directly; time spent waiting on the source
+ * in either case is counted as stall time.
+ */
+public final class ReadAheadReader implements Closeable {
+
+    /** Thread-safe positional access to the underlying file. */
+    public interface Source extends Closeable {
+        /** Like pread: fewer bytes than asked is fine, -1 at end of file. */
+        int read(long position, byte[] buffer, int offset, int length) throws IOException;
+        long size() throws IOException;
+    }
+
+    public static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+    private static final int MIN_CHUNK = 32 * 1024;
+    private static final int MAX_CHUNK = 256 * 1024;
+    // Waiting this long for the filler beats a second, competing read on a slow provider
+    private static final long FRONTIER_WAIT_NS = 500_000_000L;
+
+    private static final Metrics.Counter HITS = Metrics.counter("readahead.hits");
+    private static final Metrics.Counter MISSES = Metrics.counter("readahead.misses");
+    private static final Metrics.Histogram STALL_US = Metrics.histogram("readahead.stall_us");
+
+    private final Source source;
+    private final long size;
+    private final byte[] ring;
+    private final Thread filler;
+
+    // Guarded by this. The buffer holds file bytes [start, end); byte p lives at ring[p % capacity]
+    private long start;
+    private long end;
+    private int chunk = MIN_CHUNK;
+    // Bumped on every seek so a chunk read for the old position is thrown away
+    private int generation;
+    private boolean closed;
+    private IOException fillError;
+
+    private long hits;
+    private long misses;
+    private long stallNanos;
+
+    public ReadAheadReader(Source source, int capacity) throws IOException {
+        this.source = source;
+        this.size = source.size();
+        this.ring = new byte[Math.max(capacity, 2 * MAX_CHUNK)];
+        filler = new Thread(this::fillLoop, "ReadAhead");
+        filler.setDaemon(true);
+        filler.start();
+    }
+
+    public long size() { return size; }
+
+    /** Reads up to {@code length} bytes at {@code position}; -1 at end of file. */
+    public int readAt(long position, byte[] buffer, int offset, int length) throws IOException {
+        if (position >= size) return -1;
+        if (length == 0) return 0;
+        length = (int) Math.min(length, size - position);
+        synchronized (this) {
+            if (closed) throw new IOException("closed");
+            if (position >= start && position <= end + chunk && position + length > end && end < size) {
+                // At (or just past) the frontier: the filler is already heading there, so wait for it
+                start = Math.max(start, Math.min(position, end) - ring.length / 4);
+                notifyAll();
+                long waitStart = System.nanoTime();
+                long deadline = waitStart + FRONTIER_WAIT_NS;
+                long now = waitStart;
+                while (end <= position && fillError == null && !closed && now < deadline) {
+                    waitQuietly((deadline - now) / 1_000_000 + 1);
+                    now = System.nanoTime();
+                }
+                if (end > position) stall(now - waitStart);
+            }
+            if (position >= start && position < end) {
+                int n = (int) Math.min(length, end - position);
+                copyOut(position, buffer, offset, n);
+                hits++;
+                HITS.increment();
+                // Free what is far enough behind for the filler to reach further ahead
+                start = Math.max(start, position + n - ring.length / 4);
+                notifyAll();
+                return n;
+            }
+            misses++;
+            MISSES.increment();
+            chunk = MIN_CHUNK;
+            generation++;
+            start = end = position;
+            fillError = null;
+        }
+
+        // Seek: read directly, a little more than asked so the next few reads hit while the filler
+        // may still be busy with a chunk for the old position
+        byte[] direct = new byte[(int) Math.min(Math.max(length, 2 * MIN_CHUNK), size - position)];
+        long readStart = System.nanoTime();
+        int n = source.read(position, direct, 0, direct.length);
+        synchronized (this) {
+            stall(System.nanoTime() - readStart);
+            if (n > 0 && start == position && end == position) {
+                copyIn(position, direct, n);
+                end = position + n;
+                notifyAll();
+            }
+        }
+        if (n <= 0) return n;
+        n = Math.min(n, length);
+        System.arraycopy(direct, 0, buffer, offset, n);
+        return n;
+    }
+
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getStallNanos() { return stallNanos; }
+
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public String getStats() {
+        synchronized (this) {
+            return String.format(Locale.US, "hit rate %.1f%% (%d/%d), stalled %d ms",
+                    getHitRate() * 100, hits, hits + misses, stallNanos / 1_000_000);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            notifyAll();
+        }
+        filler.interrupt();
+        source.close();
+    }
+
+    private void fillLoop() {
+        byte[] scratch = new byte[MAX_CHUNK];
+        while (true) {
+            long position;
+            int length;
+            int gen;
+            synchronized (this) {
+                while (!closed && (end >= size || fillError != null || free() < MIN_CHUNK)) waitQuietly(0);
+                if (closed) return;
+                position = end;
+                gen = generation;
+                length = (int) Math.min(Math.min(chunk, free()), size - end);
+            }
+            int n;
+            try {
+                n = source.read(position, scratch, 0, length);
+            } catch (IOException e) {
+                synchronized (this) {
+                    if (gen == generation) fillError = e;
+                }
+                continue;
+            }
+            synchronized (this) {
+                if (closed) return;
+                if (gen != generation || end != position) continue;
+                if (n < 0) {
+                    fillError = new IOException("unexpected end of file at " + position);
+                } else {
+                    copyIn(position, scratch, n);
+                    end += n;
+                    chunk = Math.min(chunk * 2, MAX_CHUNK);
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private int free() {
+        return ring.length - (int) (end - start);
+    }
+
+    private void copyIn(long position, byte[] from, int length) {
+        int at = (int) (position % ring.length);
+        int first = Math.min(length, ring.length - at);
+        System.arraycopy(from, 0, ring, at, first);
+        System.arraycopy(from, first, ring, 0, length - first);
+    }
+
+    private void copyOut(long position, byte[] to, int offset, int length) {
+        int at = (int) (position % ring.length);
+        int first = Math.min(length, ring.length - at);
+        System.arraycopy(ring, at, to, offset, first);
+        System.arraycopy(ring, 0, to, offset + first, length - first);
+    }
+
+    private void stall(long nanos) {
+        stallNanos += nanos;
+        STALL_US.record(nanos / 1000);
+    }
+
+    private void waitQuietly(long millis) {
+        try {
+            wait(millis);
+        } catch (InterruptedException e) {
+            // close() interrupts the filler; everyone re-checks closed
+        }
+    }
+}
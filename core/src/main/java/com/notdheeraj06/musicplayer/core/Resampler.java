@@ -0,0 +1,115 @@
+package com.notdheeraj06.musicplayer.core;
+
+/**
+ * Streaming sample-rate conversion of interleaved float PCM by 4-point cubic (Catmull-Rom)
+ * interpolation. Input can arrive in blocks of any size: the last three input frames and the
+ * fractional read position carry over, so block boundaries don't click. Equal rates pass through.
+ *
+ * Cubic interpolation is a cheap middle ground between linear (audible aliasing at 44.1 to 48 kHz)
+ * and a polyphase filter; it runs on the decoder thread, not the audio thread.
+ */
+public final class Resampler {
+
+    private static final int HISTORY = 3;
+
+    private final int channels;
+    private final int inRate;
+    private final int outRate;
+    private final double step;
+    // Input frames -3..-1 relative to the next block
+    private final float[] history;
+    private final float[] scratch;
+    // Next output position in input frames, relative to the start of the next block
+    private double position;
+    private boolean primed;
+
+    public Resampler(int inRate, int outRate, int channels) {
+        if (inRate <= 0 || outRate <= 0 || channels <= 0) throw new IllegalArgumentException();
+        this.inRate = inRate;
+        this.outRate = outRate;
+        this.channels = channels;
+        step = (double) inRate / outRate;
+        history = new float[HISTORY * channels];
+        scratch = new float[HISTORY * channels];
+    }
+
+    public int inRate() { return inRate; }
+    public int outRate() { return outRate; }
+    public boolean isPassthrough() { return inRate == outRate; }
+
+    /** Upper bound on the frames one {@link #process} call can produce from {@code inFrames}. */
+    public int maxOutputFrames(int inFrames) {
+        return (int) Math.ceil((inFrames + HISTORY) / step) + 1;
+    }
+
+    /** Forgets the stream, e.g. after a seek. */
+    public void reset() {
+        position = 0;
+        primed = false;
+    }
+
+    /**
+     * Converts {@code inFrames} frames from {@code in[inOffset..]} (frames) into
+     * {@code out[outOffset..]}, which must have room for {@link #maxOutputFrames}; returns the
+     * number of frames written.
+     */
+    public int process(float[] in, int inOffset, int inFrames, float[] out, int outOffset) {
+        if (inFrames <= 0) return 0;
+        if (isPassthrough()) {
+            System.arraycopy(in, inOffset * channels, out, outOffset * channels, inFrames * channels);
+            return inFrames;
+        }
+        if (!primed) {
+            // Start on the first frame rather than ramping in from silence
+            for (int f = 0; f < HISTORY; f++) System.arraycopy(in, inOffset * channels, history, f * channels, channels);
+            primed = true;
+        }
+        int produced = 0;
+        int o = outOffset * channels;
+        double p = position;
+        int i;
+        while ((i = (int) Math.floor(p)) <= inFrames - 3) {
+            float t = (float) (p - i);
+            for (int c = 0; c < channels; c++) {
+                float xm1 = sample(in, inOffset, i - 1, c);
+                float x0 = sample(in, inOffset, i, c);
+                float x1 = sample(in, inOffset, i + 1, c);
+                float x2 = sample(in, inOffset, i + 2, c);
+                float c1 = 0.5f * (x1 - xm1);
+                float c2 = xm1 - 2.5f * x0 + 2f * x1 - 0.5f * x2;
+                float c3 = 0.5f * (x2 - xm1) + 1.5f * (x0 - x1);
+                out[o++] = ((c3 * t + c2) * t + c1) * t + x0;
+            }
+            produced++;
+            p += step;
+        }
+        position = p - inFrames;
+        // Keep the last three frames of history + input for the next block
+        for (int f = 0; f < HISTORY; f++) {
+            for (int c = 0; c < channels; c++) scratch[f * channels + c] = sample(in, inOffset, inFrames - HISTORY + f, c);
+        }
+        System.arraycopy(scratch, 0, history, 0, scratch.length);
+        return produced;
+    }
+
+    /**
+     * Emits the tail still held back for interpolation, at the end of the stream; {@code out}
+     * needs room for {@code maxOutputFrames(2)}.
+     */
+    public int drain(float[] out, int outOffset) {
+        if (!primed || isPassthrough()) return 0;
+        // Repeat the last frame so the interpolator reaches it
+        float[] pad = new float[2 * channels];
+        System.arraycopy(history, (HISTORY - 1) * channels, pad, 0, channels);
+        System.arraycopy(history, (HISTORY - 1) * channels, pad, channels, channels);
+        int n = process(pad, 0, 2, out, outOffset);
+        reset();
+        return n;
+    }
+
+    /** Frame {@code index} of the block, where -3..-1 are the carried-over history frames. */
+    private float sample(float[] in, int inOffset, int index, int channel) {
+        if (index < 0) return history[(index + HISTORY) * channels + channel];
+        return in[(inOffset + index) * channels + channel];
+    }
+}
@@ -0,0 +1,199 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Immutable token index over the library. Each document is split into case- and
+ * diacritic-folded tokens; the distinct tokens are kept sorted with a posting list of document
+ * ids each. A query term matches a document if it is a prefix or a substring of one of its
+ * tokens. Both are found by binary search: prefixes in the vocabulary, substrings in the sorted
+ * list of every proper suffix of every token. Documents where every term is a prefix match rank
+ * first.
+ */
+public final class SearchIndex {
+
+    private final int documentCount;
+    private final String[] vocabulary;
+    private final int[] postingStart;
+    private final int[] postings;
+    // Suffix i is vocabulary[suffixToken[i]].substring(suffixOffset[i]), in sorted order; offset >= 1
+    private final int[] suffixToken;
+    private final int[] suffixOffset;
+
+    private SearchIndex(int documentCount, String[] vocabulary, int[] postingStart, int[] postings,
+                        int[] suffixToken, int[] suffixOffset) {
+        this.documentCount = documentCount;
+        this.vocabulary = vocabulary;
+        this.postingStart = postingStart;
+        this.postings = postings;
+        this.suffixToken = suffixToken;
+        this.suffixOffset = suffixOffset;
+    }
+
+    /** Builds the index; document {@code i} of the list becomes id {@code i} in search results. */
+    public static SearchIndex build(List<String> documents) {
+        Map<String, IntList> byToken = new HashMap<>();
+        for (int id = 0; id < documents.size(); id++) {
+            for (String token : tokenize(documents.get(id))) {
+                IntList list = byToken.get(token);
+                if (list == null) byToken.put(token, list = new IntList());
+                if (list.size == 0 || list.values[list.size - 1] != id) list.add(id);
+            }
+        }
+
+        String[] vocabulary = byToken.keySet().toArray(new String[0]);
+        Arrays.sort(vocabulary);
+        int[] postingStart = new int[vocabulary.length + 1];
+        int total = 0;
+        for (int t = 0; t < vocabulary.length; t++) {
+            postingStart[t] = total;
+            total += byToken.get(vocabulary[t]).size;
+        }
+        postingStart[vocabulary.length] = total;
+        int[] postings = new int[total];
+        for (int t = 0; t < vocabulary.length; t++) {
+            IntList list = byToken.get(vocabulary[t]);
+            System.arraycopy(list.values, 0, postings, postingStart[t], list.size);
+        }
+
+        // Every proper suffix of every token, sorted, for substring terms
+        int count = 0;
+        for (String word : vocabulary) count += word.length() - 1;
+        Integer[] order = new Integer[count];
+        int[] token = new int[count];
+        int[] offset = new int[count];
+        int n = 0;
+        for (int t = 0; t < vocabulary.length; t++) {
+            for (int i = 1; i < vocabulary[t].length(); i++, n++) {
+                order[n] = n;
+                token[n] = t;
+                offset[n] = i;
+            }
+        }
+        Arrays.sort(order, (x, y) -> compareSuffix(vocabulary[token[x]], offset[x], vocabulary[token[y]], offset[y]));
+        int[] suffixToken = new int[count];
+        int[] suffixOffset = new int[count];
+        for (int i = 0; i < count; i++) {
+            suffixToken[i] = token[order[i]];
+            suffixOffset[i] = offset[order[i]];
+        }
+        return new SearchIndex(documents.size(), vocabulary, postingStart, postings, suffixToken, suffixOffset);
+    }
+
+    public int size() { return documentCount; }
+
+    /**
+     * Returns up to {@code limit} matching document ids, best matches first and library order
+     * within each group, or null if {@code cancelled} turned true while searching.
+     */
+    public int[] search(String query, int limit, BooleanSupplier cancelled) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) return new int[0];
+
+        BitSet all = null;
+        BitSet prefixOnly = null;
+        for (String term : terms) {
+            if (cancelled.getAsBoolean()) return null;
+            BitSet prefix = new BitSet(documentCount);
+            int t = lowerBound(term);
+            for (; t < vocabulary.length && vocabulary[t].startsWith(term); t++) addPostings(t, prefix);
+
+            BitSet contains = (BitSet) prefix.clone();
+            int s = lowerBoundSuffix(term);
+            for (int i = 0; s < suffixToken.length && vocabulary[suffixToken[s]].startsWith(term, suffixOffset[s]); s++, i++) {
+                if ((i & 4095) == 4095 && cancelled.getAsBoolean()) return null;
+                addPostings(suffixToken[s], contains);
+            }
+
+            if (all == null) {
+                all = contains;
+                prefixOnly = prefix;
+            } else {
+                all.and(contains);
+                prefixOnly.and(prefix);
+            }
+        }
+
+        int[] result = new int[Math.min(limit, all.cardinality())];
+        int n = 0;
+        for (int id = prefixOnly.nextSetBit(0); id >= 0 && n < result.length; id = prefixOnly.nextSetBit(id + 1)) {
+            result[n++] = id;
+        }
+        all.andNot(prefixOnly);
+        for (int id = all.nextSetBit(0); id >= 0 && n < result.length; id = all.nextSetBit(id + 1)) {
+            result[n++] = id;
+        }
+        return result;
+    }
+
+    private void addPostings(int token, BitSet into) {
+        for (int i = postingStart[token]; i < postingStart[token + 1]; i++) into.set(postings[i]);
+    }
+
+    private int lowerBound(String key) {
+        int lo = 0, hi = vocabulary.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (vocabulary[mid].compareTo(key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int lowerBoundSuffix(String key) {
+        int lo = 0, hi = suffixToken.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareSuffix(vocabulary[suffixToken[mid]], suffixOffset[mid], key, 0) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Compares {@code a} from {@code offset} with {@code other} from {@code otherOffset}. */
+    private static int compareSuffix(String a, int offset, String other, int otherOffset) {
+        int n = Math.min(a.length() - offset, other.length() - otherOffset);
+        for (int i = 0; i < n; i++) {
+            int d = a.charAt(offset + i) - other.charAt(otherOffset + i);
+            if (d != 0) return d;
+        }
+        return (a.length() - offset) - (other.length() - otherOffset);
+    }
+
+    /** Lower-cases, strips diacritics and splits on anything that isn't a letter or digit. */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            } else if (sb.length() > 0) {
+                tokens.add(sb.toString());
+                sb.setLength(0);
+            }
+        }
+        if (sb.length() > 0) tokens.add(sb.toString());
+        return tokens;
+    }
+
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+}
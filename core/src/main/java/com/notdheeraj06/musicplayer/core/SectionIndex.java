@@ -0,0 +1,66 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.util.Arrays;
+
+/**
+ * Fast-scroll sections of a sorted list: each section has a label ("A", an artist, a folder) and
+ * the position of its first row. Immutable; lookups by position are a binary search.
+ */
+public final class SectionIndex {
+
+    private static final SectionIndex EMPTY = new SectionIndex(new String[0], new int[0], 0, 0);
+
+    private final String[] labels;
+    private final int[] starts;
+    private final int count;
+    private final int size;
+
+    private SectionIndex(String[] labels, int[] starts, int count, int size) {
+        this.labels = labels;
+        this.starts = starts;
+        this.count = count;
+        this.size = size;
+    }
+
+    public static SectionIndex empty() { return EMPTY; }
+
+    /** Rows covered; a list of a different length isn't the one this index was built for. */
+    public int size() { return size; }
+    public int sectionCount() { return count; }
+    public String label(int section) { return labels[section]; }
+    public int start(int section) { return starts[section]; }
+
+    /** Section holding row {@code position}, or -1 if there are no sections. */
+    public int sectionAt(int position) {
+        if (count == 0) return -1;
+        int found = Arrays.binarySearch(starts, 0, count, position);
+        return found >= 0 ? found : Math.max(0, -found - 2);
+    }
+
+    /** Label of the section holding row {@code position}, or null. */
+    public String labelAt(int position) {
+        int section = sectionAt(position);
+        return section < 0 ? null : labels[section];
+    }
+
+    static final class Builder {
+        private String[] labels = new String[16];
+        private int[] starts = new int[16];
+        private int count;
+
+        /** Starts a section at {@code position}; positions must increase. */
+        void add(String label, int position) {
+            if (count == labels.length) {
+                labels = Arrays.copyOf(labels, count * 2);
+                starts = Arrays.copyOf(starts, count * 2);
+            }
+            labels[count] = label;
+            starts[count] = position;
+            count++;
+        }
+
+        SectionIndex build(int size) {
+            return count == 0 ? EMPTY : new SectionIndex(labels, starts, count, size);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * What playback needs to come back where it left off after the process dies: the current track
+ * (enough to prepare it without the library), its position, the repeat mode and the queue. The
+ * queue is stored as its runs, so the usual whole-library queue costs a few bytes; it is only
+ * reused if the library it was built against has the same fingerprint at restore time.
+ */
+public final class SessionSnapshot {
+
+    private static final int MAGIC = 0x4d505331; // "MPS1"
+
+    public final String treeUri;
+    public final String documentId;
+    public final String title;
+    public final long size;
+    public final long lastModified;
+    public final int positionMs;
+    public final int repeatMode;
+    public final long libraryFingerprint;
+    /** Null when the queue was the library in list order. */
+    public final int[] queueRuns;
+    public final int queuePosition;
+
+    public SessionSnapshot(String treeUri, String documentId, String title, long size, long lastModified,
+                           int positionMs, int repeatMode, long libraryFingerprint, int[] queueRuns, int queuePosition) {
+        this.treeUri = treeUri;
+        this.documentId = documentId;
+        this.title = title;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.positionMs = positionMs;
+        this.repeatMode = repeatMode;
+        this.libraryFingerprint = libraryFingerprint;
+        this.queueRuns = queueRuns;
+        this.queuePosition = queuePosition;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeUTF(treeUri);
+        out.writeUTF(documentId);
+        out.writeUTF(title);
+        out.writeLong(size);
+        out.writeLong(lastModified);
+        out.writeInt(positionMs);
+        out.writeByte(repeatMode);
+        out.writeLong(libraryFingerprint);
+        out.writeInt(queuePosition);
+        if (queueRuns == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(queueRuns.length);
+            for (int value : queueRuns) out.writeInt(value);
+        }
+    }
+
+    /** Returns null if the data isn't a snapshot in this format. */
+    public static SessionSnapshot readFrom(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) return null;
+        String treeUri = in.readUTF();
+        String documentId = in.readUTF();
+        String title = in.readUTF();
+        long size = in.readLong();
+        long lastModified = in.readLong();
+        int positionMs = in.readInt();
+        int repeatMode = in.readByte();
+        long fingerprint = in.readLong();
+        int queuePosition = in.readInt();
+        int runsLength = in.readInt();
+        int[] runs = null;
+        if (runsLength >= 0) {
+            if (runsLength % 2 != 0) return null;
+            runs = new int[runsLength];
+            for (int i = 0; i < runsLength; i++) runs[i] = in.readInt();
+        }
+        return new SessionSnapshot(treeUri, documentId, title, size, lastModified, positionMs, repeatMode,
+                fingerprint, runs, queuePosition);
+    }
+}
@@ -0,0 +1,204 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Shuffled play order over song indices [0, size). The Fisher-Yates permutation is built once and
+ * walked with a cursor, so next/previous are O(1) and previous really goes back to what was
+ * played. Everything before the cursor is history, everything after it is still to come.
+ */
+public final class ShuffleOrder {
+
+    private final Random random;
+    private int[] order = new int[0];
+    private int[] positionOf = new int[0];
+    private int size;
+    private int cursor = -1;
+    // The next cycle's permutation once peekNext has drawn it at the end of this one, so that
+    // peeking leaves the order and history alone and next() then plays what was peeked
+    private int[] nextCycle;
+
+    public ShuffleOrder(Random random) {
+        this.random = random;
+    }
+
+    public int size() { return size; }
+
+    /** Song index at the cursor, or -1 before the first track. */
+    public int current() {
+        return cursor >= 0 && cursor < size ? order[cursor] : -1;
+    }
+
+    /** Builds a fresh permutation; {@code startIndex} (if >= 0) becomes the current track. */
+    public void reset(int newSize, int startIndex) {
+        size = newSize;
+        nextCycle = null;
+        order = new int[newSize];
+        positionOf = new int[newSize];
+        for (int i = 0; i < newSize; i++) order[i] = i;
+        shuffle(0);
+        cursor = -1;
+        if (startIndex >= 0 && startIndex < newSize) {
+            swap(0, positionOf[startIndex]);
+            cursor = 0;
+        }
+    }
+
+    /** The track {@link #next} would return, without moving; -1 if playback should stop. */
+    public int peekNext(boolean repeatAll) {
+        if (size == 0) return -1;
+        if (cursor + 1 < size) return order[cursor + 1];
+        if (!repeatAll) return -1;
+        if (nextCycle == null) nextCycle = drawNextCycle();
+        return nextCycle[0];
+    }
+
+    public int next(boolean repeatAll) {
+        int index = peekNext(repeatAll);
+        if (index < 0) return -1;
+        if (cursor + 1 == size) {
+            // Wrapped: the drawn cycle replaces the exhausted one, and history starts over
+            order = nextCycle;
+            nextCycle = null;
+            for (int p = 0; p < size; p++) positionOf[order[p]] = p;
+            cursor = -1;
+        }
+        cursor++;
+        return index;
+    }
+
+    /** Steps back through history; -1 when already at the first track played. */
+    public int previous() {
+        if (cursor <= 0) return -1;
+        return order[--cursor];
+    }
+
+    /** Makes {@code index} the current track (e.g. the user tapped it) without reshuffling. */
+    public void jumpTo(int index) {
+        if (index < 0 || index >= size) return;
+        nextCycle = null;
+        int p = positionOf[index];
+        if (p > cursor) {
+            // Pull it forward from the upcoming part; the rest of the upcoming order is unchanged
+            swap(cursor + 1, p);
+            cursor++;
+        } else {
+            // Already played: treat it like stepping back through history
+            cursor = p;
+        }
+    }
+
+    /** Makes an upcoming {@code index} the very next track, e.g. "play next"; history is left alone. */
+    public void moveToNext(int index) {
+        if (index < 0 || index >= size) return;
+        int p = positionOf[index];
+        if (p <= cursor + 1) return;
+        nextCycle = null;
+        System.arraycopy(order, cursor + 1, order, cursor + 2, p - cursor - 1);
+        order[cursor + 1] = index;
+        for (int q = cursor + 1; q <= p; q++) positionOf[order[q]] = q;
+    }
+
+    /**
+     * Follows a change to the underlying list. {@code oldToNew[i]} is the new index of old song
+     * {@code i}, or -1 if it was removed. Removed songs drop out of the order, surviving songs
+     * keep their relative order, and indices that nothing maps to are new songs, which are
+     * dropped into random upcoming slots.
+     */
+    public void remap(int[] oldToNew, int newSize) {
+        int current = current();
+        int currentNew = current >= 0 && current < oldToNew.length ? oldToNew[current] : -1;
+        nextCycle = null;
+        boolean[] seen = new boolean[newSize];
+        int[] newOrder = new int[newSize];
+        int n = 0;
+        int newCursor = -1;
+        for (int p = 0; p < size; p++) {
+            int mapped = order[p] < oldToNew.length ? oldToNew[order[p]] : -1;
+            if (mapped < 0 || mapped >= newSize || seen[mapped]) continue;
+            seen[mapped] = true;
+            if (p <= cursor) newCursor = n;
+            newOrder[n++] = mapped;
+        }
+        order = newOrder;
+        positionOf = new int[newSize];
+        for (int p = 0; p < n; p++) positionOf[order[p]] = p;
+        size = n;
+        cursor = newCursor;
+        if (currentNew >= 0) cursor = positionOf[currentNew];
+
+        for (int index = 0; index < newSize; index++) {
+            if (seen[index]) continue;
+            order[size] = index;
+            positionOf[index] = size;
+            size++;
+            int upcoming = size - (cursor + 1);
+            swap(size - 1, cursor + 1 + random.nextInt(upcoming));
+        }
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(cursor);
+        for (int i = 0; i < size; i++) out.writeInt(order[i]);
+    }
+
+    /** Reads an order written by {@link #writeTo}; returns null if it isn't a valid permutation. */
+    public static ShuffleOrder readFrom(DataInput in, Random random) throws IOException {
+        int size = in.readInt();
+        int cursor = in.readInt();
+        if (size < 0 || cursor < -1 || cursor >= Math.max(size, 1)) return null;
+        ShuffleOrder shuffle = new ShuffleOrder(random);
+        shuffle.order = new int[size];
+        shuffle.positionOf = new int[size];
+        Arrays.fill(shuffle.positionOf, -1);
+        for (int p = 0; p < size; p++) {
+            int index = in.readInt();
+            if (index < 0 || index >= size || shuffle.positionOf[index] >= 0) return null;
+            shuffle.order[p] = index;
+            shuffle.positionOf[index] = p;
+        }
+        shuffle.size = size;
+        shuffle.cursor = cursor;
+        return shuffle;
+    }
+
+    private int[] drawNextCycle() {
+        int[] cycle = Arrays.copyOf(order, size);
+        permute(cycle, 0, size);
+        // Don't play the same track twice in a row across the wrap
+        if (size > 1 && cycle[0] == current()) {
+            int j = 1 + random.nextInt(size - 1);
+            cycle[0] = cycle[j];
+            cycle[j] = current();
+        }
+        return cycle;
+    }
+
+    /** Fisher-Yates over order[from, size). */
+    private void shuffle(int from) {
+        permute(order, from, size);
+        for (int p = from; p < size; p++) positionOf[order[p]] = p;
+    }
+
+    private void permute(int[] a, int from, int to) {
+        for (int i = to - 1; i > from; i--) {
+            int j = from + random.nextInt(i - from + 1);
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int ia = order[a], ib = order[b];
+        order[a] = ib;
+        order[b] = ia;
+        positionOf[ib] = a;
+        positionOf[ia] = b;
+    }
+}
@@ -0,0 +1,28 @@
+package com.notdheeraj06.musicplayer.core;
+
+public class SongMetadata {
+    private final String artist;
+    private final String album;
+    private final int trackNumber;
+    private final long durationMs;
+    private final int bitrate;
+    private final boolean hasEmbeddedArt;
+
+    public SongMetadata(String artist, String album, int trackNumber,
+                        long durationMs, int bitrate, boolean hasEmbeddedArt) {
+        this.artist = StringPool.intern(artist);
+        this.album = StringPool.intern(album);
+        this.trackNumber = trackNumber;
+        this.durationMs = durationMs;
+        this.bitrate = bitrate;
+        this.hasEmbeddedArt = hasEmbeddedArt;
+    }
+
+    /** Null when unknown, as is the album. */
+    public String getArtist() { return artist; }
+    public String getAlbum() { return album; }
+    public int getTrackNumber() { return trackNumber; }
+    public long getDurationMs() { return durationMs; }
+    public int getBitrate() { return bitrate; }
+    public boolean hasEmbeddedArt() { return hasEmbeddedArt; }
+}
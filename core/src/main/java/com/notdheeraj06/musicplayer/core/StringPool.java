@@ -0,0 +1,23 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide interning for strings that repeat across the library (artists, albums, folder
+ * prefixes). An album's twelve tracks then share one String instead of holding twelve copies.
+ * Entries are never evicted; the set is bounded by the distinct values in the library.
+ */
+public final class StringPool {
+
+    private static final ConcurrentHashMap<String, String> pool = new ConcurrentHashMap<>();
+
+    private StringPool() { }
+
+    public static String intern(String value) {
+        if (value == null) return null;
+        String existing = pool.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    public static int size() { return pool.size(); }
+}
@@ -0,0 +1,675 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads tags and stream headers for the formats {@link AudioFiles#isAudioFile} accepts
+ * (ID3v2/ID3v1 + MPEG, FLAC, MP4/M4A, Ogg Vorbis/Opus, WAV, ADTS AAC). Everything goes through
+ * positional reads of just the header regions, so large frames such as cover art are skipped
+ * over rather than read.
+ */
+public final class TagReader {
+
+    private static final int MAX_TEXT_BYTES = 1024;
+    private static final int MAX_ART_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_COMMENT_BYTES = 64 * 1024;
+    private static final int SYNC_SCAN_BYTES = 8 * 1024;
+    private static final int OGG_TAIL_BYTES = 64 * 1024;
+    // An unsynchronised v2.2/v2.3 tag is read whole; past this it's left unparsed
+    private static final int MAX_UNSYNC_TAG_BYTES = MAX_ART_BYTES + 1024 * 1024;
+
+    // ART_ID3_UNSYNC: an ID3v2.4 picture frame whose body is unsynchronised
+    private static final int ART_NONE = 0, ART_ID3 = 1, ART_ID3V22 = 2, ART_FLAC = 3, ART_RAW = 4, ART_ID3_UNSYNC = 5;
+
+    /** Positional reads from either the file or an in-memory copy of part of it. */
+    private interface Bytes {
+        ByteBuffer read(long pos, int len) throws IOException;
+    }
+
+    private static final int[][] MPEG_BITRATES = {
+            {32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448}, // V1 L1
+            {32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},    // V1 L2
+            {32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},     // V1 L3
+            {32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},    // V2 L1
+            {8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}          // V2 L2/L3
+    };
+    private static final int[] MPEG_SAMPLE_RATES = {44100, 48000, 32000};
+    private static final int[] AAC_SAMPLE_RATES = {96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350};
+
+    private TagReader() { }
+
+    /** Mutable accumulator; formats fill in what they know and ID3v1 fills any gaps. */
+    private static class Tags {
+        String artist;
+        String album;
+        int track;
+        long durationMs;
+        int bitrate;
+        boolean hasArt;
+        // Where the first embedded picture lives, so readArtwork can fetch just that region
+        int artKind = ART_NONE;
+        long artPos;
+        long artLen;
+        // Set when the picture's position is in a resynchronised copy of the ID3 tag, not the file
+        byte[] artSource;
+
+        void foundArt(int kind, long pos, long len) {
+            hasArt = true;
+            if (artKind != ART_NONE) return;
+            artKind = kind;
+            artPos = pos;
+            artLen = len;
+        }
+
+        SongMetadata toMetadata() {
+            return new SongMetadata(artist, album, track, durationMs, bitrate, hasArt);
+        }
+    }
+
+    /** Returns the metadata, or null if the stream isn't in a recognised format. */
+    public static SongMetadata read(FileChannel channel) throws IOException {
+        Tags tags = new Tags();
+        return parse(channel, tags) ? tags.toMetadata() : null;
+    }
+
+    /** Returns the encoded bytes of the first embedded picture, or null if there is none. */
+    public static byte[] readArtwork(FileChannel channel) throws IOException {
+        Tags tags = new Tags();
+        if (!parse(channel, tags) || tags.artKind == ART_NONE || tags.artLen > MAX_ART_BYTES) return null;
+        ByteBuffer b = tags.artSource != null
+                ? ByteBuffer.wrap(Arrays.copyOfRange(tags.artSource, (int) tags.artPos, (int) (tags.artPos + tags.artLen)))
+                : read(channel, tags.artPos, (int) tags.artLen);
+        if (tags.artKind == ART_ID3_UNSYNC) b = ByteBuffer.wrap(resynchronise(b.array(), 0, b.limit()));
+        int limit = b.limit();
+        int i = 0;
+        switch (tags.artKind) {
+            case ART_ID3:
+            case ART_ID3V22:
+            case ART_ID3_UNSYNC: {
+                // encoding, MIME type (v2.3+) or 3-char format (v2.2), picture type, description
+                int encoding = b.get(i++);
+                if (tags.artKind == ART_ID3V22) {
+                    i += 3;
+                } else {
+                    while (i < limit && b.get(i) != 0) i++;
+                    i++;
+                }
+                i++;
+                if (encoding == 1 || encoding == 2) {
+                    while (i + 1 < limit && (b.get(i) != 0 || b.get(i + 1) != 0)) i += 2;
+                    i += 2;
+                } else {
+                    while (i < limit && b.get(i) != 0) i++;
+                    i++;
+                }
+                break;
+            }
+            case ART_FLAC: {
+                // type, MIME, description, width/height/depth/colors, data length
+                i = 4;
+                if (i + 4 > limit) return null;
+                i += 4 + b.getInt(i);
+                if (i < 0 || i + 4 > limit) return null;
+                i += 4 + b.getInt(i) + 16;
+                if (i < 0 || i + 4 > limit) return null;
+                limit = (int) Math.min(limit, i + 4 + (b.getInt(i) & 0xffffffffL));
+                i += 4;
+                break;
+            }
+            default:
+                break;
+        }
+        return i < limit ? Arrays.copyOfRange(b.array(), i, limit) : null;
+    }
+
+    /** Parses "3", "3/12" or "215000" style values; 0 when missing. */
+    public static int parseLeadingInt(String value) {
+        if (value == null) return 0;
+        int result = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') break;
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static boolean parse(FileChannel channel, Tags tags) throws IOException {
+        long size = channel.size();
+        long start = readId3v2(channel, tags);
+        ByteBuffer magic = read(channel, start, 12);
+        if (magic.remaining() < 4) return false;
+
+        boolean recognised;
+        if (matches(magic, 0, "fLaC")) {
+            recognised = readFlac(channel, start + 4, size, tags);
+        } else if (matches(magic, 0, "OggS")) {
+            recognised = readOgg(channel, start, size, tags);
+        } else if (matches(magic, 0, "RIFF") && matches(magic, 8, "WAVE")) {
+            recognised = readWav(channel, start + 12, size, tags);
+        } else if (matches(magic, 4, "ftyp")) {
+            recognised = readMp4(channel, start, size, tags);
+        } else {
+            long end = size - (readId3v1(channel, size, tags) ? 128 : 0);
+            recognised = readFrameStream(channel, start, end, tags) || start > 0;
+        }
+        return recognised;
+    }
+
+    // region ID3
+
+    private static long readId3v2(FileChannel ch, Tags tags) throws IOException {
+        ByteBuffer h = read(ch, 0, 10);
+        if (h.remaining() < 10 || !matches(h, 0, "ID3")) return 0;
+        int major = h.get(3);
+        int flags = h.get(5) & 0xff;
+        long tagEnd = 10 + syncsafe(h, 6);
+        long end = tagEnd + ((flags & 0x10) != 0 ? 10 : 0);
+        boolean unsync = (flags & 0x80) != 0;
+
+        if (unsync && major < 4) {
+            // v2.2/v2.3 unsynchronise the whole tag, frame headers included, and frame sizes
+            // count the bytes after undoing it, so the frames are parsed from a resynchronised copy
+            if (tagEnd > MAX_UNSYNC_TAG_BYTES) return end;
+            ByteBuffer raw = read(ch, 0, (int) tagEnd);
+            byte[] tag = resynchronise(raw.array(), 10, raw.limit());
+            readId3Frames((pos, len) -> ByteBuffer.wrap(Arrays.copyOfRange(tag,
+                    (int) Math.min(pos, tag.length), (int) Math.min(pos + len, tag.length))), major, flags, tag.length, false, tags);
+            // Nothing before the ID3 tag has art, so any found is in this copy
+            if (tags.artKind != ART_NONE) tags.artSource = tag;
+        } else {
+            // v2.4 unsynchronises frame bodies only, and frame sizes count the bytes as stored
+            readId3Frames((pos, len) -> read(ch, pos, len), major, flags, tagEnd, unsync, tags);
+        }
+        return end;
+    }
+
+    private static void readId3Frames(Bytes in, int major, int flags, long tagEnd, boolean unsyncAll, Tags tags) throws IOException {
+        long pos = 10;
+        if ((flags & 0x40) != 0 && major >= 3) {
+            ByteBuffer ext = in.read(pos, 4);
+            if (ext.remaining() < 4) return;
+            pos += major == 4 ? syncsafe(ext, 0) : 4 + ext.getInt(0);
+        }
+
+        int headerLen = major == 2 ? 6 : 10;
+        while (pos + headerLen <= tagEnd) {
+            ByteBuffer fh = in.read(pos, headerLen);
+            if (fh.remaining() < headerLen || fh.get(0) == 0) break;
+            String id;
+            long frameSize;
+            if (major == 2) {
+                id = ascii(fh, 0, 3);
+                frameSize = ((fh.get(3) & 0xff) << 16) | ((fh.get(4) & 0xff) << 8) | (fh.get(5) & 0xff);
+            } else {
+                id = ascii(fh, 0, 4);
+                frameSize = major == 4 ? syncsafe(fh, 4) : fh.getInt(4) & 0xffffffffL;
+            }
+            if (frameSize <= 0 || pos + headerLen + frameSize > tagEnd) break;
+            long next = pos + headerLen + frameSize;
+            long body = pos + headerLen;
+            long bodySize = frameSize;
+            boolean unsync = unsyncAll;
+            if (major == 4) {
+                int format = fh.get(9);
+                // Compressed or encrypted: nothing readable
+                if ((format & 0x0c) != 0) {
+                    pos = next;
+                    continue;
+                }
+                unsync |= (format & 0x02) != 0;
+                // Group id byte, then the data length indicator
+                if ((format & 0x40) != 0) body++;
+                if ((format & 0x01) != 0) body += 4;
+                bodySize = next - body;
+            } else if (major == 3 && (fh.get(9) & 0xc0) != 0) {
+                pos = next;
+                continue;
+            }
+            if (bodySize <= 0) {
+                pos = next;
+                continue;
+            }
+
+            switch (id) {
+                case "TPE1": case "TP1":
+                    tags.artist = id3Text(in, body, bodySize, unsync);
+                    break;
+                case "TPE2": case "TP2":
+                    // Album artist, only used when there is no track artist
+                    if (tags.artist == null) tags.artist = id3Text(in, body, bodySize, unsync);
+                    break;
+                case "TALB": case "TAL":
+                    tags.album = id3Text(in, body, bodySize, unsync);
+                    break;
+                case "TRCK": case "TRK":
+                    tags.track = parseLeadingInt(id3Text(in, body, bodySize, unsync));
+                    break;
+                case "TLEN": case "TLE":
+                    tags.durationMs = parseLeadingInt(id3Text(in, body, bodySize, unsync));
+                    break;
+                case "APIC": case "PIC":
+                    tags.foundArt(major == 2 ? ART_ID3V22 : unsync ? ART_ID3_UNSYNC : ART_ID3, body, bodySize);
+                    break;
+                default:
+                    break;
+            }
+            pos = next;
+        }
+    }
+
+    private static String id3Text(Bytes in, long pos, long frameSize, boolean unsync) throws IOException {
+        ByteBuffer b = in.read(pos, (int) Math.min(frameSize, MAX_TEXT_BYTES));
+        if (unsync) b = ByteBuffer.wrap(resynchronise(b.array(), 0, b.limit()));
+        if (b.remaining() < 2) return null;
+        int encoding = b.get(0);
+        Charset charset;
+        int unit = 1;
+        switch (encoding) {
+            case 1: charset = StandardCharsets.UTF_16; unit = 2; break;
+            case 2: charset = StandardCharsets.UTF_16BE; unit = 2; break;
+            case 3: charset = StandardCharsets.UTF_8; break;
+            default: charset = StandardCharsets.ISO_8859_1; break;
+        }
+        // Stop at the first terminator; ID3v2.4 separates multiple values with one
+        int end = 1;
+        while (end + unit <= b.limit()) {
+            boolean terminator = b.get(end) == 0 && (unit == 1 || b.get(end + 1) == 0);
+            if (terminator) break;
+            end += unit;
+        }
+        return emptyToNull(new String(b.array(), 1, end - 1, charset));
+    }
+
+    /** Undoes ID3 unsynchronisation (a 0x00 stuffed after every 0xFF) in {@code a[from, to)}; bytes before {@code from} are kept. */
+    private static byte[] resynchronise(byte[] a, int from, int to) {
+        byte[] out = new byte[to];
+        System.arraycopy(a, 0, out, 0, from);
+        int n = from;
+        for (int i = from; i < to; i++) {
+            out[n++] = a[i];
+            if (a[i] == (byte) 0xff && i + 1 < to && a[i + 1] == 0) i++;
+        }
+        return n == to ? out : Arrays.copyOf(out, n);
+    }
+
+    private static boolean readId3v1(FileChannel ch, long size, Tags tags) throws IOException {
+        if (size < 128) return false;
+        ByteBuffer b = read(ch, size - 128, 128);
+        if (b.remaining() < 128 || !matches(b, 0, "TAG")) return false;
+        if (tags.artist == null) tags.artist = latin1(b, 33, 30);
+        if (tags.album == null) tags.album = latin1(b, 63, 30);
+        if (tags.track == 0 && b.get(125) == 0) tags.track = b.get(126) & 0xff;
+        return true;
+    }
+
+    // endregion
+
+    // region MPEG / ADTS frames
+
+    private static boolean readFrameStream(FileChannel ch, long start, long end, Tags tags) throws IOException {
+        ByteBuffer b = read(ch, start, SYNC_SCAN_BYTES);
+        for (int i = 0; i + 4 <= b.limit(); i++) {
+            if ((b.get(i) & 0xff) != 0xff || (b.get(i + 1) & 0xe0) != 0xe0) continue;
+            int b1 = b.get(i + 1) & 0xff;
+            if ((b1 & 0x06) == 0) {
+                if ((b1 & 0xf0) == 0xf0 && parseAdts(b, i, start + i, end, tags)) return true;
+            } else if (parseMpeg(ch, b, i, start + i, end, tags)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean parseMpeg(FileChannel ch, ByteBuffer b, int i, long frameStart, long end, Tags tags) throws IOException {
+        int b1 = b.get(i + 1) & 0xff, b2 = b.get(i + 2) & 0xff, b3 = b.get(i + 3) & 0xff;
+        int version = (b1 >> 3) & 3;  // 3 = MPEG1, 2 = MPEG2, 0 = MPEG2.5
+        int layer = 4 - ((b1 >> 1) & 3); // 1..3
+        int bitrateIndex = b2 >> 4;
+        int rateIndex = (b2 >> 2) & 3;
+        if (version == 1 || bitrateIndex == 0 || bitrateIndex == 15 || rateIndex == 3) return false;
+
+        boolean v1 = version == 3;
+        int kbps = MPEG_BITRATES[v1 ? layer - 1 : (layer == 1 ? 3 : 4)][bitrateIndex - 1];
+        int sampleRate = MPEG_SAMPLE_RATES[rateIndex] >> (v1 ? 0 : version == 2 ? 1 : 2);
+        int samplesPerFrame = layer == 1 ? 384 : (layer == 3 && !v1) ? 576 : 1152;
+        boolean mono = (b3 >> 6) == 3;
+
+        // VBR files carry the total frame count in a Xing/Info or VBRI header inside the first frame
+        int xingOffset = 4 + (v1 ? (mono ? 17 : 32) : (mono ? 9 : 17));
+        ByteBuffer x = read(ch, frameStart + xingOffset, 16);
+        long frames = -1;
+        if (x.remaining() >= 12 && (matches(x, 0, "Xing") || matches(x, 0, "Info")) && (x.getInt(4) & 1) != 0) {
+            frames = x.getInt(8) & 0xffffffffL;
+        } else {
+            ByteBuffer v = read(ch, frameStart + 36, 18);
+            if (v.remaining() >= 18 && matches(v, 0, "VBRI")) frames = v.getInt(14) & 0xffffffffL;
+        }
+
+        long audioBytes = end - frameStart;
+        if (frames > 0) {
+            long durationMs = frames * samplesPerFrame * 1000L / sampleRate;
+            if (tags.durationMs == 0) tags.durationMs = durationMs;
+            tags.bitrate = durationMs > 0 ? (int) (audioBytes * 8000L / durationMs) : kbps * 1000;
+        } else {
+            if (tags.durationMs == 0) tags.durationMs = audioBytes * 8L / kbps;
+            tags.bitrate = kbps * 1000;
+        }
+        return true;
+    }
+
+    private static boolean parseAdts(ByteBuffer b, int i, long frameStart, long end, Tags tags) {
+        if (i + 7 > b.limit()) return false;
+        int rateIndex = (b.get(i + 2) >> 2) & 0x0f;
+        if (rateIndex >= AAC_SAMPLE_RATES.length) return false;
+        int frameLength = ((b.get(i + 3) & 0x03) << 11) | ((b.get(i + 4) & 0xff) << 3) | ((b.get(i + 5) & 0xe0) >> 5);
+        if (frameLength < 7) return false;
+        // Estimate from the first frame: 1024 samples per raw data block
+        int sampleRate = AAC_SAMPLE_RATES[rateIndex];
+        tags.bitrate = (int) ((long) frameLength * 8 * sampleRate / 1024);
+        if (tags.durationMs == 0 && tags.bitrate > 0) tags.durationMs = (end - frameStart) * 8000L / tags.bitrate;
+        return true;
+    }
+
+    // endregion
+
+    // region FLAC
+
+    private static boolean readFlac(FileChannel ch, long pos, long size, Tags tags) throws IOException {
+        long totalSamples = 0;
+        int sampleRate = 0;
+        boolean last = false;
+        while (!last) {
+            ByteBuffer h = read(ch, pos, 4);
+            if (h.remaining() < 4) return sampleRate > 0;
+            int type = h.get(0) & 0x7f;
+            last = (h.get(0) & 0x80) != 0;
+            int length = ((h.get(1) & 0xff) << 16) | ((h.get(2) & 0xff) << 8) | (h.get(3) & 0xff);
+            long body = pos + 4;
+            if (type == 0) {
+                ByteBuffer info = read(ch, body, 18);
+                if (info.remaining() < 18) return false;
+                long packed = info.getLong(10);
+                sampleRate = (int) (packed >>> 44);
+                totalSamples = packed & 0xFFFFFFFFFL;
+            } else if (type == 4) {
+                ByteBuffer comments = read(ch, body, Math.min(length, MAX_COMMENT_BYTES));
+                readVorbisComments(comments.order(ByteOrder.LITTLE_ENDIAN), 0, tags);
+            } else if (type == 6) {
+                tags.foundArt(ART_FLAC, body, length);
+            }
+            pos = body + length;
+        }
+        if (sampleRate > 0 && totalSamples > 0) {
+            tags.durationMs = totalSamples * 1000L / sampleRate;
+            tags.bitrate = (int) ((size - pos) * 8000L / Math.max(1, tags.durationMs));
+        }
+        return sampleRate > 0;
+    }
+
+    // endregion
+
+    // region Ogg
+
+    private static boolean readOgg(FileChannel ch, long start, long size, Tags tags) throws IOException {
+        // Reassemble the first two logical packets (identification + comments) from page segments
+        ByteBuffer packets = ByteBuffer.allocate(MAX_COMMENT_BYTES);
+        int[] packetEnds = new int[2];
+        int completed = 0;
+        long pos = start;
+        while (completed < 2 && packets.hasRemaining()) {
+            ByteBuffer h = read(ch, pos, 27);
+            if (h.remaining() < 27 || !matches(h, 0, "OggS")) break;
+            int segments = h.get(26) & 0xff;
+            ByteBuffer table = read(ch, pos + 27, segments);
+            long data = pos + 27 + segments;
+            for (int s = 0; s < segments && completed < 2; s++) {
+                int lace = table.get(s) & 0xff;
+                int n = Math.min(lace, packets.remaining());
+                ByteBuffer seg = read(ch, data, n);
+                packets.put(seg);
+                data += lace;
+                if (lace < 255) packetEnds[completed++] = packets.position();
+            }
+            pos = data;
+        }
+        if (completed == 0) return false;
+        packets.flip();
+        packets.order(ByteOrder.LITTLE_ENDIAN);
+
+        int sampleRate;
+        long preSkip = 0;
+        if (matches(packets, 1, "vorbis") && packets.get(0) == 1) {
+            sampleRate = packets.getInt(12);
+            int nominal = packets.getInt(20);
+            if (nominal > 0) tags.bitrate = nominal;
+            if (completed > 1 && packets.get(packetEnds[0]) == 3 && matches(packets, packetEnds[0] + 1, "vorbis")) {
+                readVorbisComments(packets, packetEnds[0] + 7, tags);
+            }
+        } else if (matches(packets, 0, "OpusHead")) {
+            sampleRate = 48000;
+            preSkip = packets.getShort(10) & 0xffff;
+            if (completed > 1 && matches(packets, packetEnds[0], "OpusTags")) {
+                readVorbisComments(packets, packetEnds[0] + 8, tags);
+            }
+        } else {
+            return false;
+        }
+
+        // Duration is the granule position of the last page
+        int tailLen = (int) Math.min(OGG_TAIL_BYTES, size - start);
+        ByteBuffer tail = read(ch, size - tailLen, tailLen).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = tail.limit() - 14; i >= 0; i--) {
+            if (matches(tail, i, "OggS")) {
+                long granule = tail.getLong(i + 6);
+                if (granule > preSkip && sampleRate > 0) tags.durationMs = (granule - preSkip) * 1000L / sampleRate;
+                break;
+            }
+        }
+        if (tags.bitrate == 0 && tags.durationMs > 0) tags.bitrate = (int) ((size - start) * 8000L / tags.durationMs);
+        return true;
+    }
+
+    private static void readVorbisComments(ByteBuffer b, int offset, Tags tags) {
+        long pos = offset;
+        if (pos + 4 > b.limit()) return;
+        pos += 4 + (b.getInt((int) pos) & 0xffffffffL); // vendor string
+        if (pos + 4 > b.limit()) return;
+        long count = b.getInt((int) pos) & 0xffffffffL;
+        pos += 4;
+        for (long c = 0; c < count && pos + 4 <= b.limit(); c++) {
+            long len = b.getInt((int) pos) & 0xffffffffL;
+            int start = (int) pos + 4;
+            pos = start + len;
+            int eq = -1;
+            int keyEnd = (int) Math.min(start + Math.min(len, 32), b.limit());
+            for (int i = start; i < keyEnd; i++) {
+                if (b.get(i) == '=') { eq = i; break; }
+            }
+            if (eq <= start) continue;
+            String key = ascii(b, start, eq - start).toUpperCase();
+            if (key.equals("METADATA_BLOCK_PICTURE") || key.equals("COVERART")) {
+                tags.hasArt = true;
+            } else if (pos <= b.limit()) {
+                String value = emptyToNull(new String(b.array(), eq + 1, (int) (pos - eq - 1), StandardCharsets.UTF_8));
+                switch (key) {
+                    case "ARTIST": tags.artist = value; break;
+                    case "ALBUMARTIST": if (tags.artist == null) tags.artist = value; break;
+                    case "ALBUM": tags.album = value; break;
+                    case "TRACKNUMBER": tags.track = parseLeadingInt(value); break;
+                    default: break;
+                }
+            }
+        }
+    }
+
+    // endregion
+
+    // region MP4
+
+    private static boolean readMp4(FileChannel ch, long start, long size, Tags tags) throws IOException {
+        long[] moov = findAtom(ch, start, size, "moov");
+        if (moov == null) return false;
+        long[] mvhd = findAtom(ch, moov[0], moov[1], "mvhd");
+        if (mvhd != null) {
+            ByteBuffer b = read(ch, mvhd[0], 32);
+            if (b.remaining() >= 20) {
+                boolean v1 = b.get(0) == 1;
+                long timescale = (b.getInt(v1 ? 20 : 12)) & 0xffffffffL;
+                long duration = v1 && b.remaining() >= 32 ? b.getLong(24) : b.getInt(16) & 0xffffffffL;
+                if (timescale > 0) tags.durationMs = duration * 1000L / timescale;
+            }
+        }
+        if (tags.durationMs > 0) tags.bitrate = (int) (size * 8000L / tags.durationMs);
+
+        long[] udta = findAtom(ch, moov[0], moov[1], "udta");
+        long[] meta = udta != null ? findAtom(ch, udta[0], udta[1], "meta") : null;
+        if (meta == null) return true;
+        // 'meta' is normally a full box (4 bytes version/flags) but QuickTime writes it without them
+        ByteBuffer peek = read(ch, meta[0] + 4, 4);
+        long metaBody = peek.remaining() == 4 && matches(peek, 0, "hdlr") ? meta[0] : meta[0] + 4;
+        long[] ilst = findAtom(ch, metaBody, meta[1], "ilst");
+        if (ilst == null) return true;
+
+        long pos = ilst[0];
+        while (pos + 8 <= ilst[1]) {
+            ByteBuffer h = read(ch, pos, 8);
+            if (h.remaining() < 8) break;
+            long itemSize = h.getInt(0) & 0xffffffffL;
+            if (itemSize < 8) break;
+            int type = h.getInt(4);
+            if (type == fourcc("covr")) {
+                // Item -> 'data' atom header (16 bytes) -> image bytes
+                tags.foundArt(ART_RAW, pos + 24, itemSize - 24);
+            } else if (type == fourcc("\u00a9ART") || type == fourcc("aART") || type == fourcc("\u00a9alb") || type == fourcc("trkn")) {
+                // Item -> 'data' atom: size, 'data', type, locale, payload
+                int payloadLen = (int) Math.min(itemSize - 24, MAX_TEXT_BYTES);
+                ByteBuffer d = read(ch, pos + 8, 16 + Math.max(0, payloadLen));
+                if (payloadLen > 0 && d.remaining() >= 16 + payloadLen && matches(d, 4, "data")) {
+                    if (type == fourcc("trkn")) {
+                        if (payloadLen >= 4) tags.track = d.getShort(16 + 2) & 0xffff;
+                    } else {
+                        String value = emptyToNull(new String(d.array(), 16, payloadLen, StandardCharsets.UTF_8));
+                        if (type == fourcc("\u00a9alb")) tags.album = value;
+                        else if (type == fourcc("\u00a9ART") || tags.artist == null) tags.artist = value;
+                    }
+                }
+            }
+            pos += itemSize;
+        }
+        return true;
+    }
+
+    /** Finds a child atom in [from, to); returns {bodyStart, end} or null. */
+    private static long[] findAtom(FileChannel ch, long from, long to, String type) throws IOException {
+        int wanted = fourcc(type);
+        long pos = from;
+        while (pos + 8 <= to) {
+            ByteBuffer h = read(ch, pos, 16);
+            if (h.remaining() < 8) return null;
+            long atomSize = h.getInt(0) & 0xffffffffL;
+            int header = 8;
+            if (atomSize == 1 && h.remaining() >= 16) {
+                atomSize = h.getLong(8);
+                header = 16;
+            } else if (atomSize == 0) {
+                atomSize = to - pos;
+            }
+            if (atomSize < header) return null;
+            if (h.getInt(4) == wanted) return new long[]{pos + header, Math.min(pos + atomSize, to)};
+            pos += atomSize;
+        }
+        return null;
+    }
+
+    private static int fourcc(String s) {
+        return ((s.charAt(0) & 0xff) << 24) | ((s.charAt(1) & 0xff) << 16) | ((s.charAt(2) & 0xff) << 8) | (s.charAt(3) & 0xff);
+    }
+
+    // endregion
+
+    // region WAV
+
+    private static boolean readWav(FileChannel ch, long pos, long size, Tags tags) throws IOException {
+        long byteRate = 0;
+        while (pos + 8 <= size) {
+            ByteBuffer h = read(ch, pos, 8).order(ByteOrder.LITTLE_ENDIAN);
+            if (h.remaining() < 8) break;
+            long chunkSize = h.getInt(4) & 0xffffffffL;
+            long body = pos + 8;
+            if (matches(h, 0, "fmt ")) {
+                ByteBuffer fmt = read(ch, body, 12).order(ByteOrder.LITTLE_ENDIAN);
+                if (fmt.remaining() >= 12) byteRate = fmt.getInt(8) & 0xffffffffL;
+            } else if (matches(h, 0, "data")) {
+                if (byteRate > 0) {
+                    tags.durationMs = Math.min(chunkSize, size - body) * 1000L / byteRate;
+                    tags.bitrate = (int) (byteRate * 8);
+                }
+            } else if (matches(h, 0, "LIST")) {
+                readRiffInfo(ch, body, Math.min(chunkSize, MAX_COMMENT_BYTES), tags);
+            }
+            pos = body + chunkSize + (chunkSize & 1);
+        }
+        return byteRate > 0;
+    }
+
+    private static void readRiffInfo(FileChannel ch, long pos, long len, Tags tags) throws IOException {
+        ByteBuffer b = read(ch, pos, (int) len).order(ByteOrder.LITTLE_ENDIAN);
+        if (b.remaining() < 4 || !matches(b, 0, "INFO")) return;
+        int i = 4;
+        while (i + 8 <= b.limit()) {
+            int sub = b.getInt(i + 4);
+            if (sub < 0 || i + 8 + sub > b.limit()) break;
+            String id = ascii(b, i, 4);
+            String value = latin1(b, i + 8, sub);
+            if (id.equals("IART")) tags.artist = value;
+            else if (id.equals("IPRD")) tags.album = value;
+            else if (id.equals("ITRK") || id.equals("IPRT")) tags.track = parseLeadingInt(value);
+            i += 8 + sub + (sub & 1);
+        }
+    }
+
+    // endregion
+
+    private static ByteBuffer read(FileChannel ch, long pos, int len) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(Math.max(0, len));
+        while (b.hasRemaining()) {
+            if (ch.read(b, pos + b.position()) < 0) break;
+        }
+        b.flip();
+        return b;
+    }
+
+    private static boolean matches(ByteBuffer b, int offset, String ascii) {
+        if (offset < 0 || offset + ascii.length() > b.limit()) return false;
+        for (int i = 0; i < ascii.length(); i++) {
+            if (b.get(offset + i) != (byte) ascii.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int syncsafe(ByteBuffer b, int offset) {
+        return ((b.get(offset) & 0x7f) << 21) | ((b.get(offset + 1) & 0x7f) << 14)
+                | ((b.get(offset + 2) & 0x7f) << 7) | (b.get(offset + 3) & 0x7f);
+    }
+
+    private static String ascii(ByteBuffer b, int offset, int len) {
+        return new String(b.array(), offset, len, StandardCharsets.US_ASCII);
+    }
+
+    private static String latin1(ByteBuffer b, int offset, int len) {
+        int end = offset;
+        while (end < offset + len && b.get(end) != 0) end++;
+        return emptyToNull(new String(b.array(), offset, end - offset, StandardCharsets.ISO_8859_1).trim());
+    }
+
+    private static String emptyToNull(String s) {
+        return s == null || s.isEmpty() ? null : s;
+    }
+}
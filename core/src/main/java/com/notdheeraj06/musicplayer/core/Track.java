@@ -0,0 +1,27 @@
+package com.notdheeraj06.musicplayer.core;
+
+/**
+ * A library entry without any platform types. {@code documentId} identifies the file across
+ * scans; size and lastModified tell whether its contents may have changed.
+ */
+public class Track {
+    private final String title;
+    private final String documentId;
+    private final long size;
+    private final long lastModified;
+    private volatile SongMetadata metadata;
+
+    public Track(String title, String documentId, long size, long lastModified) {
+        this.title = title;
+        this.documentId = documentId;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    public String getTitle() { return title; }
+    public String getDocumentId() { return documentId; }
+    public long getSize() { return size; }
+    public long getLastModified() { return lastModified; }
+    public SongMetadata getMetadata() { return metadata; }
+    public void setMetadata(SongMetadata metadata) { this.metadata = metadata; }
+}
@@ -0,0 +1,238 @@
+package com.notdheeraj06.musicplayer.core;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, column-oriented snapshot of the library. Per track it holds a few primitives
+ * instead of a Track, two Strings and a SongMetadata: titles and file names are packed into one
+ * char array, document ids are split into a pooled folder prefix plus the file name (which is
+ * usually the title, so it costs nothing), and artists and albums are ids into a string pool.
+ * Build one per library change and share it between threads; nothing in it is ever mutated.
+ */
+public final class TrackTable {
+
+    private static final TrackTable EMPTY = of(Collections.<Track>emptyList());
+
+    private final int size;
+    // Row i is its title, chars[titleStart[i], nameStart[i]), followed by the file name part of its
+    // document id, chars[nameStart[i], titleStart[i + 1]); an empty name means "same as the title"
+    private final char[] chars;
+    private final int[] titleStart;
+    private final int[] nameStart;
+    private final int[] folder;
+    private final String[] folders;
+    private final long[] sizes;
+    private final long[] modified;
+
+    // Metadata as known when the snapshot was taken; artist/album are indexes into strings, -1 for null
+    private final BitSet hasMetadata;
+    private final BitSet hasArt;
+    private final int[] artist;
+    private final int[] album;
+    private final int[] trackNumber;
+    private final int[] durationMs;
+    private final int[] bitrate;
+    private final String[] strings;
+
+    // Open-addressing hash of document id -> row + 1; 0 is an empty slot
+    private final int[] slots;
+    private final long fingerprint;
+
+    private TrackTable(List<? extends Track> tracks) {
+        size = tracks.size();
+        int capacity = 0;
+        for (Track track : tracks) capacity += track.getTitle().length() + nameLength(track);
+        chars = new char[capacity];
+        titleStart = new int[size + 1];
+        nameStart = new int[size];
+        folder = new int[size];
+        sizes = new long[size];
+        modified = new long[size];
+        hasMetadata = new BitSet(size);
+        hasArt = new BitSet(size);
+        artist = new int[size];
+        album = new int[size];
+        trackNumber = new int[size];
+        durationMs = new int[size];
+        bitrate = new int[size];
+
+        Map<String, Integer> folderIds = new HashMap<>();
+        Map<String, Integer> stringIds = new HashMap<>();
+        int at = 0;
+        for (int i = 0; i < size; i++) {
+            Track track = tracks.get(i);
+            String title = track.getTitle();
+            titleStart[i] = at;
+            title.getChars(0, title.length(), chars, at);
+            at += title.length();
+            nameStart[i] = at;
+
+            String id = track.getDocumentId();
+            if (id == null) {
+                folder[i] = -1;
+            } else {
+                int split = id.lastIndexOf('/') + 1;
+                folder[i] = idOf(folderIds, id.substring(0, split));
+                if (nameLength(track) > 0) {
+                    id.getChars(split, id.length(), chars, at);
+                    at += id.length() - split;
+                }
+            }
+            sizes[i] = track.getSize();
+            modified[i] = track.getLastModified();
+
+            SongMetadata metadata = track.getMetadata();
+            if (metadata == null) continue;
+            hasMetadata.set(i);
+            hasArt.set(i, metadata.hasEmbeddedArt());
+            artist[i] = metadata.getArtist() == null ? -1 : idOf(stringIds, metadata.getArtist());
+            album[i] = metadata.getAlbum() == null ? -1 : idOf(stringIds, metadata.getAlbum());
+            trackNumber[i] = metadata.getTrackNumber();
+            durationMs[i] = (int) Math.min(Integer.MAX_VALUE, metadata.getDurationMs());
+            bitrate[i] = metadata.getBitrate();
+        }
+        titleStart[size] = at;
+        folders = toArray(folderIds);
+        strings = toArray(stringIds);
+
+        slots = new int[Integer.highestOneBit(Math.max(1, size) * 2) * 2];
+        for (int i = 0; i < size; i++) {
+            if (folder[i] < 0) continue;
+            int slot = find(folders[folder[i]], nameOf(i));
+            if (slots[slot] == 0) slots[slot] = i + 1;
+        }
+        fingerprint = computeFingerprint();
+    }
+
+    /** Snapshots {@code tracks} in list order; row {@code i} is {@code tracks.get(i)}. */
+    public static TrackTable of(List<? extends Track> tracks) {
+        return new TrackTable(tracks);
+    }
+
+    public static TrackTable empty() { return EMPTY; }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    public String title(int row) {
+        return new String(chars, titleStart[row], nameStart[row] - titleStart[row]);
+    }
+
+    public String documentId(int row) {
+        if (folder[row] < 0) return null;
+        return folders[folder[row]] + nameOf(row);
+    }
+
+    public long fileSize(int row) { return sizes[row]; }
+    public long lastModified(int row) { return modified[row]; }
+    public boolean hasMetadata(int row) { return hasMetadata.get(row); }
+
+    /** A fresh SongMetadata for the row, or null if none had been extracted when the snapshot was taken. */
+    public SongMetadata metadata(int row) {
+        if (!hasMetadata.get(row)) return null;
+        return new SongMetadata(string(artist[row]), string(album[row]), trackNumber[row],
+                durationMs[row], bitrate[row], hasArt.get(row));
+    }
+
+    /** Row of the track with this document id, or -1. */
+    public int indexOf(String documentId) {
+        if (documentId == null) return -1;
+        int split = documentId.lastIndexOf('/') + 1;
+        int slot = find(documentId.substring(0, split), documentId.substring(split));
+        return slots[slot] - 1;
+    }
+
+    /** FNV-1a over the document ids in row order; equal for two snapshots of the same library. */
+    public long fingerprint() { return fingerprint; }
+
+    /** Shallow size of the arrays in bytes, assuming compressed oops; pooled strings are not counted. */
+    public long estimatedBytes() {
+        long bytes = 16L + chars.length * 2L;
+        bytes += 4L * (titleStart.length + nameStart.length + folder.length
+                + artist.length + album.length + trackNumber.length + durationMs.length + bitrate.length + slots.length);
+        bytes += 8L * (sizes.length + modified.length);
+        bytes += 4L * (folders.length + strings.length) + (hasMetadata.size() + hasArt.size()) / 8;
+        return bytes;
+    }
+
+    private long computeFingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < size; i++) {
+            if (folder[i] < 0) continue;
+            String prefix = folders[folder[i]];
+            for (int c = 0; c < prefix.length(); c++) {
+                hash ^= prefix.charAt(c);
+                hash *= 0x100000001b3L;
+            }
+            int start = nameStart[i], end = titleStart[i + 1];
+            if (start == end) {
+                start = titleStart[i];
+                end = nameStart[i];
+            }
+            for (int c = start; c < end; c++) {
+                hash ^= chars[c];
+                hash *= 0x100000001b3L;
+            }
+            hash ^= '/';
+        }
+        return hash;
+    }
+
+    private int find(String prefix, String name) {
+        int mask = slots.length - 1;
+        int slot = (prefix.hashCode() * 31 + name.hashCode()) * 0x9e3779b9 >>> 1 & mask;
+        while (true) {
+            int row = slots[slot] - 1;
+            if (row < 0) return slot;
+            if (folders[folder[row]].equals(prefix) && nameEquals(row, name)) return slot;
+            slot = slot + 1 & mask;
+        }
+    }
+
+    private String nameOf(int row) {
+        if (titleStart[row + 1] == nameStart[row]) return title(row);
+        return new String(chars, nameStart[row], titleStart[row + 1] - nameStart[row]);
+    }
+
+    private boolean nameEquals(int row, String name) {
+        int start = nameStart[row], end = titleStart[row + 1];
+        if (start == end) {
+            start = titleStart[row];
+            end = nameStart[row];
+        }
+        if (end - start != name.length()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (chars[start + i] != name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private String string(int id) {
+        return id < 0 ? null : strings[id];
+    }
+
+    private static int nameLength(Track track) {
+        String id = track.getDocumentId();
+        if (id == null) return 0;
+        int split = id.lastIndexOf('/') + 1;
+        String title = track.getTitle();
+        boolean same = id.length() - split == title.length() && id.regionMatches(split, title, 0, title.length());
+        return same ? 0 : id.length() - split;
+    }
+
+    private static int idOf(Map<String, Integer> ids, String value) {
+        Integer id = ids.get(value);
+        if (id == null) ids.put(value, id = ids.size());
+        return id;
+    }
+
+    private static String[] toArray(Map<String, Integer> ids) {
+        String[] values = new String[ids.size()];
+        for (Map.Entry<String, Integer> e : ids.entrySet()) values[e.getValue()] = StringPool.intern(e.getKey());
+        return values;
+    }
+}
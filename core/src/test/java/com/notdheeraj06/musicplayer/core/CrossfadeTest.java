@@ -0,0 +1,67 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CrossfadeTest {
+
+    @Test
+    public void gainsFollowAQuarterSine() {
+        for (int i = 0; i <= 1000; i++) {
+            float progress = i / 1000f;
+            assertEquals(Math.sin(Math.PI / 2 * progress), Crossfade.fadeIn(progress), 1e-5);
+            assertEquals(Math.cos(Math.PI / 2 * progress), Crossfade.fadeOut(progress), 1e-5);
+        }
+    }
+
+    @Test
+    public void endsAreExactAndOutOfRangeIsClamped() {
+        assertEquals(0f, Crossfade.fadeIn(0), 0f);
+        assertEquals(1f, Crossfade.fadeIn(1), 0f);
+        assertEquals(1f, Crossfade.fadeOut(0), 0f);
+        assertEquals(0f, Crossfade.fadeOut(1), 0f);
+        assertEquals(0f, Crossfade.fadeIn(-0.5f), 0f);
+        assertEquals(1f, Crossfade.fadeIn(1.5f), 0f);
+    }
+
+    @Test
+    public void powerStaysConstantAndGainsAreMonotonic() {
+        float previous = 0;
+        for (int i = 0; i <= 4096; i++) {
+            float progress = i / 4096f;
+            float in = Crossfade.fadeIn(progress);
+            float out = Crossfade.fadeOut(progress);
+            assertEquals(1, in * in + out * out, 1e-4);
+            assertTrue(in >= previous);
+            previous = in;
+        }
+        assertEquals(Math.sqrt(0.5), Crossfade.fadeIn(0.5f), 1e-5);
+    }
+
+    @Test
+    public void applyScalesEveryChannelOfAFrameByItsPosition() {
+        float[] buffer = new float[3 * 2];
+        java.util.Arrays.fill(buffer, 1f);
+        // Frames 1..3 of a 4-frame fade, after one frame of padding
+        Crossfade.apply(buffer, 1, 2, 2, 1, 4, true);
+        assertEquals(1f, buffer[0], 0f);
+        assertEquals(1f, buffer[1], 0f);
+        assertEquals(Crossfade.fadeIn(0.25f), buffer[2], 0f);
+        assertEquals(Crossfade.fadeIn(0.25f), buffer[3], 0f);
+        assertEquals(Crossfade.fadeIn(0.5f), buffer[4], 0f);
+        assertEquals(Crossfade.fadeIn(0.5f), buffer[5], 0f);
+    }
+
+    @Test
+    public void mixClipsAtFullScale() {
+        float[] to = {0.9f, -0.9f, 0.25f, 0.5f};
+        float[] from = {0.5f, -0.5f, 0.25f, -0.75f};
+        Crossfade.mixInto(to, 0, from, 0, 2, 2);
+        assertEquals(1f, to[0], 0f);
+        assertEquals(-1f, to[1], 0f);
+        assertEquals(0.5f, to[2], 0f);
+        assertEquals(-0.25f, to[3], 0f);
+    }
+}
@@ -0,0 +1,174 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DuplicateFinderTest {
+
+    private static final int LARGE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(24);
+    private final List<Track> tracks = new ArrayList<>();
+    private final List<File> files = new ArrayList<>();
+    private ExecutorService pool;
+
+    @Before
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void identicalFilesAreGroupedAndSameSizeDifferentContentIsNot() throws Exception {
+        byte[] content = randomBytes(LARGE);
+        add(content);                               // 0
+        add(randomBytes(LARGE));                    // 1: same size, other content
+        add(content);                               // 2
+        add(randomBytes(LARGE + 1));                // 3: unique size, never opened
+        add(content);                               // 4
+        DuplicateFinder.Result result = find(new long[5], new long[5]);
+        assertEquals(1, result.groups.size());
+        assertArrayEquals(new int[]{0, 2, 4}, result.groups.get(0));
+        assertEquals(2, result.redundantCount());
+        assertEquals(0, result.failed);
+        assertEquals(4L * LARGE + LARGE + 1, result.totalBytes);
+        // Everything but the unique size is sampled; the three copies are read in full
+        assertArrayEquals(new int[]{0, 1, 2, 4}, result.hashed);
+        assertEquals(4L * 3 * DuplicateFinder.SAMPLE_BYTES + 3L * LARGE, result.bytesRead);
+    }
+
+    @Test
+    public void differenceOutsideTheSamplesIsCaughtByTheFullHash() throws Exception {
+        byte[] content = randomBytes(LARGE);
+        byte[] quarter = content.clone();
+        // Between the head and middle samples
+        quarter[LARGE / 4] ^= 1;
+        add(content);
+        add(quarter);
+        long[] sample = new long[2], full = new long[2];
+        DuplicateFinder.Result result = find(sample, full);
+        assertTrue(result.groups.isEmpty());
+        assertEquals(sample[0], sample[1]);
+        assertNotEquals(full[0], full[1]);
+    }
+
+    @Test
+    public void differenceInASampleNeverReachesTheFullHash() throws Exception {
+        byte[] content = randomBytes(LARGE);
+        byte[] tail = content.clone();
+        tail[LARGE - 1] ^= 1;
+        add(content);
+        add(tail);
+        long[] full = new long[2];
+        DuplicateFinder.Result result = find(new long[2], full);
+        assertTrue(result.groups.isEmpty());
+        assertArrayEquals(new long[]{0, 0}, full);
+        assertEquals(2L * 3 * DuplicateFinder.SAMPLE_BYTES, result.bytesRead);
+    }
+
+    @Test
+    public void filesShorterThanTheSampleWindowAreComparedWhole() throws Exception {
+        byte[] small = randomBytes(DuplicateFinder.SAMPLE_BYTES / 2);
+        byte[] other = small.clone();
+        other[other.length - 1] ^= 1;
+        add(small);
+        add(small);
+        add(other);
+        long[] full = new long[3];
+        DuplicateFinder.Result result = find(new long[3], full);
+        assertEquals(1, result.groups.size());
+        assertArrayEquals(new int[]{0, 1}, result.groups.get(0));
+        // The sample was the whole file, so there is no second pass
+        assertArrayEquals(new long[3], full);
+        assertEquals(3L * small.length, result.bytesRead);
+    }
+
+    @Test
+    public void emptyFilesAreNeverDuplicates() throws Exception {
+        add(new byte[0]);
+        add(new byte[0]);
+        DuplicateFinder.Result result = find(new long[2], new long[2]);
+        assertTrue(result.groups.isEmpty());
+        assertEquals(0, result.hashed.length);
+    }
+
+    @Test
+    public void knownHashesAreTrustedAndNothingIsReread() throws Exception {
+        byte[] content = randomBytes(LARGE);
+        add(content);
+        add(content);
+        add(randomBytes(LARGE));
+        long[] sample = new long[3], full = new long[3];
+        DuplicateFinder.Result first = find(sample, full);
+        assertEquals(1, first.groups.size());
+
+        DuplicateFinder.Result again = find(sample.clone(), full.clone());
+        assertEquals(0, again.bytesRead);
+        assertEquals(0, again.hashed.length);
+        assertArrayEquals(first.groups.get(0), again.groups.get(0));
+    }
+
+    @Test
+    public void unreadableFilesAreCountedAndLeftOut() throws Exception {
+        byte[] content = randomBytes(LARGE);
+        add(content);
+        add(content);
+        add(content);
+        DuplicateFinder.Result result = new DuplicateFinder(pool).find(tracks, new long[3], new long[3], item -> {
+            if (item == 1) throw new IOException("gone");
+            return open(item);
+        });
+        assertEquals(1, result.failed);
+        assertEquals(1, result.groups.size());
+        assertArrayEquals(new int[]{0, 2}, result.groups.get(0));
+    }
+
+    private DuplicateFinder.Result find(long[] sampleHashes, long[] fullHashes) throws InterruptedException {
+        return new DuplicateFinder(pool).find(tracks, sampleHashes, fullHashes, this::open);
+    }
+
+    private FileChannel open(int item) throws IOException {
+        return FileChannel.open(files.get(item).toPath(), StandardOpenOption.READ);
+    }
+
+    private void add(byte[] content) throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        files.add(file);
+        tracks.add(new Track(file.getName(), file.getPath(), content.length, 0));
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
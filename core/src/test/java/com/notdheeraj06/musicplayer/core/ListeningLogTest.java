@@ -0,0 +1,133 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ListeningLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void appendsReachDiskOneBufferAtATime() throws IOException {
+        File dir = folder.getRoot();
+        ListeningLog log = ListeningLog.open(dir, 1, 8);
+        appendCompleted(log, 20);
+        File segment = ListeningLog.segmentFile(dir, 1);
+        assertEquals(16 * ListeningLog.RECORD_BYTES, segment.length());
+        assertEquals(4, log.pendingRecords());
+        log.close();
+        assertEquals(20 * ListeningLog.RECORD_BYTES, segment.length());
+        assertEquals(20, replay(segment).size());
+    }
+
+    @Test
+    public void tornTailIsCutOnOpen() throws IOException {
+        File dir = folder.getRoot();
+        ListeningLog log = ListeningLog.open(dir, 1, 8);
+        appendCompleted(log, 10);
+        log.close();
+        File segment = ListeningLog.segmentFile(dir, 1);
+        // A crash partway through writing an eleventh record
+        try (FileOutputStream out = new FileOutputStream(segment, true)) {
+            out.write(new byte[17]);
+        }
+        assertEquals(10, replay(segment).size());
+
+        log = ListeningLog.open(dir, 1, 8);
+        assertEquals(17, log.truncatedBytes());
+        assertEquals(10 * ListeningLog.RECORD_BYTES, segment.length());
+        // Appends continue right after the last intact record
+        log.append(new ListeningLog.Event(100, 42, ListeningLog.SKIPPED, 5000, 200000));
+        log.close();
+        List<ListeningLog.Event> events = replay(segment);
+        assertEquals(11, events.size());
+        assertEquals(42, events.get(10).trackKey);
+        assertEquals(ListeningLog.SKIPPED, events.get(10).type);
+    }
+
+    @Test
+    public void corruptRecordMidFileEndsTheLogThere() throws IOException {
+        File dir = folder.getRoot();
+        ListeningLog log = ListeningLog.open(dir, 1, 64);
+        appendCompleted(log, 20);
+        log.close();
+        File segment = ListeningLog.segmentFile(dir, 1);
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            flip(file, 12 * ListeningLog.RECORD_BYTES + 9, 0x55);
+        }
+        List<ListeningLog.Event> events = replay(segment);
+        assertEquals(12, events.size());
+        for (int i = 0; i < events.size(); i++) assertEquals(i, events.get(i).timeMs);
+        assertEquals(12 * ListeningLog.RECORD_BYTES, ListeningLog.read(segment, null));
+
+        log = ListeningLog.open(dir, 1, 64);
+        assertEquals(8 * ListeningLog.RECORD_BYTES, log.truncatedBytes());
+        assertEquals(12 * ListeningLog.RECORD_BYTES, segment.length());
+        log.close();
+    }
+
+    @Test
+    public void corruptChecksumIsDetected() throws IOException {
+        File dir = folder.getRoot();
+        ListeningLog log = ListeningLog.open(dir, 1, 8);
+        appendCompleted(log, 3);
+        log.close();
+        File segment = ListeningLog.segmentFile(dir, 1);
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // Last byte of the second record's CRC
+            flip(file, 2 * ListeningLog.RECORD_BYTES - 1, 1);
+        }
+        assertEquals(1, replay(segment).size());
+    }
+
+    @Test
+    public void rotateSealsAndDeleteKeepsTheOpenSegment() throws IOException {
+        File dir = folder.getRoot();
+        ListeningLog log = ListeningLog.open(dir, 5, 8);
+        appendCompleted(log, 3);
+        assertEquals(5, log.rotate());
+        appendCompleted(log, 2);
+        assertEquals(6, log.rotate());
+        appendCompleted(log, 1);
+        log.flush();
+        assertEquals(Arrays.asList(5L, 6L, 7L), ListeningLog.segments(dir));
+
+        log.deleteThrough(Long.MAX_VALUE);
+        assertEquals(Arrays.asList(7L), ListeningLog.segments(dir));
+        log.close();
+
+        // Reopening continues in the newest segment
+        log = ListeningLog.open(dir, 1, 8);
+        assertEquals(7, log.segment());
+        log.close();
+    }
+
+    private static void appendCompleted(ListeningLog log, int count) throws IOException {
+        for (int i = 0; i < count; i++) log.append(new ListeningLog.Event(i, i % 5, ListeningLog.COMPLETED, 180000, 180000));
+    }
+
+    private static void flip(RandomAccessFile file, long position, int bits) throws IOException {
+        file.seek(position);
+        int b = file.read();
+        file.seek(position);
+        file.write(b ^ bits);
+    }
+
+    private static List<ListeningLog.Event> replay(File segment) throws IOException {
+        List<ListeningLog.Event> events = new ArrayList<>();
+        ListeningLog.read(segment, events::add);
+        return events;
+    }
+}
@@ -0,0 +1,136 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Reference signals from EBU Tech 3341, which allows +/-0.1 LU. */
+public class LoudnessMeterTest {
+
+    private static final double TOLERANCE = 0.1;
+    private static final int RATE = 48000;
+
+    @Test
+    public void sineAtMinus23DbfsIsMinus23Lufs() {
+        for (int rate : new int[]{44100, 48000, 96000}) {
+            float[] pcm = new float[rate * 20 * 2];
+            sine(pcm, rate, 2, 0, 20, -23);
+            assertEquals(rate + " Hz", -23, measure(rate, 2, pcm), TOLERANCE);
+        }
+    }
+
+    @Test
+    public void sineAtMinus33DbfsIsMinus33Lufs() {
+        float[] pcm = new float[RATE * 20 * 2];
+        sine(pcm, RATE, 2, 0, 20, -33);
+        assertEquals(-33, measure(RATE, 2, pcm), TOLERANCE);
+    }
+
+    @Test
+    public void relativeGateDropsQuietLeadInAndOut() {
+        // Tech 3341 case 3: -36, -23, -36 dBFS for 10, 60 and 10 s
+        float[] pcm = new float[RATE * 80 * 2];
+        sine(pcm, RATE, 2, 0, 10, -36);
+        sine(pcm, RATE, 2, 10, 60, -23);
+        sine(pcm, RATE, 2, 70, 10, -36);
+        assertEquals(-23, measure(RATE, 2, pcm), TOLERANCE);
+    }
+
+    @Test
+    public void absoluteGateDropsNearSilence() {
+        // Tech 3341 case 4: -72, -36, -23, -36, -72 dBFS for 10, 10, 60, 10 and 10 s
+        float[] pcm = new float[RATE * 100 * 2];
+        sine(pcm, RATE, 2, 0, 10, -72);
+        sine(pcm, RATE, 2, 10, 10, -36);
+        sine(pcm, RATE, 2, 20, 60, -23);
+        sine(pcm, RATE, 2, 80, 10, -36);
+        sine(pcm, RATE, 2, 90, 10, -72);
+        assertEquals(-23, measure(RATE, 2, pcm), TOLERANCE);
+    }
+
+    @Test
+    public void gatedBlocksStraddlingLevelChanges() {
+        // Tech 3341 case 5: -26, -20, -26 dBFS for 20, 20.1 and 20 s
+        float[] pcm = new float[(int) (RATE * 60.1) * 2];
+        sine(pcm, RATE, 2, 0, 20, -26);
+        sine(pcm, RATE, 2, 20, 20.1, -20);
+        sine(pcm, RATE, 2, 40.1, 20, -26);
+        assertEquals(-23, measure(RATE, 2, pcm), TOLERANCE);
+    }
+
+    @Test
+    public void silenceHasNoLoudnessAndKeepsFullVolume() {
+        LoudnessMeter meter = new LoudnessMeter(RATE, 2);
+        meter.addFrames(new float[RATE * 5 * 2], 0, RATE * 5);
+        assertEquals(Double.NEGATIVE_INFINITY, meter.integratedLoudness(), 0);
+        assertEquals(1f, LoudnessMeter.volumeFor(meter.integratedLoudness(), meter.samplePeak()), 0f);
+    }
+
+    @Test
+    public void surroundsWeighMoreAndLfeNotAtAll() {
+        // 5.1 as L R C LFE Ls Rs: the same sine everywhere, the LFE at a level that mustn't count
+        int frames = RATE * 10;
+        float[] pcm = new float[frames * 6];
+        double amplitude = Math.pow(10, -28 / 20.0);
+        for (int f = 0; f < frames; f++) {
+            double phase = Math.sin(2 * Math.PI * 997 * f / RATE);
+            for (int c = 0; c < 6; c++) pcm[f * 6 + c] = (float) ((c == 3 ? 0.9 : amplitude) * phase);
+        }
+        // -3.01 dB per channel for a sine's mean square, then 3 + 2 * 1.41 channels' worth
+        double expected = -28 - 3.01 + 10 * Math.log10(3 + 2 * 1.41);
+        assertEquals(expected, measure(RATE, 6, pcm), TOLERANCE);
+    }
+
+    @Test
+    public void bufferBoundariesDontChangeTheResult() {
+        float[] pcm = new float[(int) (44100 * 7.3) * 2];
+        sine(pcm, 44100, 2, 0, 7.3, -14);
+        LoudnessMeter whole = new LoudnessMeter(44100, 2);
+        whole.addFrames(pcm, 0, pcm.length / 2);
+        LoudnessMeter parts = new LoudnessMeter(44100, 2);
+        Random random = new Random(3);
+        for (int f = 0; f < pcm.length / 2; ) {
+            int n = Math.min(pcm.length / 2 - f, 1 + random.nextInt(5000));
+            parts.addFrames(pcm, f, n);
+            f += n;
+        }
+        assertEquals(whole.integratedLoudness(), parts.integratedLoudness(), 0);
+        assertEquals(whole.frames(), parts.frames());
+    }
+
+    @Test
+    public void volumeAttenuatesToReferenceWithoutClipping() {
+        float[] pcm = new float[RATE * 5 * 2];
+        sine(pcm, RATE, 2, 0, 5, -1);
+        LoudnessMeter meter = new LoudnessMeter(RATE, 2);
+        meter.addFrames(pcm, 0, RATE * 5);
+        double lufs = meter.integratedLoudness();
+        assertEquals(Math.pow(10, -1 / 20.0), meter.samplePeak(), 1e-3);
+        float volume = LoudnessMeter.volumeFor(lufs, meter.samplePeak());
+        assertEquals(Math.pow(10, LoudnessMeter.replayGainDb(lufs) / 20), volume, 1e-4);
+        // Quieter than the reference: a volume can't boost, so it plays unchanged
+        assertEquals(1f, LoudnessMeter.volumeFor(-30, 0.1), 0f);
+        // A peak over full scale caps the volume at 1 / peak
+        assertTrue(LoudnessMeter.volumeFor(-10, 2.0) <= 0.5f);
+    }
+
+    /** A 997 Hz sine at {@code dbfs} on every channel, for {@code seconds} from {@code startSeconds}. */
+    private static void sine(float[] pcm, int rate, int channels, double startSeconds, double seconds, double dbfs) {
+        int start = (int) Math.round(rate * startSeconds);
+        int count = (int) Math.round(rate * seconds);
+        double amplitude = Math.pow(10, dbfs / 20);
+        for (int i = 0; i < count; i++) {
+            float v = (float) (amplitude * Math.sin(2 * Math.PI * 997 * i / rate));
+            for (int c = 0; c < channels; c++) pcm[(start + i) * channels + c] = v;
+        }
+    }
+
+    private static double measure(int rate, int channels, float[] pcm) {
+        LoudnessMeter meter = new LoudnessMeter(rate, channels);
+        meter.addFrames(pcm, 0, pcm.length / channels);
+        return meter.integratedLoudness();
+    }
+}
@@ -0,0 +1,97 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PathIndexTest {
+
+    private TrackTable library;
+    private PathIndex index;
+
+    @Before
+    public void setUp() {
+        List<Track> tracks = new ArrayList<>();
+        tracks.add(new Track("01 Intro.mp3", "primary:Music/A/Album1/01 Intro.mp3", 1, 1));
+        tracks.add(new Track("01 Intro.mp3", "primary:Music/B/Album2/01 Intro.mp3", 1, 1));
+        Track cafe = new Track("02 Caf\u00e9.flac", "primary:Music/B/Album2/02 Caf\u00e9.flac", 1, 1);
+        cafe.setMetadata(new SongMetadata("Bee", "Album2", 2, 1000, 320, false));
+        tracks.add(cafe);
+        tracks.add(new Track("Solo.mp3", "primary:Other/Solo.mp3", 1, 1));
+        library = TrackTable.of(tracks);
+        index = PathIndex.build(library);
+    }
+
+    @Test
+    public void pathsFromAnotherMachineMatchByTheirSuffix() {
+        assertEquals(0, index.resolve("C:\\Users\\x\\Music\\A\\Album1\\01 Intro.mp3", null));
+        assertEquals(1, index.resolve("/storage/emulated/0/Music/B/Album2/01 INTRO.MP3", null));
+        assertEquals(3, index.resolve("D:Other\\Solo.mp3", null));
+    }
+
+    @Test
+    public void relativePathsSkipDotSegments() {
+        assertEquals(1, index.resolve("../B/Album2/01 intro.MP3", null));
+        assertEquals(0, index.resolve("./Album1/./01 Intro.mp3", null));
+    }
+
+    @Test
+    public void aSuffixNamingTwoTracksIsAmbiguous() {
+        assertEquals(-1, index.resolve("01 Intro.mp3", null));
+        assertEquals(-1, index.resolve("/elsewhere/01 Intro.mp3", "Intro"));
+    }
+
+    @Test
+    public void fileUrlsArePercentDecodedAndNormalized() {
+        // "Cafe" plus a combining acute (NFD, as macOS writes it) finds the NFC name
+        assertEquals(2, index.resolve("file:///sdcard/Music/B/Album2/02%20Cafe%CC%81.flac", null));
+        assertEquals(2, index.resolve("FILE:///x/Album2/02%20Caf%C3%A9.flac", null));
+        // A stray % that isn't an escape is kept
+        assertEquals(-1, index.resolve("file:///x/100%.mp3", null));
+    }
+
+    @Test
+    public void streamsAndUnknownPathsFallBackToTheTitle() {
+        assertEquals(3, index.resolve("http://x/stream.mp3", "Solo"));
+        assertEquals(2, index.resolve("/nowhere/zz.mp3", "Bee - Caf\u00e9"));
+        assertEquals(2, index.resolve("/nowhere/zz.mp3", "2. Caf\u00e9"));
+        assertEquals(2, index.resolve("/elsewhere/02 Caf\u00e9.flac", null));
+        assertEquals(-1, index.resolve("/nowhere/zz.mp3", "nothing"));
+        assertEquals(-1, index.resolve("https://x/Solo.mp3", null));
+    }
+
+    @Test
+    public void importResolvesM3uAndReportsWhatDidNot() throws IOException {
+        String m3u = "\uFEFF#EXTM3U\r\n#EXTINF:123,Bee - Caf\u00e9\r\n/nope/x.flac\r\n\r\nMusic/A/Album1/01 Intro.mp3\r\nhttp://radio/x\r\n";
+        PlaylistImport.Result result = PlaylistImport.run(new ByteArrayInputStream(m3u.getBytes(StandardCharsets.UTF_8)), "a.m3u", index);
+        assertEquals(3, result.entries);
+        assertArrayEquals(new int[]{2, 0}, result.rows);
+        assertEquals(1, result.unresolvedCount);
+        assertEquals(6, result.unresolved.get(0).line);
+        assertEquals("http://radio/x", result.unresolved.get(0).location);
+    }
+
+    @Test
+    public void importResolvesPls() throws IOException {
+        String pls = "[playlist]\nNumberOfEntries=3\nFile1=Other/Solo.mp3\nTitle1=Solo\nTitle2=Bee - Caf\u00e9\nFile2=zz\nFile3=Other/Solo.mp3\nVersion=2\n";
+        PlaylistImport.Result result = PlaylistImport.run(new ByteArrayInputStream(pls.getBytes(StandardCharsets.UTF_8)), "a.pls", index);
+        assertEquals(3, result.entries);
+        // A track listed twice is queued twice
+        assertArrayEquals(new int[]{3, 2, 3}, result.rows);
+        assertEquals(0, result.unresolvedCount);
+    }
+
+    @Test
+    public void emptyLibraryResolvesNothing() {
+        PathIndex empty = PathIndex.build(TrackTable.of(new ArrayList<Track>()));
+        assertEquals(-1, empty.resolve("Music/A/Album1/01 Intro.mp3", "Intro"));
+    }
+}
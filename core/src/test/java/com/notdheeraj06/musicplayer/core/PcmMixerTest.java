@@ -0,0 +1,133 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PcmMixerTest {
+
+    /** {@code frames} stereo frames of a constant, fully buffered. */
+    private static final class Constant implements PcmMixer.Source {
+        private final PcmRingBuffer ring;
+
+        Constant(float value, int frames) {
+            ring = new PcmRingBuffer(2, frames);
+            float[] samples = new float[2 * frames];
+            Arrays.fill(samples, value);
+            ring.write(samples, 0, frames);
+            ring.markEnd();
+        }
+
+        @Override
+        public int read(float[] buffer, int offset, int frames) { return ring.read(buffer, offset, frames); }
+
+        @Override
+        public boolean isFinished() { return ring.isFinished(); }
+
+        @Override
+        public long remainingFrames() { return ring.available(); }
+    }
+
+    private final List<PcmMixer.Source> finished = new ArrayList<>();
+
+    @Test
+    public void gaplessTransitionIsSampleAccurate() {
+        PcmMixer mixer = new PcmMixer(2, (done, next) -> finished.add(done));
+        Constant a = new Constant(0.25f, 1000);
+        Constant b = new Constant(0.5f, 1000);
+        mixer.setCurrent(a);
+        mixer.setNext(b);
+        float[] left = render(mixer, 8, 300);
+        for (int i = 0; i < 1000; i++) assertEquals("frame " + i, 0.25f, left[i], 0f);
+        for (int i = 1000; i < 2000; i++) assertEquals("frame " + i, 0.5f, left[i], 0f);
+        for (int i = 2000; i < left.length; i++) assertEquals(0f, left[i], 0f);
+        assertEquals(Arrays.asList(a, b), finished);
+        assertEquals(0, mixer.getUnderruns());
+    }
+
+    @Test
+    public void crossfadeOverlapsByItsLengthWithEqualPower() {
+        PcmMixer mixer = new PcmMixer(2, (done, next) -> finished.add(done));
+        mixer.setCrossfadeFrames(400);
+        Constant a = new Constant(0.5f, 1000);
+        Constant b = new Constant(0.5f, 1000);
+        mixer.setCurrent(a);
+        mixer.setNext(b);
+        float[] left = render(mixer, 8, 300);
+        int audible = 0;
+        for (float v : left) if (v != 0) audible++;
+        assertEquals(1600, audible);
+        assertEquals(0.5f, left[599], 0f);
+        // Halfway through, both play at sqrt(1/2)
+        assertEquals(0.5 * Math.sqrt(2), left[800], 1e-3);
+        assertEquals(0.5f, left[1000], 1e-3f);
+        assertEquals(Arrays.asList(a, b), finished);
+    }
+
+    @Test
+    public void crossfadeOfLoudTracksClips() {
+        PcmMixer mixer = new PcmMixer(2, (done, next) -> { });
+        mixer.setCrossfadeFrames(400);
+        mixer.setCurrent(new Constant(0.95f, 1000));
+        mixer.setNext(new Constant(0.95f, 1000));
+        float[] left = render(mixer, 6, 300);
+        float max = 0;
+        for (float v : left) max = Math.max(max, v);
+        assertEquals(1f, max, 0f);
+        assertEquals(1f, left[800], 0f);
+        assertEquals(0.95f, left[100], 0f);
+    }
+
+    @Test
+    public void unqueueingTheNextTrackSnapsTheFadeBack() {
+        PcmMixer mixer = new PcmMixer(2, (done, next) -> finished.add(done));
+        mixer.setCrossfadeFrames(400);
+        Constant a = new Constant(0.5f, 1000);
+        mixer.setCurrent(a);
+        mixer.setNext(new Constant(0.5f, 1000));
+        render(mixer, 1, 700);
+        assertTrue(mixer.isFading());
+        mixer.setNext(null);
+        assertFalse(mixer.isFading());
+        float[] left = render(mixer, 1, 300);
+        for (float v : left) assertEquals(0.5f, v, 0f);
+        assertSame(a, mixer.current());
+    }
+
+    @Test
+    public void starvedSourceCountsAsUnderrun() {
+        PcmMixer mixer = new PcmMixer(2, (done, next) -> { });
+        PcmRingBuffer empty = new PcmRingBuffer(2, 16);
+        mixer.setCurrent(new PcmMixer.Source() {
+            @Override
+            public int read(float[] buffer, int offset, int frames) { return empty.read(buffer, offset, frames); }
+
+            @Override
+            public boolean isFinished() { return empty.isFinished(); }
+
+            @Override
+            public long remainingFrames() { return -1; }
+        });
+        render(mixer, 1, 300);
+        assertEquals(1, mixer.getUnderruns());
+        assertEquals(300, mixer.getUnderrunFrames());
+    }
+
+    /** Left channel of {@code buffers} renders of {@code frames} frames each. */
+    private static float[] render(PcmMixer mixer, int buffers, int frames) {
+        float[] buffer = new float[2 * frames];
+        float[] left = new float[buffers * frames];
+        for (int b = 0; b < buffers; b++) {
+            mixer.render(buffer, frames);
+            for (int i = 0; i < frames; i++) left[b * frames + i] = buffer[2 * i];
+        }
+        return left;
+    }
+}
@@ -0,0 +1,123 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PcmRingBufferTest {
+
+    @Test
+    public void capacityRoundsUpToAPowerOfTwo() {
+        assertEquals(1024, new PcmRingBuffer(2, 1000).capacity());
+        assertEquals(1024, new PcmRingBuffer(2, 1024).capacity());
+        assertEquals(1, new PcmRingBuffer(1, 1).capacity());
+    }
+
+    @Test
+    public void wrapsAroundInOrder() {
+        PcmRingBuffer ring = new PcmRingBuffer(2, 16);
+        float[] in = new float[2 * 16];
+        float[] out = new float[2 * 16];
+        int next = 0;
+        int expected = 0;
+        // Odd block sizes keep moving the seam to a new place in the ring
+        for (int round = 0; round < 200; round++) {
+            int frames = 1 + round % 11;
+            for (int i = 0; i < frames; i++) {
+                in[2 * i] = next + i;
+                in[2 * i + 1] = -(next + i);
+            }
+            int written = ring.write(in, 0, frames);
+            next += written;
+            int read = ring.read(out, 0, 1 + round % 7);
+            for (int i = 0; i < read; i++, expected++) {
+                assertEquals(expected, out[2 * i], 0f);
+                assertEquals(-expected, out[2 * i + 1], 0f);
+            }
+            assertEquals(next - expected, ring.available());
+        }
+        assertTrue(next > 3 * ring.capacity());
+    }
+
+    @Test
+    public void writesOnlyWhatFits() {
+        PcmRingBuffer ring = new PcmRingBuffer(1, 8);
+        assertEquals(8, ring.write(new float[10], 0, 10));
+        assertEquals(0, ring.free());
+        assertEquals(0, ring.write(new float[1], 0, 1));
+        assertEquals(3, ring.read(new float[3], 0, 3));
+        assertEquals(3, ring.free());
+        assertEquals(5 * 100 / 8, ring.fillPercent());
+    }
+
+    @Test
+    public void discardSkipsEverythingWrittenBefore() {
+        PcmRingBuffer ring = new PcmRingBuffer(1, 8);
+        ring.write(new float[]{1, 2, 3}, 0, 3);
+        ring.discard();
+        assertEquals(0, ring.available());
+        ring.write(new float[]{9}, 0, 1);
+        float[] out = new float[4];
+        assertEquals(1, ring.read(out, 0, 4));
+        assertEquals(9, out[0], 0f);
+        assertEquals(1, ring.readSinceDiscard());
+    }
+
+    @Test
+    public void finishedOnceTheMarkedEndIsRead() {
+        PcmRingBuffer ring = new PcmRingBuffer(1, 8);
+        ring.write(new float[]{1, 2}, 0, 2);
+        ring.markEnd();
+        assertFalse(ring.isFinished());
+        ring.read(new float[1], 0, 1);
+        assertFalse(ring.isFinished());
+        ring.read(new float[1], 0, 1);
+        assertTrue(ring.isFinished());
+        // A seek after the end reopens the stream
+        ring.discard();
+        assertFalse(ring.isFinished());
+    }
+
+    @Test
+    public void producerAndConsumerThreadsSeeEveryFrameInOrder() throws InterruptedException {
+        PcmRingBuffer ring = new PcmRingBuffer(2, 1000);
+        final int total = 200_000;
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            float[] block = new float[2 * 300];
+            int produced = 0;
+            while (produced < total) {
+                int frames = Math.min(300, total - produced);
+                for (int i = 0; i < frames; i++) {
+                    block[2 * i] = produced + i;
+                    block[2 * i + 1] = -(produced + i);
+                }
+                int offset = 0;
+                while (offset < frames) offset += ring.write(block, offset, frames - offset);
+                produced += frames;
+            }
+            ring.markEnd();
+        });
+        producer.setUncaughtExceptionHandler((t, e) -> failure.set(e));
+        producer.start();
+
+        float[] out = new float[2 * 257];
+        int expected = 0;
+        while (!ring.isFinished()) {
+            int read = ring.read(out, 0, 257);
+            for (int i = 0; i < read; i++, expected++) {
+                // Float holds every integer below 2^24 exactly
+                assertEquals(expected, out[2 * i], 0f);
+                assertEquals(-expected, out[2 * i + 1], 0f);
+            }
+        }
+        producer.join();
+        assertNull(failure.get());
+        assertEquals(total, expected);
+    }
+}
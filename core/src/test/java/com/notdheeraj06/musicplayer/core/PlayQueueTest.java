@@ -0,0 +1,208 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Random edits checked against a plain list of (id, row) entries. */
+public class PlayQueueTest {
+
+    private static final class Entry {
+        final long id;
+        final int row;
+
+        Entry(long id, int row) {
+            this.id = id;
+            this.row = row;
+        }
+    }
+
+    @Test
+    public void randomEditsMatchAListModel() {
+        Random random = new Random(17);
+        TrackTable library = library(200);
+        for (int trial = 0; trial < 100; trial++) {
+            PlayQueue queue = PlayQueue.of(library(random.nextInt(50)));
+            List<Entry> model = new ArrayList<>();
+            for (int i = 0; i < queue.size(); i++) model.add(new Entry(queue.idAt(i), i));
+
+            for (int step = 0; step < 300; step++) {
+                long expectedVersion = queue.version() + 1;
+                int op = random.nextInt(10);
+                if (op < 4 && queue.library().size() > 0) {
+                    int position = random.nextInt(model.size() + 1);
+                    int row = random.nextInt(queue.library().size());
+                    queue = queue.insert(position, row);
+                    model.add(position, new Entry(queue.idAt(position), row));
+                } else if (op < 6 && !model.isEmpty()) {
+                    int position = random.nextInt(model.size());
+                    queue = queue.remove(position);
+                    model.remove(position);
+                } else if (op < 9 && !model.isEmpty()) {
+                    int from = random.nextInt(model.size()), to = random.nextInt(model.size());
+                    queue = queue.move(from, to);
+                    model.add(to, model.remove(from));
+                    // Moving an entry onto itself isn't an edit
+                    if (from == to) expectedVersion--;
+                } else if (op == 9) {
+                    // The library changes under the queue: rows shift by one and a fifth are removed
+                    int[] oldToNewRow = new int[queue.library().size()];
+                    for (int r = 0; r < oldToNewRow.length; r++) oldToNewRow[r] = random.nextInt(5) == 0 || r + 1 >= library.size() ? -1 : r + 1;
+                    int[] positions = new int[model.size()];
+                    queue = queue.remap(library, oldToNewRow, positions);
+                    List<Entry> remapped = new ArrayList<>();
+                    for (int i = 0; i < model.size(); i++) {
+                        Entry e = model.get(i);
+                        int row = oldToNewRow[e.row];
+                        assertEquals(row < 0 ? -1 : remapped.size(), positions[i]);
+                        if (row >= 0) remapped.add(new Entry(e.id, row));
+                    }
+                    model = remapped;
+                } else {
+                    continue;
+                }
+                assertEquals(expectedVersion, queue.version());
+                assertMatches(model, queue, random);
+            }
+        }
+    }
+
+    @Test
+    public void editsLeaveTheOldQueueUnchanged() {
+        PlayQueue queue = PlayQueue.of(library(10));
+        long[] ids = ids(queue);
+        queue.insert(3, 7);
+        queue.remove(0);
+        queue.move(2, 8);
+        assertArrayEquals(ids, ids(queue));
+        assertEquals(0, queue.version());
+        assertEquals(1, queue.runCount());
+    }
+
+    @Test
+    public void idsAreUniqueAndSurviveMoves() {
+        PlayQueue queue = PlayQueue.of(library(5));
+        // The same row twice gets two ids
+        queue = queue.insert(5, 2).insert(0, 2);
+        Set<Long> seen = new HashSet<>();
+        for (long id : ids(queue)) assertTrue(seen.add(id));
+
+        long id = queue.idAt(1);
+        queue = queue.move(1, 6);
+        assertEquals(id, queue.idAt(6));
+        assertEquals(6, queue.indexOf(id, 1));
+        assertEquals(6, queue.indexOf(id, 6));
+        assertEquals(-1, queue.indexOf(Long.MAX_VALUE, 0));
+    }
+
+    @Test
+    public void versionCountsEditsAndNotRebinding() {
+        TrackTable library = library(8);
+        PlayQueue queue = PlayQueue.of(library);
+        assertEquals(0, queue.version());
+        assertSame(queue, queue.move(3, 3));
+        PlayQueue edited = queue.move(1, 4).remove(0).insert(2, 5);
+        assertEquals(3, edited.version());
+        PlayQueue rebound = edited.withLibrary(library(8));
+        assertEquals(edited.version(), rebound.version());
+        assertArrayEquals(ids(edited), ids(rebound));
+        assertNotEquals(edited.library(), rebound.library());
+        assertEquals(0, PlayQueue.fromRuns(library, edited.toRuns()).version());
+    }
+
+    @Test
+    public void runsRoundTripRowsWithFreshIds() {
+        Random random = new Random(5);
+        TrackTable library = library(100);
+        PlayQueue queue = PlayQueue.of(library);
+        for (int i = 0; i < 40; i++) queue = queue.move(random.nextInt(100), random.nextInt(100));
+        queue = queue.remove(10).insert(0, 99).insert(50, 99);
+
+        int[] runs = queue.toRuns();
+        assertEquals(2 * queue.runCount(), runs.length);
+        PlayQueue restored = PlayQueue.fromRuns(library, runs);
+        assertArrayEquals(rows(queue), rows(restored));
+        Set<Long> old = new HashSet<>();
+        for (long id : ids(queue)) old.add(id);
+        for (long id : ids(restored)) assertTrue(!old.contains(id));
+
+        assertNull(PlayQueue.fromRuns(library(10), runs));
+        assertNull(PlayQueue.fromRuns(library, new int[]{5, 0}));
+        assertNull(PlayQueue.fromRuns(library, new int[]{-1, 2}));
+        assertEquals(0, PlayQueue.fromRuns(library, new int[0]).size());
+    }
+
+    @Test
+    public void ofRowsKeepsOrderAndRejectsRowsOutsideTheLibrary() {
+        TrackTable library = library(10);
+        int[] rows = {4, 4, 9, 0, 5};
+        assertArrayEquals(rows, rows(PlayQueue.ofRows(library, rows)));
+        assertNull(PlayQueue.ofRows(library, new int[]{3, 10}));
+    }
+
+    @Test
+    public void wholeLibraryIsOneRunAndSplitsOnlyWhereEdited() {
+        PlayQueue queue = PlayQueue.of(library(1000));
+        assertEquals(1, queue.runCount());
+        assertEquals(1000, queue.size());
+        assertEquals(999, queue.rowAt(999));
+        // Taking one entry out of the middle leaves two runs either side
+        assertEquals(2, queue.remove(500).runCount());
+        assertEquals(3, queue.move(500, 0).runCount());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void outOfRangePositionsThrow() {
+        PlayQueue.of(library(3)).rowAt(3);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rowsOutsideTheLibraryThrow() {
+        PlayQueue.of(library(3)).insert(0, 3);
+    }
+
+    private static void assertMatches(List<Entry> model, PlayQueue queue, Random random) {
+        assertEquals(model.size(), queue.size());
+        assertEquals(model.isEmpty(), queue.isEmpty());
+        for (int i = 0; i < model.size(); i++) {
+            assertEquals(model.get(i).id, queue.idAt(i));
+            assertEquals(model.get(i).row, queue.rowAt(i));
+            assertEquals(i, queue.indexOf(model.get(i).id, random.nextInt(model.size())));
+        }
+        int[] runs = queue.toRuns();
+        int n = 0;
+        for (int r = 0; r < runs.length; r += 2) {
+            for (int k = 0; k < runs[r + 1]; k++) assertEquals(model.get(n++).row, runs[r] + k);
+        }
+        assertEquals(model.size(), n);
+    }
+
+    private static TrackTable library(int size) {
+        List<Track> tracks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) tracks.add(new Track("t" + i + ".mp3", "doc/" + i, 0, 0));
+        return TrackTable.of(tracks);
+    }
+
+    private static long[] ids(PlayQueue queue) {
+        long[] ids = new long[queue.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = queue.idAt(i);
+        return ids;
+    }
+
+    private static int[] rows(PlayQueue queue) {
+        int[] rows = new int[queue.size()];
+        for (int i = 0; i < rows.length; i++) rows[i] = queue.rowAt(i);
+        return rows;
+    }
+}
@@ -0,0 +1,142 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class PlayStatsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void playsNeedHalfTheTrackOrFourMinutes() {
+        PlayStats stats = new PlayStats();
+        stats.add(new ListeningLog.Event(1, 7, ListeningLog.COMPLETED, 1000, 200000));
+        stats.add(new ListeningLog.Event(2, 7, ListeningLog.SKIPPED, 100000, 200000));
+        stats.add(new ListeningLog.Event(3, 7, ListeningLog.SKIPPED, 99999, 200000));
+        stats.add(new ListeningLog.Event(4, 7, ListeningLog.SKIPPED, 240000, 3600000));
+        stats.add(new ListeningLog.Event(5, 7, ListeningLog.PREVIOUS, 1000, 200000));
+        PlayStats.Entry entry = stats.get(7);
+        assertEquals(3, entry.plays);
+        assertEquals(1, entry.skips);
+        assertEquals(4, entry.lastPlayedAt);
+        assertEquals(0.25f, entry.skipRate(), 0f);
+        assertNull(stats.get(8));
+    }
+
+    @Test
+    public void compactionRoundTripMatchesFullReplay() throws IOException {
+        File dir = folder.getRoot();
+        Random random = new Random(11);
+        List<ListeningLog.Event> all = new ArrayList<>();
+        ListeningLog log = ListeningLog.open(dir, 1, 16);
+        for (int segment = 0; segment < 4; segment++) {
+            for (int i = 0; i < 100; i++) {
+                ListeningLog.Event event = randomEvent(random, all.size());
+                all.add(event);
+                log.append(event);
+            }
+            if (segment < 3) log.rotate();
+        }
+        log.flush();
+
+        // Compact: fold the sealed segments, save the stats, delete what they cover
+        PlayStats folded = new PlayStats();
+        long through = 0;
+        for (long segment : ListeningLog.segments(dir)) {
+            if (segment >= log.segment()) break;
+            ListeningLog.read(ListeningLog.segmentFile(dir, segment), folded::add);
+            through = segment;
+        }
+        folded.setFoldedThrough(through);
+        byte[] saved = write(folded);
+        log.deleteThrough(through);
+        log.close();
+
+        // Load: saved stats plus the segments after them
+        PlayStats loaded = PlayStats.readFrom(new DataInputStream(new ByteArrayInputStream(saved)));
+        assertNotNull(loaded);
+        assertEquals(3, loaded.foldedThrough());
+        for (long segment : ListeningLog.segments(dir)) {
+            if (segment > loaded.foldedThrough()) ListeningLog.read(ListeningLog.segmentFile(dir, segment), loaded::add);
+        }
+
+        PlayStats expected = new PlayStats();
+        for (ListeningLog.Event event : all) expected.add(event);
+        assertEquals(expected.size(), loaded.size());
+        assertEquals(all.size(), loaded.events());
+        for (long key = 0; key < 50; key++) assertSameEntry(expected.get(key), loaded.get(key));
+    }
+
+    @Test
+    public void readFromRejectsOtherData() throws IOException {
+        byte[] saved = write(new PlayStats());
+        saved[0] ^= 1;
+        assertNull(PlayStats.readFrom(new DataInputStream(new ByteArrayInputStream(saved))));
+    }
+
+    @Test
+    public void topMatchesAFullSort() {
+        Random random = new Random(5);
+        PlayStats stats = new PlayStats();
+        for (int i = 0; i < 20000; i++) stats.add(randomEvent(random, random.nextInt(1_000_000)));
+        List<PlayStats.Entry> entries = new ArrayList<>();
+        for (long key = 0; key < 50; key++) if (stats.get(key) != null) entries.add(stats.get(key));
+
+        List<PlayStats.Entry> byPlays = new ArrayList<>(entries);
+        byPlays.removeIf(e -> e.plays == 0);
+        byPlays.sort(Comparator.<PlayStats.Entry>comparingInt(e -> e.plays).thenComparingLong(e -> e.lastPlayedAt).reversed());
+        List<PlayStats.Entry> top = stats.top(PlayStats.Ranking.MOST_PLAYED, 10);
+        assertEquals(10, top.size());
+        for (int i = 0; i < top.size(); i++) assertSameEntry(byPlays.get(i), top.get(i));
+
+        List<PlayStats.Entry> byRecency = new ArrayList<>(entries);
+        byRecency.removeIf(e -> e.plays == 0);
+        byRecency.sort(Comparator.<PlayStats.Entry>comparingLong(e -> e.lastPlayedAt).reversed());
+        top = stats.top(PlayStats.Ranking.RECENTLY_PLAYED, 10);
+        for (int i = 0; i < top.size(); i++) assertSameEntry(byRecency.get(i), top.get(i));
+    }
+
+    private static ListeningLog.Event randomEvent(Random random, long timeMs) {
+        byte type = random.nextInt(3) == 0 ? ListeningLog.SKIPPED : ListeningLog.COMPLETED;
+        int duration = 120000 + random.nextInt(240000);
+        int listened = type == ListeningLog.SKIPPED ? random.nextInt(duration) : duration;
+        return new ListeningLog.Event(timeMs, random.nextInt(50), type, listened, duration);
+    }
+
+    private static byte[] write(PlayStats stats) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        stats.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void assertSameEntry(PlayStats.Entry expected, PlayStats.Entry actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.trackKey, actual.trackKey);
+        assertEquals(expected.plays, actual.plays);
+        assertEquals(expected.skips, actual.skips);
+        assertEquals(expected.lastPlayedAt, actual.lastPlayedAt);
+        assertEquals(expected.listenedMs, actual.listenedMs);
+    }
+}
@@ -0,0 +1,97 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PlaylistParserTest {
+
+    @Test
+    public void m3uWithBomCrlfAndExtinf() throws IOException {
+        String m3u = "\uFEFF#EXTM3U\r\n"
+                + "#EXTINF:215,Artist - First\r\n"
+                + "Music/A/01 First.mp3\r\n"
+                + "\r\n"
+                + "  ../B/02 Second.flac  \r\n"
+                + "#EXTINF:-1 tvg-id=\"x\",Radio, with a comma\r\n"
+                + "http://radio.example/stream\r\n";
+        assertEquals(Arrays.asList(
+                "3|Music/A/01 First.mp3|Artist - First",
+                "5|../B/02 Second.flac|null",
+                "7|http://radio.example/stream|Radio, with a comma"), parse(m3u));
+    }
+
+    @Test
+    public void extinfTitleAppliesOnlyToTheNextEntry() throws IOException {
+        String m3u = "#EXTINF:1,\nempty title.mp3\n#EXTINF:1,Kept\n# a comment\nkept.mp3\nuntitled.mp3\n";
+        assertEquals(Arrays.asList("2|empty title.mp3|null", "5|kept.mp3|Kept", "6|untitled.mp3|null"), parse(m3u));
+    }
+
+    @Test
+    public void plsEntriesByNumberWhicheverKeyComesFirst() throws IOException {
+        String pls = "\r\n[Playlist]\r\n"
+                + "NumberOfEntries=3\r\n"
+                + "File1=C:\\Music\\one.mp3\r\n"
+                + "Title1=One\r\n"
+                + "Title2=Two\r\n"
+                + "file2 = two.mp3\r\n"
+                + "Length2=100\r\n"
+                + "File10=ten.mp3\r\n"
+                + "FileX=ignored.mp3\r\n"
+                + "Version=2\r\n";
+        assertEquals(Arrays.asList(
+                "4|C:\\Music\\one.mp3|One",
+                "7|two.mp3|Two",
+                "9|ten.mp3|null"), parse(pls));
+    }
+
+    @Test
+    public void plsTitleWithoutFileIsDropped() throws IOException {
+        assertEquals(Arrays.asList("3|a.mp3|null"), parse("[playlist]\nTitle1=Orphan\nFile2=a.mp3\n"));
+    }
+
+    @Test
+    public void m3uEncodingIsSniffedAndM3u8IsAlwaysUtf8() throws IOException {
+        String text = "Caf\u00e9/\u00c5ngstr\u00f6m.mp3\n";
+        assertEquals(Arrays.asList("1|" + text.trim() + "|null"), parse(text.getBytes(StandardCharsets.UTF_8), "list.M3U"));
+        assertEquals(Arrays.asList("1|" + text.trim() + "|null"), parse(text.getBytes(Charset.forName("windows-1252")), "list.m3u"));
+        assertEquals(Arrays.asList("1|" + text.trim() + "|null"), parse(text.getBytes(StandardCharsets.UTF_8), "list.m3u8"));
+        // Windows-1252 bytes in an .m3u8 are not reinterpreted
+        assertEquals(Arrays.asList("1|Caf\uFFFD/\uFFFDngstr\uFFFDm.mp3|null"), parse(text.getBytes(Charset.forName("windows-1252")), "list.m3u8"));
+    }
+
+    @Test
+    public void utf8CutAtTheSniffBoundaryStillCountsAsUtf8() throws IOException {
+        // Pad so a two-byte character straddles the 64 KiB sample
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 64 * 1024 - 1) sb.append('#');
+        sb.append("\u00e9\nlast.mp3\n\u00e9.mp3\n");
+        List<String> entries = parse(sb.toString().getBytes(StandardCharsets.UTF_8), "big.m3u");
+        assertEquals(Arrays.asList("2|last.mp3|null", "3|\u00e9.mp3|null"), entries);
+    }
+
+    private static List<String> parse(String text) throws IOException {
+        return parse(new StringReader(text));
+    }
+
+    private static List<String> parse(byte[] bytes, String fileName) throws IOException {
+        return parse(PlaylistParser.reader(new ByteArrayInputStream(bytes), fileName));
+    }
+
+    private static List<String> parse(Reader reader) throws IOException {
+        List<String> entries = new ArrayList<>();
+        int count = PlaylistParser.parse(reader, (line, location, title) -> entries.add(line + "|" + location + "|" + title));
+        assertEquals(entries.size(), count);
+        return entries;
+    }
+}
@@ -0,0 +1,161 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class QueueNavigatorTest {
+
+    @Test
+    public void inOrderSkipsWrapAndAutoAdvanceFollowsRepeat() {
+        QueueNavigator navigator = navigator(4, false);
+        assertEquals(2, navigator.skipNext(1));
+        assertEquals(0, navigator.skipNext(3));
+        assertEquals(3, navigator.skipPrevious(0));
+
+        assertEquals(2, navigator.autoAdvance(1));
+        assertEquals(-1, navigator.autoAdvance(3));
+        navigator.setRepeatMode(QueueNavigator.REPEAT_ALL);
+        assertEquals(0, navigator.autoAdvance(3));
+        navigator.setRepeatMode(QueueNavigator.REPEAT_ONE);
+        assertEquals(3, navigator.autoAdvance(3));
+        assertEquals(-1, navigator.peekAutoAdvance(-1));
+        // Skips ignore repeat-one
+        assertEquals(0, navigator.skipNext(3));
+    }
+
+    @Test
+    public void repeatModeCycles() {
+        QueueNavigator navigator = navigator(1, false);
+        assertEquals(QueueNavigator.REPEAT_ONE, navigator.cycleRepeatMode());
+        assertEquals(QueueNavigator.REPEAT_ALL, navigator.cycleRepeatMode());
+        assertEquals(QueueNavigator.REPEAT_OFF, navigator.cycleRepeatMode());
+    }
+
+    @Test
+    public void peekAgreesWithAutoAdvanceAcrossShuffleCycles() {
+        // Preparing the next player peeks; the track ending then advances. They must agree,
+        // including at the wrap where repeat-all draws a new cycle.
+        QueueNavigator navigator = navigator(6, true);
+        navigator.setRepeatMode(QueueNavigator.REPEAT_ALL);
+        int current = navigator.getShuffleOrder().current();
+        Set<Integer> cycle = new HashSet<>();
+        cycle.add(current);
+        for (int step = 0; step < 60; step++) {
+            int peeked = navigator.peekAutoAdvance(current);
+            assertEquals(peeked, navigator.peekAutoAdvance(current));
+            assertEquals(current, navigator.getShuffleOrder().current());
+            int next = navigator.autoAdvance(current);
+            assertEquals(peeked, next);
+            current = next;
+            if (cycle.size() == 6) cycle.clear();
+            assertTrue("repeated within a cycle: " + next, cycle.add(next));
+        }
+    }
+
+    @Test
+    public void skipPreviousAfterPeekAtEndOfCycleGoesBack() {
+        QueueNavigator navigator = navigator(5, true);
+        navigator.setRepeatMode(QueueNavigator.REPEAT_ALL);
+        int[] played = new int[5];
+        played[0] = navigator.getShuffleOrder().current();
+        for (int i = 1; i < 5; i++) played[i] = navigator.autoAdvance(played[i - 1]);
+        int peeked = navigator.peekAutoAdvance(played[4]);
+
+        assertEquals(played[3], navigator.skipPrevious(played[4]));
+        assertEquals(played[4], navigator.skipNext(played[3]));
+        assertEquals(peeked, navigator.skipNext(played[4]));
+    }
+
+    @Test
+    public void shuffleStartsAtCurrentAndShuffledSkipBackRestartsAtHistoryStart() {
+        QueueNavigator navigator = navigator(10, false);
+        navigator.setShuffleEnabled(true, 6);
+        assertEquals(6, navigator.getShuffleOrder().current());
+        assertEquals(6, navigator.skipPrevious(6));
+        int next = navigator.skipNext(6);
+        assertEquals(6, navigator.skipPrevious(next));
+    }
+
+    @Test
+    public void playNextInsertWhileShuffledIsTheNextTrack() {
+        QueueNavigator navigator = navigator(8, true);
+        int current = navigator.getShuffleOrder().current();
+        navigator.insert(3, true);
+        assertEquals(9, navigator.size());
+        int shifted = QueueNavigator.shiftPosition(current, -1, 3);
+        assertEquals(shifted, navigator.getShuffleOrder().current());
+        assertEquals(3, navigator.peekAutoAdvance(shifted));
+    }
+
+    @Test
+    public void editsWhileShuffledKeepTheCurrentEntry() {
+        Random random = new Random(12);
+        QueueNavigator navigator = navigator(20, true);
+        int size = 20;
+        for (int step = 0; step < 500; step++) {
+            int current = navigator.getShuffleOrder().current();
+            int at = random.nextInt(size);
+            int op = random.nextInt(3);
+            if (op == 0 || size == 1) {
+                navigator.insert(at, random.nextBoolean());
+                size++;
+                current = QueueNavigator.shiftPosition(current, -1, at);
+            } else if (op == 1 && at != current) {
+                navigator.remove(at);
+                size--;
+                current = QueueNavigator.shiftPosition(current, at, -1);
+            } else {
+                int to = random.nextInt(size);
+                navigator.move(at, to);
+                current = QueueNavigator.shiftPosition(current, at, to);
+            }
+            assertEquals(size, navigator.size());
+            assertEquals(size, navigator.getShuffleOrder().size());
+            assertEquals(current, navigator.getShuffleOrder().current());
+        }
+    }
+
+    @Test
+    public void shiftPosition() {
+        assertEquals(4, QueueNavigator.shiftPosition(3, -1, 2));
+        assertEquals(1, QueueNavigator.shiftPosition(1, -1, 2));
+        assertEquals(2, QueueNavigator.shiftPosition(3, 1, -1));
+        assertEquals(-1, QueueNavigator.shiftPosition(3, 3, -1));
+        // Moves: the moved entry lands on the target, the ones between shift over
+        assertEquals(5, QueueNavigator.shiftPosition(2, 2, 5));
+        assertEquals(2, QueueNavigator.shiftPosition(3, 2, 5));
+        assertEquals(3, QueueNavigator.shiftPosition(2, 5, 1));
+        assertEquals(6, QueueNavigator.shiftPosition(6, 2, 5));
+        assertEquals(-1, QueueNavigator.shiftPosition(-1, 0, 1));
+    }
+
+    @Test
+    public void restoreOnlyAdoptsAnOrderOfTheSameSize() {
+        QueueNavigator navigator = navigator(5, false);
+        ShuffleOrder wrong = new ShuffleOrder(new Random(1));
+        wrong.reset(4, 0);
+        assertFalse(navigator.restore(wrong, true));
+        assertFalse(navigator.restore(null, true));
+        assertFalse(navigator.isShuffleEnabled());
+        ShuffleOrder right = new ShuffleOrder(new Random(1));
+        right.reset(5, 2);
+        assertTrue(navigator.restore(right, true));
+        assertTrue(navigator.isShuffleEnabled());
+        assertSame(right, navigator.getShuffleOrder());
+    }
+
+    private static QueueNavigator navigator(int size, boolean shuffled) {
+        QueueNavigator navigator = new QueueNavigator(new Random(size));
+        navigator.reset(size, 0);
+        navigator.setShuffleEnabled(shuffled, 0);
+        return navigator;
+    }
+}
@@ -0,0 +1,163 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReadAheadReaderTest {
+
+    private static final int FILE_SIZE = 8 * 1024 * 1024;
+    private static final int CAPACITY = 1024 * 1024;
+    private static final int READ_SIZE = 4096;
+
+    /**
+     * Like ReadAheadBenchmark's ThrottledSource (a fixed latency per read, 20 MB/s after it), and
+     * counts the reads that came from the caller rather than the filler thread. The first filler
+     * read starting at or past {@code stallAt} blocks until {@code gate} is released.
+     */
+    static final class ThrottledSource implements ReadAheadReader.Source {
+        private static final long LATENCY_NS = 200_000;
+        private static final long NS_PER_KB = 50_000;
+
+        volatile int callerReads;
+        // End of the filler's last completed read
+        volatile long fillerReadEnd;
+        volatile long stallAt = Long.MAX_VALUE;
+        // Where the filler is blocked, or -1
+        volatile long stuckAt = -1;
+        final CountDownLatch gate = new CountDownLatch(1);
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+            if (position >= FILE_SIZE) return -1;
+            boolean filler = Thread.currentThread().getName().equals("ReadAhead");
+            if (!filler) callerReads++;
+            if (filler && position >= stallAt && gate.getCount() > 0) {
+                stuckAt = position;
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            int n = (int) Math.min(length, FILE_SIZE - position);
+            LockSupport.parkNanos(LATENCY_NS + n / 1024 * NS_PER_KB);
+            for (int i = 0; i < n; i++) buffer[offset + i] = (byte) (position + i);
+            if (filler) fillerReadEnd = position + n;
+            return n;
+        }
+
+        @Override
+        public long size() { return FILE_SIZE; }
+
+        @Override
+        public void close() { }
+    }
+
+    private final ThrottledSource source = new ThrottledSource();
+    private ReadAheadReader reader;
+    private final byte[] buffer = new byte[64 * 1024];
+
+    @After
+    public void tearDown() throws IOException {
+        source.gate.countDown();
+        if (reader != null) reader.close();
+    }
+
+    @Test
+    public void forwardSeekInsideTheRingIsServedWithoutASourceRead() throws Exception {
+        reader = new ReadAheadReader(source, CAPACITY);
+        read(0, READ_SIZE);
+        int callerReads = source.callerReads;
+        // The ring keeps a quarter behind the read position, so it fills to three quarters ahead
+        awaitFiller(CAPACITY / 2, FILE_SIZE);
+
+        long hits = reader.getHits();
+        long misses = reader.getMisses();
+        read(100_000, READ_SIZE);
+        read(CAPACITY / 2 - 10_000, READ_SIZE);
+        assertEquals(callerReads, source.callerReads);
+        assertEquals(misses, reader.getMisses());
+        assertEquals(hits + 2, reader.getHits());
+    }
+
+    @Test
+    public void backwardSeekOutsideTheWindowRefills() throws Exception {
+        reader = new ReadAheadReader(source, CAPACITY);
+        for (long position = 0; position < 3 * CAPACITY; ) position += read(position, buffer.length);
+        int callerReads = source.callerReads;
+        long misses = reader.getMisses();
+
+        // The start of the file fell out of the ring long ago
+        read(1000, READ_SIZE);
+        assertEquals(callerReads + 1, source.callerReads);
+        assertEquals(misses + 1, reader.getMisses());
+
+        // The filler starts over from there, and reads after the seek hit again
+        awaitFiller(300_000, CAPACITY);
+        for (long position = 1000 + READ_SIZE; position < 300_000; ) position += read(position, buffer.length);
+        assertEquals(callerReads + 1, source.callerReads);
+        assertEquals(misses + 1, reader.getMisses());
+    }
+
+    @Test
+    public void aStalledFillerDelaysAReadByAtMostTheFrontierWait() throws Exception {
+        source.stallAt = 256 * 1024;
+        reader = new ReadAheadReader(source, CAPACITY);
+        long stuckAt = awaitStuck();
+        long position = 0;
+        while (position < stuckAt) position += read(position, (int) Math.min(buffer.length, stuckAt - position));
+
+        // The filler is stuck on the chunk this read needs; it waits for it, then reads directly
+        int callerReads = source.callerReads;
+        long started = System.nanoTime();
+        read(position, READ_SIZE);
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        assertTrue("read took " + elapsedMs + " ms", elapsedMs >= 400);
+        assertTrue("read took " + elapsedMs + " ms", elapsedMs < 1500);
+        assertEquals(callerReads + 1, source.callerReads);
+
+        // Once the provider recovers, the chunk it returns late is for a stale position and dropped
+        source.gate.countDown();
+        for (long end = position + 512 * 1024; position < end; ) position += read(position, buffer.length);
+        assertTrue(reader.getStallNanos() >= TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /** Reads at {@code position} and checks the bytes against the source's pattern. */
+    private int read(long position, int length) throws IOException {
+        int n = reader.readAt(position, buffer, 0, length);
+        assertTrue(n > 0);
+        for (int i = 0; i < n; i++) assertEquals((byte) (position + i), buffer[i]);
+        return n;
+    }
+
+    private long awaitStuck() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (source.stuckAt < 0) {
+            assertTrue("filler never stalled", System.nanoTime() < deadline);
+            Thread.sleep(2);
+        }
+        return source.stuckAt;
+    }
+
+    /** Waits for the filler to have read up to {@code upTo}, ignoring reads ending past {@code before}. */
+    private void awaitFiller(long upTo, long before) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            long end = source.fillerReadEnd;
+            if (end >= upTo && end < before) break;
+            assertTrue("filler stuck at " + end, System.nanoTime() < deadline);
+            Thread.sleep(2);
+        }
+        // Let it publish the chunk it just read
+        Thread.sleep(20);
+    }
+}
@@ -0,0 +1,64 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResamplerTest {
+
+    @Test
+    public void sineKeepsItsShapeAcrossRates() {
+        float[] in = sine(44100, 44100, 1000);
+        float[] out = resample(new Resampler(44100, 48000, 1), in, new Random(1));
+        assertTrue(out.length >= 47998 && out.length <= 48002);
+        for (int m = 0; m < out.length; m++) {
+            double t = m * 44100.0 / 48000;
+            // Past the last input frame the tail is held, not the sine
+            if (t > in.length - 1) break;
+            assertEquals("frame " + m, Math.sin(2 * Math.PI * 1000 * t / 44100), out[m], 2e-3);
+        }
+    }
+
+    @Test
+    public void blockBoundariesDontChangeTheOutput() {
+        float[] in = sine(48000, 10000, 440);
+        float[] whole = resample(new Resampler(48000, 44100, 1), in, null);
+        float[] blocks = resample(new Resampler(48000, 44100, 1), in, new Random(7));
+        assertArrayEquals(whole, blocks, 1e-6f);
+    }
+
+    @Test
+    public void equalRatesPassThrough() {
+        Resampler resampler = new Resampler(48000, 48000, 2);
+        assertTrue(resampler.isPassthrough());
+        float[] in = {1, 2, 3, 4, 5, 6};
+        float[] out = new float[6];
+        assertEquals(3, resampler.process(in, 0, 3, out, 0));
+        assertArrayEquals(in, out, 0f);
+        assertEquals(0, resampler.drain(out, 0));
+    }
+
+    /** Feeds {@code in} in random blocks (or all at once if {@code random} is null) and drains. */
+    private static float[] resample(Resampler resampler, float[] in, Random random) {
+        float[] out = new float[resampler.maxOutputFrames(in.length) + resampler.maxOutputFrames(2)];
+        int produced = 0;
+        for (int position = 0; position < in.length; ) {
+            int frames = random == null ? in.length : Math.min(in.length - position, 1 + random.nextInt(700));
+            produced += resampler.process(in, position, frames, out, produced);
+            position += frames;
+        }
+        produced += resampler.drain(out, produced);
+        return Arrays.copyOf(out, produced);
+    }
+
+    private static float[] sine(int rate, int frames, double frequency) {
+        float[] samples = new float[frames];
+        for (int i = 0; i < frames; i++) samples[i] = (float) Math.sin(2 * Math.PI * frequency * i / rate);
+        return samples;
+    }
+}
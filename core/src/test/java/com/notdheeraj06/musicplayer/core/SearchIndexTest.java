@@ -0,0 +1,104 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class SearchIndexTest {
+
+    private static final SearchIndex INDEX = SearchIndex.build(Arrays.asList(
+            "Heartbeats - The Knife - Deep Cuts",       // 0
+            "Beat It - Michael Jackson - Thriller",     // 1
+            "Caf\u00e9 del Mar - Energy 52",       // 2
+            "Upbeat Song - Someone - Beats Vol. 2",     // 3
+            "Deep Blue - Arcade Fire - The Suburbs"));  // 4
+
+    @Test
+    public void prefixMatchesRankBeforeSubstringMatches() {
+        // 1 and 3 have a token starting with "beat"; 0 and 3 one containing it further in
+        assertArrayEquals(new int[]{1, 3, 0}, search("beat"));
+        assertArrayEquals(new int[]{0}, search("eartb"));
+        assertArrayEquals(new int[]{1, 3}, search("beat", 2));
+        assertArrayEquals(new int[0], search("xyz"));
+        assertArrayEquals(new int[0], search(" - "));
+    }
+
+    @Test
+    public void everyTermMustMatch() {
+        assertArrayEquals(new int[]{0, 4}, search("deep"));
+        assertArrayEquals(new int[]{4}, search("deep arcade"));
+        // A prefix match on one term and a substring match on the other ranks with the substring ones
+        assertArrayEquals(new int[]{0, 4}, search("deep c"));
+        assertArrayEquals(new int[]{4, 0}, search("deep a"));
+        assertArrayEquals(new int[]{0}, search("knife cuts heart"));
+        assertArrayEquals(new int[0], search("deep jackson"));
+    }
+
+    @Test
+    public void caseAndDiacriticsAreFolded() {
+        assertArrayEquals(new int[]{2}, search("CAFE"));
+        assertArrayEquals(new int[]{2}, search("caf\u00e9 mar"));
+        assertArrayEquals(new int[]{2}, search("afe"));
+    }
+
+    @Test
+    public void substringsAgreeWithAScanOfEveryToken() {
+        List<String> documents = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            documents.add(String.format(Locale.US, "%02d Track %d - Artist %s - Album %s", i % 12 + 1, i,
+                    Integer.toString(i * 7919, 36), Integer.toString(i / 12 * 104729, 36)));
+        }
+        SearchIndex index = SearchIndex.build(documents);
+        for (String term : new String[]{"rac", "tis", "1", "2a", "bum", "z", "9k"}) {
+            List<Integer> expected = new ArrayList<>();
+            List<Integer> prefixed = new ArrayList<>();
+            for (int id = 0; id < documents.size(); id++) {
+                boolean prefix = false, contains = false;
+                for (String token : SearchIndex.tokenize(documents.get(id))) {
+                    prefix |= token.startsWith(term);
+                    contains |= token.contains(term);
+                }
+                if (prefix) prefixed.add(id);
+                else if (contains) expected.add(id);
+            }
+            expected.addAll(0, prefixed);
+            int[] found = index.search(term, Integer.MAX_VALUE, () -> false);
+            assertEquals(term, expected.size(), found.length);
+            for (int i = 0; i < found.length; i++) assertEquals(term, (int) expected.get(i), found[i]);
+        }
+    }
+
+    @Test
+    public void aNewerGenerationCancelsTheSearch() {
+        List<String> documents = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) documents.add("Song " + i + " - Artist " + i / 60);
+        SearchIndex index = SearchIndex.build(documents);
+        AtomicInteger generation = new AtomicInteger();
+
+        int gen = generation.get();
+        assertNotNull(index.search("so 1", 10, () -> generation.get() != gen));
+        generation.incrementAndGet();
+        assertNull(index.search("so 1", 10, () -> generation.get() != gen));
+
+        // Cancelled partway through the suffixes of a term that matches most of the vocabulary
+        AtomicInteger checks = new AtomicInteger();
+        assertNull(index.search("1", 10, () -> checks.incrementAndGet() > 1));
+    }
+
+    private static int[] search(String query) {
+        return search(query, Integer.MAX_VALUE);
+    }
+
+    private static int[] search(String query, int limit) {
+        return INDEX.search(query, limit, () -> false);
+    }
+}
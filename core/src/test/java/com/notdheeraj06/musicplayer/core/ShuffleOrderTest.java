@@ -0,0 +1,257 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShuffleOrderTest {
+
+    @Test
+    public void resetStartsAtIndexAndVisitsEveryTrackOnce() {
+        ShuffleOrder shuffle = new ShuffleOrder(new Random(1));
+        shuffle.reset(50, 7);
+        assertEquals(7, shuffle.current());
+        List<Integer> played = new ArrayList<>();
+        played.add(shuffle.current());
+        for (int i = 1; i < 50; i++) played.add(shuffle.next(false));
+        assertPermutation(played, 50);
+        assertEquals(-1, shuffle.peekNext(false));
+        assertEquals(-1, shuffle.next(false));
+        assertEquals(played.get(49).intValue(), shuffle.current());
+    }
+
+    @Test
+    public void previousRetracesHistoryAndNextReplaysIt() {
+        ShuffleOrder shuffle = new ShuffleOrder(new Random(2));
+        shuffle.reset(20, 0);
+        int[] played = new int[6];
+        played[0] = shuffle.current();
+        for (int i = 1; i < played.length; i++) played[i] = shuffle.next(false);
+        for (int i = played.length - 2; i >= 0; i--) assertEquals(played[i], shuffle.previous());
+        assertEquals(-1, shuffle.previous());
+        assertEquals(played[0], shuffle.current());
+        for (int i = 1; i < played.length; i++) assertEquals(played[i], shuffle.next(false));
+    }
+
+    @Test
+    public void peekAtEndOfCycleLeavesCurrentAndHistoryAlone() {
+        ShuffleOrder shuffle = new ShuffleOrder(new Random(3));
+        shuffle.reset(10, 4);
+        int[] played = new int[10];
+        played[0] = shuffle.current();
+        for (int i = 1; i < 10; i++) played[i] = shuffle.next(true);
+        byte[] before = save(shuffle);
+
+        int peeked = shuffle.peekNext(true);
+        assertEquals(peeked, shuffle.peekNext(true));
+        assertEquals(played[9], shuffle.current());
+        assertArrayEquals(before, save(shuffle));
+        assertNotEquals(played[9], peeked);
+
+        // Going back and forth through history doesn't redraw what comes after the wrap
+        assertEquals(played[8], shuffle.previous());
+        assertEquals(played[9], shuffle.next(true));
+        assertEquals(peeked, shuffle.peekNext(true));
+
+        List<Integer> cycle = new ArrayList<>();
+        cycle.add(shuffle.next(true));
+        assertEquals(peeked, cycle.get(0).intValue());
+        // History starts over with the new cycle
+        assertEquals(-1, shuffle.previous());
+        for (int i = 1; i < 10; i++) cycle.add(shuffle.next(true));
+        assertPermutation(cycle, 10);
+    }
+
+    @Test
+    public void wrapNeverRepeatsTheLastTrack() {
+        Random random = new Random(4);
+        for (int trial = 0; trial < 200; trial++) {
+            ShuffleOrder shuffle = new ShuffleOrder(random);
+            shuffle.reset(3, 0);
+            shuffle.next(true);
+            int last = shuffle.next(true);
+            assertNotEquals(last, shuffle.next(true));
+        }
+        ShuffleOrder single = new ShuffleOrder(random);
+        single.reset(1, 0);
+        assertEquals(0, single.next(true));
+        assertEquals(-1, new ShuffleOrder(random).peekNext(true));
+    }
+
+    @Test
+    public void jumpToUpcomingPullsItForwardAndToPlayedStepsBack() {
+        ShuffleOrder shuffle = new ShuffleOrder(new Random(5));
+        shuffle.reset(30, 0);
+        int[] played = {shuffle.current(), shuffle.next(false), shuffle.next(false)};
+        int[] upcoming = upcoming(shuffle);
+
+        shuffle.jumpTo(upcoming[5]);
+        assertEquals(upcoming[5], shuffle.current());
+        assertEquals(played[2], shuffle.previous());
+        assertEquals(upcoming[5], shuffle.next(false));
+        List<Integer> rest = new ArrayList<>();
+        for (int i : upcoming(shuffle)) rest.add(i);
+        assertEquals(upcoming.length - 1, rest.size());
+        assertTrue(!rest.contains(upcoming[5]) && rest.contains(upcoming[0]));
+
+        shuffle.jumpTo(played[1]);
+        assertEquals(played[1], shuffle.current());
+        assertEquals(played[0], shuffle.previous());
+    }
+
+    @Test
+    public void moveToNextMakesItTheNextTrackAndKeepsTheRest() {
+        ShuffleOrder shuffle = new ShuffleOrder(new Random(6));
+        shuffle.reset(20, 0);
+        shuffle.next(false);
+        int[] upcoming = upcoming(shuffle);
+        shuffle.moveToNext(upcoming[7]);
+        int[] after = upcoming(shuffle);
+        assertEquals(upcoming[7], after[0]);
+        List<Integer> expected = new ArrayList<>();
+        for (int i : upcoming) if (i != upcoming[7]) expected.add(i);
+        List<Integer> actual = new ArrayList<>();
+        for (int i = 1; i < after.length; i++) actual.add(after[i]);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void remapDropsRemovedKeepsCurrentAndSlotsNewSongsUpcoming() {
+        ShuffleOrder shuffle = new ShuffleOrder(new Random(7));
+        shuffle.reset(10, 0);
+        for (int i = 0; i < 4; i++) shuffle.next(false);
+        int current = shuffle.current();
+        // Remove old index 9 (or 8 if 9 is playing), and append two new songs at 9 and 10
+        int removed = current == 9 ? 8 : 9;
+        int[] oldToNew = new int[10];
+        for (int i = 0, n = 0; i < 10; i++) oldToNew[i] = i == removed ? -1 : n++;
+        shuffle.remap(oldToNew, 11);
+
+        assertEquals(11, shuffle.size());
+        assertEquals(oldToNew[current], shuffle.current());
+        int[] order = orderOf(shuffle);
+        List<Integer> all = new ArrayList<>();
+        for (int i : order) all.add(i);
+        assertPermutation(all, 11);
+        List<Integer> next = new ArrayList<>();
+        for (int i : upcoming(shuffle)) next.add(i);
+        assertTrue(next.contains(9) && next.contains(10));
+    }
+
+    @Test
+    public void randomEditsKeepAPermutation() {
+        Random random = new Random(8);
+        ShuffleOrder shuffle = new ShuffleOrder(random);
+        int size = 25;
+        shuffle.reset(size, 3);
+        for (int step = 0; step < 5000; step++) {
+            switch (random.nextInt(6)) {
+                case 0: shuffle.next(random.nextBoolean()); break;
+                case 1: shuffle.previous(); break;
+                case 2: shuffle.peekNext(true); break;
+                case 3: shuffle.jumpTo(random.nextInt(size)); break;
+                case 4: shuffle.moveToNext(random.nextInt(size)); break;
+                default: {
+                    int newSize = Math.max(1, size + random.nextInt(5) - 2);
+                    int[] oldToNew = new int[size];
+                    for (int i = 0; i < size; i++) oldToNew[i] = random.nextInt(4) == 0 ? -1 : i < newSize ? i : -1;
+                    shuffle.remap(oldToNew, newSize);
+                    size = newSize;
+                    break;
+                }
+            }
+            List<Integer> all = new ArrayList<>();
+            for (int i : orderOf(shuffle)) all.add(i);
+            assertPermutation(all, size);
+        }
+    }
+
+    @Test
+    public void saveAndRestoreRoundTrip() throws IOException {
+        ShuffleOrder shuffle = new ShuffleOrder(new Random(9));
+        shuffle.reset(40, 12);
+        for (int i = 0; i < 15; i++) shuffle.next(false);
+        byte[] saved = save(shuffle);
+        ShuffleOrder restored = ShuffleOrder.readFrom(new DataInputStream(new ByteArrayInputStream(saved)), new Random(9));
+        assertNotNull(restored);
+        assertEquals(shuffle.current(), restored.current());
+        assertArrayEquals(orderOf(shuffle), orderOf(restored));
+        for (int i = 0; i < 15; i++) assertEquals(shuffle.previous(), restored.previous());
+    }
+
+    @Test
+    public void restoreRejectsWhatIsNotAPermutation() throws IOException {
+        assertNull(readFrom(3, 0, 0, 1, 1));
+        assertNull(readFrom(3, 0, 0, 1, 3));
+        assertNull(readFrom(3, 3, 0, 1, 2));
+        assertNull(readFrom(-1, -1));
+        assertNotNull(readFrom(0, -1));
+    }
+
+    private static ShuffleOrder readFrom(int... ints) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int i : ints) out.writeInt(i);
+        return ShuffleOrder.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), new Random());
+    }
+
+    private static byte[] save(ShuffleOrder shuffle) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            shuffle.writeTo(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** The whole order, read back through the saved form. */
+    private static int[] orderOf(ShuffleOrder shuffle) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(save(shuffle)));
+        try {
+            int[] order = new int[in.readInt()];
+            in.readInt();
+            for (int p = 0; p < order.length; p++) order[p] = in.readInt();
+            return order;
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /** The order after the cursor. */
+    private static int[] upcoming(ShuffleOrder shuffle) {
+        int[] order = orderOf(shuffle);
+        int p = shuffle.current() < 0 ? 0 : indexOf(order, shuffle.current()) + 1;
+        return Arrays.copyOfRange(order, p, order.length);
+    }
+
+    private static int indexOf(int[] a, int value) {
+        for (int i = 0; i < a.length; i++) if (a[i] == value) return i;
+        return -1;
+    }
+
+    private static void assertPermutation(List<Integer> values, int size) {
+        assertEquals(size, values.size());
+        boolean[] seen = new boolean[size];
+        for (int v : values) {
+            assertTrue("out of range: " + v, v >= 0 && v < size);
+            assertTrue("repeated: " + v, !seen[v]);
+            seen[v] = true;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Synthetic files built byte by byte, each exercising one container's tag layout. */
+public class TagReaderTest {
+
+    private static final byte[] JPEG = {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe0, 0, 0x10, 'J', 'F', 'I', 'F', (byte) 0xff, 0, (byte) 0xff, (byte) 0xd9};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void id3v23Utf16AndLatin1Frames() throws IOException {
+        byte[] tag = id3(3, 0,
+                frame3("TPE1", text(1, "Bj\u00f6rk")),
+                frame3("TALB", text(0, "D\u00e9but")),
+                frame3("TRCK", text(0, "3/12")));
+        SongMetadata m = read(cat(tag, mpeg(4000)));
+        assertEquals("Bj\u00f6rk", m.getArtist());
+        assertEquals("D\u00e9but", m.getAlbum());
+        assertEquals(3, m.getTrackNumber());
+        assertEquals(128000, m.getBitrate());
+        // CBR: 4000 bytes at 128 kbit/s
+        assertEquals(250, m.getDurationMs());
+        assertFalse(m.hasEmbeddedArt());
+    }
+
+    @Test
+    public void id3v24Utf8WithSyncsafeSizes() throws IOException {
+        // Over 127 bytes, so a plain big-endian size would read differently from a syncsafe one
+        StringBuilder album = new StringBuilder();
+        for (int i = 0; i < 40; i++) album.append("\u00e5\u00e4\u00f6");
+        byte[] tag = id3(4, 0,
+                frame4("TPE2", 0, text(3, "Album Artist")),
+                frame4("TALB", 0, text(3, album.toString())),
+                frame4("TLEN", 0, text(3, "215000")),
+                frame4("APIC", 0, apic(JPEG)));
+        SongMetadata m = read(cat(tag, mpeg(4000)));
+        assertEquals("Album Artist", m.getArtist());
+        assertEquals(album.toString(), m.getAlbum());
+        assertEquals(215000, m.getDurationMs());
+        assertTrue(m.hasEmbeddedArt());
+        assertArrayEquals(JPEG, artwork(cat(tag, mpeg(4000))));
+    }
+
+    @Test
+    public void id3v23UnsynchronisedTag() throws IOException {
+        // The whole tag is unsynchronised, frame headers included; sizes are of the resynchronised frames
+        byte[] frames = cat(
+                frame3("TPE1", text(0, "\u00ff\u00ffy")),
+                frame3("APIC", apic(JPEG)),
+                frame3("TALB", text(0, "After the picture")));
+        byte[] tag = id3(3, 0x80, unsynchronise(frames));
+        byte[] file = cat(tag, mpeg(4000));
+        SongMetadata m = read(file);
+        assertEquals("\u00ff\u00ffy", m.getArtist());
+        assertEquals("After the picture", m.getAlbum());
+        assertTrue(m.hasEmbeddedArt());
+        assertArrayEquals(JPEG, artwork(file));
+    }
+
+    @Test
+    public void id3v24UnsynchronisedFramesWithDataLength() throws IOException {
+        // Per-frame unsync (0x02) with a data length indicator (0x01); sizes are as stored
+        byte[] tag = id3(4, 0,
+                frame4("TPE1", 0x03, cat(be32(0), unsynchronise(text(0, "\u00ff\u00e9\u00ff")))),
+                frame4("APIC", 0x03, cat(be32(0), unsynchronise(apic(JPEG)))),
+                frame4("TALB", 0, text(0, "Plain")));
+        byte[] file = cat(tag, mpeg(4000));
+        SongMetadata m = read(file);
+        assertEquals("\u00ff\u00e9\u00ff", m.getArtist());
+        assertEquals("Plain", m.getAlbum());
+        assertArrayEquals(JPEG, artwork(file));
+    }
+
+    @Test
+    public void id3v22ThreeLetterFrames() throws IOException {
+        ByteArrayOutputStream pic = new ByteArrayOutputStream();
+        pic.write(0);
+        pic.write("JPG".getBytes(StandardCharsets.US_ASCII), 0, 3);
+        pic.write(3);
+        pic.write(0);
+        pic.write(JPEG, 0, JPEG.length);
+        byte[] tag = id3(2, 0,
+                frame2("TP1", text(0, "Old Tagger")),
+                frame2("TRK", text(0, "9")),
+                frame2("PIC", pic.toByteArray()));
+        byte[] file = cat(tag, mpeg(4000));
+        SongMetadata m = read(file);
+        assertEquals("Old Tagger", m.getArtist());
+        assertEquals(9, m.getTrackNumber());
+        assertArrayEquals(JPEG, artwork(file));
+    }
+
+    @Test
+    public void flacStreamInfoVorbisCommentsAndPicture() throws IOException {
+        ByteBuffer info = ByteBuffer.allocate(34);
+        // rate (20 bits), channels - 1 (3), bits - 1 (5), total samples (36)
+        info.putLong(10, (44100L << 44) | (1L << 41) | (15L << 36) | 441000L);
+        ByteArrayOutputStream comments = new ByteArrayOutputStream();
+        writeLe32String(comments, "reference libFLAC");
+        comments.write(le32(3), 0, 4);
+        writeLe32String(comments, "album=Lower Case Key");
+        writeLe32String(comments, "ARTIST=Sigur R\u00f3s");
+        writeLe32String(comments, "TRACKNUMBER=07/10");
+        ByteArrayOutputStream picture = new ByteArrayOutputStream();
+        picture.write(be32(3), 0, 4);
+        writeBe32String(picture, "image/jpeg");
+        writeBe32String(picture, "");
+        picture.write(new byte[16], 0, 16);
+        writeBe32String(picture, JPEG);
+
+        byte[] audio = new byte[10000];
+        byte[] file = cat("fLaC".getBytes(StandardCharsets.US_ASCII),
+                flacBlock(0, false, info.array()),
+                flacBlock(4, false, comments.toByteArray()),
+                flacBlock(6, true, picture.toByteArray()),
+                audio);
+        SongMetadata m = read(file);
+        assertEquals("Sigur R\u00f3s", m.getArtist());
+        assertEquals("Lower Case Key", m.getAlbum());
+        assertEquals(7, m.getTrackNumber());
+        assertEquals(10000, m.getDurationMs());
+        assertEquals(8000, m.getBitrate());
+        assertArrayEquals(JPEG, artwork(file));
+    }
+
+    @Test
+    public void mp4IlstItems() throws IOException {
+        ByteBuffer mvhd = ByteBuffer.allocate(100);
+        mvhd.putInt(12, 1000);
+        mvhd.putInt(16, 180000);
+        byte[] hdlr = atom("hdlr", new byte[25]);
+        byte[] ilst = atom("ilst", cat(
+                atom("aART", data(1, "Album Artist".getBytes(StandardCharsets.UTF_8))),
+                atom("\u00a9ART", data(1, "Track Artist".getBytes(StandardCharsets.UTF_8))),
+                atom("\u00a9alb", data(1, "\u00c5lbum".getBytes(StandardCharsets.UTF_8))),
+                atom("trkn", data(0, new byte[]{0, 0, 0, 4, 0, 11, 0, 0})),
+                atom("covr", data(13, JPEG))));
+        byte[] meta = atom("meta", cat(new byte[4], hdlr, ilst));
+        byte[] moov = atom("moov", cat(atom("mvhd", mvhd.array()), atom("udta", meta)));
+        byte[] file = cat(atom("ftyp", "M4A \0\0\0\0".getBytes(StandardCharsets.US_ASCII)), moov, atom("mdat", new byte[2000]));
+        SongMetadata m = read(file);
+        assertEquals("Track Artist", m.getArtist());
+        assertEquals("\u00c5lbum", m.getAlbum());
+        assertEquals(4, m.getTrackNumber());
+        assertEquals(180000, m.getDurationMs());
+        assertTrue(m.hasEmbeddedArt());
+        assertArrayEquals(JPEG, artwork(file));
+    }
+
+    @Test
+    public void id3v1FallbackWithoutId3v2() throws IOException {
+        byte[] v1 = new byte[128];
+        put(v1, 0, "TAG");
+        put(v1, 33, "V1 Artist");
+        put(v1, 63, "V1 Album");
+        v1[126] = 5;
+        SongMetadata m = read(cat(mpeg(4000), v1));
+        assertEquals("V1 Artist", m.getArtist());
+        assertEquals("V1 Album", m.getAlbum());
+        assertEquals(5, m.getTrackNumber());
+        assertEquals(250, m.getDurationMs());
+    }
+
+    @Test
+    public void unrecognisedDataIsNull() throws IOException {
+        assertNull(read("not an audio file at all".getBytes(StandardCharsets.US_ASCII)));
+        assertNull(artwork(mpeg(4000)));
+    }
+
+    @Test
+    public void parseLeadingInt() {
+        assertEquals(3, TagReader.parseLeadingInt("3/12"));
+        assertEquals(215000, TagReader.parseLeadingInt("215000"));
+        assertEquals(0, TagReader.parseLeadingInt("x1"));
+        assertEquals(0, TagReader.parseLeadingInt(null));
+    }
+
+    // region fixtures
+
+    private SongMetadata read(byte[] content) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(write(content), "r")) {
+            return TagReader.read(file.getChannel());
+        }
+    }
+
+    private byte[] artwork(byte[] content) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(write(content), "r");
+             FileChannel channel = file.getChannel()) {
+            return TagReader.readArtwork(channel);
+        }
+    }
+
+    private File write(byte[] content) throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        return file;
+    }
+
+    /** An MPEG-1 Layer III frame header (128 kbit/s, 44.1 kHz) followed by zeros, {@code length} bytes in all. */
+    private static byte[] mpeg(int length) {
+        byte[] b = new byte[length];
+        b[0] = (byte) 0xff;
+        b[1] = (byte) 0xfb;
+        b[2] = (byte) 0x90;
+        b[3] = 0x40;
+        return b;
+    }
+
+    private static byte[] id3(int major, int flags, byte[]... frames) {
+        byte[] body = cat(frames);
+        byte[] h = {'I', 'D', '3', (byte) major, 0, (byte) flags, 0, 0, 0, 0};
+        putSyncsafe(h, 6, body.length);
+        return cat(h, body);
+    }
+
+    private static byte[] frame2(String id, byte[] body) {
+        byte[] h = new byte[6];
+        put(h, 0, id);
+        h[3] = (byte) (body.length >> 16);
+        h[4] = (byte) (body.length >> 8);
+        h[5] = (byte) body.length;
+        return cat(h, body);
+    }
+
+    private static byte[] frame3(String id, byte[] body) {
+        byte[] h = new byte[10];
+        put(h, 0, id);
+        ByteBuffer.wrap(h).putInt(4, body.length);
+        return cat(h, body);
+    }
+
+    private static byte[] frame4(String id, int format, byte[] body) {
+        byte[] h = new byte[10];
+        put(h, 0, id);
+        putSyncsafe(h, 4, body.length);
+        h[9] = (byte) format;
+        return cat(h, body);
+    }
+
+    /** An encoding byte then the text: 0 Latin-1, 1 UTF-16 with BOM, 3 UTF-8. */
+    private static byte[] text(int encoding, String value) {
+        byte[] bytes;
+        if (encoding == 0) bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+        else if (encoding == 1) bytes = cat(new byte[]{(byte) 0xff, (byte) 0xfe}, value.getBytes(StandardCharsets.UTF_16LE));
+        else bytes = value.getBytes(StandardCharsets.UTF_8);
+        return cat(new byte[]{(byte) encoding}, bytes);
+    }
+
+    private static byte[] apic(byte[] image) {
+        byte[] header = cat(new byte[]{0}, "image/jpeg".getBytes(StandardCharsets.US_ASCII), new byte[]{0, 3}, "Cover".getBytes(StandardCharsets.US_ASCII), new byte[]{0});
+        return cat(header, image);
+    }
+
+    /** Stuffs a zero after every 0xFF, as ID3 writers do. */
+    private static byte[] unsynchronise(byte[] in) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte b : in) {
+            out.write(b);
+            if (b == (byte) 0xff) out.write(0);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] flacBlock(int type, boolean last, byte[] body) {
+        byte[] h = {(byte) (type | (last ? 0x80 : 0)), (byte) (body.length >> 16), (byte) (body.length >> 8), (byte) body.length};
+        return cat(h, body);
+    }
+
+    private static byte[] atom(String type, byte[] body) {
+        byte[] h = new byte[8];
+        ByteBuffer.wrap(h).putInt(0, 8 + body.length);
+        put(h, 4, type);
+        return cat(h, body);
+    }
+
+    private static byte[] data(int type, byte[] payload) {
+        byte[] h = new byte[8];
+        ByteBuffer.wrap(h).putInt(0, type);
+        return atom("data", cat(h, payload));
+    }
+
+    private static void writeLe32String(ByteArrayOutputStream out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.write(le32(bytes.length), 0, 4);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeBe32String(ByteArrayOutputStream out, String s) {
+        writeBe32String(out, s.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeBe32String(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(be32(bytes.length), 0, 4);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static byte[] be32(int v) {
+        return ByteBuffer.allocate(4).putInt(v).array();
+    }
+
+    private static byte[] le32(int v) {
+        return new byte[]{(byte) v, (byte) (v >> 8), (byte) (v >> 16), (byte) (v >> 24)};
+    }
+
+    private static void putSyncsafe(byte[] b, int offset, int v) {
+        for (int i = 0; i < 4; i++) b[offset + i] = (byte) ((v >> (7 * (3 - i))) & 0x7f);
+    }
+
+    /** Writes the chars of {@code s} as single bytes; the copyright sign in MP4 atom names stays one byte. */
+    private static void put(byte[] b, int offset, String s) {
+        for (int i = 0; i < s.length(); i++) b[offset + i] = (byte) s.charAt(i);
+    }
+
+    private static byte[] cat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] p : parts) out.write(p, 0, p.length);
+        return out.toByteArray();
+    }
+
+    // endregion
+}
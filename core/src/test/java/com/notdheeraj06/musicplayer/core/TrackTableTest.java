@@ -0,0 +1,130 @@
+package com.notdheeraj06.musicplayer.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TrackTableTest {
+
+    @Test
+    public void columnsRoundTrip() {
+        List<Track> tracks = new ArrayList<>();
+        tracks.add(new Track("Intro", "primary:Music/A/Intro", 10, 20));
+        Track tagged = new Track("02 Caf\u00e9", "primary:Music/A/02 Caf\u00e9.flac", 30, 40);
+        tagged.setMetadata(new SongMetadata("Bee", null, 2, 1000, 320, true));
+        tracks.add(tagged);
+        tracks.add(new Track("Loose", null, 50, 60));
+        tracks.add(new Track("root", "root", 70, 80));
+        TrackTable table = TrackTable.of(tracks);
+
+        assertEquals(4, table.size());
+        for (int i = 0; i < tracks.size(); i++) {
+            assertEquals(tracks.get(i).getTitle(), table.title(i));
+            assertEquals(tracks.get(i).getDocumentId(), table.documentId(i));
+            assertEquals(tracks.get(i).getSize(), table.fileSize(i));
+            assertEquals(tracks.get(i).getLastModified(), table.lastModified(i));
+        }
+        assertNull(table.metadata(0));
+        SongMetadata metadata = table.metadata(1);
+        assertEquals("Bee", metadata.getArtist());
+        assertNull(metadata.getAlbum());
+        assertEquals(2, metadata.getTrackNumber());
+        assertTrue(metadata.hasEmbeddedArt());
+        assertTrue(TrackTable.empty().isEmpty());
+    }
+
+    @Test
+    public void indexOfFindsEveryRowAndNothingElse() {
+        List<Track> tracks = library(5000, new Random(16));
+        TrackTable table = TrackTable.of(tracks);
+        for (int i = 0; i < tracks.size(); i++) assertEquals(i, table.indexOf(tracks.get(i).getDocumentId()));
+        assertEquals(-1, table.indexOf("primary:Music/nowhere.mp3"));
+        assertEquals(-1, table.indexOf(null));
+        // The folder of one track with the file name of another
+        assertEquals(-1, table.indexOf("primary:Music/Artist 99/Album 0/01 Track 0.mp3"));
+        assertEquals(-1, TrackTable.empty().indexOf("primary:Music/a.mp3"));
+    }
+
+    @Test
+    public void indexOfFollowsRowsAcrossRebuilds() {
+        Random random = new Random(16);
+        List<Track> tracks = library(5000, random);
+        TrackTable first = TrackTable.of(tracks);
+        List<Track> shuffled = new ArrayList<>(tracks);
+        Collections.shuffle(shuffled, random);
+        shuffled.remove(shuffled.size() - 1);
+        TrackTable second = TrackTable.of(shuffled);
+
+        assertEquals(first.size() - 1, second.size());
+        for (int row = 0; row < first.size(); row++) {
+            String id = first.documentId(row);
+            assertEquals(row, first.indexOf(id));
+            int moved = second.indexOf(id);
+            assertEquals(shuffled.indexOf(tracks.get(row)), moved);
+            if (moved >= 0) assertEquals(id, second.documentId(moved));
+        }
+        // An unchanged rebuild keeps every row where it was
+        TrackTable again = TrackTable.of(tracks);
+        for (int row = 0; row < first.size(); row++) assertEquals(row, again.indexOf(first.documentId(row)));
+    }
+
+    @Test
+    public void fingerprintIsTheHashSavedShuffleOrdersWereKeyedBy() {
+        List<Track> tracks = library(300, new Random(3));
+        tracks.add(new Track("Loose", null, 1, 1));
+        long hash = 0xcbf29ce484222325L;
+        for (Track track : tracks) {
+            String id = track.getDocumentId();
+            if (id == null) continue;
+            for (int i = 0; i < id.length(); i++) {
+                hash ^= id.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= '/';
+        }
+        assertEquals(hash, TrackTable.of(tracks).fingerprint());
+    }
+
+    @Test
+    public void fingerprintIsStableAcrossRebuildsAndTagsButNotOrder() {
+        List<Track> tracks = library(1000, new Random(7));
+        long fingerprint = TrackTable.of(tracks).fingerprint();
+        assertEquals(fingerprint, TrackTable.of(new ArrayList<>(tracks)).fingerprint());
+
+        // Fresh tags and sizes leave the rows, and so the fingerprint, as they were
+        List<Track> retagged = new ArrayList<>();
+        for (Track track : tracks) {
+            Track copy = new Track(track.getTitle(), track.getDocumentId(), track.getSize() + 1, track.getLastModified() + 1);
+            copy.setMetadata(new SongMetadata("Someone", "Something", 1, 1000, 128, false));
+            retagged.add(copy);
+        }
+        assertEquals(fingerprint, TrackTable.of(retagged).fingerprint());
+
+        // A re-sort is a different row order, which a saved shuffle order must be remapped to
+        List<Track> swapped = new ArrayList<>(tracks);
+        Collections.swap(swapped, 10, 11);
+        assertNotEquals(fingerprint, TrackTable.of(swapped).fingerprint());
+        assertNotEquals(fingerprint, TrackTable.of(tracks.subList(0, tracks.size() - 1)).fingerprint());
+    }
+
+    /** Files under shared folders; about half are named after their title so the name is stored once. */
+    private static List<Track> library(int size, Random random) {
+        List<Track> tracks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String folder = "primary:Music/Artist " + random.nextInt(40) + "/Album " + random.nextInt(5) + "/";
+            String name = String.format(Locale.US, "%02d Track %d.mp3", i % 12 + 1, i);
+            String title = random.nextBoolean() ? name : "Track " + i;
+            tracks.add(new Track(title, folder + name, 1000 + i, i));
+        }
+        return tracks;
+    }
+}